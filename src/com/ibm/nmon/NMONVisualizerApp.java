@@ -1,29 +1,40 @@
 package com.ibm.nmon;
 
+import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 
+import java.io.IOException;
+
 import java.util.Set;
+import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import java.util.Properties;
 
 import org.slf4j.Logger;
 
 import com.ibm.nmon.data.DataSetListener;
 import com.ibm.nmon.data.DataSet;
+import com.ibm.nmon.data.DataSetCache;
 import com.ibm.nmon.data.SystemDataSet;
 
 import com.ibm.nmon.data.transform.name.HostRenamer;
 
 import com.ibm.nmon.parser.*;
 import com.ibm.nmon.parser.gc.VerboseGCParser;
+import com.ibm.nmon.parser.util.TypeFilter;
 import com.ibm.nmon.interval.*;
 
+import com.ibm.nmon.analysis.AnalysisCache;
 import com.ibm.nmon.analysis.AnalysisRecord;
 
 import com.ibm.nmon.util.ParserLog;
+import com.ibm.nmon.util.SymbolTable;
 import com.ibm.nmon.util.TimeFormatCache;
 import com.ibm.nmon.util.TimeZoneFactory;
 import com.ibm.nmon.file.CombinedFileFilter;
@@ -39,19 +50,46 @@ import com.ibm.nmon.file.CombinedFileFilter;
 public abstract class NMONVisualizerApp implements IntervalListener {
     protected final Logger logger = org.slf4j.LoggerFactory.getLogger(getClass());
 
-    private final NMONParser nmonParser;
-    private final VerboseGCParser gcParser;
-    private final IOStatParser iostatParser;
-    private final JSONParser jsonParser;
-    private final HATJParser hatJParser;
-    private final PerfmonParser perfmonParser;
-    private final TopasOutParser topasoutParser;
-    private final FIOParser fioParser;
-    private final ZPoolIOStatParser zpoolParser;
-    private final JMeterAggregateParser jMeterParser;
+    // parsers hold state for the file currently being parsed, so each parsing thread needs its own set
+    private static final class Parsers {
+        private final NMONParser nmonParser = new NMONParser();
+        private final VerboseGCParser gcParser = new VerboseGCParser();
+        private final IOStatParser iostatParser = new IOStatParser();
+        private final JSONParser jsonParser = new JSONParser();
+        private final HATJParser hatJParser = new HATJParser();
+        private final PerfmonParser perfmonParser = new PerfmonParser();
+        private final TopasOutParser topasoutParser = new TopasOutParser(nmonParser);
+        private final FIOParser fioParser = new FIOParser();
+        private final ZPoolIOStatParser zpoolParser = new ZPoolIOStatParser();
+        private final JMeterAggregateParser jMeterParser = new JMeterAggregateParser();
+    }
+
+    private final ThreadLocal<Parsers> parsers = new ThreadLocal<Parsers>() {
+        @Override
+        protected Parsers initialValue() {
+            return new Parsers();
+        }
+    };
+
+    // subclasses may prompt the user for additional data; only allow one prompt at a time
+    private final Object promptLock = new Object();
 
     private HostRenamer hostRenamer;
 
+    // null => parsed data is not cached
+    private volatile DataSetCache cache = null;
+
+    // types to parse from NMON, Perfmon and iostat files
+    private volatile TypeFilter typeFilter = TypeFilter.ALL;
+    // snapshots to parse from NMON files
+    private volatile Interval parseInterval = Interval.DEFAULT;
+
+    // files that are still being written, by file name
+    // each file needs its own parser since the parser holds the state of the file between updates
+    private final Map<String, NMONParser> followedFiles = new java.util.concurrent.ConcurrentHashMap<>();
+    private final Map<String, ParseListener> followListeners = new java.util.concurrent.ConcurrentHashMap<>();
+    private java.util.concurrent.ScheduledExecutorService followExecutor = null;
+
     // assume event order does not matter
     private final Set<DataSetListener> listeners;
 
@@ -61,6 +99,9 @@ public abstract class NMONVisualizerApp implements IntervalListener {
 
     private final Map<SystemDataSet, AnalysisRecord> analysisRecords = new java.util.TreeMap<SystemDataSet, AnalysisRecord>();
 
+    // shared by all records so statistics are reused across intervals and by charts that create their own records
+    private final AnalysisCache analysisCache = new AnalysisCache();
+
     private long minSystemTime = 0;
     private long maxSystemTime = Long.MAX_VALUE;
 
@@ -72,17 +113,6 @@ public abstract class NMONVisualizerApp implements IntervalListener {
         // since it creates the parent logger
         ParserLog.getInstance();
 
-        nmonParser = new NMONParser();
-        gcParser = new VerboseGCParser();
-        iostatParser = new IOStatParser();
-        jsonParser = new JSONParser();
-        hatJParser = new HATJParser();
-        perfmonParser = new PerfmonParser();
-        topasoutParser = new TopasOutParser(nmonParser);
-        fioParser = new FIOParser();
-        zpoolParser = new ZPoolIOStatParser();
-        jMeterParser = new JMeterAggregateParser();
-
         TimeZone defaultTz = TimeZone.getDefault();
 
         // use the timezone names from TimeZoneFactory, if possible
@@ -111,6 +141,39 @@ public abstract class NMONVisualizerApp implements IntervalListener {
 
         setProperty("scaleProcessesByCPUs", "true");
 
+        setProperty("parserThreads", Runtime.getRuntime().availableProcessors());
+
+        setProperty("approximatePercentiles", false);
+
+        // the cache can also be set directly with setCache()
+        setProperty("cacheParsedData", false);
+
+        // seconds between checks for new data in followed files
+        setProperty("followInterval", 10);
+
+        propertyChangeSupport.addPropertyChangeListener("approximatePercentiles", new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                boolean approximate = getBooleanProperty("approximatePercentiles");
+
+                for (AnalysisRecord record : analysisRecords.values()) {
+                    record.setApproximatePercentiles(approximate);
+                }
+            }
+        });
+
+        propertyChangeSupport.addPropertyChangeListener("cacheParsedData", new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (getBooleanProperty("cacheParsedData")) {
+                    setCache(new DataSetCache(DataSetCache.getDefaultDirectory()));
+                }
+                else {
+                    setCache(null);
+                }
+            }
+        });
+
         // requires access to AnalysisRecords
         com.ibm.nmon.data.matcher.TopProcessMatcher.setApp(this);
     }
@@ -133,57 +196,594 @@ public abstract class NMONVisualizerApp implements IntervalListener {
         fileToParse = fileToParse.replace('\\', '/');
 
         // skipped already parsed files
+        if (isParsed(fileToParse)) {
+            return;
+        }
+
+        DataSet data = null;
+
+        SymbolTable.setCurrent(new SymbolTable());
+
+        try {
+            data = parseData(fileToParse, timeZone);
+        }
+        finally {
+            SymbolTable.setCurrent(null);
+        }
+
+        if (data != null) {
+            addData(fileToParse, data);
+        }
+    }
+
+    /**
+     * <p>
+     * Parse multiple files concurrently.
+     * </p>
+     * <p>
+     * Files are parsed on a bounded pool of worker threads, each with its own set of parsers. The number of threads is
+     * set by the <code>parserThreads</code> property. The parsed data is merged into {@link SystemDataSet
+     * SystemDataSets} on the calling thread, in the same order as the given list, so the end result does not depend on
+     * which files finish parsing first. The listener is also called on the calling thread, in list order, after each
+     * file is merged.
+     * </p>
+     * <p>
+     * Errors are not thrown. Instead, they are logged to the {@link ParserLog} and passed to the listener.
+     * </p>
+     */
+    public final void parse(List<String> filesToParse, final TimeZone timeZone, ParseListener listener) {
+        int threads = Math.min(filesToParse.size(), Integer.parseInt(getProperty("parserThreads")));
+
+        // Strings are shared by all the files in this load, across all the parser threads
+        SymbolTable symbols = new SymbolTable();
+
+        if (threads <= 1) {
+            for (String fileToParse : filesToParse) {
+                fileToParse = fileToParse.replace('\\', '/');
+
+                if (isParsed(fileToParse)) {
+                    mergeResult(new ParseResult(fileToParse), listener);
+                }
+                else {
+                    mergeResult(parseAndLog(fileToParse, timeZone, symbols), listener);
+                }
+            }
+
+            return;
+        }
+
+        ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(threads,
+                new java.util.concurrent.ThreadFactory() {
+                    private int count = 0;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, NMONVisualizerApp.class.getSimpleName() + " Parser " + ++count);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        // parsed data is held until it can be merged in order
+        // limit how far ahead of the merge parsing can get to bound memory usage
+        int maxOutstanding = threads * 2;
+        java.util.Queue<Future<ParseResult>> outstanding = new java.util.ArrayDeque<Future<ParseResult>>(maxOutstanding);
+        java.util.Iterator<String> toSubmit = filesToParse.iterator();
+        // files listed more than once are only parsed the first time, as in the single threaded case
+        Set<String> submitted = new java.util.HashSet<String>();
+
+        try {
+            while (toSubmit.hasNext() && (outstanding.size() < maxOutstanding)) {
+                outstanding.add(submitParse(executor, toSubmit.next(), timeZone, symbols, submitted));
+            }
+
+            while (!outstanding.isEmpty()) {
+                ParseResult result = null;
+
+                try {
+                    result = outstanding.remove().get();
+                }
+                catch (java.util.concurrent.ExecutionException ee) {
+                    // parseAndLog catches all Exceptions
+                    throw new IllegalStateException("unexpected error parsing files", ee.getCause());
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                if (toSubmit.hasNext()) {
+                    outstanding.add(submitParse(executor, toSubmit.next(), timeZone, symbols, submitted));
+                }
+
+                mergeResult(result, listener);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Future<ParseResult> submitParse(ExecutorService executor, String fileToParse, final TimeZone timeZone,
+            final SymbolTable symbols, Set<String> submitted) {
+        final String filename = fileToParse.replace('\\', '/');
+
+        // check on this thread since analysisRecords is only updated by the merge
+        if (isParsed(filename) || !submitted.add(filename)) {
+            return java.util.concurrent.CompletableFuture.completedFuture(new ParseResult(filename));
+        }
+
+        return executor.submit(new java.util.concurrent.Callable<ParseResult>() {
+            @Override
+            public ParseResult call() {
+                return parseAndLog(filename, timeZone, symbols);
+            }
+        });
+    }
+
+    // parse a single file, recording any errors rather than throwing them
+    private ParseResult parseAndLog(String fileToParse, TimeZone timeZone, SymbolTable symbols) {
+        ParserLog log = ParserLog.getInstance();
+        log.setCurrentFilename(fileToParse);
+
+        SymbolTable.setCurrent(symbols);
+
+        ParseResult result = new ParseResult(fileToParse);
+
+        try {
+            result.data = parseData(fileToParse, timeZone);
+        }
+        catch (Exception e) {
+            log.getLogger().error("could not parse " + fileToParse, e);
+            result.exception = e;
+        }
+        finally {
+            SymbolTable.setCurrent(null);
+        }
+
+        if (log.hasData()) {
+            result.errors = log.getMessages();
+        }
+        else {
+            log.setCurrentFilename(null);
+        }
+
+        return result;
+    }
+
+    private void mergeResult(ParseResult result, ParseListener listener) {
+        if (result.data != null) {
+            ParserLog log = ParserLog.getInstance();
+            log.setCurrentFilename(result.filename);
+
+            try {
+                addData(result.filename, result.data);
+            }
+            catch (Exception e) {
+                log.getLogger().error("could not add data for " + result.filename, e);
+                result.exception = e;
+            }
+
+            if (log.hasData()) {
+                result.errors = result.errors == null ? log.getMessages() : result.errors + log.getMessages();
+            }
+            else {
+                log.setCurrentFilename(null);
+            }
+
+            // allow the parsed data to be GC'ed as soon as possible
+            result.data = null;
+        }
+
+        if (listener != null) {
+            listener.fileParsed(result.filename, result.errors, result.exception);
+        }
+    }
+
+    private static final class ParseResult {
+        private final String filename;
+
+        private DataSet data;
+        private String errors;
+        private Exception exception;
+
+        ParseResult(String filename) {
+            this.filename = filename;
+        }
+    }
+
+    /**
+     * <p>
+     * Parse a NMON file that is still being written and continue to follow it as it grows.
+     * </p>
+     * <p>
+     * The file is parsed and added like {@link #parse(String, TimeZone) parse()}. Then, every
+     * <code>followInterval</code> seconds, any newly completed snapshots are parsed and appended to the file's
+     * {@link SystemDataSet}. Each update fires a single {@link DataSetListener#dataChanged(DataSet) dataChanged} event
+     * for all the new records. The file is followed until {@link #stopFollowing(String) stopFollowing()} is called or
+     * its data set is removed.
+     * </p>
+     * <p>
+     * Only NMON files can be followed. Files that have already been parsed cannot be followed.
+     * </p>
+     * <p>
+     * Messages logged to the {@link ParserLog} while parsing are passed to the listener, if any, as they are for
+     * <code>parse()</code>. The listener is called once the file has been added and then on the follower thread after
+     * every update that logs messages or fails. Errors in the initial parse are thrown rather than passed to the
+     * listener.
+     * </p>
+     */
+    public final void follow(String fileToFollow, TimeZone timeZone, ParseListener listener) throws IOException {
+        final String filename = fileToFollow.replace('\\', '/');
+
+        if (!CombinedFileFilter.getInstance(false).getNMONFileFilter().accept(filename)
+                || com.ibm.nmon.util.ArchiveHelper.isArchiveEntry(filename)) {
+            throw new IllegalArgumentException("cannot follow " + filename + ": only NMON files can be followed");
+        }
+
+        if (isParsed(filename) || followedFiles.containsKey(filename)) {
+            throw new IllegalArgumentException(filename + " has already been parsed");
+        }
+
+        NMONParser parser = new NMONParser();
+        DataSet data = null;
+        String errors = null;
+
+        ParserLog.getInstance().setCurrentFilename(filename);
+        SymbolTable.setCurrent(new SymbolTable());
+
+        try {
+            data = parser.follow(filename, timeZone, getBooleanProperty("scaleProcessesByCPUs"));
+
+            if (data.getRecordCount() == 0) {
+                parser.close();
+                throw new IllegalArgumentException(filename + " does not contain any complete snapshots yet");
+            }
+
+            addData(filename, data);
+        }
+        finally {
+            SymbolTable.setCurrent(null);
+
+            // always clear the log, even when the exception is the only thing reported
+            errors = getParserMessages();
+        }
+
+        if (listener != null) {
+            followListeners.put(filename, listener);
+        }
+
+        followedFiles.put(filename, parser);
+
+        if (listener != null) {
+            listener.fileParsed(filename, errors, null);
+        }
+
+        synchronized (followedFiles) {
+            if (followExecutor == null) {
+                followExecutor = java.util.concurrent.Executors
+                        .newSingleThreadScheduledExecutor(new java.util.concurrent.ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread thread = new Thread(r, NMONVisualizerApp.class.getSimpleName() + " Follower");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+
+                int interval = Integer.parseInt(getProperty("followInterval"));
+
+                followExecutor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        updateFollowedFiles();
+                    }
+                }, interval, interval, java.util.concurrent.TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    public final boolean isFollowing(String filename) {
+        return followedFiles.containsKey(filename.replace('\\', '/'));
+    }
+
+    /**
+     * Stop following the given file. Any data already parsed remains in its data set.
+     */
+    public final void stopFollowing(String filename) {
+        NMONParser parser = followedFiles.remove(filename.replace('\\', '/'));
+        followListeners.remove(filename.replace('\\', '/'));
+
+        if (parser != null) {
+            synchronized (parser) {
+                parser.close();
+            }
+        }
+    }
+
+    // called periodically on the follower thread
+    private void updateFollowedFiles() {
+        // null values for files without new data
+        final Map<String, DataSet> updates = new java.util.LinkedHashMap<String, DataSet>();
+
+        for (Map.Entry<String, NMONParser> entry : followedFiles.entrySet()) {
+            String filename = entry.getKey();
+            NMONParser parser = entry.getValue();
+
+            DataSet newData = null;
+            Exception exception = null;
+
+            ParserLog log = ParserLog.getInstance();
+            log.setCurrentFilename(filename);
+
+            // each update is a separate load
+            SymbolTable.setCurrent(new SymbolTable());
+
+            try {
+                synchronized (parser) {
+                    if (parser.isFollowing()) {
+                        newData = parser.update();
+                    }
+                }
+            }
+            catch (Exception e) {
+                log.getLogger().error(
+                        "could not parse new data in " + filename + "; the file will no longer be followed", e);
+                exception = e;
+            }
+            finally {
+                SymbolTable.setCurrent(null);
+            }
+
+            String errors = getParserMessages();
+            ParseListener listener = followListeners.get(filename);
+
+            if (exception != null) {
+                stopFollowing(filename);
+            }
+
+            if ((listener != null) && ((errors != null) || (exception != null))) {
+                listener.fileParsed(filename, errors, exception);
+            }
+
+            if (exception == null) {
+                updates.put(filename, newData);
+            }
+        }
+
+        // parse on this thread but update the data sets and analysis records where they are read
+        // merging updates existing records in place, so also wait for any chart builds or analysis to finish
+        java.util.concurrent.locks.Lock lock = DataSet.getUpdateLock().writeLock();
+        lock.lock();
+
+        try {
+            runDataUpdate(new Runnable() {
+                @Override
+                public void run() {
+                    appendFollowedData(updates);
+                }
+            });
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void appendFollowedData(Map<String, DataSet> updates) {
+        Set<SystemDataSet> changed = new java.util.LinkedHashSet<SystemDataSet>();
+
+        for (Map.Entry<String, DataSet> entry : updates.entrySet()) {
+            String filename = entry.getKey();
+            DataSet newData = entry.getValue();
+
+            SystemDataSet systemData = null;
+
+            for (SystemDataSet toSearch : analysisRecords.keySet()) {
+                if (toSearch.containsSourceFile(filename)) {
+                    systemData = toSearch;
+                    break;
+                }
+            }
+
+            // data removed by the user
+            if (systemData == null) {
+                stopFollowing(filename);
+                continue;
+            }
+
+            if (newData != null) {
+                systemData.appendData(filename, newData);
+                changed.add(systemData);
+            }
+        }
+
+        // one event per data set, regardless of the number of new records
+        for (SystemDataSet systemData : changed) {
+            updateDataSet(systemData);
+        }
+    }
+
+    /**
+     * Run an update to the parsed data sets and their analysis records that was prepared on another thread, i.e. new
+     * data from followed files. This implementation runs the update in the current thread. Subclasses can override this
+     * to run it in the thread that reads the data sets. The update must be complete when this method returns.
+     * This method is called holding the write lock from {@link DataSet#getUpdateLock()}, so it must not wait for any
+     * thread that reads data sets while holding the read lock.
+     */
+    protected void runDataUpdate(Runnable update) {
+        update.run();
+    }
+
+    // any messages logged on this thread since the ParserLog's current file was set; null if there are none
+    private static String getParserMessages() {
+        ParserLog log = ParserLog.getInstance();
+
+        if (log.hasData()) {
+            return log.getMessages();
+        }
+        else {
+            log.setCurrentFilename(null);
+            return null;
+        }
+    }
+
+    private boolean isParsed(String fileToParse) {
         for (SystemDataSet systemData : analysisRecords.keySet()) {
             if (systemData.containsSourceFile(fileToParse)) {
-                return;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Parse a single file without adding it to any SystemDataSet, using the {@link #setCache(DataSetCache) cache} if
+     * possible. This method may be called concurrently from multiple threads.
+     * 
+     * @return the parsed data or <code>null</code> if the file was skipped
+     */
+    private DataSet parseData(String fileToParse, TimeZone timeZone) throws Exception {
+        DataSetCache cache = this.cache;
+        String options = null;
+
+        if (cache != null) {
+            options = getCacheOptions(fileToParse, timeZone);
+        }
+
+        if (options == null) {
+            return parseFile(fileToParse, timeZone);
+        }
+
+        // get the key before parsing in case the file changes
+        String key = cache.getKey(fileToParse, options);
+        DataSet data = cache.load(fileToParse, key);
+
+        if (data == null) {
+            data = parseFile(fileToParse, timeZone);
+
+            if (data != null) {
+                cache.store(fileToParse, key, data);
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * @return the parser options that affect the data parsed from the given file or <code>null</code> if the file
+     *         cannot be cached; files that require user input when parsing are not cached
+     */
+    private String getCacheOptions(String fileToParse, TimeZone timeZone) {
+        CombinedFileFilter filter = CombinedFileFilter.getInstance(false);
+        String scale = getProperty("scaleProcessesByCPUs");
+
+        if (!typeFilter.matchesAll()) {
+            // filtered data must not be loaded when the full data is needed, or vice versa
+            scale += ',' + typeFilter.toString();
+        }
+
+        // same order as parseFile()
+        if (filter.getTopasOutFileFilter().accept(fileToParse)) {
+            return "topasout," + timeZone.getID() + ',' + scale;
+        }
+        else if (filter.getNMONFileFilter().accept(fileToParse)) {
+            if (Interval.DEFAULT.equals(parseInterval)) {
+                return "nmon," + timeZone.getID() + ',' + scale;
+            }
+            else {
+                return "nmon," + timeZone.getID() + ',' + scale + ',' + parseInterval.getStart() + '-'
+                        + parseInterval.getEnd();
             }
         }
+        else if (filter.getGCFileFilter().accept(fileToParse)) {
+            return null;
+        }
+        else if (filter.getZPoolIOStatOutFileFilter().accept(fileToParse)) {
+            return null;
+        }
+        else if (filter.getIOStatFileFilter().accept(fileToParse)) {
+            return null;
+        }
+        else if (filter.getJSONFileFilter().accept(fileToParse)) {
+            return "json";
+        }
+        else if (filter.getHATJFileFilter().accept(fileToParse)) {
+            return null;
+        }
+        else if (filter.getJMeterFileFilter().accept(fileToParse)) {
+            return "jmeter";
+        }
+        else if (filter.getPerfmonFileFilter().accept(fileToParse)) {
+            return "perfmon," + scale;
+        }
+        else if (filter.getFIOFileFilter().accept(fileToParse)) {
+            return "fio," + timeZone.getID();
+        }
+        else {
+            return null;
+        }
+    }
 
+    private DataSet parseFile(String fileToParse, TimeZone timeZone) throws Exception {
+        Parsers parsers = this.parsers.get();
         DataSet data = null;
         CombinedFileFilter filter = CombinedFileFilter.getInstance(false);
 
         if (filter.getTopasOutFileFilter().accept(fileToParse)) {
-            data = topasoutParser.parse(fileToParse, timeZone, getBooleanProperty("scaleProcessesByCPUs"));
+            data = parsers.topasoutParser.parse(fileToParse, timeZone, getBooleanProperty("scaleProcessesByCPUs"),
+                    typeFilter);
         }
         else if (filter.getNMONFileFilter().accept(fileToParse)) {
-            data = nmonParser.parse(fileToParse, timeZone, getBooleanProperty("scaleProcessesByCPUs"));
+            data = parsers.nmonParser.parse(fileToParse, timeZone, getBooleanProperty("scaleProcessesByCPUs"),
+                    typeFilter, parseInterval);
         }
         else if (filter.getGCFileFilter().accept(fileToParse)) {
             // GC data does not have a hostname or JVM name so get it before parsing
-            String[] values = getDataForGCParse(fileToParse);
+            String[] values = null;
+
+            synchronized (promptLock) {
+                values = getDataForGCParse(fileToParse);
+            }
 
             if (values == null) {
                 logger.info("skipping file '{}'", fileToParse);
-                return;
+                return null;
             }
             else if (values.length < 2) {
                 logger.error("need both hostname and JVM name to parse GC data, only {} provided",
                         java.util.Arrays.toString(values));
-                return;
+                return null;
             }
             else {
-                data = gcParser.parse(fileToParse, timeZone, values[0], values[1]);
+                data = parsers.gcParser.parse(fileToParse, timeZone, values[0], values[1]);
             }
         }
         else if (filter.getZPoolIOStatOutFileFilter().accept(fileToParse)) {
-            data = zpoolParser.parse(fileToParse);
+            data = parsers.zpoolParser.parse(fileToParse);
 
-            data.setHostname(getDataForZPoolIOStatParse(fileToParse));
+            synchronized (promptLock) {
+                data.setHostname(getDataForZPoolIOStatParse(fileToParse));
+            }
         }
         else if (filter.getIOStatFileFilter().accept(fileToParse)) {
             // IOStat data may have a hostname and time zone so get it after parsing
-            data = iostatParser.parse(fileToParse, getDisplayTimeZone());
+            data = parsers.iostatParser.parse(fileToParse, getDisplayTimeZone(), typeFilter);
 
             String hostname = data.getHostname();
             boolean verifyData = "AIX".equals(((com.ibm.nmon.data.BasicDataSet) data).getMetadata("OS"));
 
             // assume AIX, which also needs a parsed date
             if (hostname.equals(IOStatParser.DEFAULT_HOSTNAME) || verifyData) {
-                Object[] values = getDataForIOStatParse(fileToParse, hostname);
+                Object[] values = null;
+
+                synchronized (promptLock) {
+                    values = getDataForIOStatParse(fileToParse, hostname);
+                }
 
                 if (values == null) {
                     logger.info("skipping file '{}'", fileToParse);
-                    return;
+                    return null;
                 }
 
                 hostname = (String) values[0];
@@ -205,19 +805,23 @@ public abstract class NMONVisualizerApp implements IntervalListener {
             }
         }
         else if (filter.getJSONFileFilter().accept(fileToParse)) {
-            data = jsonParser.parse(fileToParse);
+            data = parsers.jsonParser.parse(fileToParse);
         }
         else if (filter.getHATJFileFilter().accept(fileToParse)) {
-            data = hatJParser.parse(fileToParse);
+            data = parsers.hatJParser.parse(fileToParse);
 
             String hostname = data.getHostname();
 
             if (hostname.equals(HATJParser.DEFAULT_HOSTNAME)) {
-                Object[] values = getDataForHATJParse(fileToParse, hostname);
+                Object[] values = null;
+
+                synchronized (promptLock) {
+                    values = getDataForHATJParse(fileToParse, hostname);
+                }
 
                 if (values == null) {
                     logger.info("skipping file '{}'", fileToParse);
-                    return;
+                    return null;
                 }
 
                 hostname = (String) values[0];
@@ -225,13 +829,14 @@ public abstract class NMONVisualizerApp implements IntervalListener {
             }
         }
         else if (filter.getJMeterFileFilter().accept(fileToParse)) {
-            data = jMeterParser.parse(fileToParse);
+            data = parsers.jMeterParser.parse(fileToParse);
         }
         else if (filter.getPerfmonFileFilter().accept(fileToParse)) {
-            data = perfmonParser.parse(fileToParse, getBooleanProperty("scaleProcessesByCPUs"));
+            data = parsers.perfmonParser.parse(fileToParse, getBooleanProperty("scaleProcessesByCPUs"),
+                    typeFilter);
         }
         else if (filter.getFIOFileFilter().accept(fileToParse)) {
-            data = fioParser.parse(fileToParse, timeZone);
+            data = parsers.fioParser.parse(fileToParse, timeZone);
         }
         else {
             throw new IllegalArgumentException("cannot parse " + fileToParse + ": unknown file type");
@@ -241,6 +846,15 @@ public abstract class NMONVisualizerApp implements IntervalListener {
             throw new IllegalArgumentException(fileToParse + " does not appear to contain any data");
         }
 
+        return data;
+    }
+
+    private void addData(String fileToParse, DataSet data) {
+        // the same file may have been parsed more than once concurrently
+        if (isParsed(fileToParse)) {
+            return;
+        }
+
         // rename the host
         hostRenamer.rename(data);
 
@@ -258,14 +872,16 @@ public abstract class NMONVisualizerApp implements IntervalListener {
         if (systemData == null) {
             systemData = new SystemDataSet(data.getHostname());
 
-            AnalysisRecord record = new AnalysisRecord(systemData);
+            AnalysisRecord record = new AnalysisRecord(systemData, analysisCache);
             record.setInterval(intervalManager.getCurrentInterval());
+            record.setApproximatePercentiles(getBooleanProperty("approximatePercentiles"));
 
             analysisRecords.put(systemData, record);
         }
 
         // add the parsed data to the system data set
         systemData.addData(fileToParse, data);
+        analysisCache.invalidate(systemData);
 
         recalculateMinAndMaxSystemTime();
 
@@ -339,6 +955,7 @@ public abstract class NMONVisualizerApp implements IntervalListener {
 
     public final void removeDataSet(DataSet data) {
         if (analysisRecords.remove(data) != null) {
+            analysisCache.invalidate(data);
             recalculateMinAndMaxSystemTime();
 
             if (analysisRecords.isEmpty()) {
@@ -356,16 +973,24 @@ public abstract class NMONVisualizerApp implements IntervalListener {
 
     public final void updateDataSet(SystemDataSet data) {
         if (analysisRecords.remove(data) != null) {
-            AnalysisRecord record = new AnalysisRecord(data);
+            analysisCache.invalidate(data);
+
+            AnalysisRecord record = new AnalysisRecord(data, analysisCache);
             record.setInterval(intervalManager.getCurrentInterval());
+            record.setApproximatePercentiles(getBooleanProperty("approximatePercentiles"));
 
             analysisRecords.put(data, record);
 
             recalculateMinAndMaxSystemTime();
 
-            for (DataSetListener listener : listeners) {
-                listener.dataChanged(data);
-            }
+            fireDataChanged(data);
+        }
+    }
+
+    // like fireDataAdded(), allow subclasses to fire the event in another thread
+    protected void fireDataChanged(DataSet data) {
+        for (DataSetListener listener : listeners) {
+            listener.dataChanged(data);
         }
     }
 
@@ -377,6 +1002,7 @@ public abstract class NMONVisualizerApp implements IntervalListener {
         intervalManager.setCurrentInterval(Interval.DEFAULT);
 
         analysisRecords.clear();
+        analysisCache.clear();
 
         for (DataSetListener listener : listeners) {
             listener.dataCleared();
@@ -409,10 +1035,57 @@ public abstract class NMONVisualizerApp implements IntervalListener {
         return intervalManager;
     }
 
+    public final DataSetCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Set the cache used to store parsed data. Files that have already been parsed and have not changed will be loaded
+     * from the cache rather than being parsed again.
+     * 
+     * @param cache the cache to use or <code>null</code> to disable caching
+     */
+    public final void setCache(DataSetCache cache) {
+        this.cache = cache;
+    }
+
+    public final TypeFilter getTypeFilter() {
+        return typeFilter;
+    }
+
+    /**
+     * Set the data types to parse from NMON, Perfmon and iostat files. Data for other types is skipped. Only
+     * applications that know all the data they will use up front, like the report generator, should set this.
+     * 
+     * @param typeFilter the types to parse or <code>null</code> to parse all types
+     */
+    public final void setTypeFilter(TypeFilter typeFilter) {
+        this.typeFilter = typeFilter == null ? TypeFilter.ALL : typeFilter;
+    }
+
+    public final Interval getParseInterval() {
+        return parseInterval;
+    }
+
+    /**
+     * Set the time range to parse from NMON files. Snapshots outside the interval are skipped when possible, using an
+     * index saved next to each file. Like {@link #setTypeFilter(TypeFilter)}, this should only be set when no other
+     * data will be needed.
+     * 
+     * @param parseInterval the interval to parse or <code>null</code> to parse all snapshots
+     */
+    public final void setParseInterval(Interval parseInterval) {
+        this.parseInterval = parseInterval == null ? Interval.DEFAULT : parseInterval;
+    }
+
     public final AnalysisRecord getAnalysis(DataSet data) {
         return analysisRecords.get(data);
     }
 
+    public final AnalysisCache getAnalysisCache() {
+        return analysisCache;
+    }
+
     public final String getProperty(String name) {
         return properties.getProperty(name);
     }
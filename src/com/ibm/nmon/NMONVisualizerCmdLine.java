@@ -53,20 +53,18 @@ public final class NMONVisualizerCmdLine extends NMONVisualizerApp implements Da
             return;
         }
 
-        for (String file : toParse) {
-            System.out.print("Parsing file " + file + "... ");
-            System.out.flush();
-
-            try {
-                app.parse(file, java.util.TimeZone.getDefault());
-
-                System.out.println("Complete");
-            }
-            catch (Exception e) {
-                System.out.println("Failed parsing " + file);
-                e.printStackTrace();
+        app.parse(toParse, java.util.TimeZone.getDefault(), new ParseListener() {
+            @Override
+            public void fileParsed(String filename, String errors, Exception exception) {
+                if (exception == null) {
+                    System.out.println("Parsing file " + filename + "... " + "Complete");
+                }
+                else {
+                    System.out.println("Parsing file " + filename + "... " + "Failed parsing " + filename);
+                    exception.printStackTrace();
+                }
             }
-        }
+        });
 
         System.out.println();
 
@@ -0,0 +1,19 @@
+package com.ibm.nmon;
+
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Listener interface for {@link NMONVisualizerApp#parse(List, TimeZone, ParseListener) parsing multiple files}.
+ * Events are fired on the thread that started the parse, in the same order as the files were given.
+ */
+public interface ParseListener {
+    /**
+     * Called after a file has been parsed and its data added to the application.
+     * 
+     * @param filename the parsed file
+     * @param errors any messages logged while parsing the file or <code>null</code> if there were none
+     * @param exception the exception that stopped the file from being parsed or <code>null</code> if parsing succeeded
+     */
+    public void fileParsed(String filename, String errors, Exception exception);
+}
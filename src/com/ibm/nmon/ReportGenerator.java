@@ -3,6 +3,10 @@ package com.ibm.nmon;
 import java.util.List;
 import java.util.Map;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import java.io.IOException;
 import java.io.File;
 
@@ -34,6 +38,10 @@ import com.ibm.nmon.gui.chart.builder.ChartFormatter;
 import com.ibm.nmon.gui.chart.builder.ChartFormatterParser;
 import com.ibm.nmon.report.ReportCache;
 import com.ibm.nmon.chart.definition.BaseChartDefinition;
+import com.ibm.nmon.data.definition.DataDefinition;
+import com.ibm.nmon.data.definition.DefaultDataDefinition;
+import com.ibm.nmon.data.matcher.TypeMatcher;
+import com.ibm.nmon.parser.util.TypeFilter;
 
 import com.ibm.nmon.data.transform.name.HostRenamer;
 import com.ibm.nmon.data.transform.name.HostRenamerFactory;
@@ -80,6 +88,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
         String formatFile = "";
         String renamerFile = "";
         String intervalsFile = "";
+        String cacheDirectory = "";
 
         boolean summaryCharts = true;
         boolean dataSetCharts = true;
@@ -89,11 +98,14 @@ public final class ReportGenerator extends NMONVisualizerApp {
 
         boolean writeRawData = false;
         boolean writeChartData = false;
+        boolean downsample = false;
 
         int granularity = -1;
         int width = -1;
         int height = -1;
 
+        int threads = Runtime.getRuntime().availableProcessors();
+
         for (int i = 0; i < args.length; i++) {
             String arg = args[i];
             char c = arg.charAt(0);
@@ -236,6 +248,26 @@ public final class ReportGenerator extends NMONVisualizerApp {
                                     System.err.println("Height" + " value " + args[i] + " must be an integer");
                                 }
                             }
+                            else if ("threads".equals(param)) {
+                                ++i;
+
+                                if (i > args.length) {
+                                    System.err.println("Threads" + " must be specified for " + '-' + '-' + "threads");
+                                    return;
+                                }
+
+                                try {
+                                    threads = Integer.parseInt(args[i]);
+                                }
+                                catch (NumberFormatException e) {
+                                    System.err.println("Threads" + " value " + args[i] + " must be an integer");
+                                }
+
+                                if (threads < 1) {
+                                    System.err.println("Threads" + " value " + args[i] + " must be greater than 0");
+                                    return;
+                                }
+                            }
                             else if ("mf".equals(param)) {
                                 ++i;
 
@@ -256,12 +288,25 @@ public final class ReportGenerator extends NMONVisualizerApp {
 
                                 multiplexedTypeCharts.add(args[i]);
                             }
+                            else if ("cache".equals(param)) {
+                                ++i;
+
+                                if (i > args.length) {
+                                    System.err.println("directory must be specified for " + '-' + '-' + "cache");
+                                    return;
+                                }
+
+                                cacheDirectory = args[i];
+                            }
                             else if ("rawdata".equals(param)) {
                                 writeRawData = true;
                             }
                             else if ("chartdata".equals(param)) {
                                 writeChartData = true;
                             }
+                            else if ("downsample".equals(param)) {
+                                downsample = true;
+                            }
                             else {
                                 System.err.println("ignoring " + "unknown parameter " + '-' + '-' + param);
                             }
@@ -330,6 +375,13 @@ public final class ReportGenerator extends NMONVisualizerApp {
 
         generator.outputDirectory = outputDirectory.isDirectory() ? outputDirectory : outputDirectory.getParentFile();
         generator.writeChartData = writeChartData;
+        generator.downsample = downsample;
+        generator.chartThreads = threads;
+        generator.setProperty("parserThreads", threads);
+
+        if (!"".equals(cacheDirectory)) {
+            generator.setCache(new com.ibm.nmon.data.DataSetCache(new File(cacheDirectory)));
+        }
 
         // parse intervals
         if (!"".equals(intervalsFile)) {
@@ -355,7 +407,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
             }
         }
 
-        generator.factory.setFormatter(chartFormatter);
+        generator.chartFormatter = chartFormatter;
 
         if (!"".equals(renamerFile)) {
             try {
@@ -368,6 +420,22 @@ public final class ReportGenerator extends NMONVisualizerApp {
             }
         }
 
+        // raw data includes all types so only filter when just creating charts
+        if (createCharts && !writeRawData) {
+            generator.setTypeFilter(generator.createTypeFilter(summaryCharts, dataSetCharts));
+        }
+
+        // only parse the requested time range; other intervals need all the data
+        if ((generator.getIntervalManager().getIntervalCount() == 0)
+                && ((startTime != Interval.DEFAULT.getStart()) || (endTime != Interval.DEFAULT.getEnd()))) {
+            try {
+                generator.setParseInterval(new Interval(startTime, endTime));
+            }
+            catch (IllegalArgumentException iae) {
+                // invalid times are reported by createIntervalIfNecessary()
+            }
+        }
+
         // parse files
         generator.parse(filesToParse);
 
@@ -378,14 +446,21 @@ public final class ReportGenerator extends NMONVisualizerApp {
         System.out.println("Using granularity of " + (generator.granularityHelper.getGranularity() / 1000) + "s");
 
         if (createCharts) {
-            if (generator.getIntervalManager().getIntervalCount() != 0) {
-                // create charts for all intervals
-                for (Interval interval : generator.getIntervalManager().getIntervals()) {
-                    generator.createReport(interval, summaryCharts, dataSetCharts);
+            generator.startChartThreads();
+
+            try {
+                if (generator.getIntervalManager().getIntervalCount() != 0) {
+                    // create charts for all intervals
+                    for (Interval interval : generator.getIntervalManager().getIntervals()) {
+                        generator.createReport(interval, summaryCharts, dataSetCharts);
+                    }
+                }
+                else {
+                    generator.createReport(Interval.DEFAULT, summaryCharts, dataSetCharts);
                 }
             }
-            else {
-                generator.createReport(Interval.DEFAULT, summaryCharts, dataSetCharts);
+            finally {
+                generator.chartExecutor.shutdownNow();
             }
 
             System.out.println("Charts complete!");
@@ -426,7 +501,25 @@ public final class ReportGenerator extends NMONVisualizerApp {
 
     private final GranularityHelper granularityHelper;
 
-    private final ChartFactory factory;
+    // the builders in a ChartFactory hold state for the chart being built, so each chart thread needs its own
+    private final ThreadLocal<ChartFactory> factories = new ThreadLocal<ChartFactory>() {
+        @Override
+        protected ChartFactory initialValue() {
+            ChartFactory factory = new ChartFactory(ReportGenerator.this);
+            factory.setFormatter(chartFormatter);
+            factory.setDownsampled(downsample);
+            // charts are saved at this width, if set
+            factory.setDownsampleWidth(width);
+
+            return factory;
+        }
+    };
+
+    private ChartFormatter chartFormatter = new ChartFormatter();
+
+    private int chartThreads = 1;
+    private ExecutorService chartExecutor;
+
     private final ReportCache cache;
 
     private final List<String> customSummaryCharts;
@@ -437,6 +530,8 @@ public final class ReportGenerator extends NMONVisualizerApp {
     private File outputDirectory;
 
     private boolean writeChartData = false;
+    // reduce line charts to the output resolution
+    private boolean downsample = false;
 
     private final int width;
     private final int height;
@@ -455,7 +550,6 @@ public final class ReportGenerator extends NMONVisualizerApp {
         this.width = width;
         this.height = height;
 
-        factory = new ChartFactory(this);
         cache = new ReportCache();
 
         granularityHelper = new GranularityHelper(this);
@@ -495,10 +589,12 @@ public final class ReportGenerator extends NMONVisualizerApp {
         ParserLog log = ParserLog.getInstance();
         java.util.logging.Logger.getLogger(log.getLogger().getName()).setUseParentHandlers(false);
 
-        Map<String, String> errors = new java.util.LinkedHashMap<String, String>();
+        final Map<String, String> errors = new java.util.LinkedHashMap<String, String>();
 
         System.out.println("Parsing NMON files...");
 
+        List<String> toParse = new java.util.ArrayList<String>(filesToParse.size());
+
         for (String fileToParse : filesToParse) {
             // ignore ReportGenerator error log files from previous executions
             if (fileToParse.endsWith(".log") && fileToParse.contains("ReportGenerator")) {
@@ -510,31 +606,26 @@ public final class ReportGenerator extends NMONVisualizerApp {
                 continue;
             }
 
-            System.out.print("\t" + fileToParse + "... ");
-            System.out.flush();
-
-            log.setCurrentFilename(fileToParse);
+            toParse.add(fileToParse);
+        }
 
-            try {
-                parse(fileToParse, getDisplayTimeZone());
+        // files are parsed concurrently but reported in order
+        parse(toParse, getDisplayTimeZone(), new ParseListener() {
+            @Override
+            public void fileParsed(String filename, String parseErrors, Exception exception) {
+                System.out.print("\t" + filename + "... ");
 
-                if (log.hasData()) {
+                if (parseErrors != null) {
                     System.out.println("Complete with errors!");
+                    errors.put(filename, parseErrors);
                 }
                 else {
                     System.out.println("Complete");
                 }
-            }
-            catch (Exception e) {
-                log.getLogger().error("could not parse " + fileToParse, e);
-                System.out.println("Complete with errors!");
-                // continue parsing other files
-            }
 
-            if (log.hasData()) {
-                errors.put(log.getCurrentFilename(), log.getMessages());
+                System.out.flush();
             }
-        }
+        });
 
         System.out.println("Parsing complete!");
 
@@ -578,6 +669,42 @@ public final class ReportGenerator extends NMONVisualizerApp {
         }
     }
 
+    // only parse the types that are used by at least one chart
+    private TypeFilter createTypeFilter(boolean summaryCharts, boolean dataSetCharts) {
+        List<String> keys = new java.util.ArrayList<String>();
+
+        if (summaryCharts) {
+            keys.add(ReportCache.DEFAULT_SUMMARY_CHARTS_KEY);
+        }
+
+        if (dataSetCharts) {
+            keys.add(ReportCache.DEFAULT_DATASET_CHARTS_KEY);
+        }
+
+        keys.addAll(customSummaryCharts);
+        keys.addAll(customDataCharts);
+        keys.addAll(multiplexedFieldCharts);
+        keys.addAll(multiplexedTypeCharts);
+
+        List<TypeMatcher> matchers = new java.util.ArrayList<TypeMatcher>();
+
+        for (String key : keys) {
+            for (BaseChartDefinition chartDefinition : cache.getReport(key)) {
+                for (DataDefinition definition : chartDefinition.getData()) {
+                    if (definition instanceof DefaultDataDefinition) {
+                        matchers.add(((DefaultDataDefinition) definition).getTypeMatcher());
+                    }
+                    else {
+                        // cannot know which types other definitions use
+                        return TypeFilter.ALL;
+                    }
+                }
+            }
+        }
+
+        return TypeFilter.create(matchers);
+    }
+
     private void createIntervalIfNecessary(long startTime, long endTime) {
         if (startTime == Interval.DEFAULT.getStart()) {
             startTime = getMinSystemTime();
@@ -674,11 +801,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
             System.out.print("\t" + message + " ");
             System.out.flush();
 
-            for (BaseChartDefinition definition : report) {
-                if (saveChart(definition, dataSets, chartsDirectory)) {
-                    ++chartsCreated;
-                }
-            }
+            chartsCreated = saveCharts(report, dataSets, chartsDirectory);
 
             System.out.println(" Complete (" + chartsCreated + '/' + report.size() + ")");
         }
@@ -699,11 +822,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
             File datasetDirectory = new File(chartsDirectory, data.getHostname());
             datasetDirectory.mkdir();
 
-            for (BaseChartDefinition definition : report) {
-                if (saveChart(definition, dataSets, datasetDirectory)) {
-                    ++chartsCreated;
-                }
-            }
+            chartsCreated = saveCharts(report, dataSets, datasetDirectory);
 
             if (chartsCreated == 0) {
                 datasetDirectory.delete();
@@ -728,11 +847,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
             File datasetDirectory = new File(chartsDirectory, data.getHostname());
             datasetDirectory.mkdir();
 
-            for (BaseChartDefinition definition : report) {
-                if (saveChart(definition, dataSets, datasetDirectory)) {
-                    ++chartsCreated;
-                }
-            }
+            chartsCreated = saveCharts(report, dataSets, datasetDirectory);
 
             if (chartsCreated == 0) {
                 datasetDirectory.delete();
@@ -757,11 +872,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
             File datasetDirectory = new File(chartsDirectory, data.getHostname());
             datasetDirectory.mkdir();
 
-            for (BaseChartDefinition definition : report) {
-                if (saveChart(definition, dataSets, datasetDirectory)) {
-                    ++chartsCreated;
-                }
-            }
+            chartsCreated = saveCharts(report, dataSets, datasetDirectory);
 
             if (chartsCreated == 0) {
                 datasetDirectory.delete();
@@ -773,11 +884,112 @@ public final class ReportGenerator extends NMONVisualizerApp {
         return chartsCreated;
     }
 
-    private boolean saveChart(BaseChartDefinition definition, Iterable<? extends DataSet> dataSets,
-            File saveDirectory) {
+    private void startChartThreads() {
+        chartExecutor = java.util.concurrent.Executors.newFixedThreadPool(chartThreads,
+                new java.util.concurrent.ThreadFactory() {
+                    private int count = 0;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, ReportGenerator.class.getSimpleName() + " Chart " + ++count);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Build and save all the charts in a report on the chart threads. Each thread builds, renders, encodes and writes
+     * one chart at a time, so all of these steps run concurrently across charts. Results are processed in report order
+     * so console output is the same regardless of the number of threads.
+     *
+     * @return the number of charts created
+     */
+    private int saveCharts(List<BaseChartDefinition> report, final Iterable<? extends DataSet> dataSets,
+            final File saveDirectory) {
+        // the current interval and granularity are only changed between reports
+        final Interval interval = getIntervalManager().getCurrentInterval();
+        final int granularity = granularityHelper.getGranularity();
+
+        List<Future<ChartResult>> results = new java.util.ArrayList<Future<ChartResult>>(report.size());
+
+        for (final BaseChartDefinition definition : report) {
+            results.add(chartExecutor.submit(new Callable<ChartResult>() {
+                @Override
+                public ChartResult call() {
+                    ChartFactory factory = factories.get();
+                    factory.setInterval(interval);
+                    factory.setGranularity(granularity);
+
+                    ChartResult result = new ChartResult();
+                    result.created = saveChart(factory, definition, dataSets, saveDirectory, result.errors);
+
+                    return result;
+                }
+            }));
+        }
+
+        int chartsCreated = 0;
+
+        try {
+            for (Future<ChartResult> future : results) {
+                ChartResult result = null;
+
+                try {
+                    result = future.get();
+                }
+                catch (java.util.concurrent.ExecutionException ee) {
+                    // unexpected errors end the report, the same as when charts were created on a single thread
+                    Throwable cause = ee.getCause();
+
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    else {
+                        throw new IllegalStateException("unexpected error creating charts", cause);
+                    }
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while creating charts", ie);
+                }
+
+                for (String error : result.errors) {
+                    System.err.println(error);
+                }
+
+                if (result.created) {
+                    System.out.print('.');
+                    System.out.flush();
+
+                    ++chartsCreated;
+                }
+            }
+        }
+        finally {
+            // no-op if all charts completed
+            for (Future<ChartResult> future : results) {
+                future.cancel(true);
+            }
+        }
+
+        return chartsCreated;
+    }
+
+    private static final class ChartResult {
+        private boolean created;
+        private final List<String> errors = new java.util.ArrayList<String>(0);
+    }
+
+    // called on a chart thread; errors are not output directly so they do not interleave with other charts
+    private boolean saveChart(ChartFactory factory, BaseChartDefinition definition,
+            Iterable<? extends DataSet> dataSets, File saveDirectory, List<String> errors) {
         JFreeChart chart = factory.createChart(definition, dataSets);
 
-        if (chartHasData(chart)) {
+        if (chartHasData(chart, errors)) {
             File chartFile = new File(saveDirectory, definition.getShortName().replace(" ", "_") + ".png");
 
             try {
@@ -785,16 +997,13 @@ public final class ReportGenerator extends NMONVisualizerApp {
                         height == -1 ? definition.getHeight() : height);
             }
             catch (IOException ioe) {
-                System.err.println("cannot create chart " + chartFile.getName());
+                errors.add("cannot create chart " + chartFile.getName());
             }
 
             if (writeChartData) {
-                writeChartData(chart, definition, saveDirectory);
+                writeChartData(chart, definition, saveDirectory, errors);
             }
 
-            System.out.print('.');
-            System.out.flush();
-
             return true;
         }
         else {
@@ -879,7 +1088,8 @@ public final class ReportGenerator extends NMONVisualizerApp {
         }
     }
 
-    private void writeChartData(JFreeChart chart, BaseChartDefinition definition, File saveDirectory) {
+    private void writeChartData(JFreeChart chart, BaseChartDefinition definition, File saveDirectory,
+            List<String> errors) {
         File csvFile = new File(saveDirectory, definition.getShortName().replace(" ", "_") + ".csv");
         FileWriter writer = null;
 
@@ -895,7 +1105,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
             dataset = (DataTupleDataset) xyPlot.getDataset();
         }
         else {
-            System.err.println("unknown plot type " + plot.getClass() + " for chart " + chart.getTitle());
+            errors.add("unknown plot type " + plot.getClass() + " for chart " + chart.getTitle());
         }
 
         if (dataset != null) {
@@ -905,7 +1115,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
                 CSVWriter.write(dataset, writer);
             }
             catch (IOException ioe) {
-                System.err.println("could not output " + "chart" + " data to " + csvFile.getName());
+                errors.add("could not output " + "chart" + " data to " + csvFile.getName());
             }
             finally {
                 if (writer != null) {
@@ -944,7 +1154,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
         return toCreate;
     }
 
-    private boolean chartHasData(JFreeChart chart) {
+    private boolean chartHasData(JFreeChart chart, List<String> errors) {
         boolean hasData = false;
 
         // determine if there will really be any data to display
@@ -979,7 +1189,7 @@ public final class ReportGenerator extends NMONVisualizerApp {
             }
         }
         else {
-            System.err.println("unknown plot type " + plot.getClass() + " for chart " + chart.getTitle());
+            errors.add("unknown plot type " + plot.getClass() + " for chart " + chart.getTitle());
         }
 
         return hasData;
@@ -993,8 +1203,5 @@ public final class ReportGenerator extends NMONVisualizerApp {
         if (granularityHelper.isAutomatic()) {
             granularityHelper.recalculate();
         }
-
-        factory.setInterval(interval);
-        factory.setGranularity(granularityHelper.getGranularity());
     }
 }
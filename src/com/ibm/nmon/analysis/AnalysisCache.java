@@ -0,0 +1,250 @@
+package com.ibm.nmon.analysis;
+
+import java.util.Map;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ibm.nmon.data.DataSet;
+
+import com.ibm.nmon.interval.Interval;
+
+/**
+ * <p>
+ * Bounded, thread safe cache of the statistics calculated by {@link AnalysisRecord AnalysisRecords}. Statistics are
+ * cached by DataSet, DataType / field, Interval, granularity and percentile mode. So, unlike a single record, the cache
+ * keeps values for multiple Intervals. Changing the Interval or granularity of a record does not discard any values
+ * and switching back reuses them. Records that share a cache share all their calculations.
+ * </p>
+ *
+ * <p>
+ * The cache is split into segments, each with its own lock, so concurrent chart builds do not contend on a single
+ * lock. Each segment evicts its least recently used values once it is full.
+ * </p>
+ *
+ * <p>
+ * DataSets are compared by identity, not {@link DataSet#equals(Object) equals()}. The cache does not know when a
+ * DataSet changes, so callers that add data to an existing DataSet must call {@link #invalidate(DataSet)}.
+ * </p>
+ */
+public final class AnalysisCache {
+    public static final int DEFAULT_SIZE = 1 << 16;
+
+    private static final int SEGMENTS = 16;
+
+    static final class Key {
+        private final DataSet data;
+        private final String key;
+        private final long start;
+        private final long end;
+        private final int granularity;
+        private final boolean approximatePercentiles;
+
+        private final int hash;
+
+        Key(DataSet data, String key, Interval interval, int granularity, boolean approximatePercentiles) {
+            this.data = data;
+            this.key = key;
+            this.start = interval.getStart();
+            this.end = interval.getEnd();
+            this.granularity = granularity;
+            this.approximatePercentiles = approximatePercentiles;
+
+            int hash = System.identityHashCode(data);
+            hash = hash * 31 + key.hashCode();
+            hash = hash * 31 + interval.hashCode();
+            hash = hash * 31 + granularity;
+            hash = hash * 31 + (approximatePercentiles ? 1 : 0);
+
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            else if (obj instanceof Key) {
+                Key k = (Key) obj;
+
+                return (this.data == k.data) && (this.start == k.start) && (this.end == k.end)
+                        && (this.granularity == k.granularity)
+                        && (this.approximatePercentiles == k.approximatePercentiles) && this.key.equals(k.key);
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+    private final class Segment extends java.util.LinkedHashMap<Key, AnalysisRecord.AnalysisHolder> {
+        private static final long serialVersionUID = 5367823624181306422L;
+
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            // access order => LRU
+            super(16, .75f, true);
+
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, AnalysisRecord.AnalysisHolder> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+    private final int maxSize;
+
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // incremented on every invalidation so that values calculated from old data are not cached
+    private final AtomicInteger version = new AtomicInteger();
+
+    public AnalysisCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    public AnalysisCache(int maxSize) {
+        if (maxSize < SEGMENTS) {
+            throw new IllegalArgumentException("size must be at least " + SEGMENTS);
+        }
+
+        this.maxSize = maxSize;
+
+        segments = new Segment[SEGMENTS];
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxSize / SEGMENTS);
+        }
+    }
+
+    AnalysisRecord.AnalysisHolder get(Key key) {
+        AnalysisRecord.AnalysisHolder holder = null;
+        Segment segment = segmentFor(key);
+
+        synchronized (segment) {
+            holder = segment.get(key);
+        }
+
+        if (holder == null) {
+            misses.increment();
+        }
+        else {
+            hits.increment();
+        }
+
+        return holder;
+    }
+
+    // like get() but does not count as a hit or miss or change the eviction order
+    boolean contains(Key key) {
+        Segment segment = segmentFor(key);
+
+        synchronized (segment) {
+            return segment.containsKey(key);
+        }
+    }
+
+    int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Cache the value unless the cache has been invalidated since <code>version</code> was retrieved.
+     */
+    void put(Key key, AnalysisRecord.AnalysisHolder holder, int version) {
+        Segment segment = segmentFor(key);
+
+        synchronized (segment) {
+            if (version == this.version.get()) {
+                segment.put(key, holder);
+            }
+        }
+    }
+
+    /**
+     * Remove all the values for the given DataSet. This must be called when the data in a DataSet changes.
+     */
+    public void invalidate(DataSet data) {
+        version.incrementAndGet();
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                java.util.Iterator<Key> i = segment.keySet().iterator();
+
+                while (i.hasNext()) {
+                    if (i.next().data == data) {
+                        i.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        version.incrementAndGet();
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment segmentFor(Key key) {
+        int hash = key.hashCode();
+
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return "size: " + size() + ", hits: " + getHitCount() + ", misses: " + getMissCount() + ", evictions: "
+                + getEvictionCount();
+    }
+}
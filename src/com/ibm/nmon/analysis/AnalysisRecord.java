@@ -2,14 +2,12 @@ package com.ibm.nmon.analysis;
 
 import org.slf4j.Logger;
 
-import java.lang.ref.SoftReference;
-
-import java.util.Map;
 import java.util.List;
 
 import com.ibm.nmon.data.DataSet;
 import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
+import com.ibm.nmon.data.RangeIndex;
 
 import com.ibm.nmon.interval.Interval;
 import com.ibm.nmon.util.TimeFormatCache;
@@ -24,8 +22,23 @@ import com.ibm.nmon.util.TimeFormatCache;
  * <p>
  * This class caches statistics for measurements during a given Interval rather than recalculating from the raw data
  * each time. Calculations are done lazily, when a statistic is requested, not when a measurement is added to the
- * record. Data is cached as SoftReference objects, so while this class could potentially use a large amount of memory,
- * it should not cause OutOfMemoryExceptions. </p
+ * record. Values are stored in an {@link AnalysisCache}, which is bounded, so this class should not cause
+ * OutOfMemoryExceptions. The cache also keeps values for other Intervals and granularities; changing either does not
+ * require recalculating values that were previously requested. Records can share a cache.
+ * </p
+ * 
+ * <p>
+ * All statistics except percentiles are calculated in a single pass over the data. By default, percentiles are exact;
+ * {@link #setApproximatePercentiles(boolean) approximate percentiles} use a {@link QuantileSketch} instead, which
+ * requires less memory and time for large DataSets.
+ * </p>
+ * 
+ * <p>
+ * Records can also be {@link #setRangeIndexed(boolean) range indexed}. Then, the count, sum, average, weighted average,
+ * minimum, maximum and standard deviation come from the DataSet's {@link RangeIndex} rather than a scan of the data.
+ * This is much faster when many Intervals are analyzed for the same data. Other statistics are still calculated from
+ * the data.
+ * </p>
  */
 public final class AnalysisRecord {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(AnalysisRecord.class);
@@ -33,7 +46,7 @@ public final class AnalysisRecord {
     // struct for holding analyzed data
     // data is analyzed lazily, but everything is calculated on the first call, not for each get
     // method
-    private static final class AnalysisHolder {
+    static final class AnalysisHolder {
         int count = 0;
         double sum = 0;
 
@@ -51,62 +64,213 @@ public final class AnalysisRecord {
         double standardDeviation = Double.NaN;
     }
 
+    // running statistics for a single field
+    // all the fields of a DataType can be analyzed in the same pass over the data
+    private static final class FieldAnalyzer {
+        final int fieldIndex;
+        final AnalysisHolder holder = new AnalysisHolder();
+
+        // either keep all the values for exact percentiles or just a sketch of them
+        final double[] allValues;
+        final QuantileSketch sketch;
+
+        // running mean and sum of squared differences from the mean (Welford's algorithm)
+        double mean = 0;
+        double m2 = 0;
+        double sumSqs = 0;
+
+        long lastGranularityTime;
+        int countSinceLastGranularity = 0;
+        double granularityTotal = 0;
+
+        FieldAnalyzer(int fieldIndex, int maxCount, boolean approximatePercentiles, long startTime) {
+            this.fieldIndex = fieldIndex;
+
+            if (approximatePercentiles) {
+                allValues = null;
+                sketch = new QuantileSketch();
+            }
+            else {
+                allValues = new double[maxCount];
+                sketch = null;
+            }
+
+            lastGranularityTime = startTime;
+        }
+
+        void add(long time, double value, int granularity) {
+            holder.sum += value;
+            sumSqs += value * value;
+
+            if (value > holder.maximum) {
+                holder.maximum = value;
+            }
+
+            if (value < holder.minimum) {
+                holder.minimum = value;
+            }
+
+            if (sketch == null) {
+                allValues[holder.count] = value;
+            }
+            else {
+                sketch.add(value);
+            }
+
+            ++holder.count;
+
+            double delta = value - mean;
+            mean += delta / holder.count;
+            m2 += delta * (value - mean);
+
+            ++countSinceLastGranularity;
+            granularityTotal += value;
+
+            if ((time - lastGranularityTime) >= granularity) {
+                double peakAverage = granularityTotal / countSinceLastGranularity;
+
+                if (peakAverage > holder.granularityMaximum) {
+                    holder.granularityMaximum = peakAverage;
+                }
+
+                countSinceLastGranularity = 0;
+                granularityTotal = 0;
+
+                lastGranularityTime = time;
+            }
+        }
+
+        AnalysisHolder finish() {
+            if (holder.count > 0) {
+                holder.average = holder.sum / holder.count;
+
+                if (sketch == null) {
+                    holder.median = calculatePercentile(.5, allValues, holder.count);
+                    holder.percentile95 = calculatePercentile(.95, allValues, holder.count);
+                    holder.percentile99 = calculatePercentile(.99, allValues, holder.count);
+                }
+                else {
+                    holder.median = sketch.getQuantile(.5);
+                    holder.percentile95 = sketch.getQuantile(.95);
+                    holder.percentile99 = sketch.getQuantile(.99);
+                }
+
+                holder.weightedAverage = sumSqs / holder.sum;
+                holder.standardDeviation = Math.sqrt(m2 / holder.count);
+
+                return holder;
+            }
+            else {
+                // file has data, but not for the given interval
+                return createEmptyHolder();
+            }
+        }
+    }
+
+    // limit the number of values held for exact percentiles when analyzing many fields in a single pass
+    private static final int MAX_VALUES_PER_PASS = 1 << 22;
+
+    // immutable so analysis always uses a consistent set of values, even if the settings change concurrently
+    private static final class Settings {
+        final Interval interval;
+        final int granularity;
+        final boolean approximatePercentiles;
+
+        Settings(Interval interval, int granularity, boolean approximatePercentiles) {
+            this.interval = interval;
+            this.granularity = granularity;
+            this.approximatePercentiles = approximatePercentiles;
+        }
+    }
+
     private final DataSet data;
 
-    // associate DataType keys with the set of values for this record
-    private final Map<String, SoftReference<AnalysisHolder>> values = new java.util.HashMap<String, SoftReference<AnalysisHolder>>();
+    // thread safe since charts may be built on multiple threads; see ReportGenerator
+    private final AnalysisCache cache;
 
-    private Interval interval;
+    private volatile Settings settings = new Settings(Interval.DEFAULT, 60000, false);
 
-    private int granularity = 60000;
+    private volatile boolean rangeIndexed = false;
 
     public AnalysisRecord(DataSet data) {
+        this(data, new AnalysisCache());
+    }
+
+    public AnalysisRecord(DataSet data, AnalysisCache cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("cache cannot be null");
+        }
+
         this.data = data;
-        this.interval = Interval.DEFAULT;
+        this.cache = cache;
     }
 
     public DataSet getDataSet() {
         return data;
     }
 
+    public AnalysisCache getCache() {
+        return cache;
+    }
+
     public Interval getInterval() {
-        return interval;
+        return settings.interval;
     }
 
-    public void setInterval(Interval interval) {
-        if (!this.interval.equals(interval)) {
-            this.interval = interval;
+    public synchronized void setInterval(Interval interval) {
+        settings = new Settings(interval, settings.granularity, settings.approximatePercentiles);
+    }
 
-            values.clear();
-        }
+    public int getGranularity() {
+        return settings.granularity;
     }
 
-    public void setGranularity(int granularity) {
+    public synchronized void setGranularity(int granularity) {
         if (granularity < 1) {
             throw new IllegalArgumentException("granularity must be greater than 0");
         }
 
-        if (granularity != this.granularity) {
-            this.granularity = granularity;
+        settings = new Settings(settings.interval, granularity, settings.approximatePercentiles);
+    }
 
-            values.clear();
-        }
+    public boolean isApproximatePercentiles() {
+        return settings.approximatePercentiles;
+    }
+
+    public synchronized void setApproximatePercentiles(boolean approximatePercentiles) {
+        settings = new Settings(settings.interval, settings.granularity, approximatePercentiles);
+    }
+
+    public boolean isRangeIndexed() {
+        return rangeIndexed;
+    }
+
+    public void setRangeIndexed(boolean rangeIndexed) {
+        this.rangeIndexed = rangeIndexed;
     }
 
     public double getAverage(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).average;
+        RangeIndex.Summary summary = getIndexedSummary(type, fieldName);
+
+        return summary == null ? analyzeIfNecessary(type, fieldName).average : summary.getAverage();
     }
 
     public double getWeightedAverage(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).weightedAverage;
+        RangeIndex.Summary summary = getIndexedSummary(type, fieldName);
+
+        return summary == null ? analyzeIfNecessary(type, fieldName).weightedAverage : summary.getWeightedAverage();
     }
 
     public double getMinimum(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).minimum;
+        RangeIndex.Summary summary = getIndexedSummary(type, fieldName);
+
+        return summary == null ? analyzeIfNecessary(type, fieldName).minimum : summary.getMinimum();
     }
 
     public double getMaximum(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).maximum;
+        RangeIndex.Summary summary = getIndexedSummary(type, fieldName);
+
+        return summary == null ? analyzeIfNecessary(type, fieldName).maximum : summary.getMaximum();
     }
 
     public double getGranularityMaximum(DataType type, String fieldName) {
@@ -126,154 +290,227 @@ public final class AnalysisRecord {
     }
 
     public double getStandardDeviation(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).standardDeviation;
+        RangeIndex.Summary summary = getIndexedSummary(type, fieldName);
+
+        return summary == null ? analyzeIfNecessary(type, fieldName).standardDeviation
+                : summary.getStandardDeviation();
     }
 
     public double getSum(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).sum;
+        RangeIndex.Summary summary = getIndexedSummary(type, fieldName);
+
+        return summary == null ? analyzeIfNecessary(type, fieldName).sum : summary.getSum();
     }
 
     public int getCount(DataType type, String fieldName) {
-        return analyzeIfNecessary(type, fieldName).count;
+        RangeIndex.Summary summary = getIndexedSummary(type, fieldName);
+
+        return summary == null ? analyzeIfNecessary(type, fieldName).count : summary.getCount();
     }
 
-    private AnalysisHolder analyzeIfNecessary(DataType type, String fieldName) {
+    /**
+     * @return <code>true</code> if the statistics for the given field are available without reading any data
+     */
+    public boolean isAnalyzed(DataType type, String fieldName) {
+        validate(type, fieldName);
+
+        return cache.contains(createKey(type, fieldName, settings));
+    }
+
+    /**
+     * Analyze the given fields of a DataType, reading the data once for all the fields rather than once per field.
+     * Fields that have already been analyzed are skipped. This method can be called from any thread; the statistics
+     * are then available from the get methods without any further calculation.
+     */
+    public void analyze(DataType type, java.util.Collection<String> fieldNames) {
         if (type == null) {
             throw new IllegalArgumentException("cannot analyze null " + "type");
         }
 
-        if ((fieldName == null) || "".equals(fieldName)) {
-            throw new IllegalArgumentException("cannot analyze null " + "field");
+        Settings settings = this.settings;
+        int version = cache.getVersion();
+
+        List<String> toAnalyze = new java.util.ArrayList<String>(fieldNames.size());
+
+        for (String fieldName : fieldNames) {
+            validate(type, fieldName);
+
+            if (cache.get(createKey(type, fieldName, settings)) == null) {
+                toAnalyze.add(fieldName);
+            }
         }
 
-        String key = type.getKey(fieldName);
+        if (toAnalyze.isEmpty()) {
+            return;
+        }
 
-        SoftReference<AnalysisHolder> holderRef = values.get(key);
-        AnalysisHolder holder = null;
+        // for exact percentiles, all the values for every field are held until the pass completes
+        // so split very wide types into multiple passes
+        int fieldsPerPass = toAnalyze.size();
 
-        if (holderRef != null) {
-            holder = holderRef.get();
+        if (!settings.approximatePercentiles) {
+            fieldsPerPass = Math.max(1, MAX_VALUES_PER_PASS / Math.max(1, data.getRecordCount()));
+        }
 
-            if (holder != null) {
-                return holder;
+        for (int i = 0; i < toAnalyze.size(); i += fieldsPerPass) {
+            List<String> pass = toAnalyze.subList(i, Math.min(i + fieldsPerPass, toAnalyze.size()));
+            AnalysisHolder[] holders = analyze(type, pass, settings.interval, settings.granularity,
+                    settings.approximatePercentiles);
+
+            // only cache the holders once they are complete so other threads never see partial values
+            for (int j = 0; j < holders.length; j++) {
+                cache.put(createKey(type, pass.get(j), settings), holders[j], version);
             }
-            // else valid SoftReference but the actual holder has been GC'ed so recreate it
         }
+    }
 
-        holder = new AnalysisHolder();
-        values.put(key, new SoftReference<AnalysisHolder>(holder));
+    // null if this record is not indexed or the DataSet does not have the field
+    // in the latter case, analyzeIfNecessary() will return the expected NaN values
+    private RangeIndex.Summary getIndexedSummary(DataType type, String fieldName) {
+        if (!rangeIndexed) {
+            return null;
+        }
 
-        long startT = System.nanoTime();
+        validate(type, fieldName);
 
         DataType typeToAnalyze = data.getType(type.getId());
 
-        if ((typeToAnalyze != null) && typeToAnalyze.hasField(fieldName)) {
-            // depending on the Interval, all DataRecords may not be processed, but assume
-            // over-allocating here is faster than forcing some number of array resizes
-            List<Double> allValues = new java.util.ArrayList<Double>(data.getRecordCount());
+        if ((typeToAnalyze == null) || !typeToAnalyze.hasField(fieldName)) {
+            return null;
+        }
 
-            long lastGranularityTime = Math.max(interval.getStart(), data.getStartTime());
-            int countSinceLastGranularity = 0;
-            double granularityTotal = 0;
+        Interval interval = settings.interval;
 
-            boolean isProcess = type.getClass() == com.ibm.nmon.data.ProcessDataType.class;
+        return data.getRangeIndex().getSummary(typeToAnalyze, typeToAnalyze.getFieldIndex(fieldName),
+                interval.getStart(), interval.getEnd());
+    }
 
-            for (DataRecord dataRecord : data.getRecords(interval)) {
-                double value = Double.NaN;
+    private AnalysisHolder analyzeIfNecessary(DataType type, String fieldName) {
+        validate(type, fieldName);
 
-                // for processes, missing values are 0 since NMON does not output data for processes
-                // if there is no activity
-                if (isProcess) {
-                    if (dataRecord.hasData(typeToAnalyze)) {
-                        value = dataRecord.getData(typeToAnalyze, fieldName);
-                    }
+        Settings settings = this.settings;
+        int version = cache.getVersion();
 
-                    if (Double.isNaN(value)) {
-                        value = 0;
-                    }
-                }
-                else { // for other types, assume missing values really are missing
-                    if (dataRecord.hasData(typeToAnalyze)) {
-                        value = dataRecord.getData(typeToAnalyze, fieldName);
-                    }
+        AnalysisCache.Key key = createKey(type, fieldName, settings);
+        AnalysisHolder holder = cache.get(key);
 
-                    if (Double.isNaN(value)) {
-                        continue;
-                    }
-                }
+        if (holder == null) {
+            holder = analyze(type, java.util.Collections.singletonList(fieldName), settings.interval,
+                    settings.granularity, settings.approximatePercentiles)[0];
 
-                holder.sum += value;
+            cache.put(key, holder, version);
+        }
 
-                if (value > holder.maximum) {
-                    holder.maximum = value;
-                }
+        return holder;
+    }
 
-                if (value < holder.minimum) {
-                    holder.minimum = value;
-                }
+    private AnalysisHolder[] analyze(DataType type, List<String> fieldNames, Interval interval, int granularity,
+            boolean approximatePercentiles) {
+        long startT = System.nanoTime();
 
-                allValues.add(value);
+        AnalysisHolder[] holders = new AnalysisHolder[fieldNames.size()];
 
-                ++countSinceLastGranularity;
-                granularityTotal += value;
+        DataType typeToAnalyze = data.getType(type.getId());
 
-                if ((dataRecord.getTime() - lastGranularityTime) >= granularity) {
-                    double peakAverage = granularityTotal / countSinceLastGranularity;
+        if (typeToAnalyze != null) {
+            FieldAnalyzer[] analyzers = new FieldAnalyzer[fieldNames.size()];
+            int analyzerCount = 0;
 
-                    if (peakAverage > holder.granularityMaximum) {
-                        holder.granularityMaximum = peakAverage;
-                    }
+            // depending on the Interval, all DataRecords may not be processed, but assume
+            // over-allocating here is faster than forcing some number of array resizes
+            int maxCount = approximatePercentiles ? 0 : data.getRecordCount();
+            long startTime = Math.max(interval.getStart(), data.getStartTime());
 
-                    countSinceLastGranularity = 0;
-                    granularityTotal = 0;
+            for (int i = 0; i < holders.length; i++) {
+                String fieldName = fieldNames.get(i);
 
-                    lastGranularityTime = dataRecord.getTime();
+                if (typeToAnalyze.hasField(fieldName)) {
+                    analyzers[analyzerCount++] = new FieldAnalyzer(typeToAnalyze.getFieldIndex(fieldName), maxCount,
+                            approximatePercentiles, startTime);
                 }
             }
 
-            if (allValues.size() > 0) {
-                holder.count = allValues.size();
-                holder.average = holder.sum / holder.count;
+            if (analyzerCount > 0) {
+                boolean isProcess = type.getClass() == com.ibm.nmon.data.ProcessDataType.class;
 
-                java.util.Collections.sort(allValues);
+                for (DataRecord dataRecord : data.getRecords(interval)) {
+                    double[] recordData = null;
 
-                holder.median = calculatePercentile(.5, allValues);
-                holder.percentile95 = calculatePercentile(.95, allValues);
-                holder.percentile99 = calculatePercentile(.99, allValues);
+                    if (dataRecord.hasData(typeToAnalyze)) {
+                        recordData = dataRecord.getData(typeToAnalyze);
+                    }
 
-                double sumSqs = 0;
-                double sumSqDiffs = 0;
+                    for (int i = 0; i < analyzerCount; i++) {
+                        FieldAnalyzer analyzer = analyzers[i];
+                        double value = recordData == null ? Double.NaN : recordData[analyzer.fieldIndex];
+
+                        if (Double.isNaN(value)) {
+                            // for processes, missing values are 0 since NMON does not output data for processes
+                            // if there is no activity
+                            if (isProcess) {
+                                value = 0;
+                            }
+                            else { // for other types, assume missing values really are missing
+                                continue;
+                            }
+                        }
+
+                        analyzer.add(dataRecord.getTime(), value, granularity);
+                    }
+                }
 
-                for (double value : allValues) {
-                    sumSqs += value * value;
-                    sumSqDiffs += Math.pow(value - holder.average, 2);
+                for (int i = 0, n = 0; i < holders.length; i++) {
+                    if (typeToAnalyze.hasField(fieldNames.get(i))) {
+                        holders[i] = analyzers[n++].finish();
+                    }
                 }
+            }
+        }
 
-                holder.weightedAverage = sumSqs / holder.sum;
-                holder.standardDeviation = Math.sqrt(sumSqDiffs / holder.count);
+        for (int i = 0; i < holders.length; i++) {
+            if (holders[i] == null) {
+                // typeToAnalyze is null or type does not have the field
+                // just return a holder full of NaNs
+                holders[i] = createEmptyHolder();
             }
-            else {
-                // file has data, but not for the given interval
-                // set all values to NaN
-                holder.maximum = Double.NaN;
-                holder.minimum = Double.NaN;
+        }
 
-                holder.granularityMaximum = Double.NaN;
+        if (LOGGER.isDebugEnabled()) {
+            if (fieldNames.size() == 1) {
+                LOGGER.debug("{}: {}-{} analyzed for {} in {}ms", data, type, fieldNames.get(0),
+                        TimeFormatCache.formatInterval(interval), (System.nanoTime() - startT) / 1000000.0d);
+            }
+            else {
+                LOGGER.debug("{}: {} fields of {} analyzed for {} in {}ms", data, fieldNames.size(), type,
+                        TimeFormatCache.formatInterval(interval), (System.nanoTime() - startT) / 1000000.0d);
             }
         }
-        else {
-            // typeToAnalyze is null or type does not have the field
-            // just return a holder full of NaNs
-            holder.maximum = Double.NaN;
-            holder.minimum = Double.NaN;
 
-            holder.granularityMaximum = Double.NaN;
+        return holders;
+    }
+
+    private AnalysisCache.Key createKey(DataType type, String fieldName, Settings settings) {
+        return new AnalysisCache.Key(data, type.getKey(fieldName), settings.interval, settings.granularity,
+                settings.approximatePercentiles);
+    }
+
+    private static void validate(DataType type, String fieldName) {
+        if (type == null) {
+            throw new IllegalArgumentException("cannot analyze null " + "type");
         }
 
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("{}: {}-{} analyzed for {} in {}ms", data, type, fieldName,
-                    TimeFormatCache.formatInterval(interval), (System.nanoTime() - startT) / 1000000.0d);
+        if ((fieldName == null) || "".equals(fieldName)) {
+            throw new IllegalArgumentException("cannot analyze null " + "field");
         }
+    }
+
+    private static AnalysisHolder createEmptyHolder() {
+        AnalysisHolder holder = new AnalysisHolder();
+
+        holder.maximum = Double.NaN;
+        holder.minimum = Double.NaN;
+
+        holder.granularityMaximum = Double.NaN;
 
         return holder;
     }
@@ -289,4 +526,84 @@ public final class AnalysisRecord {
             return allValues.get(idx);
         }
     }
+
+    /**
+     * Same calculation as {@link #calculatePercentile(double, List)} but using selection rather than sorting. Note that
+     * the array is reordered.
+     */
+    static double calculatePercentile(double percentile, double[] allValues, int size) {
+        double n = size * percentile;
+        int idx = (int) n;
+
+        if ((n - idx) == 0) {
+            double upper = select(allValues, size, idx);
+
+            // after select(), all the values before idx are less than or equal to the selected value
+            double lower = allValues[0];
+
+            for (int i = 1; i < idx; i++) {
+                if (allValues[i] > lower) {
+                    lower = allValues[i];
+                }
+            }
+
+            return (upper + lower) / 2;
+        }
+        else {
+            return select(allValues, size, idx);
+        }
+    }
+
+    // quickselect with a 3-way partition since process data contains many duplicate zeros
+    private static double select(double[] values, int size, int k) {
+        int left = 0;
+        int right = size - 1;
+
+        while (left < right) {
+            int mid = (left + right) >>> 1;
+            double pivot = medianOf3(values[left], values[mid], values[right]);
+
+            // values[left, lt) < pivot, values[lt, i) == pivot, values(gt, right] > pivot
+            int lt = left;
+            int gt = right;
+            int i = left;
+
+            while (i <= gt) {
+                double value = values[i];
+
+                if (value < pivot) {
+                    values[i++] = values[lt];
+                    values[lt++] = value;
+                }
+                else if (value > pivot) {
+                    values[i] = values[gt];
+                    values[gt--] = value;
+                }
+                else {
+                    ++i;
+                }
+            }
+
+            if (k < lt) {
+                right = lt - 1;
+            }
+            else if (k > gt) {
+                left = gt + 1;
+            }
+            else {
+                return pivot;
+            }
+        }
+
+        return values[k];
+    }
+
+    private static double medianOf3(double a, double b, double c) {
+        if (a < b) {
+            return b < c ? b : (a < c ? c : a);
+        }
+        else {
+            return a < c ? a : (b < c ? c : b);
+        }
+    }
 }
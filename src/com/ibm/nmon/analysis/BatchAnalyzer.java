@@ -0,0 +1,176 @@
+package com.ibm.nmon.analysis;
+
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.Lock;
+
+import com.ibm.nmon.data.DataSet;
+import com.ibm.nmon.data.DataType;
+
+/**
+ * <p>
+ * Analyzes every measurement in an {@link AnalysisSet} for multiple {@link AnalysisRecord AnalysisRecords} in the
+ * background. Each record / DataType combination is a separate task run in parallel on a fork join pool. All the
+ * fields of a type are analyzed in a single pass over the data; see {@link AnalysisRecord#analyze(DataType,
+ * java.util.Collection) AnalysisRecord.analyze()}.
+ * </p>
+ *
+ * <p>
+ * The {@link Listener} is called as each task completes, so callers can display results progressively. Note that
+ * listeners are called on the pool's threads, not the thread that started the analysis.
+ * </p>
+ *
+ * <p>
+ * A task that fails does not stop the other tasks. Failures are logged and the first one is passed to the listener
+ * when the batch completes.
+ * </p>
+ */
+public final class BatchAnalyzer {
+    private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(BatchAnalyzer.class);
+
+    // shared by all analysis
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+            new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public synchronized ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName(BatchAnalyzer.class.getSimpleName() + " " + ++count);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, null, false);
+
+    public interface Listener {
+        /**
+         * Called when all the fields of the given type have been analyzed for the record.
+         */
+        public void analyzed(AnalysisRecord record, DataType type);
+
+        /**
+         * Called once all the records have been analyzed, whether or not the analysis succeeded. Not called if the
+         * analysis is cancelled.
+         *
+         * @param error the first exception thrown while analyzing any record or <code>null</code> if there were none
+         */
+        public void analysisComplete(RuntimeException error);
+    }
+
+    /**
+     * Analyze all the measurements in the set for each record. The set is read before this method returns, so it
+     * can be safely modified while the analysis is running.
+     *
+     * @return a Future that completes when all the records have been analyzed; cancelling it stops any analysis that
+     *         has not started
+     */
+    public static Future<?> analyze(Iterable<AnalysisRecord> records, AnalysisSet analysisSet,
+            final Listener listener) {
+        // group the fields by type id so each type is only read once per record
+        // all DataSets share the same type ids, so the same DataType can be used for every record
+        Map<String, DataType> types = new java.util.LinkedHashMap<String, DataType>();
+        final Map<String, List<String>> fields = new java.util.HashMap<String, List<String>>();
+
+        for (String key : analysisSet.getKeys()) {
+            DataType type = analysisSet.getType(key);
+            List<String> typeFields = fields.get(type.getId());
+
+            if (typeFields == null) {
+                typeFields = new java.util.ArrayList<String>();
+
+                types.put(type.getId(), type);
+                fields.put(type.getId(), typeFields);
+            }
+
+            typeFields.add(analysisSet.getField(key));
+        }
+
+        final Batch batch = new Batch(listener);
+
+        for (final AnalysisRecord record : records) {
+            for (final DataType type : types.values()) {
+                batch.tasks.add(ForkJoinTask.adapt(new Runnable() {
+                    @Override
+                    public void run() {
+                        // cancelling a ForkJoinTask does not cancel the tasks it has already forked
+                        if (batch.isCancelled()) {
+                            return;
+                        }
+
+                        // do not read the data while followed files are being updated
+                        Lock lock = DataSet.getUpdateLock().readLock();
+                        lock.lock();
+
+                        try {
+                            record.analyze(type, fields.get(type.getId()));
+                        }
+                        catch (RuntimeException re) {
+                            LOGGER.error("could not analyze " + type + " for " + record.getDataSet(), re);
+                            batch.error.compareAndSet(null, re);
+                            return;
+                        }
+                        finally {
+                            lock.unlock();
+                        }
+
+                        if (listener != null) {
+                            listener.analyzed(record, type);
+                        }
+                    }
+                }));
+            }
+        }
+
+        POOL.execute(batch);
+
+        return batch;
+    }
+
+    private static final class Batch extends RecursiveAction {
+        private static final long serialVersionUID = -3419835546813249210L;
+
+        private final List<ForkJoinTask<?>> tasks = new java.util.ArrayList<ForkJoinTask<?>>();
+        private final Listener listener;
+
+        private final java.util.concurrent.atomic.AtomicReference<RuntimeException> error =
+                new java.util.concurrent.atomic.AtomicReference<RuntimeException>();
+
+        Batch(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            long start = System.nanoTime();
+
+            try {
+                invokeAll(tasks);
+            }
+            catch (RuntimeException re) {
+                // tasks catch their own analysis errors, so this is from a listener
+                LOGGER.error("could not analyze data", re);
+                error.compareAndSet(null, re);
+            }
+            finally {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("{} analysis tasks completed in {}ms", tasks.size(),
+                            (System.nanoTime() - start) / 1000000.0d);
+                }
+
+                if ((listener != null) && !isCancelled()) {
+                    listener.analysisComplete(error.get());
+                }
+            }
+        }
+    }
+
+    private BatchAnalyzer() {}
+}
@@ -0,0 +1,253 @@
+package com.ibm.nmon.analysis;
+
+/**
+ * <p>
+ * Fixed size, mergeable sketch for approximating quantiles. This is a simplified version of the KLL sketch. Values are
+ * added to a buffer at level 0; when a level is full it is sorted and every other value is promoted to the next level,
+ * where each value represents twice as many of the original values. Lower levels have smaller capacities than upper
+ * levels, so the total memory used grows with the logarithm of the number of values added.
+ * </p>
+ *
+ * <p>
+ * Unlike the original algorithm, the choice of which half of a level to promote alternates rather than being random so
+ * that repeated runs over the same data always give the same results.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ */
+public final class QuantileSketch {
+    // capacity of lower levels relative to the level above
+    private static final double CAPACITY_RATIO = 2d / 3d;
+
+    private final int k;
+
+    private double[][] levels;
+    private int[] sizes;
+    private int levelCount;
+
+    private long count;
+
+    private double minimum = Double.NaN;
+    private double maximum = Double.NaN;
+
+    // bit per level, flipped on each compaction
+    private long promoteOdd = 0;
+
+    public QuantileSketch() {
+        this(200);
+    }
+
+    /**
+     * @param k the capacity of the top level; larger values are more accurate but use more memory
+     */
+    public QuantileSketch(int k) {
+        if (k < 8) {
+            throw new IllegalArgumentException("k must be at least 8");
+        }
+
+        this.k = k;
+
+        levels = new double[4][];
+        sizes = new int[4];
+
+        levels[0] = new double[k];
+        levelCount = 1;
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+
+        append(0, value);
+
+        if (count++ == 0) {
+            minimum = value;
+            maximum = value;
+        }
+        else {
+            if (value < minimum) {
+                minimum = value;
+            }
+
+            if (value > maximum) {
+                maximum = value;
+            }
+        }
+
+        if (sizes[0] >= capacity(0)) {
+            compress();
+        }
+    }
+
+    /**
+     * Add all the values from another sketch into this one. The other sketch is not modified.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+
+        for (int level = 0; level < other.levelCount; level++) {
+            while (level >= levelCount) {
+                addLevel();
+            }
+
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+
+        if (count == 0) {
+            minimum = other.minimum;
+            maximum = other.maximum;
+        }
+        else {
+            minimum = Math.min(minimum, other.minimum);
+            maximum = Math.max(maximum, other.maximum);
+        }
+
+        count += other.count;
+
+        compress();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMinimum() {
+        return minimum;
+    }
+
+    public double getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * @param quantile a value between 0 and 1
+     * @return an estimate of the value at the given quantile or <code>NaN</code> if no values have been added
+     */
+    public double getQuantile(double quantile) {
+        if ((quantile < 0) || (quantile > 1)) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1");
+        }
+
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        // walk all the levels in sorted order, accumulating the weight of each value
+        double[][] sorted = new double[levelCount][];
+        int[] positions = new int[levelCount];
+
+        for (int level = 0; level < levelCount; level++) {
+            sorted[level] = java.util.Arrays.copyOf(levels[level], sizes[level]);
+            java.util.Arrays.sort(sorted[level]);
+        }
+
+        // same index as the exact calculation, i.e. the (count * quantile)th smallest value
+        long rank = (long) (count * quantile);
+        long weight = 0;
+
+        while (true) {
+            int minLevel = -1;
+
+            for (int level = 0; level < levelCount; level++) {
+                if (positions[level] < sorted[level].length) {
+                    if ((minLevel == -1)
+                            || (sorted[level][positions[level]] < sorted[minLevel][positions[minLevel]])) {
+                        minLevel = level;
+                    }
+                }
+            }
+
+            if (minLevel == -1) {
+                return maximum;
+            }
+
+            double value = sorted[minLevel][positions[minLevel]++];
+            weight += 1L << minLevel;
+
+            if (weight > rank) {
+                return value;
+            }
+        }
+    }
+
+    private int capacity(int level) {
+        int depth = levelCount - 1 - level;
+
+        return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+    }
+
+    private void append(int level, double value) {
+        double[] buffer = levels[level];
+
+        if (sizes[level] == buffer.length) {
+            buffer = levels[level] = java.util.Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        buffer[sizes[level]++] = value;
+    }
+
+    private void addLevel() {
+        if (levelCount == levels.length) {
+            levels = java.util.Arrays.copyOf(levels, levelCount * 2);
+            sizes = java.util.Arrays.copyOf(sizes, levelCount * 2);
+        }
+
+        levels[levelCount] = new double[Math.max(2, k)];
+        sizes[levelCount] = 0;
+        ++levelCount;
+    }
+
+    private void compress() {
+        // compacting a level can overflow the next, so sweep upwards
+        // adding a level reduces the capacity of those below, so repeat until nothing changes
+        boolean compacted = true;
+
+        while (compacted) {
+            compacted = false;
+
+            for (int level = 0; level < levelCount; level++) {
+                if (sizes[level] >= capacity(level)) {
+                    compact(level);
+                    compacted = true;
+                }
+            }
+        }
+    }
+
+    private void compact(int level) {
+        if (level == (levelCount - 1)) {
+            addLevel();
+        }
+
+        double[] buffer = levels[level];
+        int size = sizes[level];
+
+        java.util.Arrays.sort(buffer, 0, size);
+
+        // with an odd number of values, leave the largest at this level
+        int pairs = size & ~1;
+
+        long bit = 1L << (level & 63);
+
+        for (int i = ((promoteOdd & bit) != 0) ? 1 : 0; i < pairs; i += 2) {
+            append(level + 1, buffer[i]);
+        }
+
+        promoteOdd ^= bit;
+
+        if (pairs != size) {
+            buffer[0] = buffer[size - 1];
+            sizes[level] = 1;
+        }
+        else {
+            sizes[level] = 0;
+        }
+    }
+}
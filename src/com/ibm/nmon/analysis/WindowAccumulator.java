@@ -0,0 +1,240 @@
+package com.ibm.nmon.analysis;
+
+import java.util.List;
+
+import com.ibm.nmon.data.DataColumns;
+import com.ibm.nmon.data.DataRollup;
+import com.ibm.nmon.data.DataSet;
+import com.ibm.nmon.data.DataType;
+
+/**
+ * <p>
+ * Calculates a {@link Statistic} for some fields of a DataType over consecutive windows of time. Windows are aligned to
+ * the epoch and are the size of the given granularity. Each window is output as a single value per field at the time
+ * of the last record in the window. Averages are the sum of the values divided by the number of records with data for
+ * the DataType, as in the line charts.
+ * </p>
+ *
+ * <p>
+ * Data can be added from the records or from a {@link DataRollup.Level} whose bucket size divides the granularity.
+ * Since buckets are also aligned to the epoch, both give the same windows and the same output.
+ * </p>
+ *
+ * <p>
+ * Adding data checks if the current thread has been interrupted and throws a
+ * {@link java.util.concurrent.CancellationException} if so.
+ * </p>
+ */
+public final class WindowAccumulator {
+    /**
+     * Receives the value for each field, in time order, as each window is completed.
+     */
+    public interface Output {
+        void add(long time, double value, int field);
+    }
+
+    private final Statistic statistic;
+    private final int granularity;
+    private final DataType type;
+    private final Output output;
+
+    // -1 for fields the type does not have
+    private final int[] fieldIndexes;
+
+    private final double[] totals;
+    private int n = 0;
+
+    private long window = Long.MIN_VALUE;
+    private long lastTime = 0;
+
+    public WindowAccumulator(Statistic statistic, int granularity, DataType type, List<String> fields, Output output) {
+        switch (statistic) {
+        case AVERAGE:
+        case MAXIMUM:
+        case MINIMUM:
+        case COUNT:
+        case SUM:
+            break;
+        default:
+            throw new IllegalArgumentException("canonot calculate " + statistic + " on a line chart");
+        }
+
+        if (granularity < 1) {
+            throw new IllegalArgumentException("granularity" + " must be > 0");
+        }
+
+        this.statistic = statistic;
+        this.granularity = granularity;
+        this.type = type;
+        this.output = output;
+
+        fieldIndexes = new int[fields.size()];
+
+        for (int i = 0; i < fields.size(); i++) {
+            fieldIndexes[i] = type.hasField(fields.get(i)) ? type.getFieldIndex(fields.get(i)) : -1;
+        }
+
+        totals = new double[fields.size()];
+        // use NaN as chart data when no values are defined rather than 0
+        java.util.Arrays.fill(totals, Double.NaN);
+    }
+
+    /**
+     * Add the data from every record between the given times, inclusive. The data is read from the DataSet's
+     * {@link DataSet#getColumns(DataType) columns}.
+     */
+    public void addRecords(DataSet data, long start, long end) {
+        DataColumns columns = data.getColumns(type);
+
+        for (int row = columns.lowerBound(start), to = columns.upperBound(end); row < to; row++) {
+            checkInterrupted();
+
+            if (columns.hasData(row)) {
+                addRow(columns, row);
+            }
+        }
+    }
+
+    /**
+     * Add the data between the given times, inclusive, using the buckets of the given level that are entirely within
+     * the range. Any partial buckets at the start and end are read from the records.
+     */
+    public void addRollup(DataSet data, DataRollup.Level level, long start, long end) {
+        if ((granularity % level.getBucketSize()) != 0) {
+            throw new IllegalArgumentException("bucket size " + level.getBucketSize()
+                    + " does not divide the granularity " + granularity);
+        }
+
+        int from = level.lowerBound(start);
+        int to = level.upperBound(end - level.getBucketSize() + 1);
+
+        if (from < to) {
+            addRecords(data, start, level.getStart(from) - 1);
+
+            for (int bucket = from; bucket < to; bucket++) {
+                checkInterrupted();
+                addBucket(level, bucket);
+            }
+
+            addRecords(data, level.getStart(to - 1) + level.getBucketSize(), end);
+        }
+        else {
+            addRecords(data, start, end);
+        }
+    }
+
+    /**
+     * Output the last window. This must be called after all the data has been added.
+     */
+    public void finish() {
+        output();
+    }
+
+    private void addRow(DataColumns columns, int row) {
+        long time = columns.getTime(row);
+
+        startWindow(time);
+
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            if (fieldIndexes[i] != -1) {
+                double value = columns.getValue(fieldIndexes[i], row);
+
+                if (!Double.isNaN(value)) {
+                    add(i, value, value, value, 1);
+                }
+            }
+        }
+
+        ++n;
+        lastTime = time;
+    }
+
+    private void addBucket(DataRollup.Level level, int bucket) {
+        startWindow(level.getStart(bucket));
+
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            int field = fieldIndexes[i];
+
+            if ((field != -1) && (level.getCount(bucket, field) > 0)) {
+                add(i, level.getSum(bucket, field), level.getMinimum(bucket, field), level.getMaximum(bucket, field),
+                        level.getCount(bucket, field));
+            }
+        }
+
+        n += level.getRecordCount(bucket);
+        lastTime = level.getLastTime(bucket);
+    }
+
+    private void startWindow(long time) {
+        long newWindow = Math.floorDiv(time, granularity);
+
+        if (newWindow != window) {
+            output();
+            window = newWindow;
+        }
+    }
+
+    private void add(int i, double sum, double minimum, double maximum, int count) {
+        if (Double.isNaN(totals[i])) {
+            if (statistic == Statistic.MINIMUM) {
+                totals[i] = Double.MAX_VALUE;
+            }
+            else if (statistic == Statistic.MAXIMUM) {
+                totals[i] = Double.MIN_VALUE;
+            }
+            else {
+                totals[i] = 0;
+            }
+        }
+
+        switch (statistic) {
+        case AVERAGE:
+            totals[i] += sum;
+            break;
+        case MAXIMUM:
+            if (maximum > totals[i]) {
+                totals[i] = maximum;
+            }
+            break;
+        case MINIMUM:
+            if (minimum < totals[i]) {
+                totals[i] = minimum;
+            }
+            break;
+        case COUNT:
+            totals[i] += count;
+            break;
+        case SUM:
+            totals[i] += sum;
+            break;
+        default:
+            // checked in the constructor
+        }
+    }
+
+    private void output() {
+        if (n > 0) {
+            for (int i = 0; i < totals.length; i++) {
+                if (!Double.isNaN(totals[i])) {
+                    if (statistic == Statistic.AVERAGE) {
+                        output.add(lastTime, totals[i] / n, i);
+                    }
+                    else {
+                        output.add(lastTime, totals[i], i);
+                    }
+                }
+
+                totals[i] = Double.NaN;
+            }
+
+            n = 0;
+        }
+    }
+
+    // same as BaseChartBuilder.checkCancelled()
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new java.util.concurrent.CancellationException("interrupted");
+        }
+    }
+}
@@ -343,6 +343,12 @@ public final class ChartDefinitionParser extends BasicXMLParser {
             ((LineChartDefinition) currentChart).setShowDataPoints(Boolean.valueOf(showDataPoints));
         }
 
+        String downsample = attributes.get("downsample");
+
+        if (downsample != null) {
+            ((LineChartDefinition) currentChart).setDownsampled(Boolean.valueOf(downsample));
+        }
+
         parseSize("<linechart>", attributes);
 
         logger.debug("parsed line chart {}", currentChart.getShortName());
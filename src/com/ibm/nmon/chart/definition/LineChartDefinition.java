@@ -16,6 +16,8 @@ public class LineChartDefinition extends YAxisChartDefinition {
 
     private boolean showDataPoints;
 
+    private boolean downsampled;
+
     public LineChartDefinition(String shortName, String title) {
         this(shortName, title, false);
     }
@@ -32,6 +34,7 @@ public class LineChartDefinition extends YAxisChartDefinition {
 
         this.xAxisLabel = copy.xAxisLabel;
         this.lineNamingMode = copy.lineNamingMode;
+        this.downsampled = copy.downsampled;
     }
 
     public final String getXAxisLabel() {
@@ -67,4 +70,16 @@ public class LineChartDefinition extends YAxisChartDefinition {
     public void setShowDataPoints(boolean showDataPoints) {
         this.showDataPoints = showDataPoints;
     }
+
+    /**
+     * Should lines be reduced to only the first, last, minimum and maximum values for each horizontal pixel of the
+     * chart? This makes charts with large numbers of data points much faster to draw without changing how they look.
+     */
+    public boolean isDownsampled() {
+        return downsampled;
+    }
+
+    public void setDownsampled(boolean downsampled) {
+        this.downsampled = downsampled;
+    }
 }
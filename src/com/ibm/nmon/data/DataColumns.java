@@ -0,0 +1,86 @@
+package com.ibm.nmon.data;
+
+/**
+ * <p>
+ * The data for a single DataType in a {@link DataSet}, stored as one primitive <code>double[]</code> column per field.
+ * Rows correspond to the times of every record in the data set, in time order. Values are <code>NaN</code> for records
+ * that do not have data for the type; {@link #hasData(int)} distinguishes those records from missing values.
+ * </p>
+ *
+ * <p>
+ * Columns are a read only snapshot of the data set at the time they were created by
+ * {@link DataSet#getColumns(DataType)}. Reading a field from the columns touches a single contiguous array rather than
+ * an array per DataRecord, so scans over a range of time are much faster than iterating the records.
+ * </p>
+ */
+public final class DataColumns {
+    private final DataType type;
+
+    private final long[] times;
+
+    // the rows whose record has data for the type
+    private final java.util.BitSet rowsWithData;
+
+    // indexed by field, then row
+    private final double[][] values;
+
+    DataColumns(DataType type, long[] times, java.util.BitSet rowsWithData, double[][] values) {
+        this.type = type;
+        this.times = times;
+        this.rowsWithData = rowsWithData;
+        this.values = values;
+    }
+
+    public DataType getType() {
+        return type;
+    }
+
+    /**
+     * @return the number of rows, i.e. the number of records in the DataSet when the columns were created
+     */
+    public int getRowCount() {
+        return times.length;
+    }
+
+    public long getTime(int row) {
+        return times[row];
+    }
+
+    /**
+     * @return <code>true</code> if the record for the given row has data for the type
+     */
+    public boolean hasData(int row) {
+        return rowsWithData.get(row);
+    }
+
+    public double getValue(int field, int row) {
+        return values[field][row];
+    }
+
+    /**
+     * Return the raw data for the given field. This array <em>is not</em> copied, so care must be taken to not update
+     * or otherwise invalidate the data.
+     */
+    public double[] getValues(int field) {
+        return values[field];
+    }
+
+    /**
+     * @return the first row with a time greater than or equal to the given time; {@link #getRowCount()} if there is no
+     *         such row
+     */
+    public int lowerBound(long time) {
+        int idx = java.util.Arrays.binarySearch(times, time);
+
+        return idx >= 0 ? idx : -(idx + 1);
+    }
+
+    /**
+     * @return the row after the last row with a time less than or equal to the given time; 0 if there is no such row
+     */
+    public int upperBound(long time) {
+        int idx = java.util.Arrays.binarySearch(times, time);
+
+        return idx >= 0 ? idx + 1 : -(idx + 1);
+    }
+}
@@ -1,6 +1,6 @@
 package com.ibm.nmon.data;
 
-import java.util.Map;
+import java.util.List;
 
 /**
  * Holder for data from a specific time, identified by either a timestamp (TXXXX) or the
@@ -12,7 +12,12 @@ public final class DataRecord implements Comparable<DataRecord> {
     private final String timestamp;
 
     // associate the DataType with the set of values for this record's timestamp
-    private final Map<DataType, double[]> values = new java.util.HashMap<DataType, double[]>();
+    // this is an open addressing hash table with linear probing; types and values are parallel
+    // arrays whose length is always a power of 2
+    // records with thousands of process types are common, so this avoids a HashMap.Entry per type
+    private DataType[] types = new DataType[8];
+    private double[][] values = new double[8][];
+    private int size = 0;
 
     public DataRecord(long time, String timestamp) {
         this.time = time;
@@ -56,21 +61,21 @@ public final class DataRecord implements Comparable<DataRecord> {
         // check if type has field first
         int idx = type.getFieldIndex(field);
 
-        double[] data = values.get(type);
+        double[] data = get(type);
 
         if (data == null) {
             data = new double[type.getFieldCount()];
 
             java.util.Arrays.fill(data, Double.NaN);
 
-            values.put(type, data);
+            put(type, data);
         }
 
         data[idx] = value;
     }
 
     public void addData(DataType type, double[] data) {
-        if (values.containsKey(type)) {
+        if (get(type) != null) {
             throw new IllegalArgumentException("DataType " + type.getId() + " already defined for timestamp "
                     + timestamp);
         }
@@ -80,16 +85,48 @@ public final class DataRecord implements Comparable<DataRecord> {
                         + " fields but there are only " + data.length + " values recorded for timestamp " + timestamp);
             }
 
-            values.put(type, ArrayPool.getArray(data));
+            put(type, ArrayPool.getArray(data));
         }
     }
 
     public boolean removeData(DataType type) {
-        return values.remove(type) != null;
+        if (type == null) {
+            return false;
+        }
+
+        int idx = indexOf(type);
+
+        if (types[idx] == null) {
+            return false;
+        }
+
+        // backward shift deletion; move later entries in the same probe sequence into the gap
+        int mask = types.length - 1;
+        int gap = idx;
+        int next = (gap + 1) & mask;
+
+        while (types[next] != null) {
+            int home = hash(types[next]) & mask;
+
+            // can the entry at next be moved to the gap without breaking its probe sequence?
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                types[gap] = types[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        types[gap] = null;
+        values[gap] = null;
+        --size;
+
+        return true;
     }
 
     public double getData(DataType type, String fieldName) {
-        double[] data = values.get(type);
+        double[] data = get(type);
 
         if (data == null) {
             throw new IllegalArgumentException("record does not contain any data for DataType " + type.getId());
@@ -107,7 +144,7 @@ public final class DataRecord implements Comparable<DataRecord> {
      * be taken to not update or otherwise invalidate the data.
      */
     public double[] getData(DataType type) {
-        double[] data = values.get(type);
+        double[] data = get(type);
 
         if (data == null) {
             throw new IllegalArgumentException("record does not contain any data for DataType " + type.getId());
@@ -117,12 +154,95 @@ public final class DataRecord implements Comparable<DataRecord> {
     }
 
     public boolean hasData(DataType type) {
-        return values.containsKey(type);
+        return get(type) != null;
+    }
+
+    /**
+     * @return the DataTypes that have data in this record, in no particular order
+     */
+    public List<DataType> getTypes() {
+        List<DataType> dataTypes = new java.util.ArrayList<DataType>(size);
+
+        for (DataType type : types) {
+            if (type != null) {
+                dataTypes.add(type);
+            }
+        }
+
+        return dataTypes;
+    }
+
+    private double[] get(DataType type) {
+        if (type == null) {
+            return null;
+        }
+
+        return values[indexOf(type)];
+    }
+
+    private void put(DataType type, double[] data) {
+        int idx = indexOf(type);
+
+        if (types[idx] == null) {
+            // keep the load factor under 3/4 so probe sequences stay short
+            if ((size + 1) * 4 > types.length * 3) {
+                resize();
+                idx = indexOf(type);
+            }
+
+            types[idx] = type;
+            ++size;
+        }
+
+        values[idx] = data;
+    }
+
+    // index of the slot holding the type or, if it is not in the table, the empty slot where it would be added
+    private int indexOf(DataType type) {
+        int hashCode = type.hashCode();
+        int mask = types.length - 1;
+        int idx = hash(type) & mask;
+
+        while (true) {
+            DataType existing = types[idx];
+
+            // match HashMap semantics by checking hashCode first and calling equals() on the given type
+            // DataType equality is not symmetric for aggregated processes
+            if ((existing == null) || (existing == type)
+                    || ((existing.hashCode() == hashCode) && type.equals(existing))) {
+                return idx;
+            }
+
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    private void resize() {
+        DataType[] oldTypes = types;
+        double[][] oldValues = values;
+
+        types = new DataType[oldTypes.length * 2];
+        values = new double[oldTypes.length * 2][];
+
+        for (int i = 0; i < oldTypes.length; i++) {
+            if (oldTypes[i] != null) {
+                int idx = indexOf(oldTypes[i]);
+
+                types[idx] = oldTypes[i];
+                values[idx] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(DataType type) {
+        // spread the high bits since the table size is a power of 2
+        int h = type.hashCode();
+        return h ^ (h >>> 16);
     }
 
     @Override
     public String toString() {
-        return "{timestamp=" + getTimestamp() + ", dataTypes=" + values.keySet() + '}';
+        return "{timestamp=" + getTimestamp() + ", dataTypes=" + getTypes() + '}';
     }
 
     @Override
@@ -0,0 +1,293 @@
+package com.ibm.nmon.data;
+
+import java.lang.ref.SoftReference;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * Pre-aggregated, multi-resolution summaries of the data in a {@link DataSet}. For each DataType, records are grouped
+ * into fixed size buckets aligned to the epoch at each of the {@link #LEVELS rollup levels}. Each bucket holds the sum,
+ * minimum, maximum and count of every field, so callers that need coarse grained data (e.g. charts over long time
+ * periods) can read a few buckets rather than every record.
+ * </p>
+ *
+ * <p>
+ * Levels are built lazily, all at once for a given DataType, the first time they are requested. Like
+ * {@link com.ibm.nmon.analysis.AnalysisRecord}, the levels are cached as SoftReferences. The DataSet discards its
+ * rollup whenever records are added or changed.
+ * </p>
+ */
+public final class DataRollup {
+    /**
+     * The bucket sizes, in milliseconds, of each level. Each level is a multiple of the level before it.
+     */
+    public static final int[] LEVELS = { 60000, 300000, 900000, 3600000 };
+
+    private final DataSet data;
+
+    private final Map<DataType, SoftReference<Level[]>> levels = new java.util.HashMap<DataType, SoftReference<Level[]>>();
+
+    DataRollup(DataSet data) {
+        this.data = data;
+    }
+
+    /**
+     * @return the coarsest level whose bucket size evenly divides the given granularity or <code>null</code> if no
+     *         level does
+     */
+    public Level getLevel(DataType type, int granularity) {
+        for (int i = LEVELS.length - 1; i >= 0; i--) {
+            if ((granularity % LEVELS[i]) == 0) {
+                return getLevels(type)[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the bucket size of the level {@link #getLevel(DataType, int) getLevel()} would return for the given
+     *         granularity or -1 if there is no such level
+     */
+    public static int getLevelSize(int granularity) {
+        for (int i = LEVELS.length - 1; i >= 0; i--) {
+            if ((granularity % LEVELS[i]) == 0) {
+                return LEVELS[i];
+            }
+        }
+
+        return -1;
+    }
+
+    private Level[] getLevels(DataType type) {
+        synchronized (levels) {
+            SoftReference<Level[]> levelsRef = levels.get(type);
+
+            if (levelsRef != null) {
+                Level[] typeLevels = levelsRef.get();
+
+                if (typeLevels != null) {
+                    return typeLevels;
+                }
+                // else valid SoftReference but the actual levels have been GC'ed so recreate them
+            }
+
+            Level[] typeLevels = new Level[LEVELS.length];
+            typeLevels[0] = buildFromRecords(type, LEVELS[0]);
+
+            for (int i = 1; i < LEVELS.length; i++) {
+                typeLevels[i] = buildFromLevel(typeLevels[i - 1], LEVELS[i]);
+            }
+
+            levels.put(type, new SoftReference<Level[]>(typeLevels));
+
+            return typeLevels;
+        }
+    }
+
+    private Level buildFromRecords(DataType type, int bucketSize) {
+        Level level = new Level(bucketSize, type.getFieldCount());
+
+        for (DataRecord record : data.getRecords()) {
+            if (!record.hasData(type)) {
+                continue;
+            }
+
+            long time = record.getTime();
+            int bucket = level.bucketFor(time);
+            double[] values = record.getData(type);
+
+            for (int field = 0; field < level.fieldCount; field++) {
+                double value = values[field];
+
+                if (!Double.isNaN(value)) {
+                    level.add(bucket, field, value, value, value, 1);
+                }
+            }
+
+            level.addRecords(bucket, time, time, 1);
+        }
+
+        return level;
+    }
+
+    private Level buildFromLevel(Level from, int bucketSize) {
+        Level level = new Level(bucketSize, from.fieldCount);
+
+        for (int i = 0; i < from.size; i++) {
+            int bucket = level.bucketFor(from.starts[i]);
+
+            for (int field = 0; field < level.fieldCount; field++) {
+                int idx = i * from.fieldCount + field;
+
+                if (from.counts[idx] > 0) {
+                    level.add(bucket, field, from.sums[idx], from.minimums[idx], from.maximums[idx],
+                            from.counts[idx]);
+                }
+            }
+
+            level.addRecords(bucket, from.firstTimes[i], from.lastTimes[i], from.recordCounts[i]);
+        }
+
+        return level;
+    }
+
+    /**
+     * A single rollup level for a DataType. Buckets are sorted by time and only buckets containing at least one record
+     * are stored. Field values are accessed by index, i.e. {@link DataType#getFieldIndex(String)}. Minimums and
+     * maximums are <code>NaN</code> if a bucket has no values for a field.
+     */
+    public static final class Level {
+        private final int bucketSize;
+        private final int fieldCount;
+
+        private int size = 0;
+
+        private long[] starts = new long[16];
+        private long[] firstTimes = new long[16];
+        private long[] lastTimes = new long[16];
+        private int[] recordCounts = new int[16];
+
+        // size * fieldCount, indexed by bucket * fieldCount + field
+        private double[] sums;
+        private double[] minimums;
+        private double[] maximums;
+        private int[] counts;
+
+        Level(int bucketSize, int fieldCount) {
+            this.bucketSize = bucketSize;
+            this.fieldCount = fieldCount;
+
+            sums = new double[16 * fieldCount];
+            minimums = new double[16 * fieldCount];
+            maximums = new double[16 * fieldCount];
+            counts = new int[16 * fieldCount];
+        }
+
+        public int getBucketSize() {
+            return bucketSize;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getStart(int bucket) {
+            return starts[bucket];
+        }
+
+        public long getFirstTime(int bucket) {
+            return firstTimes[bucket];
+        }
+
+        public long getLastTime(int bucket) {
+            return lastTimes[bucket];
+        }
+
+        /**
+         * @return the number of DataRecords with data for the DataType in the bucket
+         */
+        public int getRecordCount(int bucket) {
+            return recordCounts[bucket];
+        }
+
+        public double getSum(int bucket, int field) {
+            return sums[bucket * fieldCount + field];
+        }
+
+        public double getMinimum(int bucket, int field) {
+            return minimums[bucket * fieldCount + field];
+        }
+
+        public double getMaximum(int bucket, int field) {
+            return maximums[bucket * fieldCount + field];
+        }
+
+        /**
+         * @return the number of non-<code>NaN</code> values for the field in the bucket
+         */
+        public int getCount(int bucket, int field) {
+            return counts[bucket * fieldCount + field];
+        }
+
+        /**
+         * @return the index of the first bucket that starts at or after the given time
+         */
+        public int lowerBound(long time) {
+            int idx = java.util.Arrays.binarySearch(starts, 0, size, time);
+
+            return idx >= 0 ? idx : -(idx + 1);
+        }
+
+        /**
+         * @return the index after the last bucket that starts at or before the given time
+         */
+        public int upperBound(long time) {
+            int idx = java.util.Arrays.binarySearch(starts, 0, size, time);
+
+            return idx >= 0 ? idx + 1 : -(idx + 1);
+        }
+
+        // buckets are always added in time order, so only the last bucket needs to be checked
+        private int bucketFor(long time) {
+            long start = Math.floorDiv(time, bucketSize) * bucketSize;
+
+            if ((size > 0) && (starts[size - 1] == start)) {
+                return size - 1;
+            }
+
+            if (size == starts.length) {
+                int newLength = size * 2;
+
+                starts = java.util.Arrays.copyOf(starts, newLength);
+                firstTimes = java.util.Arrays.copyOf(firstTimes, newLength);
+                lastTimes = java.util.Arrays.copyOf(lastTimes, newLength);
+                recordCounts = java.util.Arrays.copyOf(recordCounts, newLength);
+
+                sums = java.util.Arrays.copyOf(sums, newLength * fieldCount);
+                minimums = java.util.Arrays.copyOf(minimums, newLength * fieldCount);
+                maximums = java.util.Arrays.copyOf(maximums, newLength * fieldCount);
+                counts = java.util.Arrays.copyOf(counts, newLength * fieldCount);
+            }
+
+            starts[size] = start;
+            firstTimes[size] = time;
+
+            java.util.Arrays.fill(minimums, size * fieldCount, (size + 1) * fieldCount, Double.NaN);
+            java.util.Arrays.fill(maximums, size * fieldCount, (size + 1) * fieldCount, Double.NaN);
+
+            return size++;
+        }
+
+        private void add(int bucket, int field, double sum, double minimum, double maximum, int count) {
+            int idx = bucket * fieldCount + field;
+
+            if (counts[idx] == 0) {
+                minimums[idx] = minimum;
+                maximums[idx] = maximum;
+            }
+            else {
+                if (minimum < minimums[idx]) {
+                    minimums[idx] = minimum;
+                }
+
+                if (maximum > maximums[idx]) {
+                    maximums[idx] = maximum;
+                }
+            }
+
+            sums[idx] += sum;
+            counts[idx] += count;
+        }
+
+        private void addRecords(int bucket, long firstTime, long lastTime, int recordCount) {
+            if (recordCounts[bucket] == 0) {
+                firstTimes[bucket] = firstTime;
+            }
+
+            lastTimes[bucket] = lastTime;
+            recordCounts[bucket] += recordCount;
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.ibm.nmon.data;
 
+import java.lang.ref.SoftReference;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.Set;
 
@@ -51,12 +56,66 @@ import com.ibm.nmon.interval.Interval;
  *   ...
  *   time n
  * </pre>
+ * 
+ * <p>
+ * Internally, times are stored as a sorted <code>long[]</code> column with a parallel array of DataRecords rather than
+ * as a map of boxed times. Records are almost always added in time order, so adds are simple appends. Records that
+ * arrive out of order are held separately and merged into the sorted columns the next time the records are read.
+ * </p>
+ * 
+ * <p>
+ * The values for each DataType are also available as one primitive <code>double[]</code> column per field from
+ * {@link #getColumns(DataType)}. Columns are built from the records the first time they are requested and are
+ * discarded whenever the data changes.
+ * </p>
+ * 
+ * <p>
+ * Types and records can be read while other threads are adding them. All access to the time and record columns is
+ * synchronized on the data set. Iterables returned by <code>getRecords()</code> are views over the columns as they
+ * were when the method was called; records added later are not included. Likewise, <code>getTypes()</code> returns a
+ * snapshot of the types.
+ * </p>
  */
 public abstract class DataSet implements Comparable<DataSet> {
+    // see getUpdateLock()
+    private static final java.util.concurrent.locks.ReadWriteLock UPDATE_LOCK =
+            new java.util.concurrent.locks.ReentrantReadWriteLock(true);
+
+    // guarded by itself; typeSnapshot is rebuilt by getTypes() after types are added or removed
     private final TreeMap<String, DataType> dataTypes = new TreeMap<String, DataType>();
+    private volatile java.util.Collection<DataType> typeSnapshot = null;
 
-    // associate data with each timestamp
-    private final TreeMap<Long, DataRecord> data = new TreeMap<Long, DataRecord>();
+    // time column and the records for each time; both sorted by time and only valid up to size
+    private long[] times = new long[64];
+    private DataRecord[] records = new DataRecord[64];
+    private int size = 0;
+
+    // records added out of time order; merged into the sorted columns by compact()
+    private final TreeMap<Long, DataRecord> pending = new TreeMap<Long, DataRecord>();
+
+    // built on demand; discarded whenever the data changes
+    private volatile DataRollup rollup = null;
+    private volatile RangeIndex rangeIndex = null;
+    private volatile Map<DataType, SoftReference<DataColumns>> columns =
+            new java.util.concurrent.ConcurrentHashMap<DataType, SoftReference<DataColumns>>();
+
+    /**
+     * <p>
+     * Lock for data sets that are read on background threads while they are being updated. Merging new data into a
+     * {@link SystemDataSet} updates its existing DataRecords and types in place, so that is not safe while other
+     * threads are reading the data. Long running reads on background threads, like chart builds and analysis, hold the
+     * read lock. Updates to data sets that may already be displayed, like new data from followed files, hold the write
+     * lock.
+     * </p>
+     * 
+     * <p>
+     * The lock is fair, so an update only waits for the reads that are already running. There is a single lock for
+     * all data sets since a chart or analysis can read any number of them.
+     * </p>
+     */
+    public static java.util.concurrent.locks.ReadWriteLock getUpdateLock() {
+        return UPDATE_LOCK;
+    }
 
     public abstract String getHostname();
 
@@ -66,12 +125,15 @@ public abstract class DataSet implements Comparable<DataSet> {
 
     public final void addType(DataType type) {
         if (type != null) {
-            if (dataTypes.containsKey(type.getId())) {
-                throw new IllegalArgumentException("cannot redefine DataType " + type.getId()
-                        + " within the same data set");
-            }
-            else {
-                dataTypes.put(type.getId(), type);
+            synchronized (dataTypes) {
+                if (dataTypes.containsKey(type.getId())) {
+                    throw new IllegalArgumentException("cannot redefine DataType " + type.getId()
+                            + " within the same data set");
+                }
+                else {
+                    dataTypes.put(type.getId(), type);
+                    typeSnapshot = null;
+                }
             }
         }
     }
@@ -79,105 +141,439 @@ public abstract class DataSet implements Comparable<DataSet> {
     // callers are responsible fore removing the type with any associated DataRecords
     final void removeType(DataType type) {
         if (type != null) {
-            dataTypes.remove(type.getId());
+            synchronized (dataTypes) {
+                dataTypes.remove(type.getId());
+                typeSnapshot = null;
+            }
+
+            invalidateRollup();
         }
     }
 
     public final boolean containsType(String typeId) {
-        return dataTypes.containsKey(typeId);
+        synchronized (dataTypes) {
+            return dataTypes.containsKey(typeId);
+        }
     }
 
     public final DataType getType(String typeId) {
-        return dataTypes.get(typeId);
+        synchronized (dataTypes) {
+            return dataTypes.get(typeId);
+        }
     }
 
     /**
-     * @return all the DataTypes defined in this data set
+     * @return all the DataTypes defined in this data set, sorted by id; types added later are not included
      */
     public final Iterable<DataType> getTypes() {
-        return java.util.Collections.unmodifiableCollection(dataTypes.values());
+        java.util.Collection<DataType> toReturn = typeSnapshot;
+
+        if (toReturn == null) {
+            synchronized (dataTypes) {
+                // parsers add types one at a time, so only copy when the types are actually read
+                toReturn = java.util.Collections.unmodifiableList(new java.util.ArrayList<DataType>(dataTypes
+                        .values()));
+                typeSnapshot = toReturn;
+            }
+        }
+
+        return toReturn;
     }
 
     public final int getTypeCount() {
-        return dataTypes.size();
+        synchronized (dataTypes) {
+            return dataTypes.size();
+        }
     }
 
-    public final void addRecord(DataRecord record) {
-        if (record != null) {
-            data.put(record.getTime(), record);
+    public final synchronized void addRecord(DataRecord record) {
+        if (record == null) {
+            return;
+        }
+
+        invalidateRollup();
+
+        long time = record.getTime();
+
+        if ((size == 0) || (time > times[size - 1])) {
+            // common case; parsers add records in time order
+            if (size == times.length) {
+                int newLength = size + (size >> 1);
+
+                times = Arrays.copyOf(times, newLength);
+                records = Arrays.copyOf(records, newLength);
+            }
+
+            times[size] = time;
+            records[size] = record;
+            ++size;
+        }
+        else {
+            int idx = Arrays.binarySearch(times, 0, size, time);
+
+            if (idx >= 0) {
+                // same semantics as Map.put; replace the existing record
+                records[idx] = record;
+            }
+            else {
+                pending.put(time, record);
+
+                // bound the size of the boxed map; merging is linear so the cost is amortized
+                if (pending.size() > Math.max(256, size >> 3)) {
+                    compact();
+                }
+            }
+        }
+    }
+
+    /**
+     * Bulk version of {@link #addRecord(DataRecord)}. The records must be sorted by time and must not have the same time
+     * as any existing record. Records that are all later than the existing records are appended; otherwise both are
+     * merged in a single pass.
+     */
+    final synchronized void addRecords(List<DataRecord> toAdd) {
+        if (toAdd.isEmpty()) {
+            return;
+        }
+
+        compact();
+        invalidateRollup();
+
+        int newSize = size + toAdd.size();
+
+        if ((size == 0) || (toAdd.get(0).getTime() > times[size - 1])) {
+            if (newSize > times.length) {
+                int newLength = newSize + (newSize >> 2);
+
+                times = Arrays.copyOf(times, newLength);
+                records = Arrays.copyOf(records, newLength);
+            }
+
+            for (DataRecord record : toAdd) {
+                times[size] = record.getTime();
+                records[size++] = record;
+            }
+        }
+        else {
+            long[] newTimes = new long[newSize + (newSize >> 2)];
+            DataRecord[] newRecords = new DataRecord[newTimes.length];
+
+            int i = 0;
+            int n = 0;
+
+            for (DataRecord record : toAdd) {
+                long time = record.getTime();
+
+                while ((i < size) && (times[i] < time)) {
+                    newTimes[n] = times[i];
+                    newRecords[n++] = records[i++];
+                }
+
+                newTimes[n] = time;
+                newRecords[n++] = record;
+            }
+
+            System.arraycopy(times, i, newTimes, n, size - i);
+            System.arraycopy(records, i, newRecords, n, size - i);
+
+            times = newTimes;
+            records = newRecords;
+            size = newSize;
         }
     }
 
     /**
      * @return the number of DataRecords in this data set.
      */
-    public final int getRecordCount() {
-        return data.size();
+    public final synchronized int getRecordCount() {
+        compact();
+
+        return size;
     }
 
-    public final int getRecordCount(Interval interval) {
+    public final synchronized int getRecordCount(Interval interval) {
         if (Interval.DEFAULT.equals(interval)) {
-            return data.size();
+            return getRecordCount();
         }
         else {
-            return data.subMap(interval.getStart(), true, interval.getEnd(), true).size();
+            compact();
+
+            return upperBound(interval.getEnd()) - lowerBound(interval.getStart());
         }
     }
 
-    public final DataRecord getRecord(long time) {
-        return data.get(time);
+    public final synchronized DataRecord getRecord(long time) {
+        int idx = Arrays.binarySearch(times, 0, size, time);
+
+        if (idx >= 0) {
+            return records[idx];
+        }
+        else if (pending.isEmpty()) {
+            return null;
+        }
+        else {
+            return pending.get(time);
+        }
     }
 
     /**
      * @return all the DataRecords in this data set, sorted by time, earliest first.
      */
-    public final Iterable<DataRecord> getRecords() {
-        return java.util.Collections.unmodifiableCollection(data.values());
+    public final synchronized Iterable<DataRecord> getRecords() {
+        compact();
+
+        return recordView(0, size);
     }
 
     public final Iterable<DataRecord> getRecords(Interval interval) {
         if (Interval.DEFAULT.equals(interval)) {
-            return java.util.Collections.unmodifiableCollection(data.values());
+            return getRecords();
         }
         else {
-            return java.util.Collections.unmodifiableCollection(data.subMap(interval.getStart(), true,
-                    interval.getEnd(), true).values());
+            return getRecords(interval.getStart(), interval.getEnd());
         }
     }
 
+    /**
+     * @return the DataRecords between the given times, inclusive. Unlike an {@link Interval}, <code>end</code> may be
+     *         less than <code>start</code>, in which case no records are returned.
+     */
+    public final synchronized Iterable<DataRecord> getRecords(long start, long end) {
+        compact();
+
+        int from = lowerBound(start);
+        int to = upperBound(end);
+
+        return recordView(from, Math.max(from, to));
+    }
+
+    /**
+     * @return pre-aggregated summaries of the data in this data set
+     */
+    public final DataRollup getRollup() {
+        DataRollup toReturn = rollup;
+
+        if (toReturn == null) {
+            toReturn = rollup = new DataRollup(this);
+        }
+
+        return toReturn;
+    }
+
+    /**
+     * @return an index for calculating statistics over arbitrary time ranges
+     */
+    public final RangeIndex getRangeIndex() {
+        RangeIndex toReturn = rangeIndex;
+
+        if (toReturn == null) {
+            toReturn = rangeIndex = new RangeIndex(this);
+        }
+
+        return toReturn;
+    }
+
+    /**
+     * @return the values of every field of the given DataType as primitive columns, one row per record
+     */
+    public final DataColumns getColumns(DataType type) {
+        // if the data changes while the columns are built, they are added to the discarded map
+        Map<DataType, SoftReference<DataColumns>> cached = columns;
+        SoftReference<DataColumns> columnsRef = cached.get(type);
+
+        if (columnsRef != null) {
+            DataColumns toReturn = columnsRef.get();
+
+            // types from other data sets can have the same id but different fields
+            if ((toReturn != null) && (toReturn.getType() == type)) {
+                return toReturn;
+            }
+            // else valid SoftReference but the actual columns have been GC'ed so recreate them
+        }
+
+        DataColumns toReturn = createColumns(type);
+
+        cached.put(type, new SoftReference<DataColumns>(toReturn));
+
+        return toReturn;
+    }
+
+    /**
+     * Discard any pre-aggregated data, indexes and columns. Subclasses that update existing DataRecords must call this
+     * method.
+     */
+    protected final void invalidateRollup() {
+        rollup = null;
+        rangeIndex = null;
+        columns = new java.util.concurrent.ConcurrentHashMap<DataType, SoftReference<DataColumns>>();
+    }
+
     /**
      * @return all the timestamps recorded by this data set.
      */
-    public final Set<Long> getTimes() {
-        return java.util.Collections.unmodifiableSet(data.keySet());
+    public final synchronized Set<Long> getTimes() {
+        compact();
+
+        return new TimeSet(times, size);
     }
 
-    public final long getStartTime() {
-        return data.firstKey();
+    public final synchronized long getStartTime() {
+        compact();
+
+        if (size == 0) {
+            throw new java.util.NoSuchElementException();
+        }
+
+        return times[0];
     }
 
-    public final long getEndTime() {
-        return data.size() == 0 ? Long.MIN_VALUE : data.lastKey();
+    public final synchronized long getEndTime() {
+        compact();
+
+        return size == 0 ? Long.MIN_VALUE : times[size - 1];
     }
 
-    public final void adjustTimes(long adjustmentMillis) {
+    public final synchronized void adjustTimes(long adjustmentMillis) {
         if (adjustmentMillis == 0) {
             return;
         }
 
-        // recreate the data using the new times
-        TreeMap<Long, DataRecord> newData = new TreeMap<Long, DataRecord>();
+        compact();
+        invalidateRollup();
+
+        // a constant adjustment does not change the ordering, so update the time column in place
+        for (int i = 0; i < size; i++) {
+            records[i].adjustTime(adjustmentMillis);
+            times[i] += adjustmentMillis;
+        }
+    }
+
+    private synchronized DataColumns createColumns(DataType type) {
+        compact();
+
+        java.util.BitSet rowsWithData = new java.util.BitSet(size);
+        double[][] values = new double[type.getFieldCount()][size];
+
+        for (int row = 0; row < size; row++) {
+            DataRecord record = records[row];
+
+            if (record.hasData(type)) {
+                double[] data = record.getData(type);
+                rowsWithData.set(row);
+
+                for (int field = 0; field < values.length; field++) {
+                    values[field][row] = data[field];
+                }
+            }
+            else {
+                for (int field = 0; field < values.length; field++) {
+                    values[field][row] = Double.NaN;
+                }
+            }
+        }
+
+        return new DataColumns(type, Arrays.copyOf(times, size), rowsWithData, values);
+    }
+
+    // merge any out of order records into the sorted columns; must be called holding this object's lock
+    private void compact() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        int newSize = size + pending.size();
+        long[] newTimes = new long[newSize + (newSize >> 2)];
+        DataRecord[] newRecords = new DataRecord[newTimes.length];
+
+        int i = 0;
+        int n = 0;
+
+        // pending never contains a time already in the columns, so this is a simple merge
+        for (java.util.Map.Entry<Long, DataRecord> entry : pending.entrySet()) {
+            long time = entry.getKey();
+
+            while ((i < size) && (times[i] < time)) {
+                newTimes[n] = times[i];
+                newRecords[n++] = records[i++];
+            }
+
+            newTimes[n] = time;
+            newRecords[n++] = entry.getValue();
+        }
+
+        System.arraycopy(times, i, newTimes, n, size - i);
+        System.arraycopy(records, i, newRecords, n, size - i);
+
+        times = newTimes;
+        records = newRecords;
+        size = newSize;
+
+        pending.clear();
+    }
+
+    // index of the first time >= the given time
+    private int lowerBound(long time) {
+        int idx = Arrays.binarySearch(times, 0, size, time);
+
+        return idx >= 0 ? idx : -(idx + 1);
+    }
+
+    // index after the last time <= the given time
+    private int upperBound(long time) {
+        int idx = Arrays.binarySearch(times, 0, size, time);
+
+        return idx >= 0 ? idx + 1 : -(idx + 1);
+    }
+
+    private List<DataRecord> recordView(int from, int to) {
+        return java.util.Collections.unmodifiableList(Arrays.asList(records).subList(from, to));
+    }
+
+    // read only Set view of the time column; values are only boxed when iterated
+    private static final class TimeSet extends java.util.AbstractSet<Long> {
+        private final long[] times;
+        private final int size;
+
+        TimeSet(long[] times, int size) {
+            this.times = times;
+            this.size = size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (o instanceof Long) {
+                return Arrays.binarySearch(times, 0, size, (Long) o) >= 0;
+            }
+            else {
+                return false;
+            }
+        }
+
+        @Override
+        public java.util.Iterator<Long> iterator() {
+            return new java.util.Iterator<Long>() {
+                private int i = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return i < size;
+                }
 
-        for (long time : data.keySet()) {
-            DataRecord record = data.get(time);
-            record.adjustTime(adjustmentMillis);
+                @Override
+                public Long next() {
+                    if (i >= size) {
+                        throw new java.util.NoSuchElementException();
+                    }
 
-            newData.put(time + adjustmentMillis, record);
+                    return times[i++];
+                }
+            };
         }
 
-        // data is final, so recopy it back
-        data.clear();
-        data.putAll(newData);
+        @Override
+        public int size() {
+            return size;
+        }
     }
 
     @Override
@@ -211,7 +607,7 @@ public abstract class DataSet implements Comparable<DataSet> {
         int compare = this.getHostname().compareTo(f.getHostname());
 
         if (compare == 0) {
-            if (this.data.isEmpty() && this.data.isEmpty()) {
+            if (this.getRecordCount() == 0) {
                 return 0;
             }
             else if (this.getStartTime() == f.getStartTime()) {
@@ -0,0 +1,580 @@
+package com.ibm.nmon.data;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.nmon.util.ArchiveHelper;
+import com.ibm.nmon.util.SymbolTable;
+
+/**
+ * <p>
+ * Persistent cache of parsed data. Each parsed file is stored as a compact binary snapshot in the cache directory so
+ * that reloading it does not require parsing the file again. Snapshots are read into memory in a single pass.
+ * </p>
+ *
+ * <p>
+ * Snapshots are identified by a {@link #getKey(String, String) key} that includes the absolute path, size and last
+ * modified time of the source file along with any parser options that affect the parsed data. If any of these change,
+ * the snapshot is ignored and will be overwritten the next time the file is parsed.
+ * </p>
+ *
+ * <p>
+ * Only {@link BasicDataSet}, {@link NMONDataSet} and {@link PerfmonDataSet} objects can be cached.
+ * </p>
+ *
+ * <p>
+ * The GUI caches parsed data in the {@link #getDefaultDirectory() default directory} when the
+ * <code>cacheParsedData</code> property is set. The report generator uses the directory given by its
+ * <code>--cache</code> option.
+ * </p>
+ */
+public final class DataSetCache {
+    private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(DataSetCache.class);
+
+    private static final int MAGIC = 0x4E4D5643; // NMVC
+    private static final int VERSION = 2;
+
+    private static final String SUFFIX = ".nmvcache";
+
+    // DataSet classes
+    private static final byte BASIC = 0;
+    private static final byte NMON = 1;
+    private static final byte PERFMON = 2;
+
+    // DataType classes
+    private static final byte TYPE = 0;
+    private static final byte SUB_TYPE = 1;
+    private static final byte PROCESS_TYPE = 2;
+
+    // string table markers
+    private static final int NULL_STRING = -1;
+    private static final int NEW_STRING = -2;
+
+    private final File directory;
+
+    public DataSetCache(File directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory cannot be null");
+        }
+
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return <code>.nmonvisualizer/cache</code> in the user's home directory
+     */
+    public static File getDefaultDirectory() {
+        return new File(new File(System.getProperty("user.home"), ".nmonvisualizer"), "cache");
+    }
+
+    /**
+     * Build a key for the current state of the given file. Callers should get the key <em>before</em> parsing so that
+     * changes to the file while it is being parsed result in a stale snapshot rather than an incorrect one.
+     *
+     * @param options any parser options that affect the parsed data, e.g. the time zone
+     */
+    public String getKey(String sourceFile, String options) {
+        // for archive entries, the archive's size and time identify the entry's contents
+        File source = new File(ArchiveHelper.getArchivePath(sourceFile));
+
+        return new File(sourceFile).getAbsolutePath() + '|' + source.length() + '|' + source.lastModified() + '|'
+                + options;
+    }
+
+    /**
+     * @return the cached data or <code>null</code> if there is no valid snapshot for the given key
+     */
+    public DataSet load(String sourceFile, String key) {
+        File cacheFile = getCacheFile(sourceFile);
+
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            // read into the heap rather than mapping; a mapped file cannot be replaced on Windows until the mapping
+            // is garbage collected, which would break the rename in store()
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("cache file is too large: " + size + " bytes");
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) {
+                    throw new java.io.EOFException("cache file truncated after " + buffer.position() + " bytes");
+                }
+            }
+
+            buffer.flip();
+
+            SnapshotReader reader = new SnapshotReader(buffer);
+
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION) || !key.equals(reader.readString())) {
+                LOGGER.debug("ignoring stale cache file {} for {}", cacheFile, sourceFile);
+                return null;
+            }
+
+            DataSet data = reader.readDataSet();
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("loaded {} from cache file {} in {}ms", new Object[] { sourceFile, cacheFile,
+                        (System.nanoTime() - start) / 1000000.0d });
+            }
+
+            return data;
+        }
+        catch (Exception e) {
+            LOGGER.warn("could not load cached data for " + sourceFile + " from " + cacheFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Write a snapshot of the given data. Errors are logged but not thrown since the cache is only an optimization.
+     *
+     * @param key the key returned by {@link #getKey(String, String) getKey()} before the file was parsed
+     */
+    public void store(String sourceFile, String key, DataSet data) {
+        byte dataClass = -1;
+
+        if (data.getClass() == BasicDataSet.class) {
+            dataClass = BASIC;
+        }
+        else if (data.getClass() == NMONDataSet.class) {
+            dataClass = NMON;
+        }
+        else if (data.getClass() == PerfmonDataSet.class) {
+            dataClass = PERFMON;
+        }
+        else {
+            LOGGER.debug("not caching unsupported data class {} for {}", data.getClass().getSimpleName(), sourceFile);
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        File cacheFile = getCacheFile(sourceFile);
+        File tempFile = null;
+
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("cannot create cache directory " + directory);
+            }
+
+            // write to a temp file and rename so concurrent readers never see a partial snapshot
+            tempFile = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile), 65536))) {
+                SnapshotWriter writer = new SnapshotWriter(out);
+
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writer.writeString(key);
+                writer.writeDataSet(dataClass, data);
+            }
+
+            try {
+                Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (java.nio.file.AtomicMoveNotSupportedException amnse) {
+                Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            tempFile = null;
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("cached {} in {} in {}ms", new Object[] { sourceFile, cacheFile,
+                        (System.nanoTime() - start) / 1000000.0d });
+            }
+        }
+        catch (Exception e) {
+            LOGGER.warn("could not cache data for " + sourceFile + " in " + cacheFile, e);
+        }
+        finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private File getCacheFile(String sourceFile) {
+        File source = new File(sourceFile);
+
+        // include a hash of the full path so files with the same name in different directories do not collide
+        return new File(directory,
+                source.getName() + '.' + Integer.toHexString(source.getAbsolutePath().hashCode()) + SUFFIX);
+    }
+
+    private static final class SnapshotWriter {
+        private final DataOutputStream out;
+
+        private final Map<String, Integer> strings = new java.util.HashMap<String, Integer>();
+
+        SnapshotWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeDataSet(byte dataClass, DataSet data) throws IOException {
+            out.writeByte(dataClass);
+            writeString(data.getSourceFile());
+
+            switch (dataClass) {
+            case BASIC:
+                writeMap(((BasicDataSet) data).getMetadata());
+                break;
+            case NMON:
+                writeMap(((NMONDataSet) data).getMetadata());
+                writeMap(((NMONDataSet) data).getSystemInfo());
+                break;
+            case PERFMON:
+                writeMap(((PerfmonDataSet) data).getMetadata());
+                break;
+            }
+
+            // processes are written before types since ProcessDataTypes refer to them
+            Map<Process, Integer> processIndexes = new java.util.IdentityHashMap<Process, Integer>();
+            List<Process> processes = new java.util.ArrayList<Process>();
+            java.util.Set<Process> inDataSet = java.util.Collections
+                    .newSetFromMap(new java.util.IdentityHashMap<Process, Boolean>());
+
+            if (data instanceof ProcessDataSet) {
+                for (Process process : ((ProcessDataSet) data).getProcesses()) {
+                    inDataSet.add(process);
+                    processIndexes.put(process, processes.size());
+                    processes.add(process);
+                }
+            }
+
+            List<DataType> types = new java.util.ArrayList<DataType>(data.getTypeCount());
+
+            for (DataType type : data.getTypes()) {
+                types.add(type);
+
+                if (type.getClass() == ProcessDataType.class) {
+                    Process process = ((ProcessDataType) type).getProcess();
+
+                    if (!processIndexes.containsKey(process)) {
+                        processIndexes.put(process, processes.size());
+                        processes.add(process);
+                    }
+                }
+            }
+
+            out.writeInt(processes.size());
+
+            for (Process process : processes) {
+                writeProcess(process, inDataSet.contains(process));
+            }
+
+            out.writeInt(types.size());
+
+            for (DataType type : types) {
+                writeType(type, processIndexes);
+            }
+
+            out.writeInt(data.getRecordCount());
+
+            int[] present = new int[types.size()];
+
+            for (DataRecord record : data.getRecords()) {
+                int count = 0;
+
+                for (int i = 0; i < types.size(); i++) {
+                    if (record.hasData(types.get(i))) {
+                        present[count++] = i;
+                    }
+                }
+
+                out.writeLong(record.getTime());
+                writeString(record.getTimestamp());
+                out.writeInt(count);
+
+                for (int i = 0; i < count; i++) {
+                    double[] values = record.getData(types.get(present[i]));
+
+                    out.writeInt(present[i]);
+                    out.writeInt(values.length);
+
+                    for (double value : values) {
+                        out.writeDouble(value);
+                    }
+                }
+            }
+        }
+
+        private void writeProcess(Process process, boolean inDataSet) throws IOException {
+            out.writeInt(process.getId());
+            out.writeLong(process.getStartTime());
+            out.writeLong(process.getEndTime());
+            writeString(process.getName());
+            writeString(process.getTypeName());
+            writeString(process.getCommandLine());
+            out.writeBoolean(inDataSet);
+        }
+
+        private void writeType(DataType type, Map<Process, Integer> processIndexes) throws IOException {
+            if (type.getClass() == DataType.class) {
+                out.writeByte(TYPE);
+                writeString(type.getId());
+                writeString(type.getName());
+            }
+            else if (type.getClass() == SubDataType.class) {
+                SubDataType subType = (SubDataType) type;
+
+                out.writeByte(SUB_TYPE);
+                writeString(subType.getPrimaryId());
+                writeString(subType.getSubId());
+                writeString(type.getName());
+                out.writeBoolean(subType.getId().equals(subType.toString()));
+            }
+            else if (type.getClass() == ProcessDataType.class) {
+                out.writeByte(PROCESS_TYPE);
+                out.writeInt(processIndexes.get(((ProcessDataType) type).getProcess()));
+            }
+            else {
+                throw new IOException("unsupported DataType class " + type.getClass().getName());
+            }
+
+            out.writeInt(type.getFieldCount());
+
+            for (int i = 0; i < type.getFieldCount(); i++) {
+                writeString(type.getField(i));
+            }
+        }
+
+        private void writeMap(Map<String, String> map) throws IOException {
+            out.writeInt(map.size());
+
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+
+        // each distinct String is only written once; later uses refer to its index
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(NULL_STRING);
+                return;
+            }
+
+            Integer idx = strings.get(value);
+
+            if (idx == null) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+                strings.put(value, strings.size());
+
+                out.writeInt(NEW_STRING);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            else {
+                out.writeInt(idx);
+            }
+        }
+    }
+
+    private static final class SnapshotReader {
+        private final ByteBuffer buffer;
+
+        private final List<String> strings = new java.util.ArrayList<String>();
+
+        SnapshotReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        DataSet readDataSet() throws IOException {
+            byte dataClass = buffer.get();
+            String sourceFile = readString();
+
+            DataSet data = null;
+
+            switch (dataClass) {
+            case BASIC: {
+                BasicDataSet basic = new BasicDataSet(sourceFile);
+                int count = buffer.getInt();
+
+                for (int i = 0; i < count; i++) {
+                    basic.setMetadata(readString(), readString());
+                }
+
+                data = basic;
+                break;
+            }
+            case NMON: {
+                NMONDataSet nmon = new NMONDataSet(sourceFile);
+                int count = buffer.getInt();
+
+                for (int i = 0; i < count; i++) {
+                    nmon.setMetadata(readString(), readString());
+                }
+
+                count = buffer.getInt();
+
+                for (int i = 0; i < count; i++) {
+                    nmon.setSystemInfo(readString(), readString());
+                }
+
+                data = nmon;
+                break;
+            }
+            case PERFMON: {
+                PerfmonDataSet perfmon = new PerfmonDataSet(sourceFile);
+                int count = buffer.getInt();
+
+                for (int i = 0; i < count; i++) {
+                    perfmon.setMetadata(readString(), readString());
+                }
+
+                data = perfmon;
+                break;
+            }
+            default:
+                throw new IOException("unknown data class " + dataClass);
+            }
+
+            Process[] processes = new Process[buffer.getInt()];
+
+            for (int i = 0; i < processes.length; i++) {
+                int id = buffer.getInt();
+                long startTime = buffer.getLong();
+                long endTime = buffer.getLong();
+                String name = readString();
+                String typeName = readString();
+
+                Process process = new Process(id, startTime, name, typeName);
+                process.setCommandLine(readString());
+
+                if (endTime != Long.MAX_VALUE) {
+                    process.setEndTime(endTime);
+                }
+
+                if (buffer.get() != 0) {
+                    ((ProcessDataSet) data).addProcess(process);
+                }
+
+                processes[i] = process;
+            }
+
+            DataType[] types = new DataType[buffer.getInt()];
+
+            for (int i = 0; i < types.length; i++) {
+                byte typeClass = buffer.get();
+
+                switch (typeClass) {
+                case TYPE: {
+                    String id = readString();
+                    String name = readString();
+
+                    types[i] = new DataType(id, name, readFields());
+                    break;
+                }
+                case SUB_TYPE: {
+                    String id = readString();
+                    String subId = readString();
+                    String name = readString();
+                    boolean displayPrimaryId = buffer.get() != 0;
+
+                    types[i] = new SubDataType(id, subId, name, displayPrimaryId, readFields());
+                    break;
+                }
+                case PROCESS_TYPE: {
+                    Process process = processes[buffer.getInt()];
+
+                    types[i] = new ProcessDataType(process, readFields());
+                    break;
+                }
+                default:
+                    throw new IOException("unknown type class " + typeClass);
+                }
+
+                data.addType(types[i]);
+            }
+
+            int recordCount = buffer.getInt();
+
+            for (int i = 0; i < recordCount; i++) {
+                DataRecord record = new DataRecord(buffer.getLong(), readString());
+                int count = buffer.getInt();
+
+                for (int j = 0; j < count; j++) {
+                    DataType type = types[buffer.getInt()];
+                    double[] values = new double[buffer.getInt()];
+
+                    buffer.asDoubleBuffer().get(values);
+                    buffer.position(buffer.position() + values.length * 8);
+
+                    record.addData(type, values);
+                }
+
+                data.addRecord(record);
+            }
+
+            return data;
+        }
+
+        private String[] readFields() {
+            String[] fields = new String[buffer.getInt()];
+
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = readString();
+            }
+
+            return fields;
+        }
+
+        String readString() {
+            int marker = buffer.getInt();
+
+            if (marker == NULL_STRING) {
+                return null;
+            }
+            else if (marker == NEW_STRING) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+
+                // shared through the current symbol table like the parsers do, so Strings are shared across DataSets
+                String value = new String(bytes, StandardCharsets.UTF_8);
+                SymbolTable symbols = SymbolTable.getCurrent();
+
+                if (symbols != null) {
+                    value = symbols.get(value);
+                }
+                strings.add(value);
+
+                return value;
+            }
+            else {
+                return strings.get(marker);
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ public final class Process implements Comparable<Process> {
     private final long startTime;
     private long endTime = Long.MAX_VALUE;
 
+    private final String typeName;
     private final String typeId;
 
     public Process(int id, long startTime, String name) {
@@ -31,6 +32,7 @@ public final class Process implements Comparable<Process> {
         this.startTime = startTime;
         this.name = name;
         this.commandLine = "";
+        this.typeName = typeName;
 
         if (id == -1) {
             this.typeId = typeName + "-ALL-" + name;
@@ -92,6 +94,11 @@ public final class Process implements Comparable<Process> {
         return typeId;
     }
 
+    // the type name given to the constructor, for DataSetCache
+    String getTypeName() {
+        return typeName;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) {
@@ -0,0 +1,205 @@
+package com.ibm.nmon.data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Ranks all the processes in a {@link DataSet} by the weighted average of a single field over any time range. Each
+ * process is ranked using the first of the given fields that its {@link ProcessDataType} has. Processes with none of
+ * the fields are not ranked.
+ * </p>
+ *
+ * <p>
+ * For each process, the ranking holds prefix sums of the field's values and squared values, but only from the first to
+ * the last record that has data for the process. Most processes are short lived, so this is much smaller than a prefix
+ * sum over every record. Outside that range, values are 0, as in {@link com.ibm.nmon.analysis.AnalysisRecord}. The
+ * weighted average for any range is then available in constant time, without reading the DataRecords.
+ * </p>
+ *
+ * <p>
+ * Rankings are created by {@link RangeIndex#getProcessRanking(String...)} and are discarded with the index when the
+ * DataSet changes.
+ * </p>
+ */
+public final class ProcessRanking {
+    private final long[] times;
+
+    private final ProcessDataType[] types;
+
+    // for each process, the first row with data and prefix sums from that row to the last row with data
+    private final int[] firstRows;
+    private final double[][] sums;
+    private final double[][] squares;
+
+    ProcessRanking(DataSet data, String[] fields) {
+        // a single snapshot of the records; records may be added or replaced while the ranking is built
+        List<DataRecord> records = new java.util.ArrayList<DataRecord>(data.getRecordCount());
+
+        for (DataRecord record : data.getRecords()) {
+            records.add(record);
+        }
+
+        times = new long[records.size()];
+
+        for (int row = 0; row < times.length; row++) {
+            times[row] = records.get(row).getTime();
+        }
+
+        List<ProcessDataType> rankedTypes = new java.util.ArrayList<ProcessDataType>();
+        List<Integer> fieldIndexes = new java.util.ArrayList<Integer>();
+
+        for (DataType type : data.getTypes()) {
+            if (type instanceof ProcessDataType) {
+                for (String field : fields) {
+                    if (type.hasField(field)) {
+                        rankedTypes.add((ProcessDataType) type);
+                        fieldIndexes.add(type.getFieldIndex(field));
+                        break;
+                    }
+                }
+            }
+        }
+
+        types = rankedTypes.toArray(new ProcessDataType[0]);
+
+        firstRows = new int[types.length];
+        sums = new double[types.length][];
+        squares = new double[types.length][];
+
+        // records hold the same type instances as the DataSet
+        Map<DataType, Integer> typeToIndex = new java.util.IdentityHashMap<DataType, Integer>(types.length * 2);
+
+        for (int i = 0; i < types.length; i++) {
+            typeToIndex.put(types[i], i);
+        }
+
+        int[] lastRows = new int[types.length];
+        java.util.Arrays.fill(firstRows, -1);
+
+        // first pass finds each process' lifetime
+        int row = 0;
+
+        for (DataRecord record : records) {
+            for (DataType type : record.getTypes()) {
+                Integer i = typeToIndex.get(type);
+
+                if (i != null) {
+                    if (firstRows[i] == -1) {
+                        firstRows[i] = row;
+                    }
+
+                    lastRows[i] = row;
+                }
+            }
+
+            ++row;
+        }
+
+        for (int i = 0; i < types.length; i++) {
+            int length = firstRows[i] == -1 ? 1 : lastRows[i] - firstRows[i] + 2;
+
+            sums[i] = new double[length];
+            squares[i] = new double[length];
+        }
+
+        // second pass stores the values, then convert them to prefix sums
+        row = 0;
+
+        for (DataRecord record : records) {
+            for (DataType type : record.getTypes()) {
+                Integer i = typeToIndex.get(type);
+
+                if (i != null) {
+                    double value = record.getData(type)[fieldIndexes.get(i)];
+
+                    // missing values are 0 for processes
+                    if (!Double.isNaN(value)) {
+                        sums[i][row - firstRows[i] + 1] = value;
+                        squares[i][row - firstRows[i] + 1] = value * value;
+                    }
+                }
+            }
+
+            ++row;
+        }
+
+        for (int i = 0; i < types.length; i++) {
+            double[] processSums = sums[i];
+            double[] processSquares = squares[i];
+
+            for (int j = 1; j < processSums.length; j++) {
+                processSums[j] += processSums[j - 1];
+                processSquares[j] += processSquares[j - 1];
+            }
+        }
+    }
+
+    /**
+     * @return the number of processes that can be ranked
+     */
+    public int getProcessCount() {
+        return types.length;
+    }
+
+    /**
+     * Get the processes with the highest weighted averages during the given time range, inclusive, highest first.
+     * Processes with a <code>NaN</code> weighted average, i.e. those without any activity, are not included. As when
+     * sorting by value, only the process with the latest type id is kept when multiple processes have the same weighted
+     * average.
+     */
+    public List<ProcessDataType> getTop(int count, long start, long end) {
+        int from = lowerBound(start);
+        int to = Math.max(from, upperBound(end));
+
+        // bounded to count entries by dropping the lowest value; equivalent to sorting everything and keeping the first
+        // count since a value that is dropped can never be in the top count again
+        java.util.TreeMap<Double, ProcessDataType> top = new java.util.TreeMap<Double, ProcessDataType>(
+                java.util.Collections.reverseOrder());
+
+        for (int i = 0; i < types.length; i++) {
+            double value = getWeightedAverage(i, from, to);
+
+            if (!Double.isNaN(value)) {
+                top.put(value, types[i]);
+
+                if (top.size() > count) {
+                    top.pollLastEntry();
+                }
+            }
+        }
+
+        return new java.util.ArrayList<ProcessDataType>(top.values());
+    }
+
+    // rows [from, to)
+    private double getWeightedAverage(int i, int from, int to) {
+        int first = firstRows[i];
+
+        if (first == -1) {
+            return Double.NaN;
+        }
+
+        double[] processSums = sums[i];
+        double[] processSquares = squares[i];
+
+        // clip to the process' lifetime
+        int lo = Math.min(Math.max(from - first, 0), processSums.length - 1);
+        int hi = Math.min(Math.max(to - first, 0), processSums.length - 1);
+
+        // NaN when the sum is 0
+        return (processSquares[hi] - processSquares[lo]) / (processSums[hi] - processSums[lo]);
+    }
+
+    private int lowerBound(long time) {
+        int idx = java.util.Arrays.binarySearch(times, time);
+
+        return idx >= 0 ? idx : -(idx + 1);
+    }
+
+    private int upperBound(long time) {
+        int idx = java.util.Arrays.binarySearch(times, time);
+
+        return idx >= 0 ? idx + 1 : -(idx + 1);
+    }
+}
@@ -0,0 +1,469 @@
+package com.ibm.nmon.data;
+
+import java.lang.ref.SoftReference;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Range query index over the data in a {@link DataSet}. For each field of a DataType, the index holds prefix sums of
+ * the value count, the values and the squared values along with a sparse table of the minimum and maximum of each
+ * block of records and a segment tree of each block's mean and sum of squared differences from the mean. Count, sum,
+ * average, standard deviation, minimum and maximum for any time range are then available without reading the
+ * DataRecords. Sums take constant time once the range is found. Minimums and maximums use the sparse table for whole
+ * blocks and only scan the partial blocks at either end of the range. Standard deviations combine the O(log n) tree
+ * nodes that cover the whole blocks, which avoids the cancellation errors of calculating them from sums of squares.
+ * </p>
+ *
+ * <p>
+ * Values are handled the same as {@link com.ibm.nmon.analysis.AnalysisRecord}: missing values are ignored except for
+ * processes, where they are counted as 0.
+ * </p>
+ *
+ * <p>
+ * Like {@link DataRollup}, the index for a DataType is built lazily, for all fields at once, from the DataSet's
+ * {@link DataSet#getColumns(DataType) columns} the first time it is requested and is cached as a SoftReference. The
+ * DataSet discards its index whenever records are added or changed.
+ * </p>
+ *
+ * <p>
+ * The index also holds {@link ProcessRanking ProcessRankings}, which are built and cached the same way.
+ * </p>
+ */
+public final class RangeIndex {
+    // 32 records per block
+    private static final int BLOCK_SHIFT = 5;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private final DataSet data;
+
+    private final Map<DataType, SoftReference<TypeIndex>> types = new java.util.HashMap<DataType, SoftReference<TypeIndex>>();
+    // keyed by field names
+    private final Map<List<String>, SoftReference<ProcessRanking>> rankings =
+            new java.util.HashMap<List<String>, SoftReference<ProcessRanking>>();
+
+    RangeIndex(DataSet data) {
+        this.data = data;
+    }
+
+    /**
+     * @return statistics for the field during the given time range, inclusive
+     */
+    public Summary getSummary(DataType type, int field, long start, long end) {
+        if ((field < 0) || (field >= type.getFieldCount())) {
+            throw new ArrayIndexOutOfBoundsException(field);
+        }
+
+        TypeIndex index = getTypeIndex(type);
+
+        int from = index.columns.lowerBound(start);
+        int to = Math.max(from, index.columns.upperBound(end));
+
+        return index.getSummary(field, from, to);
+    }
+
+    /**
+     * @return a ranking of all the processes by the first of the given fields that each process has
+     */
+    public ProcessRanking getProcessRanking(String... fields) {
+        List<String> key = java.util.Arrays.asList(fields.clone());
+
+        synchronized (types) {
+            SoftReference<ProcessRanking> rankingRef = rankings.get(key);
+
+            if (rankingRef != null) {
+                ProcessRanking ranking = rankingRef.get();
+
+                if (ranking != null) {
+                    return ranking;
+                }
+                // else valid SoftReference but the actual ranking has been GC'ed so recreate it
+            }
+
+            ProcessRanking ranking = new ProcessRanking(data, fields.clone());
+
+            rankings.put(key, new SoftReference<ProcessRanking>(ranking));
+
+            return ranking;
+        }
+    }
+
+    private TypeIndex getTypeIndex(DataType type) {
+        synchronized (types) {
+            SoftReference<TypeIndex> indexRef = types.get(type);
+
+            if (indexRef != null) {
+                TypeIndex index = indexRef.get();
+
+                if (index != null) {
+                    return index;
+                }
+                // else valid SoftReference but the actual index has been GC'ed so recreate it
+            }
+
+            TypeIndex index = new TypeIndex(type);
+
+            types.put(type, new SoftReference<TypeIndex>(index));
+
+            return index;
+        }
+    }
+
+    private static double min(double a, double b) {
+        if (Double.isNaN(a)) {
+            return b;
+        }
+        else if (Double.isNaN(b)) {
+            return a;
+        }
+        else {
+            return a < b ? a : b;
+        }
+    }
+
+    private static double max(double a, double b) {
+        if (Double.isNaN(a)) {
+            return b;
+        }
+        else if (Double.isNaN(b)) {
+            return a;
+        }
+        else {
+            return a > b ? a : b;
+        }
+    }
+
+    // count, mean and sum of squared differences from the mean of a set of values
+    private static final class Moments {
+        private int count = 0;
+        private double mean = 0;
+        private double m2 = 0;
+
+        // Welford's algorithm, as in AnalysisRecord
+        void add(double value) {
+            ++count;
+
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+
+        // Chan et al.'s parallel algorithm
+        void add(int otherCount, double otherMean, double otherM2) {
+            if (otherCount == 0) {
+                return;
+            }
+            else if (count == 0) {
+                count = otherCount;
+                mean = otherMean;
+                m2 = otherM2;
+            }
+            else {
+                int total = count + otherCount;
+                double delta = otherMean - mean;
+
+                mean += delta * otherCount / total;
+                m2 += otherM2 + delta * delta * ((double) count * otherCount / total);
+                count = total;
+            }
+        }
+    }
+
+    private final class TypeIndex {
+        // rows in the index correspond to the rows of the columns
+        private final DataColumns columns;
+
+        // all indexed by field, then row
+        // values are NaN when missing
+        private final double[][] values;
+
+        // prefix arrays have size + 1 entries; the sum of rows [from, to) is prefix[to] - prefix[from]
+        private final int[][] counts;
+
+        private final double[][] sums;
+        private final double[][] squares;
+
+        // sparse tables over blocks; level k, block b covers blocks b to b + 2^k - 1
+        private final double[][][] minimums;
+        private final double[][][] maximums;
+
+        // segment trees over blocks; node 1 is the root, the children of node i are 2i and 2i + 1 and block b is
+        // node leaves + b
+        private final int leaves;
+        private final int[][] nodeCounts;
+        private final double[][] nodeMeans;
+        private final double[][] nodeM2s;
+
+        TypeIndex(DataType type) {
+            // a single snapshot of the data; records may be added while the index is built
+            columns = data.getColumns(type);
+
+            int size = columns.getRowCount();
+            int fieldCount = type.getFieldCount();
+
+            values = new double[fieldCount][];
+
+            boolean isProcess = type.getClass() == ProcessDataType.class;
+
+            for (int field = 0; field < fieldCount; field++) {
+                values[field] = columns.getValues(field);
+
+                if (isProcess) {
+                    // for processes, missing values are 0 since NMON does not output data for processes
+                    // if there is no activity
+                    // copy so the columns are not changed
+                    values[field] = values[field].clone();
+
+                    for (int row = 0; row < size; row++) {
+                        if (Double.isNaN(values[field][row])) {
+                            values[field][row] = 0;
+                        }
+                    }
+                }
+            }
+
+            counts = new int[fieldCount][size + 1];
+            sums = new double[fieldCount][size + 1];
+            squares = new double[fieldCount][size + 1];
+
+            int blocks = (size + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+            int levels = 1;
+
+            while ((1 << levels) <= blocks) {
+                ++levels;
+            }
+
+            minimums = new double[fieldCount][levels][];
+            maximums = new double[fieldCount][levels][];
+
+            leaves = Integer.highestOneBit(Math.max(1, blocks - 1)) << 1;
+
+            nodeCounts = new int[fieldCount][leaves * 2];
+            nodeMeans = new double[fieldCount][leaves * 2];
+            nodeM2s = new double[fieldCount][leaves * 2];
+
+            for (int field = 0; field < fieldCount; field++) {
+                double[] fieldValues = values[field];
+                int[] fieldCounts = counts[field];
+
+                double[] fieldSums = sums[field];
+                double[] fieldSquares = squares[field];
+
+                for (int i = 0; i < size; i++) {
+                    double value = fieldValues[i];
+
+                    if (Double.isNaN(value)) {
+                        fieldCounts[i + 1] = fieldCounts[i];
+                        fieldSums[i + 1] = fieldSums[i];
+                        fieldSquares[i + 1] = fieldSquares[i];
+                    }
+                    else {
+                        fieldCounts[i + 1] = fieldCounts[i] + 1;
+                        fieldSums[i + 1] = fieldSums[i] + value;
+                        fieldSquares[i + 1] = fieldSquares[i] + value * value;
+                    }
+                }
+
+                double[] blockMinimums = new double[blocks];
+                double[] blockMaximums = new double[blocks];
+
+                int[] fieldNodeCounts = nodeCounts[field];
+                double[] fieldNodeMeans = nodeMeans[field];
+                double[] fieldNodeM2s = nodeM2s[field];
+
+                for (int b = 0; b < blocks; b++) {
+                    double minimum = Double.NaN;
+                    double maximum = Double.NaN;
+
+                    Moments moments = new Moments();
+
+                    for (int i = b << BLOCK_SHIFT, end = Math.min(size, i + BLOCK_SIZE); i < end; i++) {
+                        minimum = min(minimum, fieldValues[i]);
+                        maximum = max(maximum, fieldValues[i]);
+
+                        if (!Double.isNaN(fieldValues[i])) {
+                            moments.add(fieldValues[i]);
+                        }
+                    }
+
+                    blockMinimums[b] = minimum;
+                    blockMaximums[b] = maximum;
+
+                    fieldNodeCounts[leaves + b] = moments.count;
+                    fieldNodeMeans[leaves + b] = moments.mean;
+                    fieldNodeM2s[leaves + b] = moments.m2;
+                }
+
+                for (int node = leaves - 1; node > 0; node--) {
+                    Moments moments = new Moments();
+
+                    moments.add(fieldNodeCounts[node * 2], fieldNodeMeans[node * 2], fieldNodeM2s[node * 2]);
+                    moments.add(fieldNodeCounts[node * 2 + 1], fieldNodeMeans[node * 2 + 1],
+                            fieldNodeM2s[node * 2 + 1]);
+
+                    fieldNodeCounts[node] = moments.count;
+                    fieldNodeMeans[node] = moments.mean;
+                    fieldNodeM2s[node] = moments.m2;
+                }
+
+                minimums[field][0] = blockMinimums;
+                maximums[field][0] = blockMaximums;
+
+                for (int k = 1; k < levels; k++) {
+                    int width = 1 << (k - 1);
+                    int length = blocks - (1 << k) + 1;
+
+                    double[] previousMinimums = minimums[field][k - 1];
+                    double[] previousMaximums = maximums[field][k - 1];
+
+                    double[] levelMinimums = new double[length];
+                    double[] levelMaximums = new double[length];
+
+                    for (int b = 0; b < length; b++) {
+                        levelMinimums[b] = min(previousMinimums[b], previousMinimums[b + width]);
+                        levelMaximums[b] = max(previousMaximums[b], previousMaximums[b + width]);
+                    }
+
+                    minimums[field][k] = levelMinimums;
+                    maximums[field][k] = levelMaximums;
+                }
+            }
+        }
+
+        Summary getSummary(int field, int from, int to) {
+            int count = counts[field][to] - counts[field][from];
+
+            if (count == 0) {
+                return new Summary(0, 0, 0, 0, Double.NaN, Double.NaN);
+            }
+
+            double[] fieldValues = values[field];
+            double minimum = Double.NaN;
+            double maximum = Double.NaN;
+
+            Moments moments = new Moments();
+
+            // whole blocks in the range
+            int firstBlock = (from + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+            int lastBlock = to >> BLOCK_SHIFT;
+
+            if (firstBlock < lastBlock) {
+                int k = 31 - Integer.numberOfLeadingZeros(lastBlock - firstBlock);
+                int other = lastBlock - (1 << k);
+
+                minimum = min(minimums[field][k][firstBlock], minimums[field][k][other]);
+                maximum = max(maximums[field][k][firstBlock], maximums[field][k][other]);
+
+                addBlocks(moments, field, firstBlock, lastBlock);
+
+                // partial blocks at either end
+                for (int i = from; i < (firstBlock << BLOCK_SHIFT); i++) {
+                    minimum = min(minimum, fieldValues[i]);
+                    maximum = max(maximum, fieldValues[i]);
+                    addValue(moments, fieldValues[i]);
+                }
+
+                for (int i = lastBlock << BLOCK_SHIFT; i < to; i++) {
+                    minimum = min(minimum, fieldValues[i]);
+                    maximum = max(maximum, fieldValues[i]);
+                    addValue(moments, fieldValues[i]);
+                }
+            }
+            else {
+                // range is within a single block or spans 2 partial blocks
+                for (int i = from; i < to; i++) {
+                    minimum = min(minimum, fieldValues[i]);
+                    maximum = max(maximum, fieldValues[i]);
+                    addValue(moments, fieldValues[i]);
+                }
+            }
+
+            double sum = sums[field][to] - sums[field][from];
+            double sumOfSquares = squares[field][to] - squares[field][from];
+
+            return new Summary(count, sum, sumOfSquares, moments.m2, minimum, maximum);
+        }
+
+        // blocks [from, to)
+        private void addBlocks(Moments moments, int field, int from, int to) {
+            int[] fieldNodeCounts = nodeCounts[field];
+            double[] fieldNodeMeans = nodeMeans[field];
+            double[] fieldNodeM2s = nodeM2s[field];
+
+            for (int lo = from + leaves, hi = to + leaves; lo < hi; lo >>= 1, hi >>= 1) {
+                if ((lo & 1) == 1) {
+                    moments.add(fieldNodeCounts[lo], fieldNodeMeans[lo], fieldNodeM2s[lo]);
+                    ++lo;
+                }
+
+                if ((hi & 1) == 1) {
+                    --hi;
+                    moments.add(fieldNodeCounts[hi], fieldNodeMeans[hi], fieldNodeM2s[hi]);
+                }
+            }
+        }
+
+        private void addValue(Moments moments, double value) {
+            if (!Double.isNaN(value)) {
+                moments.add(value);
+            }
+        }
+    }
+
+    /**
+     * Statistics for a single field over a range of time. If there are no values in the range, the count and sum are
+     * 0 and all other statistics are <code>NaN</code>.
+     */
+    public static final class Summary {
+        private final int count;
+        private final double sum;
+        private final double sumOfSquares;
+        private final double m2;
+        private final double minimum;
+        private final double maximum;
+
+        Summary(int count, double sum, double sumOfSquares, double m2, double minimum, double maximum) {
+            this.count = count;
+            this.sum = sum;
+            this.sumOfSquares = sumOfSquares;
+            this.m2 = m2;
+            this.minimum = minimum;
+            this.maximum = maximum;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getAverage() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        /**
+         * @return the sum of the squares of the values divided by the sum of the values
+         */
+        public double getWeightedAverage() {
+            return count == 0 ? Double.NaN : sumOfSquares / sum;
+        }
+
+        public double getMinimum() {
+            return minimum;
+        }
+
+        public double getMaximum() {
+            return maximum;
+        }
+
+        /**
+         * @return the population standard deviation
+         */
+        public double getStandardDeviation() {
+            return count == 0 ? Double.NaN : Math.sqrt(m2 / count);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.ibm.nmon.data;
 
 import org.slf4j.Logger;
 
+import java.util.List;
 import java.util.Set;
 import java.util.Map;
 import java.util.TreeMap;
@@ -146,6 +147,42 @@ public final class SystemDataSet extends ProcessDataSet {
         }
     }
 
+    /**
+     * Add new records for a source file that has already been added to this data set, i.e. one that is still being
+     * written. The source file's interval is extended to cover the new data. Metadata and system info are not updated.
+     */
+    public void appendData(String sourceFile, DataSet newData) {
+        long startT = System.nanoTime();
+
+        Interval existing = null;
+
+        for (Map.Entry<Interval, String> entry : sourceFiles.entrySet()) {
+            if (entry.getValue().equals(sourceFile)) {
+                existing = entry.getKey();
+                break;
+            }
+        }
+
+        if (existing == null) {
+            throw new IllegalArgumentException(sourceFile + " has not been added to " + getHostname());
+        }
+
+        if (newData.getRecordCount() == 0) {
+            return;
+        }
+
+        merge(newData);
+
+        sourceFiles.remove(existing);
+        sourceFiles.put(new Interval(existing.getStart(), Math.max(existing.getEnd(), newData.getEndTime())),
+                sourceFile);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("{} new records for {} appended to data for {} in {}ms ", new Object[] {
+                    newData.getRecordCount(), sourceFile, getHostname(), (System.nanoTime() - startT) / 1000000.0d });
+        }
+    }
+
     private void merge(DataSet newData) {
         if (newData == null) {
             throw new IllegalArgumentException("DataSet cannot be null");
@@ -155,66 +192,125 @@ public final class SystemDataSet extends ProcessDataSet {
             return;
         }
 
-        Set<Long> combinedTimes = null;
+        // existing records will be updated with the new data
+        invalidateRollup();
 
-        // minor optimization - if this data set is empty, only addNewType will be called below and
-        // combinedTimes will not be needed but initialize it here to avoid doing that once per type
-        // when it is needed
-        if (getRecordCount() != 0) {
-            combinedTimes = new java.util.HashSet<Long>(getTimes());
-            combinedTimes.addAll(newData.getTimes());
-        }
+        // find or create the record to update for every new record once, rather than once per type
+        DataRecord[] recordsToUpdate = alignRecords(newData);
+
+        // assume a process with the same name and pid is the same for merging purposes
+        Map<String, Process> processes = null;
 
         for (DataType newType : newData.getTypes()) {
             if (newType instanceof ProcessDataType) {
                 // handle processes differently since the the start time is calculated for each file
                 // processed
-                // assume a process with the same name and pid is the same for merging purposes
                 ProcessDataType newProcessType = (ProcessDataType) newType;
                 Process newProcess = newProcessType.getProcess();
-                Process existingProcess = null;
 
-                for (Process toSearch : getProcesses()) {
-                    if (newProcess.getName().equals(toSearch.getName()) && (newProcess.getId() == toSearch.getId())) {
-                        existingProcess = toSearch;
-                        break;
-                    }
+                if (processes == null) {
+                    processes = indexProcesses();
                 }
 
+                String key = getProcessKey(newProcess);
+                Process existingProcess = processes.get(key);
+
                 if (existingProcess != null) {
-                    addProcessData(newData, newProcessType, existingProcess);
+                    processes.put(key, addProcessData(newData, newProcessType, existingProcess, recordsToUpdate));
                 }
                 else {
                     addProcess(newProcess);
                     addType(newProcessType);
-                    addDataForType(newData, newProcessType);
+                    addDataForType(newData, newProcessType, recordsToUpdate);
+
+                    processes.put(key, newProcess);
                 }
             }
             else { // not a process
                 if (!containsType(newType.getId())) {
                     // new type - add it to the data
                     addType(newType);
-                    addDataForType(newData, newType);
+                    addDataForType(newData, newType, recordsToUpdate);
                 }
                 else {
-                    mergeDataForType(newData, newType, combinedTimes);
+                    mergeDataForType(newData, newType, recordsToUpdate);
                 }
             }
         }
     }
 
-    private void addDataForType(DataSet data, DataType type) {
+    /**
+     * Match the new records to the existing records with the same time, creating records for any times that are not
+     * already in this data set. Both sets of records are sorted, so this is a single merge join over the times where
+     * the data sets overlap. When they do not overlap at all, the new records are simply appended.
+     *
+     * @return the record to update for each new record, in the same order as <code>newData.getRecords()</code>
+     */
+    private DataRecord[] alignRecords(DataSet newData) {
         long start = System.nanoTime();
+
+        DataRecord[] recordsToUpdate = new DataRecord[newData.getRecordCount()];
+        List<DataRecord> toAdd = new java.util.ArrayList<DataRecord>();
+
+        java.util.Iterator<DataRecord> existing = getRecords(newData.getStartTime(), newData.getEndTime()).iterator();
+        DataRecord existingRecord = existing.hasNext() ? existing.next() : null;
+
         int n = 0;
 
-        for (DataRecord newRecord : data.getRecords()) {
+        for (DataRecord newRecord : newData.getRecords()) {
             long time = newRecord.getTime();
-            DataRecord recordToUpdate = getRecord(time);
 
-            if (recordToUpdate == null) {
-                recordToUpdate = new DataRecord(time, newRecord.getTimestamp());
-                addRecord(recordToUpdate);
+            while ((existingRecord != null) && (existingRecord.getTime() < time)) {
+                existingRecord = existing.hasNext() ? existing.next() : null;
+            }
+
+            if ((existingRecord != null) && (existingRecord.getTime() == time)) {
+                recordsToUpdate[n++] = existingRecord;
+            }
+            else {
+                DataRecord newRecordToUpdate = new DataRecord(time, newRecord.getTimestamp());
+
+                recordsToUpdate[n++] = newRecordToUpdate;
+                toAdd.add(newRecordToUpdate);
+            }
+        }
+
+        addRecords(toAdd);
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{} of {} data records for {} added in {}ms ",
+                    new Object[] { toAdd.size(), n, newData, (System.nanoTime() - start) / 1000000.0d });
+        }
+
+        return recordsToUpdate;
+    }
+
+    private Map<String, Process> indexProcesses() {
+        Map<String, Process> processes = new java.util.HashMap<String, Process>(getProcessCount() * 2);
+
+        for (Process process : getProcesses()) {
+            String key = getProcessKey(process);
+
+            // keep the first process for duplicate keys
+            if (!processes.containsKey(key)) {
+                processes.put(key, process);
             }
+        }
+
+        return processes;
+    }
+
+    private static String getProcessKey(Process process) {
+        return process.getId() + " " + process.getName();
+    }
+
+    private void addDataForType(DataSet data, DataType type, DataRecord[] recordsToUpdate) {
+        long start = System.nanoTime();
+        int n = 0;
+        int i = 0;
+
+        for (DataRecord newRecord : data.getRecords()) {
+            DataRecord recordToUpdate = recordsToUpdate[i++];
 
             if (recordToUpdate.hasData(type)) {
                 LOGGER.warn("not overwriting existing {} data at time {}", type, newRecord.getTimestamp());
@@ -237,9 +333,11 @@ public final class SystemDataSet extends ProcessDataSet {
         }
     }
 
-    private void addProcessData(DataSet data, ProcessDataType processType, Process existingProcess) {
+    private Process addProcessData(DataSet data, ProcessDataType processType, Process existingProcess,
+            DataRecord[] recordsToUpdate) {
         long start = System.nanoTime();
         int n = 0;
+        int i = 0;
 
         Process newProcess = processType.getProcess();
 
@@ -249,13 +347,7 @@ public final class SystemDataSet extends ProcessDataSet {
         ProcessDataType updatedProcessType = getType(updatedProcess);
 
         for (DataRecord newRecord : data.getRecords()) {
-            long time = newRecord.getTime();
-            DataRecord recordToUpdate = getRecord(time);
-
-            if (recordToUpdate == null) {
-                recordToUpdate = new DataRecord(time, newRecord.getTimestamp());
-                addRecord(recordToUpdate);
-            }
+            DataRecord recordToUpdate = recordsToUpdate[i++];
 
             if (recordToUpdate.hasData(updatedProcessType)) {
                 LOGGER.warn("not overwriting existing {} data at time {}", updatedProcessType,
@@ -278,9 +370,11 @@ public final class SystemDataSet extends ProcessDataSet {
             LOGGER.trace("{} of {} process data records for {} {} added in {}ms ", new Object[] { n,
                     data.getRecordCount(), data, updatedProcessType, (System.nanoTime() - start) / 1000000.0d });
         }
+
+        return updatedProcess;
     }
 
-    private void mergeDataForType(DataSet newData, DataType newType, Set<Long> combinedTimes) {
+    private void mergeDataForType(DataSet newData, DataType newType, DataRecord[] recordsToUpdate) {
         DataType existingType = getType(newType.getId());
 
         // union of the fields ...
@@ -291,7 +385,7 @@ public final class SystemDataSet extends ProcessDataSet {
         // just add the records without overwriting the existing
         if ((combinedFields.size() == existingType.getFieldCount())
                 && (combinedFields.size() == newType.getFieldCount())) {
-            addDataForType(newData, newType);
+            addDataForType(newData, newType, recordsToUpdate);
             return;
         }
         // otherwise, actually merge the data
@@ -316,12 +410,20 @@ public final class SystemDataSet extends ProcessDataSet {
 
         int fieldCount = combinedFields.size();
 
+        // every new time already has a record, so walk all the records alongside the new records
+        java.util.Iterator<DataRecord> newRecords = newData.getRecords().iterator();
+        DataRecord nextNewRecord = newRecords.next();
+
         // for every record, re-add the field values when available
-        for (long time : combinedTimes) {
-            DataRecord existingRecord = getRecord(time);
-            DataRecord newRecord = newData.getRecord(time);
+        for (DataRecord existingRecord : getRecords()) {
+            DataRecord newRecord = null;
+
+            if ((nextNewRecord != null) && (nextNewRecord.getTime() == existingRecord.getTime())) {
+                newRecord = nextNewRecord;
+                nextNewRecord = newRecords.hasNext() ? newRecords.next() : null;
+            }
 
-            boolean hasExistingData = (existingRecord != null) && existingRecord.hasData(existingType);
+            boolean hasExistingData = existingRecord.hasData(existingType);
             boolean hasNewData = (newRecord != null) && newRecord.hasData(newType);
 
             if (hasExistingData || hasNewData) {
@@ -359,22 +461,15 @@ public final class SystemDataSet extends ProcessDataSet {
                     ++n;
                 }
 
-                if (existingRecord == null) {
-                    DataRecord combinedRecord = new DataRecord(newRecord.getTime(), newRecord.getTimestamp());
-                    combinedRecord.addData(combinedType, combinedData);
-                    addRecord(combinedRecord);
-                }
-                else {
-                    existingRecord.removeData(existingType);
-                    existingRecord.addData(combinedType, combinedData);
-                }
+                existingRecord.removeData(existingType);
+                existingRecord.addData(combinedType, combinedData);
             }
             // else no data at this time from either new or existing,
             // just leave the record empty for this type
         }
 
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("{} data records for {} {} merged in {}ms ", new Object[] { combinedTimes.size(), newData,
+            LOGGER.trace("{} data records for {} {} merged in {}ms ", new Object[] { getRecordCount(), newData,
                     combinedType, (System.nanoTime() - start) / 1000000.0d });
         }
     }
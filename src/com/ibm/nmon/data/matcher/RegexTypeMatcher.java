@@ -18,6 +18,10 @@ public final class RegexTypeMatcher implements TypeMatcher {
         matcher = Pattern.compile(regex).matcher("");
     }
 
+    public String getRegex() {
+        return matcher.pattern().pattern();
+    }
+
     @Override
     public List<DataType> getMatchingTypes(DataSet data) {
         if ((data == null) || (data.getTypeCount() == 0)) {
@@ -13,4 +13,10 @@ public interface DataPostProcessor {
     public void addDataTypes(DataSet data);
 
     public void postProcess(DataSet data, DataRecord record);
+
+    /**
+     * Does this post processor read the data for the given type? Parsers that skip the data for some types must still
+     * parse these types so the data for the types added by this post processor can be created.
+     */
+    public boolean dependsOn(String typeId, String subId);
 }
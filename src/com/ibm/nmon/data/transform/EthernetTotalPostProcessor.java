@@ -136,4 +136,10 @@ public final class EthernetTotalPostProcessor implements DataPostProcessor {
 
         record.addData(ethernet, ethernetData);
     }
+
+    @Override
+    public boolean dependsOn(String typeId, String subId) {
+        return typeId.equals(typePrefix) || typeId.equals(typePrefix + "ERROR") || typeId.equals(typePrefix + "PACKET")
+                || typeId.equals(typePrefix + "SIZE");
+    }
 }
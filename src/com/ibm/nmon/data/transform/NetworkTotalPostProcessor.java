@@ -121,4 +121,10 @@ public final class NetworkTotalPostProcessor implements DataPostProcessor {
 
         record.addData(total, totalData);
     }
+
+    @Override
+    public boolean dependsOn(String typeId, String subId) {
+        return typeId.equals(typePrefix) || typeId.equals(typePrefix + "ERROR") || typeId.equals(typePrefix + "PACKET")
+                || typeId.equals(typePrefix + "SIZE");
+    }
 }
@@ -20,10 +20,10 @@ import com.ibm.nmon.data.SubDataType;
  * <p>
  */
 public class WindowsBytesTransform implements DataTransform {
-    private static final Matcher VALID_TYPES = Pattern.compile(
-            "LogicalDisk.*|PhysicalDisk.*|Network Interface.*|Memory|System").matcher("");
+    private static final Pattern VALID_TYPES = Pattern.compile(
+            "LogicalDisk.*|PhysicalDisk.*|Network Interface.*|Memory|System");
     // match all Bytes, but not KBytes, MBytes, etc
-    private static final Matcher VALID_FIELDS = Pattern.compile("([^%].*?[^KMGTEP])?Bytes(.*)").matcher("");
+    private static final Pattern VALID_FIELDS = Pattern.compile("([^%].*?[^KMGTEP])?Bytes(.*)");
 
     private Map<String, Set<Integer>> changedFields = new java.util.HashMap<String, Set<Integer>>();
 
@@ -32,14 +32,14 @@ public class WindowsBytesTransform implements DataTransform {
         Set<Integer> changes = new java.util.HashSet<Integer>(fields.length);
 
         for (int i = 0; i < fields.length; i++) {
-            VALID_FIELDS.reset(fields[i]);
+            Matcher matcher = VALID_FIELDS.matcher(fields[i]);
 
-            if (VALID_FIELDS.matches()) {
+            if (matcher.matches()) {
                 if ("Memory".equals(id)) {
-                    fields[i] = VALID_FIELDS.replaceAll("$1MB$2");
+                    fields[i] = matcher.replaceAll("$1MB$2");
                 }
                 else {
-                    fields[i] = VALID_FIELDS.replaceAll("$1KB$2");
+                    fields[i] = matcher.replaceAll("$1KB$2");
                 }
 
                 changes.add(i);
@@ -78,7 +78,7 @@ public class WindowsBytesTransform implements DataTransform {
 
     @Override
     public boolean isValidFor(String typeId, String subId) {
-        return VALID_TYPES.reset(typeId).matches();
+        return VALID_TYPES.matcher(typeId).matches();
     }
 
     public void reset() {
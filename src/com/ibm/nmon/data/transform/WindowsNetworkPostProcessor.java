@@ -56,4 +56,9 @@ public final class WindowsNetworkPostProcessor implements DataPostProcessor {
 
         record.addData(total, totalData);
     }
+
+    @Override
+    public boolean dependsOn(String typeId, String subId) {
+        return typeId.startsWith("Network Interface");
+    }
 }
@@ -66,4 +66,9 @@ public class WindowsProcessPostProcessor implements DataPostProcessor {
             }
         }
     }
+
+    @Override
+    public boolean dependsOn(String typeId, String subId) {
+        return "Processor".equals(typeId) && !"Total".equals(subId);
+    }
 }
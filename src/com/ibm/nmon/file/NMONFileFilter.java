@@ -1,5 +1,7 @@
 package com.ibm.nmon.file;
 
+import com.ibm.nmon.parser.util.SnapshotIndex;
+
 public final class NMONFileFilter extends BaseFileFilter {
     public boolean accept(String pathname) {
         String name = pathname.toLowerCase();
@@ -14,8 +16,10 @@ public final class NMONFileFilter extends BaseFileFilter {
                 name = pathname.substring(idx + 1);
             }
 
+            // also ignore NMONParser's snapshot index files and the temp files used to write them
             return name.contains("nmon")
-                    && !(name.endsWith(".zip") || name.endsWith(".gz") || name.endsWith(".tar") || name.endsWith(".7z"));
+                    && !(name.endsWith(".zip") || name.endsWith(".gz") || name.endsWith(".tar") || name.endsWith(".7z")
+                            || name.contains(SnapshotIndex.SUFFIX));
         }
     }
 
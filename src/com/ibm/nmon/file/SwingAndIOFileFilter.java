@@ -4,6 +4,8 @@ import java.io.File;
 
 import javax.swing.filechooser.FileFilter;
 
+import com.ibm.nmon.util.ArchiveHelper;
+
 /**
  * Swing file filter that delegates to a java.io FileFilter.
  */
@@ -21,7 +23,8 @@ public class SwingAndIOFileFilter extends FileFilter {
 
     @Override
     public final boolean accept(File f) {
-        if (acceptsDirectories && f.isDirectory()) {
+        // archives are containers like directories; the files inside them are filtered when recursing
+        if (acceptsDirectories && (f.isDirectory() || ArchiveHelper.isArchive(f.getName()))) {
             return true;
         }
         else {
@@ -2,11 +2,18 @@ package com.ibm.nmon.gui.analysis;
 
 import java.util.List;
 
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
 import com.ibm.nmon.gui.main.NMONVisualizerGui;
 import com.ibm.nmon.gui.table.ChoosableColumnTableModel;
 
 import com.ibm.nmon.analysis.AnalysisSetListener;
 import com.ibm.nmon.analysis.AnalysisSet;
+import com.ibm.nmon.analysis.AnalysisRecord;
+import com.ibm.nmon.analysis.BatchAnalyzer;
 
 import com.ibm.nmon.data.DataSetListener;
 import com.ibm.nmon.data.DataSet;
@@ -14,8 +21,16 @@ import com.ibm.nmon.data.DataType;
 
 
 /**
+ * <p>
  * Base table model that maps a row number to a measurement in an AnalysisSet. Updates to the model
  * are handled as an AnalysisSetListener.
+ * </p>
+ * 
+ * <p>
+ * Statistics are not calculated in the Swing event thread. Subclasses should use
+ * {@link #getAnalysisIfAvailable(DataSet, String)}, which analyzes the whole AnalysisSet for all
+ * DataSets in the background. The table is updated as results become available.
+ * </p>
  */
 public abstract class AnalysisSetTableModel extends ChoosableColumnTableModel implements DataSetListener,
         AnalysisSetListener {
@@ -27,6 +42,20 @@ public abstract class AnalysisSetTableModel extends ChoosableColumnTableModel im
 
     protected final List<String> keys = new java.util.LinkedList<String>();
 
+    // cached since gui.getDataSets() cannot be accessed by index
+    private List<DataSet> dataSets;
+
+    private Future<?> analysis;
+
+    // set when the latest analysis failed; analysis is not retried until the data or the analysis set changes
+    private boolean analysisFailed = false;
+
+    // incremented for every analysis started or cancelled; only the latest analysis updates the table
+    private int generation = 0;
+
+    // coalesce table updates from the analysis threads
+    private final AtomicBoolean updatePending = new AtomicBoolean();
+
     protected AnalysisSetTableModel(NMONVisualizerGui gui, AnalysisSet analysisSet) {
         super();
 
@@ -46,9 +75,125 @@ public abstract class AnalysisSetTableModel extends ChoosableColumnTableModel im
         return keys.size();
     }
 
+    protected final DataSet getDataSet(int index) {
+        if (dataSets == null) {
+            dataSets = new java.util.ArrayList<DataSet>(gui.getDataSetCount());
+
+            for (DataSet data : gui.getDataSets()) {
+                dataSets.add(data);
+            }
+        }
+
+        if (index >= dataSets.size()) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+
+        return dataSets.get(index);
+    }
+
+    protected final void resetDataSets() {
+        dataSets = null;
+    }
+
+    /**
+     * @return the AnalysisRecord for the given DataSet if it has statistics for the given key;
+     *         otherwise <code>null</code> and all the keys will be analyzed in the background
+     */
+    protected final AnalysisRecord getAnalysisIfAvailable(DataSet data, String key) {
+        AnalysisRecord record = gui.getAnalysis(data);
+
+        if (record.isAnalyzed(analysisSet.getType(key), analysisSet.getField(key))) {
+            return record;
+        }
+        else {
+            analyze();
+            return null;
+        }
+    }
+
+    private void analyze() {
+        // wait for the current analysis to complete; updating the table will then start another if needed
+        // updating the table after a failure would just run the same analysis again
+        if ((analysis != null) || analysisFailed) {
+            return;
+        }
+
+        List<AnalysisRecord> records = new java.util.ArrayList<AnalysisRecord>(gui.getDataSetCount());
+
+        for (DataSet data : gui.getDataSets()) {
+            records.add(gui.getAnalysis(data));
+        }
+
+        final int current = ++generation;
+
+        analysis = BatchAnalyzer.analyze(records, analysisSet, new BatchAnalyzer.Listener() {
+            @Override
+            public void analyzed(AnalysisRecord record, DataType type) {
+                if (updatePending.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            updatePending.set(false);
+
+                            if (current == generation) {
+                                fireAnalysisUpdated();
+                            }
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void analysisComplete(final RuntimeException error) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (current == generation) {
+                            analysis = null;
+                            analysisFailed = error != null;
+
+                            // BatchAnalyzer logs every failure, so show the log
+                            if (analysisFailed && !gui.getLogViewer().isVisible()) {
+                                gui.getLogViewer().setVisible(true);
+                            }
+
+                            fireAnalysisUpdated();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void cancelAnalysis() {
+        ++generation;
+        analysisFailed = false;
+
+        if (analysis != null) {
+            analysis.cancel(false);
+            analysis = null;
+        }
+    }
+
+    // update the values but not the rows so any table selection is not lost
+    private void fireAnalysisUpdated() {
+        if (getRowCount() > 0) {
+            fireTableRowsUpdated(0, getRowCount() - 1);
+        }
+    }
+
+    @Override
+    public void fireTableDataChanged() {
+        // the data, interval or granularity has changed so any running analysis is out of date
+        cancelAnalysis();
+
+        super.fireTableDataChanged();
+    }
+
     @Override
     public final void analysisAdded(DataType type) {
         int startIdx = keys.size();
+        analysisFailed = false;
 
         for (String field : type.getFields()) {
             keys.add(type.getKey(field));
@@ -60,6 +205,7 @@ public abstract class AnalysisSetTableModel extends ChoosableColumnTableModel im
     @Override
     public final void analysisAdded(DataType type, String field) {
         int startIdx = keys.size();
+        analysisFailed = false;
 
         keys.add(type.getKey(field));
 
@@ -88,21 +234,25 @@ public abstract class AnalysisSetTableModel extends ChoosableColumnTableModel im
 
     @Override
     public void dataAdded(DataSet data) {
+        resetDataSets();
         fireTableDataChanged();
     }
 
     @Override
     public void dataRemoved(DataSet data) {
+        resetDataSets();
         fireTableDataChanged();
     }
 
     @Override
     public void dataChanged(DataSet data) {
+        resetDataSets();
         fireTableDataChanged();
     }
 
     @Override
     public void dataCleared() {
+        resetDataSets();
         keys.clear();
         fireTableDataChanged();
     }
@@ -3,6 +3,7 @@ package com.ibm.nmon.gui.analysis;
 import java.util.BitSet;
 import java.util.List;
 
+import com.ibm.nmon.analysis.AnalysisRecord;
 import com.ibm.nmon.analysis.AnalysisSet;
 
 import com.ibm.nmon.analysis.Statistic;
@@ -91,22 +92,16 @@ public final class ByDataSetTableModel extends AnalysisSetTableModel {
             return analysisSet.getField(key);
         }
         else {
-            int n = 2;
+            DataSet data = getDataSet(columnIndex - 2);
 
-            DataSet data = null;
+            // statistics are null until they have been calculated
+            AnalysisRecord analysis = getAnalysisIfAvailable(data, key);
 
-            for (DataSet toTest : gui.getDataSets()) {
-                if (n++ == columnIndex) {
-                    data = toTest;
-                    break;
-                }
+            if (analysis == null) {
+                return null;
             }
 
-            if (data == null) {
-                throw new ArrayIndexOutOfBoundsException(columnIndex);
-            }
-
-            return stat.getValue(gui.getAnalysis(data), analysisSet.getType(key), analysisSet.getField(key));
+            return stat.getValue(analysis, analysisSet.getType(key), analysisSet.getField(key));
         }
     }
 
@@ -133,6 +128,7 @@ public final class ByDataSetTableModel extends AnalysisSetTableModel {
     }
 
     private void rebuildColumns() {
+        resetDataSets();
         columns.clear();
 
         columns.add("Data Type");
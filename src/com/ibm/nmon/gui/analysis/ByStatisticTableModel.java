@@ -4,6 +4,7 @@ import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeEvent;
 import java.util.BitSet;
 
+import com.ibm.nmon.analysis.AnalysisRecord;
 import com.ibm.nmon.analysis.AnalysisSet;
 import com.ibm.nmon.analysis.Statistic;
 
@@ -112,20 +113,7 @@ public final class ByStatisticTableModel extends AnalysisSetTableModel implement
         // file n, key n
 
         // need to map key rows from base model to actual rows
-        int fileIndex = rowIndex % gui.getDataSetCount();
-        DataSet data = null;
-        int n = 0;
-
-        for (DataSet toSearch : gui.getDataSets()) {
-            if (n++ == fileIndex) {
-                data = toSearch;
-                break;
-            }
-        }
-
-        if (data == null) {
-            throw new ArrayIndexOutOfBoundsException(rowIndex);
-        }
+        DataSet data = getDataSet(rowIndex % gui.getDataSetCount());
 
         int keyIndex = rowIndex / gui.getDataSetCount();
         String key = keys.get(keyIndex);
@@ -137,24 +125,34 @@ public final class ByStatisticTableModel extends AnalysisSetTableModel implement
             return analysisSet.getType(key);
         case 2:
             return analysisSet.getField(key);
+        }
+
+        // statistics are null until they have been calculated
+        AnalysisRecord analysis = getAnalysisIfAvailable(data, key);
+
+        if (analysis == null) {
+            return null;
+        }
+
+        switch (columnIndex) {
         case 3:
-            return gui.getAnalysis(data).getMinimum(analysisSet.getType(key), analysisSet.getField(key));
+            return analysis.getMinimum(analysisSet.getType(key), analysisSet.getField(key));
         case 4:
-            return gui.getAnalysis(data).getAverage(analysisSet.getType(key), analysisSet.getField(key));
+            return analysis.getAverage(analysisSet.getType(key), analysisSet.getField(key));
         case 5:
-            return gui.getAnalysis(data).getWeightedAverage(analysisSet.getType(key), analysisSet.getField(key));
+            return analysis.getWeightedAverage(analysisSet.getType(key), analysisSet.getField(key));
         case 6:
-            return gui.getAnalysis(data).getMaximum(analysisSet.getType(key), analysisSet.getField(key));
+            return analysis.getMaximum(analysisSet.getType(key), analysisSet.getField(key));
         case 7:
-            return gui.getAnalysis(data).getStandardDeviation(analysisSet.getType(key), analysisSet.getField(key));
+            return analysis.getStandardDeviation(analysisSet.getType(key), analysisSet.getField(key));
         case 8:
-            return gui.getAnalysis(data).getMedian(analysisSet.getType(key), analysisSet.getField(key));
+            return analysis.getMedian(analysisSet.getType(key), analysisSet.getField(key));
         case 9:
-            return gui.getAnalysis(data).getSum(analysisSet.getType(key), analysisSet.getField(key));
+            return analysis.getSum(analysisSet.getType(key), analysisSet.getField(key));
         case 10:
-            return gui.getAnalysis(data).getCount(analysisSet.getType(key), analysisSet.getField(key));
+            return analysis.getCount(analysisSet.getType(key), analysisSet.getField(key));
         case 11:
-            return gui.getAnalysis(data).getGranularityMaximum(analysisSet.getType(key), analysisSet.getField(key));
+            return analysis.getGranularityMaximum(analysisSet.getType(key), analysisSet.getField(key));
         default:
             return new ArrayIndexOutOfBoundsException(columnIndex);
         }
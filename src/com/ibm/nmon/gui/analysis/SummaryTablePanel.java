@@ -145,8 +145,9 @@ public final class SummaryTablePanel extends JPanel
                         }
                         else {
                             Object value = model.getEnabledValueAt(entry.getIdentifier(), idx);
-                            int i = (Integer) value;
-                            return i != 0;
+
+                            // show rows that have not been analyzed yet
+                            return (value == null) || ((Integer) value != 0);
                         }
                     }
                 });
@@ -192,6 +193,7 @@ public final class SummaryTablePanel extends JPanel
             gui.getIntervalManager().addListener(this);
             gui.addPropertyChangeListener("granularity", this);
             gui.addPropertyChangeListener("granularity", (ByStatisticTableModel) statisticsTable.getModel());
+            gui.addPropertyChangeListener("approximatePercentiles", this);
 
             // note update setSaveEnabled() if menu position changes
             gui.getMainFrame().getJMenuBar().add(menu, 3);
@@ -204,6 +206,7 @@ public final class SummaryTablePanel extends JPanel
             gui.getIntervalManager().removeListener(this);
             gui.removePropertyChangeListener("granularity", this);
             gui.removePropertyChangeListener("granularity", (ByStatisticTableModel) statisticsTable.getModel());
+            gui.removePropertyChangeListener("approximatePercentiles", this);
 
             gui.getMainFrame().getJMenuBar().remove(menu);
             gui.getMainFrame().getJMenuBar().revalidate();
@@ -271,6 +274,9 @@ public final class SummaryTablePanel extends JPanel
 
             updateStatisticsComboBox();
         }
+        else if ("approximatePercentiles".equals(evt.getPropertyName())) {
+            updateTable();
+        }
     }
 
     private void setSaveEnabled() {
@@ -287,6 +293,9 @@ public final class SummaryTablePanel extends JPanel
         table.setDefaultRenderer(Integer.class, new IntegerCellRenderer());
         table.setDefaultRenderer(String.class, new StringCellRenderer());
 
+        // statistics are filled in as they are analyzed; re-sort and re-filter as each update arrives
+        ((javax.swing.DefaultRowSorter<?, ?>) table.getRowSorter()).setSortsOnUpdates(true);
+
         table.addMouseListener(new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
@@ -272,6 +272,12 @@ public class BaseChartPanel extends ChartPanel implements PropertyChangeListener
     }
 
     public final void saveChart(String directory, String filename) {
+        // charts are built in the background, so there may not be one yet
+        if (getChart() == null) {
+            logger.warn("no chart to save to directory '{}'; the chart may still be building", directory);
+            return;
+        }
+
         filename = validateSaveFileName(filename);
 
         File chartFile = new File(directory, filename);
@@ -53,6 +53,20 @@ public class ChartFactory {
         lineChartBuilder.showLegends(showLegends);
     }
 
+    /**
+     * @see LineChartBuilder#setDownsampled(boolean)
+     */
+    public void setDownsampled(boolean downsampled) {
+        lineChartBuilder.setDownsampled(downsampled);
+    }
+
+    /**
+     * @see LineChartBuilder#setDownsampleWidth(int)
+     */
+    public void setDownsampleWidth(int width) {
+        lineChartBuilder.setDownsampleWidth(width);
+    }
+
     public void setInterval(Interval interval) {
         lineChartBuilder.setInterval(interval);
         barChartBuilder.setInterval(interval);
@@ -100,11 +114,14 @@ public class ChartFactory {
             intervalChartBuilder.initChart(lineDefinition);
 
             for (DataSet data : dataSets) {
-                // TODO AnalysisRecord cache needed here?
                 List<AnalysisRecord> analysis = new java.util.ArrayList<AnalysisRecord>();
 
+                // records are created per interval but share the application's cache, so values are only calculated
+                // once across charts and reports
+                // use the range index so that charting many intervals does not rescan the data for each one
                 for (Interval i : app.getIntervalManager().getIntervals()) {
-                    AnalysisRecord record = new AnalysisRecord(data);
+                    AnalysisRecord record = new AnalysisRecord(data, app.getAnalysisCache());
+                    record.setRangeIndexed(true);
                     record.setInterval(i);
                     record.setGranularity(intervalChartBuilder.getGranularity());
 
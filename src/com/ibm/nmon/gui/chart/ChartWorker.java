@@ -0,0 +1,159 @@
+package com.ibm.nmon.gui.chart;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+
+import javax.swing.SwingUtilities;
+
+import org.jfree.chart.JFreeChart;
+
+import com.ibm.nmon.data.DataSet;
+
+/**
+ * <p>
+ * Builds charts on a background thread so that reading large data sets does not block the Swing event thread.
+ * </p>
+ *
+ * <p>
+ * Each chart panel or report should use its own worker. A worker only runs a single build at a time. Starting a new
+ * build cancels the previous one, interrupting it if it is still running. Completed charts are passed to the
+ * {@link ChartListener} in the event thread, but only if no other build was started or the worker was not
+ * {@link #cancel() cancelled} in the meantime. So, callers will never see a chart that is out of date.
+ * </p>
+ *
+ * <p>
+ * Builds run concurrently with the event thread, so they must not share chart builders with any other code. Create
+ * new builders for each build, configured with the current settings.
+ * </p>
+ *
+ * <p>
+ * Other than {@link #awaitBuild()}, this class should only be used in the Swing event thread.
+ * </p>
+ */
+public final class ChartWorker {
+    private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(ChartWorker.class);
+
+    // shared by all workers
+    private static final ExecutorService EXECUTOR = java.util.concurrent.Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2), new java.util.concurrent.ThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, ChartWorker.class.getSimpleName() + " " + ++count);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    public interface ChartListener {
+        public void chartBuilt(JFreeChart chart);
+    }
+
+    private volatile Future<?> current = null;
+
+    // incremented for every build or cancel; a chart is only delivered if its build is still the latest
+    private int generation = 0;
+
+    public void build(final Callable<JFreeChart> builder, final ChartListener listener) {
+        cancel();
+
+        final int build = generation;
+
+        current = EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+
+                final JFreeChart chart;
+
+                // do not read the data while followed files are being updated
+                Lock lock = DataSet.getUpdateLock().readLock();
+
+                try {
+                    lock.lockInterruptibly();
+                }
+                catch (InterruptedException ie) {
+                    return;
+                }
+
+                try {
+                    chart = builder.call();
+                }
+                catch (CancellationException ce) {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("chart build cancelled after {}ms", (System.nanoTime() - start) / 1000000.0d);
+                    }
+
+                    return;
+                }
+                catch (Exception e) {
+                    LOGGER.error("could not build chart", e);
+                    return;
+                }
+                finally {
+                    lock.unlock();
+                }
+
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (build == generation) {
+                            listener.chartBuilt(chart);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancel the current build, if any. The listener for the build will not be called.
+     */
+    public void cancel() {
+        ++generation;
+
+        Future<?> toCancel = current;
+
+        if (toCancel != null) {
+            toCancel.cancel(true);
+            current = null;
+        }
+    }
+
+    public boolean isBuilding() {
+        Future<?> building = current;
+
+        return (building != null) && !building.isDone();
+    }
+
+    /**
+     * Wait for the current build to complete. This <em>must not</em> be called from the Swing event thread. When this
+     * method returns, the listener call, if any, will have been queued on the event thread. So, code passed to
+     * <code>SwingUtilities.invokeAndWait()</code> after this method will see the new chart.
+     */
+    public void awaitBuild() throws InterruptedException {
+        Future<?> building = current;
+
+        if (building != null) {
+            try {
+                building.get();
+            }
+            catch (CancellationException ce) {
+                // ignore
+            }
+            catch (java.util.concurrent.ExecutionException ee) {
+                // build() already logs errors
+            }
+        }
+    }
+}
@@ -6,6 +6,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import java.util.concurrent.Callable;
+
 import org.jfree.chart.JFreeChart;
 
 import com.ibm.nmon.gui.chart.builder.ChartFormatter;
@@ -27,21 +29,26 @@ import com.ibm.nmon.interval.IntervalListener;
 import com.ibm.nmon.interval.Interval;
 
 /**
- * Display a time series plot of the selected data.
+ * Display a time series plot of the selected data. Charts are built in the background by a {@link ChartWorker}.
  */
 public final class DataTypeChartPanel extends LineChartPanel implements IntervalListener {
     private static final long serialVersionUID = 7780208253045360843L;
 
-    private final LineChartBuilder chartBuilder;
+    private final ChartWorker worker = new ChartWorker();
+
+    // chart settings; a new LineChartBuilder is created with these values for every chart
+    private Interval interval = Interval.DEFAULT;
+    private int granularity;
+    private ChartFormatter formatter;
+    private boolean showLegends = true;
 
     private ExactDataDefinition definition;
 
     public DataTypeChartPanel(NMONVisualizerGui gui) {
         super(gui, gui.getMainFrame());
 
-        chartBuilder = new LineChartBuilder();
-        chartBuilder.addPlugin(new LineChartBuilderPlugin(gui));
-        chartBuilder.setFormatter(gui.getChartFormatter());
+        granularity = gui.getGranularity();
+        formatter = gui.getChartFormatter();
     }
 
     public void setData(DataSet data, DataType type) {
@@ -69,10 +76,10 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
                 gui.addPropertyChangeListener("lineChartLegend", this);
                 gui.getIntervalManager().addListener(this);
 
-                chartBuilder.setInterval(gui.getIntervalManager().getCurrentInterval());
-                chartBuilder.setGranularity(gui.getGranularity());
-                chartBuilder.setFormatter(gui.getChartFormatter());
-                chartBuilder.showLegends(gui.getBooleanProperty("lineChartLegend"));
+                interval = gui.getIntervalManager().getCurrentInterval();
+                granularity = gui.getGranularity();
+                formatter = gui.getChartFormatter();
+                showLegends = gui.getBooleanProperty("lineChartLegend");
 
                 if (definition != null) {
                     displayChart();
@@ -84,6 +91,8 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
                 gui.removePropertyChangeListener("lineChartLegend", this);
                 gui.getIntervalManager().removeListener(this);
 
+                worker.cancel();
+
                 // _super_ => clear chart but not the data
                 super.clearChart();
             }
@@ -92,6 +101,7 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
 
     @Override
     public void clearChart() {
+        worker.cancel();
         super.clearChart();
 
         this.definition = null;
@@ -117,9 +127,9 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
 
     @Override
     public void currentIntervalChanged(Interval interval) {
-        chartBuilder.setInterval(interval);
+        this.interval = interval;
 
-        if (getChart() != null) {
+        if (hasChart()) {
             displayChart();
         }
     }
@@ -132,34 +142,38 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
         super.propertyChange(evt);
 
         if ("granularity".equals(evt.getPropertyName())) {
-            chartBuilder.setGranularity((Integer) evt.getNewValue());
+            granularity = (Integer) evt.getNewValue();
 
-            if (getChart() != null) {
+            if (hasChart()) {
                 displayChart();
             }
         }
         else if ("chartFormatter".equals(evt.getPropertyName())) {
-            chartBuilder.setFormatter((ChartFormatter) evt.getNewValue());
+            formatter = (ChartFormatter) evt.getNewValue();
             displayChart();
         }
         else if ("lineChartLegend".equals(evt.getPropertyName())) {
-            boolean showLegend = (Boolean) evt.getNewValue();
+            showLegends = (Boolean) evt.getNewValue();
 
-            chartBuilder.showLegends(showLegend);
-
-            if (getChart() != null) {
+            if (hasChart()) {
                 displayChart();
             }
         }
     }
 
+    // true if there is a chart or one is being built, i.e. the chart needs to be rebuilt on setting changes
+    private boolean hasChart() {
+        return (getChart() != null) || worker.isBuilding();
+    }
+
     private void displayChart() {
         if (isEnabled()) {
-            long startT = System.nanoTime();
+            final long startT = System.nanoTime();
 
-            DataSet data = definition.getDataSet();
-            DataType type = definition.getDataType();
-            List<String> fields = definition.getMatchingFields(type);
+            final ExactDataDefinition definition = this.definition;
+            final DataSet data = definition.getDataSet();
+            final DataType type = definition.getDataType();
+            final List<String> fields = definition.getMatchingFields(type);
 
             String fieldLabel = "";
             String axisLabel = "";
@@ -193,25 +207,41 @@ public final class DataTypeChartPanel extends LineChartPanel implements Interval
                 }
             }
 
-            LineChartDefinition chartDefinition = new LineChartDefinition("", type + fieldLabel);
+            final LineChartDefinition chartDefinition = new LineChartDefinition("", type + fieldLabel);
             chartDefinition.setYAxisLabel(axisLabel);
             chartDefinition.setUsePercentYAxis(percent);
 
             setSaveSize(chartDefinition.getWidth(), chartDefinition.getHeight());
 
-            chartBuilder.initChart(chartDefinition);
-            chartBuilder.addLinesForData(definition, data, NamingMode.FIELD);
-
-            JFreeChart chart = chartBuilder.getChart();
-
-            if (logger.isDebugEnabled()) {
-                logger.debug("{}: {}-{} chart created in {}ms",
-                        new Object[] { data.getHostname(), type.getId(),
-                                fields.size() == type.getFieldCount() ? '*' : fields,
-                                (System.nanoTime() - startT) / 1000000.0d });
-            }
+            // the builder runs in another thread so it cannot share any state with this panel
+            final LineChartBuilder chartBuilder = new LineChartBuilder();
+            chartBuilder.addPlugin(new LineChartBuilderPlugin(gui));
+            chartBuilder.setFormatter(formatter);
+            chartBuilder.setInterval(interval);
+            chartBuilder.setGranularity(granularity);
+            chartBuilder.showLegends(showLegends);
+
+            worker.build(new Callable<JFreeChart>() {
+                @Override
+                public JFreeChart call() {
+                    chartBuilder.initChart(chartDefinition);
+                    chartBuilder.addLinesForData(definition, data, NamingMode.FIELD);
+
+                    return chartBuilder.getChart();
+                }
+            }, new ChartWorker.ChartListener() {
+                @Override
+                public void chartBuilt(JFreeChart chart) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("{}: {}-{} chart created in {}ms",
+                                new Object[] { data.getHostname(), type.getId(),
+                                        fields.size() == type.getFieldCount() ? '*' : fields,
+                                        (System.nanoTime() - startT) / 1000000.0d });
+                    }
 
-            setChart(chart);
+                    setChart(chart);
+                }
+            });
         }
     }
 
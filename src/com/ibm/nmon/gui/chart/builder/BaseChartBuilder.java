@@ -45,6 +45,11 @@ import com.ibm.nmon.util.GranularityHelper;
  * to retrieve the chart from the builder. Once <code>getChart()</code> is called, it <em>cannot</em> be called again
  * until <code>initChart()</code> is called.
  * </p>
+ * 
+ * <p>
+ * Charts can be built in background threads. Subclasses should call {@link #checkCancelled()} periodically when adding
+ * large amounts of data so that interrupted builds stop early.
+ * </p>
  */
 abstract class BaseChartBuilder<C extends BaseChartDefinition> {
     protected final Logger logger = org.slf4j.LoggerFactory.getLogger(getClass());
@@ -83,6 +88,15 @@ abstract class BaseChartBuilder<C extends BaseChartDefinition> {
         this.granularity = granularity;
     }
 
+    /**
+     * @throws java.util.concurrent.CancellationException if the current thread has been interrupted
+     */
+    protected static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new java.util.concurrent.CancellationException("chart build interrupted");
+        }
+    }
+
     /**
      * Creates the chart, formats it and calls any {@link ChartBuilderPlugin plugins}.
      */
@@ -99,7 +113,7 @@ abstract class BaseChartBuilder<C extends BaseChartDefinition> {
 
         if (plugins != null) {
             for (ChartBuilderPlugin plugin : plugins) {
-                plugin.configureChart(chart);
+                plugin.configureChart(chart, interval);
             }
         }
     }
@@ -114,6 +128,7 @@ abstract class BaseChartBuilder<C extends BaseChartDefinition> {
             throw new IllegalStateException("initChart() must be called first");
         }
 
+        finishChart();
         updateSubtitle();
 
         try {
@@ -163,6 +178,12 @@ abstract class BaseChartBuilder<C extends BaseChartDefinition> {
         formatter.formatChart(chart);
     }
 
+    /**
+     * Called by {@link #getChart()} once all data has been added to the chart, before it is returned. By default, this
+     * method does nothing.
+     */
+    protected void finishChart() {}
+
     protected final void addLegend() {
         if (chart == null) {
             throw new IllegalStateException("initChart() must be called first");
@@ -2,6 +2,12 @@ package com.ibm.nmon.gui.chart.builder;
 
 import org.jfree.chart.JFreeChart;
 
+import com.ibm.nmon.interval.Interval;
+
 public interface ChartBuilderPlugin {
-    public void configureChart(JFreeChart chart);
+    /**
+     * @param interval the interval the chart is being built for; this may not be the application's current interval
+     *            since charts are built in the background
+     */
+    public void configureChart(JFreeChart chart, Interval interval);
 }
@@ -17,12 +17,10 @@ import org.jfree.chart.renderer.xy.StandardXYItemRenderer;
 import org.jfree.chart.util.RelativeDateFormat;
 import org.jfree.util.UnitType;
 
-import org.jfree.data.time.FixedMillisecond;
-
 import org.jfree.data.xy.XYDataset;
 
 import com.ibm.nmon.data.DataSet;
-import com.ibm.nmon.data.DataRecord;
+import com.ibm.nmon.data.DataRollup;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.DataTuple;
 
@@ -32,11 +30,16 @@ import com.ibm.nmon.gui.chart.data.DataTupleXYDataset;
 
 import com.ibm.nmon.chart.definition.LineChartDefinition;
 
-import com.ibm.nmon.analysis.Statistic;
+import com.ibm.nmon.analysis.WindowAccumulator;
 
 public class LineChartBuilder extends BaseChartBuilder<LineChartDefinition> {
     private boolean showLegends = true;
 
+    // downsample all charts, not just those that have downsampling set in their definitions
+    private boolean downsampled = false;
+    // -1 => use the width from the definition
+    private int downsampleWidth = -1;
+
     public LineChartBuilder() {
         super();
     }
@@ -180,6 +183,8 @@ public class LineChartBuilder extends BaseChartBuilder<LineChartDefinition> {
 
         if (definition.matchesHost(data)) {
             for (DataType type : definition.getMatchingTypes(data)) {
+                checkCancelled();
+
                 List<String> fields = definition.getMatchingFields(type);
                 List<String> fieldNames = new java.util.ArrayList<String>(fields.size());
 
@@ -197,130 +202,120 @@ public class LineChartBuilder extends BaseChartBuilder<LineChartDefinition> {
             List<String> fields, List<String> fieldNames) {
         long start = System.nanoTime();
 
-        double[] totals = new double[fields.size()];
-        // use NaN as chart data when no values are defined rather than 0
-        java.util.Arrays.fill(totals, Double.NaN);
-
-        int n = 0;
-
-        long lastOutputTime = Math.max(getInterval().getStart(), data.getStartTime());
-
-        for (DataRecord record : data.getRecords(getInterval())) {
-            if ((record != null) && record.hasData(type)) {
-                for (int i = 0; i < fields.size(); i++) {
-                    if (type.hasField(fields.get(i))) {
-                        double value = record.getData(type, fields.get(i));
-
-                        if (!Double.isNaN(value)) {
-                            if (Double.isNaN(totals[i])) {
-                                if (dataDefinition.getStatistic() == Statistic.MINIMUM) {
-                                    totals[i] = Double.MAX_VALUE;
-                                }
-                                else if (dataDefinition.getStatistic() == Statistic.MAXIMUM) {
-                                    totals[i] = Double.MIN_VALUE;
-                                }
-                                else {
-                                    totals[i] = 0;
-                                }
-                            }
-
-                            switch (dataDefinition.getStatistic()) {
-                            case AVERAGE:
-                                totals[i] += value;
-                                break;
-                            case MAXIMUM:
-                                if (value > totals[i]) {
-                                    totals[i] = value;
-                                }
-                                break;
-                            case MINIMUM:
-                                if (value < totals[i]) {
-                                    totals[i] = value;
-                                }
-                                break;
-                            case COUNT:
-                                ++totals[i];
-                                break;
-                            case SUM:
-                                totals[i] += value;
-                                break;
-                            default:
-                                throw new IllegalArgumentException(
-                                        "canonot calculate " + dataDefinition.getStatistic() + " on a line chart");
-                            }
-                        }
-                    }
-                }
+        DataRollup.Level level = getRollupLevel(data, type);
 
-                ++n;
+        // building the rollup reads every record, so check again before adding the data
+        checkCancelled();
+
+        if (level == null) {
+            addRawData(dataDefinition, dataset, data, type, fields, fieldNames);
+        }
+        else {
+            addRolledUpData(dataDefinition, dataset, data, type, fields, fieldNames, level);
+        }
+
+        // fieldName may not have been used if there was no data
+        // so, search the dataset first before associating tuples
+        for (int i = 0; i < dataset.getSeriesCount(); i++) {
+            int idx = fieldNames.indexOf(dataset.getSeriesKey(i));
+
+            if (idx != -1) {
+                dataset.associateTuple(fieldNames.get(idx), null, new DataTuple(data, type, fields.get(idx)));
             }
-            // else no data for this type at this time but may still need to output
+        }
 
-            if ((n > 0) && ((record.getTime() - lastOutputTime) >= getGranularity())) {
-                FixedMillisecond graphTime = new FixedMillisecond(record.getTime());
+        if (logger.isDebugEnabled()) {
+            logger.debug("{}: {}-({} fields) added {} data points to chart '{}' in {}ms{}", data, type,
+                    fieldNames.size(), dataset.getItemCount(), definition.getTitle(),
+                    (System.nanoTime() - start) / 1000000.0d,
+                    level == null ? "" : " using " + (level.getBucketSize() / 1000) + "s rollups");
+        }
+    }
 
-                for (int i = 0; i < fields.size(); i++) {
-                    if (logger.isTraceEnabled()) {
-                        logger.trace(new java.util.Date(record.getTime()) + "\t" + type + "\t" + totals[i] + "\t"
-                                + totals[i] / n + "\t" + n + "\t" + (record.getTime() - lastOutputTime));
-                    }
+    // use the DataSet's rollups when the granularity is a multiple of a rollup level and there are enough records that
+    // reading the rollup buckets is faster than reading the records
+    private DataRollup.Level getRollupLevel(DataSet data, DataType type) {
+        int levelSize = DataRollup.getLevelSize(getGranularity());
 
-                    if (!Double.isNaN(totals[i])) {
-                        // if the plot is listening for dataset changes, it will fire an event for every data point
-                        // this causes a huge amount of GC and very slow response times so the false value is important
-                        if (dataDefinition.getStatistic() == Statistic.AVERAGE) {
-                            dataset.add(graphTime, totals[i] / n, fieldNames.get(i), false);
-                        }
-                        else {
-                            dataset.add(graphTime, totals[i], fieldNames.get(i), false);
-                        }
-                    }
+        if ((levelSize == -1) || (data.getRecordCount() == 0)) {
+            return null;
+        }
 
-                    // reset totals
-                    totals[i] = Double.NaN;
-                }
+        long buckets = (data.getEndTime() - data.getStartTime()) / levelSize + 1;
 
-                lastOutputTime = record.getTime();
-                n = 0;
-            }
+        if ((buckets * 2) > data.getRecordCount()) {
+            return null;
         }
 
-        // output final data point, if needed
-        long endTime = data.getEndTime();
+        return data.getRollup().getLevel(type, getGranularity());
+    }
 
-        if (endTime != lastOutputTime) {
-            FixedMillisecond graphTime = new FixedMillisecond(endTime);
+    private void addRawData(DataDefinition dataDefinition, DataTupleXYDataset dataset, DataSet data, DataType type,
+            List<String> fields, List<String> fieldNames) {
+        long start = Math.max(getInterval().getStart(), data.getStartTime());
+        long end = Math.min(getInterval().getEnd(), data.getEndTime());
 
-            for (int i = 0; i < fields.size(); i++) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace(new java.util.Date(endTime) + "\t" + type + "\t" + totals[i] + "\t" + totals[i] / n
-                            + "\t" + n + "\t" + (endTime - lastOutputTime));
-                }
+        WindowAccumulator accumulator = createAccumulator(dataDefinition, dataset, type, fields, fieldNames);
+        accumulator.addRecords(data, start, end);
+        accumulator.finish();
+    }
 
-                if (!Double.isNaN(totals[i])) {
-                    if (dataDefinition.getStatistic() == Statistic.AVERAGE) {
-                        dataset.add(graphTime, totals[i] / n, fieldNames.get(i), false);
-                    }
-                    else {
-                        dataset.add(graphTime, totals[i], fieldNames.get(i), false);
+    private void addRolledUpData(DataDefinition dataDefinition, DataTupleXYDataset dataset, DataSet data,
+            DataType type, List<String> fields, List<String> fieldNames, DataRollup.Level level) {
+        long start = Math.max(getInterval().getStart(), data.getStartTime());
+        long end = Math.min(getInterval().getEnd(), data.getEndTime());
+
+        // only buckets entirely within the interval can be used
+        // partial buckets at the start and end are read from the raw records
+        WindowAccumulator accumulator = createAccumulator(dataDefinition, dataset, type, fields, fieldNames);
+        accumulator.addRollup(data, level, start, end);
+        accumulator.finish();
+    }
+
+    // raw and rolled up data use the same windows so the chart does not change depending on which one is used
+    private WindowAccumulator createAccumulator(DataDefinition dataDefinition, final DataTupleXYDataset dataset,
+            DataType type, List<String> fields, final List<String> fieldNames) {
+        return new WindowAccumulator(dataDefinition.getStatistic(), getGranularity(), type, fields,
+                new WindowAccumulator.Output() {
+                    @Override
+                    public void add(long time, double value, int field) {
+                        // the dataset does not fire change events when data is added
+                        dataset.add(time, value, fieldNames.get(field));
                     }
-                }
+                });
+    }
+
+    @Override
+    protected void finishChart() {
+        if (downsampled || definition.isDownsampled()) {
+            int columns = downsampleWidth == -1 ? definition.getWidth() : downsampleWidth;
+
+            downsample(0, columns);
+
+            if (definition.hasSecondaryYAxis()) {
+                downsample(1, columns);
             }
         }
+    }
 
-        // fieldName may not have been used if there was no data
-        // so, search the dataset first before associating tuples
-        for (int i = 0; i < dataset.getSeriesCount(); i++) {
-            int idx = fieldNames.indexOf(dataset.getSeriesKey(i));
+    private void downsample(int datasetIndex, int columns) {
+        DataTupleXYDataset dataset = (DataTupleXYDataset) chart.getXYPlot().getDataset(datasetIndex);
 
-            if (idx != -1) {
-                dataset.associateTuple(fieldNames.get(idx), null, new DataTuple(data, type, fields.get(idx)));
-            }
+        if (!dataset.downsample(columns)) {
+            return;
         }
 
-        if (logger.isDebugEnabled()) {
-            logger.debug("{}: {}-({} fields) added {} data points to chart '{}' in {}ms", data, type, fieldNames.size(),
-                    dataset.getItemCount(), definition.getTitle(), (System.nanoTime() - start) / 1000000.0d);
+        if (definition.isStacked() && (datasetIndex == 0)) {
+            return;
+        }
+
+        // the data points kept in a single column can be up to a column apart
+        // do not draw those as gaps
+        StandardXYItemRenderer renderer = (StandardXYItemRenderer) chart.getXYPlot().getRenderer(datasetIndex);
+        double columnWidth = (dataset.getXValue(0, dataset.getItemCount() - 1) - dataset.getXValue(0, 0)) / columns;
+
+        if (renderer.getGapThreshold() < (columnWidth * 1.25)) {
+            renderer.setGapThreshold(columnWidth * 1.25);
         }
     }
 
@@ -432,6 +427,31 @@ public class LineChartBuilder extends BaseChartBuilder<LineChartDefinition> {
         return showLegends;
     }
 
+    /**
+     * Downsample all charts, even if their definitions do not specify it.
+     * 
+     * @see LineChartDefinition#isDownsampled()
+     */
+    public void setDownsampled(boolean downsampled) {
+        this.downsampled = downsampled;
+    }
+
+    public boolean isDownsampled() {
+        return downsampled;
+    }
+
+    /**
+     * Set the width, in pixels, that charts will be drawn at. Charts are downsampled to this width rather than the width
+     * in their definitions. Use -1 to reset to the definition's width.
+     */
+    public void setDownsampleWidth(int downsampleWidth) {
+        if ((downsampleWidth < 1) && (downsampleWidth != -1)) {
+            throw new IllegalArgumentException("width" + " must be > 0");
+        }
+
+        this.downsampleWidth = downsampleWidth;
+    }
+
     /**
      * Sets the X axis to display time relative to the given start time.
      */
@@ -25,7 +25,7 @@ public final class LineChartBuilderPlugin implements ChartBuilderPlugin {
     }
 
     @Override
-    public void configureChart(JFreeChart chart) {
+    public void configureChart(JFreeChart chart, Interval interval) {
         // this setup is required before any data is in the chart
         // or auto ranging on the y-axis breaks
         if (app.getBooleanProperty("chartRelativeTime")) {
@@ -36,7 +36,6 @@ public final class LineChartBuilderPlugin implements ChartBuilderPlugin {
         }
 
         DateAxis axis = (DateAxis) chart.getXYPlot().getDomainAxis();
-        Interval current = app.getIntervalManager().getCurrentInterval();
 
         axis.setTimeZone(app.getDisplayTimeZone());
 
@@ -45,7 +44,7 @@ public final class LineChartBuilderPlugin implements ChartBuilderPlugin {
                     .getDisplayTimeZone());
         }
 
-        if (Interval.DEFAULT.equals(current)) {
+        if (Interval.DEFAULT.equals(interval)) {
             if (app.getMinSystemTime() == 0) {
                 // implies no current datasets, so keep the axis range sane
                 // fixes near infinite loop displaying chart with no data
@@ -65,7 +64,7 @@ public final class LineChartBuilderPlugin implements ChartBuilderPlugin {
             }
         }
         else {
-            axis.setRange(current.getStart(), current.getEnd());
+            axis.setRange(interval.getStart(), interval.getEnd());
         }
     }
 }
@@ -1,19 +1,67 @@
 package com.ibm.nmon.gui.chart.data;
 
+import org.slf4j.Logger;
+
 import java.util.List;
+import java.util.Map;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
 
-import org.jfree.data.time.TimeTableXYDataset;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.TableXYDataset;
 
 import com.ibm.nmon.data.DataTuple;
 
-public final class DataTupleXYDataset extends TimeTableXYDataset implements DataTupleDataset {
-    private static final long serialVersionUID = 9065578614822952026L;
+/**
+ * <p>
+ * Time based XY data for line charts. Like JFreeChart's <code>TimeTableXYDataset</code>, all series share the same set
+ * of times, so this dataset can be used for stacked charts. Series that do not have a value at a given time return
+ * <code>NaN</code>.
+ * </p>
+ *
+ * <p>
+ * Data is stored in primitive arrays: a single, sorted <code>long[]</code> of times and a <code>double[]</code> of
+ * values for each series. No objects are created when data is added or read with {@link #getXValue(int, int)} and
+ * {@link #getYValue(int, int)}. Data added in time order is appended directly. Data added out of order is held and
+ * merged into the arrays in a single pass the next time the dataset is read.
+ * </p>
+ *
+ * <p>
+ * Adding data does <em>not</em> send dataset change events. This class is not thread safe.
+ * </p>
+ */
+public final class DataTupleXYDataset extends AbstractXYDataset
+        implements TableXYDataset, DomainInfo, DataTupleDataset {
+    private static final long serialVersionUID = -3137869480434587012L;
+
+    private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(DataTupleXYDataset.class);
 
     private final List<DataTuple> tuples;
 
     private final boolean stacked;
     private GraphData[] graphData;
 
+    @SuppressWarnings("rawtypes")
+    private final List<Comparable> seriesKeys;
+    @SuppressWarnings("rawtypes")
+    private final Map<Comparable, Integer> seriesIndexes;
+
+    // times[0 - itemCount) is sorted; values are NaN if a series has no data at a given time
+    private long[] times;
+    private final List<double[]> values;
+    private int itemCount;
+
+    // the last item added to; data is usually added in time order
+    private int lastItem;
+
+    // data added before the first time or between existing times; merged on the next read
+    private long[] pendingTimes;
+    private int[] pendingSeries;
+    private double[] pendingValues;
+    private int pendingCount;
+
     private DatasetCallback callback = new DatasetCallback() {
         @Override
         public int getDataCount() {
@@ -31,11 +79,262 @@ public final class DataTupleXYDataset extends TimeTableXYDataset implements Data
         }
     };
 
+    @SuppressWarnings("rawtypes")
     public DataTupleXYDataset(boolean stacked) {
         super();
 
         tuples = new java.util.ArrayList<DataTuple>();
         this.stacked = stacked;
+
+        seriesKeys = new java.util.ArrayList<Comparable>();
+        seriesIndexes = new java.util.HashMap<Comparable, Integer>();
+
+        times = new long[64];
+        values = new java.util.ArrayList<double[]>();
+        itemCount = 0;
+        lastItem = -1;
+
+        pendingCount = 0;
+    }
+
+    /**
+     * Set the value for a series at the given time. The series is created if it does not exist. Any existing value for
+     * the series at that time is replaced.
+     */
+    @SuppressWarnings("rawtypes")
+    public void add(long time, double value, Comparable seriesKey) {
+        Integer index = seriesIndexes.get(seriesKey);
+        int series = -1;
+
+        if (index == null) {
+            series = seriesKeys.size();
+
+            double[] seriesValues = new double[times.length];
+            java.util.Arrays.fill(seriesValues, Double.NaN);
+
+            seriesKeys.add(seriesKey);
+            seriesIndexes.put(seriesKey, series);
+            values.add(seriesValues);
+        }
+        else {
+            series = index;
+        }
+
+        int item = findItem(time);
+
+        if (item >= 0) {
+            values.get(series)[item] = value;
+            lastItem = item;
+        }
+        else if ((pendingCount == 0) && (-item - 1 == itemCount)) {
+            // after the last time; append
+            if (itemCount == times.length) {
+                grow(itemCount * 2);
+            }
+
+            times[itemCount] = time;
+            values.get(series)[itemCount] = value;
+            lastItem = itemCount++;
+        }
+        else {
+            addPending(time, series, value);
+        }
+    }
+
+    // same as Arrays.binarySearch(), but check near the last item first
+    private int findItem(long time) {
+        if ((lastItem != -1) && (lastItem < itemCount)) {
+            if (times[lastItem] == time) {
+                return lastItem;
+            }
+            else if ((lastItem + 1 < itemCount) && (times[lastItem + 1] == time)) {
+                return lastItem + 1;
+            }
+        }
+
+        return java.util.Arrays.binarySearch(times, 0, itemCount, time);
+    }
+
+    private void grow(int capacity) {
+        int oldCapacity = times.length;
+        times = java.util.Arrays.copyOf(times, capacity);
+
+        for (int i = 0; i < values.size(); i++) {
+            double[] seriesValues = java.util.Arrays.copyOf(values.get(i), capacity);
+            java.util.Arrays.fill(seriesValues, oldCapacity, capacity, Double.NaN);
+            values.set(i, seriesValues);
+        }
+    }
+
+    private void addPending(long time, int series, double value) {
+        if (pendingTimes == null) {
+            pendingTimes = new long[64];
+            pendingSeries = new int[64];
+            pendingValues = new double[64];
+        }
+        else if (pendingCount == pendingTimes.length) {
+            pendingTimes = java.util.Arrays.copyOf(pendingTimes, pendingCount * 2);
+            pendingSeries = java.util.Arrays.copyOf(pendingSeries, pendingCount * 2);
+            pendingValues = java.util.Arrays.copyOf(pendingValues, pendingCount * 2);
+        }
+
+        pendingTimes[pendingCount] = time;
+        pendingSeries[pendingCount] = series;
+        pendingValues[pendingCount] = value;
+        ++pendingCount;
+    }
+
+    private void mergePending() {
+        if (pendingCount == 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        // unique, sorted pending times
+        long[] newTimes = java.util.Arrays.copyOf(pendingTimes, pendingCount);
+        java.util.Arrays.sort(newTimes);
+
+        int newCount = 0;
+
+        for (int i = 0; i < newTimes.length; i++) {
+            if ((newCount == 0) || (newTimes[newCount - 1] != newTimes[i])) {
+                newTimes[newCount++] = newTimes[i];
+            }
+        }
+
+        // merge with the existing times; existing items move to new indexes
+        long[] mergedTimes = new long[Math.max(64, itemCount + newCount)];
+        int[] oldIndexes = new int[itemCount];
+        int mergedCount = 0;
+
+        for (int i = 0, j = 0; (i < itemCount) || (j < newCount);) {
+            if ((j == newCount) || ((i < itemCount) && (times[i] <= newTimes[j]))) {
+                if ((j < newCount) && (times[i] == newTimes[j])) {
+                    ++j;
+                }
+
+                oldIndexes[i] = mergedCount;
+                mergedTimes[mergedCount++] = times[i++];
+            }
+            else {
+                mergedTimes[mergedCount++] = newTimes[j++];
+            }
+        }
+
+        for (int i = 0; i < values.size(); i++) {
+            double[] oldValues = values.get(i);
+            double[] newValues = new double[mergedTimes.length];
+            java.util.Arrays.fill(newValues, Double.NaN);
+
+            for (int j = 0; j < itemCount; j++) {
+                newValues[oldIndexes[j]] = oldValues[j];
+            }
+
+            values.set(i, newValues);
+        }
+
+        times = mergedTimes;
+        itemCount = mergedCount;
+
+        // apply in the order added so later values replace earlier ones
+        for (int i = 0; i < pendingCount; i++) {
+            int item = java.util.Arrays.binarySearch(times, 0, itemCount, pendingTimes[i]);
+            values.get(pendingSeries[i])[item] = pendingValues[i];
+        }
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("merged {} data points with {} new times in {}ms", pendingCount, newCount,
+                    (System.nanoTime() - start) / 1000000.0d);
+        }
+
+        pendingCount = 0;
+        lastItem = -1;
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return seriesKeys.size();
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Comparable getSeriesKey(int series) {
+        return seriesKeys.get(series);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public int indexOf(Comparable seriesKey) {
+        Integer index = seriesIndexes.get(seriesKey);
+
+        return index == null ? -1 : index;
+    }
+
+    @Override
+    public int getItemCount() {
+        mergePending();
+        return itemCount;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        return getItemCount();
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    /**
+     * @return the time, in milliseconds, for the given item
+     */
+    public long getTime(int item) {
+        mergePending();
+        return times[item];
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        mergePending();
+        return times[item];
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        mergePending();
+        return values.get(series)[item];
+    }
+
+    /**
+     * @return the value or <code>null</code> if the series has no value at the given time
+     */
+    @Override
+    public Number getY(int series, int item) {
+        double value = getYValue(series, item);
+
+        return Double.isNaN(value) ? null : value;
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        return getItemCount() == 0 ? Double.NaN : times[0];
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        return getItemCount() == 0 ? Double.NaN : times[itemCount - 1];
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        return getItemCount() == 0 ? null : new Range(times[0], times[itemCount - 1]);
     }
 
     @Override
@@ -136,6 +435,126 @@ public final class DataTupleXYDataset extends TimeTableXYDataset implements Data
         return toReturn;
     }
 
+    /**
+     * <p>
+     * Reduce the number of data points in this dataset while preserving the shape of each line when it is drawn with
+     * the given number of horizontal pixels. The time range is split into <code>columns</code> equal width columns.
+     * For each series, only the first, last, minimum and maximum values in each column are kept (M4 aggregation).
+     * </p>
+     *
+     * <p>
+     * Since all series share the same time periods, any time period that is needed by one series is kept for all of
+     * them. So, stacked data is still stacked correctly. Statistics, like the average, are calculated <em>before</em>
+     * any data is removed and are not changed by this method.
+     * </p>
+     *
+     * @return <code>true</code> if any data was removed
+     */
+    public boolean downsample(int columns) {
+        if (columns < 1) {
+            throw new IllegalArgumentException("columns must be greater than 0");
+        }
+
+        if (getItemCount() <= (columns * 4)) {
+            return false;
+        }
+
+        long startT = System.nanoTime();
+
+        calculateGraphData();
+
+        int seriesCount = getSeriesCount();
+
+        double start = times[0];
+        double range = times[itemCount - 1] - start;
+
+        java.util.BitSet toKeep = new java.util.BitSet(itemCount);
+
+        int[] first = new int[columns];
+        int[] last = new int[columns];
+        int[] min = new int[columns];
+        int[] max = new int[columns];
+        double[] minValues = new double[columns];
+        double[] maxValues = new double[columns];
+
+        for (int i = 0; i < seriesCount; i++) {
+            double[] seriesValues = values.get(i);
+
+            java.util.Arrays.fill(first, -1);
+
+            for (int j = 0; j < itemCount; j++) {
+                double value = seriesValues[j];
+
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+
+                int column = Math.min(columns - 1, (int) ((times[j] - start) / range * columns));
+
+                if (first[column] == -1) {
+                    first[column] = last[column] = min[column] = max[column] = j;
+                    minValues[column] = maxValues[column] = value;
+                }
+                else {
+                    last[column] = j;
+
+                    if (value < minValues[column]) {
+                        min[column] = j;
+                        minValues[column] = value;
+                    }
+
+                    if (value > maxValues[column]) {
+                        max[column] = j;
+                        maxValues[column] = value;
+                    }
+                }
+            }
+
+            for (int column = 0; column < columns; column++) {
+                if (first[column] != -1) {
+                    toKeep.set(first[column]);
+                    toKeep.set(last[column]);
+                    toKeep.set(min[column]);
+                    toKeep.set(max[column]);
+                }
+            }
+        }
+
+        int keptCount = toKeep.cardinality();
+        int originalCount = itemCount;
+
+        if (keptCount == itemCount) {
+            return false;
+        }
+
+        // compact the arrays in place; kept items only move toward the start
+        for (int j = toKeep.nextSetBit(0), n = 0; j != -1; j = toKeep.nextSetBit(j + 1), n++) {
+            times[n] = times[j];
+
+            for (int i = 0; i < seriesCount; i++) {
+                double[] seriesValues = values.get(i);
+                seriesValues[n] = seriesValues[j];
+            }
+        }
+
+        for (int i = 0; i < seriesCount; i++) {
+            java.util.Arrays.fill(values.get(i), keptCount, itemCount, Double.NaN);
+        }
+
+        // graphData is not reset, so statistics are still for the full data
+        itemCount = keptCount;
+        lastItem = -1;
+
+        fireDatasetChanged();
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("downsampled {} series from {} to {} data points for {} columns in {}ms", seriesCount,
+                    originalCount, keptCount, columns, (System.nanoTime() - startT) / 1000000.0d);
+        }
+
+        return true;
+    }
+
     private void calculateGraphData() {
         if (graphData != null) {
             return;
@@ -140,7 +140,7 @@ public final class TableTransferHandler extends TransferHandler {
                         builder.append(FORMAT.format(d));
                     }
                 }
-                else {
+                else if (o != null) {
                     builder.append(o.toString());
                 }
 
@@ -3,7 +3,12 @@ package com.ibm.nmon.gui.file;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
 
+import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import com.ibm.nmon.ParseListener;
 
 import com.ibm.nmon.file.CombinedFileFilter;
 import com.ibm.nmon.file.SwingAndIOFileFilter;
@@ -18,7 +23,8 @@ import java.util.List;
 
 /**
  * Creates a JFileChooser so the user can select files to parse. Delegates actual parsing to {@link ParserRunner}.
- * Directory selection is supported as is recursion into a directory structure.
+ * Directory selection is supported as is recursion into a directory structure. NMON files can optionally be followed
+ * as they are written.
  */
 public final class FileLoadAction implements ActionListener {
     private final JFileChooser chooser;
@@ -26,6 +32,7 @@ public final class FileLoadAction implements ActionListener {
 
     private final TimeZoneComboBox timeZones;
     private final TimeZoneComboBox displayTimeZones;
+    private final JCheckBox follow;
 
     public FileLoadAction(NMONVisualizerGui gui) {
         this.gui = gui;
@@ -54,6 +61,10 @@ public final class FileLoadAction implements ActionListener {
         GUIFileChooser.addComponentToChooser(chooser, "File(s) TZ:", timeZones);
         GUIFileChooser.addComponentToChooser(chooser, "Display TZ:", displayTimeZones);
 
+        follow = new JCheckBox();
+        follow.setToolTipText("Continue to parse new data as NMON files are written");
+
+        GUIFileChooser.addComponentToChooser(chooser, "Follow:", follow);
     }
 
     public void actionPerformed(ActionEvent event) {
@@ -83,11 +94,70 @@ public final class FileLoadAction implements ActionListener {
 
         FileHelper.recurseDirectories(selectedFiles, filter, toParse);
 
-        if (!toParse.isEmpty()) {
-            // parse files outside of the Swing event thread
-            gui.setDisplayTimeZone(displayTimeZones.getSelectedTimeZone());
+        if (toParse.isEmpty()) {
+            return;
+        }
+
+        gui.setDisplayTimeZone(displayTimeZones.getSelectedTimeZone());
+
+        // parse files outside of the Swing event thread
+        if (follow.isSelected()) {
+            new Thread(new Follower(toParse, timeZones.getSelectedTimeZone()), getClass().getName() + " Follower")
+                    .start();
+        }
+        else {
             new Thread(new ParserRunner(gui, toParse, timeZones.getSelectedTimeZone()),
                     getClass().getName() + " Parser").start();
         }
     }
+
+    private final class Follower implements Runnable {
+        private final List<String> toFollow;
+        private final java.util.TimeZone timeZone;
+
+        // also called on the follower thread when updates to the files log any messages
+        private final ParseListener errorListener = new ParseListener() {
+            @Override
+            public void fileParsed(final String filename, final String parseErrors, Exception exception) {
+                if (parseErrors != null) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            new ParserErrorDialog(gui, java.util.Collections.singletonMap(filename, parseErrors))
+                                    .setVisible(true);
+                        }
+                    });
+                }
+            }
+        };
+
+        Follower(List<String> toFollow, java.util.TimeZone timeZone) {
+            this.toFollow = toFollow;
+            this.timeZone = timeZone;
+        }
+
+        @Override
+        public void run() {
+            final StringBuilder errors = new StringBuilder();
+
+            for (String filename : toFollow) {
+                try {
+                    gui.follow(filename, timeZone, errorListener);
+                }
+                catch (Exception e) {
+                    errors.append(filename).append(": ").append(e.getMessage()).append('\n');
+                }
+            }
+
+            if (errors.length() > 0) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        JOptionPane.showMessageDialog(gui.getMainFrame(), errors.toString(), "Cannot Follow Files",
+                                JOptionPane.ERROR_MESSAGE);
+                    }
+                });
+            }
+        }
+    }
 }
@@ -7,16 +7,17 @@ import java.util.TimeZone;
 
 import javax.swing.SwingUtilities;
 
+import com.ibm.nmon.ParseListener;
+
 import com.ibm.nmon.gui.main.NMONVisualizerGui;
 
 import com.ibm.nmon.gui.util.ItemProgressDialog;
 
-import com.ibm.nmon.util.ParserLog;
-
 /**
  * Runnable responsible for actually parsing files. This keeps the parsing out of the Swing event
  * dispatching thread. Creates a dialog box with a progress bar that is updated as each file is
- * parsed.
+ * parsed. Multiple files are parsed concurrently; see
+ * {@link com.ibm.nmon.NMONVisualizerApp#parse(List, TimeZone, ParseListener)}.
  */
 public final class ParserRunner implements Runnable {
     private final NMONVisualizerGui gui;
@@ -49,52 +50,35 @@ public final class ParserRunner implements Runnable {
         // i.e. dispose call at the end of run will not be called until after all the progress bar
         // updates are completed
 
-        ParserLog log = ParserLog.getInstance();
-
-        for (int i = 0; i < toParse.size(); i++) {
-            final String filename = toParse.get(i).replace('\\', '/');
-
-            log.setCurrentFilename(filename);
-
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
-                    String name = filename;
-                    int idx = name.lastIndexOf('/');
-
-                    if (idx != -1) {
-                        name = name.substring(idx + 1);
-                    }
-
-                    progress.setCurrentItem(name);
+        // files are parsed concurrently, but the callbacks are made on this thread in file order
+        gui.parse(toParse, timeZone, new ParseListener() {
+            @Override
+            public void fileParsed(final String filename, String parseErrors, Exception exception) {
+                if (parseErrors != null) {
+                    errors.put(filename, parseErrors);
                 }
-            });
-
-            try {
-                gui.parse(filename, timeZone);
-            }
-            catch (Exception e) {
-                log.getLogger().error("could not parse " + filename, e);
-            }
 
-            if (log.hasData()) {
-                errors.put(log.getCurrentFilename(), log.getMessages());
-            }
-
-            // update the progress bar on each file
-            // wait here because parsing the very first file hits JIT, GC and object creation
-            // keep the parser from getting ahead of the UI so the user does not see a 'flash' of
-            // progress
-            try {
-                SwingUtilities.invokeAndWait(new Runnable() {
-                    public void run() {
-                        progress.updateProgress();
-                    }
-                });
-            }
-            catch (Exception e) {
-                // ignore
+                // update the progress bar on each file
+                try {
+                    SwingUtilities.invokeAndWait(new Runnable() {
+                        public void run() {
+                            String name = filename;
+                            int idx = name.lastIndexOf('/');
+
+                            if (idx != -1) {
+                                name = name.substring(idx + 1);
+                            }
+
+                            progress.setCurrentItem(name);
+                            progress.updateProgress();
+                        }
+                    });
+                }
+                catch (Exception e) {
+                    // ignore
+                }
             }
-        }
+        });
 
         // close progress when done
         SwingUtilities.invokeLater(new Runnable() {
@@ -468,6 +468,30 @@ final class MainMenu extends JMenuBar implements IntervalListener, DataSetListen
 
         menu.add(checkItem);
 
+        checkItem = new JCheckBoxMenuItem("Approximate Percentiles");
+        checkItem.setMnemonic('p');
+        checkItem.setSelected(gui.getBooleanProperty("approximatePercentiles"));
+
+        checkItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                gui.setProperty("approximatePercentiles", ((JCheckBoxMenuItem) e.getSource()).isSelected());
+            }
+        });
+
+        menu.add(checkItem);
+
+        checkItem = new JCheckBoxMenuItem("Cache Parsed Files");
+        checkItem.setMnemonic('f');
+        checkItem.setSelected(gui.getBooleanProperty("cacheParsedData"));
+
+        checkItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                gui.setProperty("cacheParsedData", ((JCheckBoxMenuItem) e.getSource()).isSelected());
+            }
+        });
+
+        menu.add(checkItem);
+
         checkItem = new JCheckBoxMenuItem("Show Status Bar");
         checkItem.setMnemonic('b');
         checkItem.setSelected(gui.getBooleanProperty("showStatusBar"));
@@ -163,8 +163,13 @@ public final class NMONVisualizerGui extends NMONVisualizerApp {
         setProperty("scaleProcessesByCPUs",
                 preferences.get("scaleProcessesByCPUs", getProperty("scaleProcessesByCPUs")));
 
+        setProperty("approximatePercentiles",
+                preferences.get("approximatePercentiles", getProperty("approximatePercentiles")));
+
         setProperty("showStatusBar", preferences.get("showStatusBar", "false"));
 
+        setProperty("cacheParsedData", preferences.get("cacheParsedData", getProperty("cacheParsedData")));
+
         mainFrame = new JFrame(DEFAULT_WINDOW_TITLE);
         mainFrame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         mainFrame.addWindowListener(windowManager);
@@ -365,8 +370,10 @@ public final class NMONVisualizerGui extends NMONVisualizerApp {
 
             getPreferences().put("systemsNamedBy", getProperty("systemsNamedBy"));
             getPreferences().put("scaleProcessesByCPUs", getProperty("scaleProcessesByCPUs"));
+            getPreferences().put("approximatePercentiles", getProperty("approximatePercentiles"));
             getPreferences().put("showStatusBar", getProperty("showStatusBar"));
             getPreferences().put("lineChartLegend", getProperty("lineChartLegend"));
+            getPreferences().put("cacheParsedData", getProperty("cacheParsedData"));
 
             logViewer.dispose();
             mainFrame.dispose();
@@ -594,6 +601,41 @@ public final class NMONVisualizerGui extends NMONVisualizerApp {
         }
     }
 
+    @Override
+    protected void fireDataChanged(final DataSet data) {
+        // followed files are updated outside of the Swing event dispatcher thread
+        if (SwingUtilities.isEventDispatchThread()) {
+            super.fireDataChanged(data);
+        }
+        else {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    NMONVisualizerGui.super.fireDataChanged(data);
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void runDataUpdate(Runnable update) {
+        // the data sets are read in the Swing event dispatcher thread so they must also be updated there
+        if (SwingUtilities.isEventDispatchThread()) {
+            update.run();
+        }
+        else {
+            try {
+                SwingUtilities.invokeAndWait(update);
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            catch (java.lang.reflect.InvocationTargetException ite) {
+                logger.error("could not update data", ite.getCause());
+            }
+        }
+    }
+
     private WindowAdapter windowManager = new WindowAdapter() {
         @Override
         public void windowOpened(WindowEvent e) {
@@ -5,6 +5,8 @@ import org.slf4j.Logger;
 import java.util.BitSet;
 import java.util.List;
 
+import java.util.concurrent.Callable;
+
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeEvent;
 
@@ -54,6 +56,11 @@ import com.ibm.nmon.interval.Interval;
  * allows multiple chart definitions with the same short name to be passed in if they match different data sets (i.e.
  * different hostnames or operating systems).
  * </p>
+ * 
+ * <p>
+ * Charts are built in the background by a {@link ChartWorker}. Changing tabs, intervals or granularity before a chart
+ * is complete cancels the build.
+ * </p>
  */
 public final class ReportPanel extends JTabbedPane implements PropertyChangeListener, IntervalListener {
     private static final long serialVersionUID = 6377401207979477789L;
@@ -74,7 +81,13 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
     private List<BaseChartDefinition> chartsInUse;
     private BitSet chartNeedsUpdate;
 
-    private final ChartFactory chartFactory;
+    private final ChartWorker worker = new ChartWorker();
+
+    // chart settings; a new ChartFactory is created with these values for every chart
+    private Interval interval = Interval.DEFAULT;
+    private int granularity;
+    private ChartFormatter formatter;
+    private boolean showLegends = true;
 
     // ignore chart updates when tabs are being built
     private boolean buildingTabs;
@@ -94,9 +107,8 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
         super();
 
         setTabLayoutPolicy(SCROLL_TAB_LAYOUT);
-        this.chartFactory = new ChartFactory(gui);
-        this.chartFactory.setGranularity(gui.getGranularity());
-        this.chartFactory.setFormatter(gui.getChartFormatter());
+        this.granularity = gui.getGranularity();
+        this.formatter = gui.getChartFormatter();
 
         this.gui = gui;
         this.parent = parent;
@@ -145,9 +157,9 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
         if (enabled != isEnabled()) {
             super.setEnabled(enabled);
 
-            chartFactory.setGranularity(gui.getGranularity());
-            chartFactory.setFormatter(gui.getChartFormatter());
-            chartFactory.showLegends(gui.getBooleanProperty("lineChartLegend"));
+            granularity = gui.getGranularity();
+            formatter = gui.getChartFormatter();
+            showLegends = gui.getBooleanProperty("lineChartLegend");
 
             if ((chartsInUse != null) && !chartsInUse.isEmpty()) {
                 int idx = getSelectedIndex();
@@ -161,6 +173,8 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
                     }
                 }
                 else {
+                    worker.cancel();
+
                     if (idx != -1) {
                         // notify listeners that the chart is not showing
                         getChartPanel().clearChart();
@@ -254,13 +268,16 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
 
                 if (chartNeedsUpdate.get(index)) {
                     if (dataSets.isEmpty()) {
+                        worker.cancel();
                         chartPanel.clearChart();
+                        chartNeedsUpdate.clear(index);
                     }
                     else {
+                        // the chart is marked as updated when the build completes
+                        // a cancelled build will leave the chart marked for update
                         createChart(index);
                     }
 
-                    chartNeedsUpdate.clear(index);
                     return true;
                 }
             }
@@ -296,9 +313,7 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
             firePropertyChange(evt.getPropertyName(), evt.getOldValue(), evt.getNewValue());
         }
         else if ("granularity".equals(evt.getPropertyName())) {
-            int newGranularity = (Integer) evt.getNewValue();
-
-            chartFactory.setGranularity(newGranularity);
+            granularity = (Integer) evt.getNewValue();
 
             // always update line charts on granularity changes
             // bar charts and interval line charts do not need to be updated unless the stat is
@@ -344,11 +359,11 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
             updateIntervalCharts();
         }
         else if ("chartFormatter".equals(evt.getPropertyName())) {
-            chartFactory.setFormatter((ChartFormatter) evt.getNewValue());
+            formatter = (ChartFormatter) evt.getNewValue();
             resetReport();
         }
         else if ("lineChartLegend".equals(evt.getPropertyName())) {
-            chartFactory.showLegends((Boolean) evt.getNewValue());
+            showLegends = (Boolean) evt.getNewValue();
 
             for (int i = 0; i < chartsInUse.size(); i++) {
                 BaseChartDefinition chartDefinition = chartsInUse.get(i);
@@ -379,7 +394,7 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
 
     @Override
     public void currentIntervalChanged(Interval interval) {
-        chartFactory.setInterval(interval);
+        this.interval = interval;
 
         // update non-interval charts
         for (int i = 0; i < chartsInUse.size(); i++) {
@@ -398,6 +413,9 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
 
     @Override
     public void removeAll() {
+        // chart indexes are no longer valid
+        worker.cancel();
+
         if (!chartsInUse.isEmpty()) {
             for (int i = 0; i < getTabCount(); i++) {
                 // buildTabs() adds each chart as a listener, so remove it when the tabs change
@@ -524,16 +542,35 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
         buildingTabs = false;
     }
 
-    private void createChart(int index) {
-        BaseChartDefinition definition = chartsInUse.get(index);
+    private void createChart(final int index) {
+        final BaseChartDefinition definition = chartsInUse.get(index);
+        // copy since the data sets can change before the build completes
+        final List<DataSet> toChart = new java.util.ArrayList<DataSet>(dataSets);
 
-        JFreeChart chart = chartFactory.createChart(definition, dataSets);
+        // the factory runs in another thread so it cannot share any state with this panel
+        final ChartFactory chartFactory = new ChartFactory(gui);
+        chartFactory.setInterval(interval);
+        chartFactory.setGranularity(granularity);
+        chartFactory.setFormatter(formatter);
+        chartFactory.showLegends(showLegends);
+
+        worker.build(new Callable<JFreeChart>() {
+            @Override
+            public JFreeChart call() {
+                return chartFactory.createChart(definition, toChart);
+            }
+        }, new ChartWorker.ChartListener() {
+            @Override
+            public void chartBuilt(JFreeChart chart) {
+                // setChart will fire the event that updates the data table
+                BaseChartPanel chartPanel = getChartPanel(index);
 
-        // setChart will fire the event that updates the data table
-        BaseChartPanel chartPanel = getChartPanel(index);
+                chartPanel.setSaveSize(definition.getWidth(), definition.getHeight());
+                chartPanel.setChart(chart);
 
-        chartPanel.setSaveSize(definition.getWidth(), definition.getHeight());
-        chartPanel.setChart(chart);
+                chartNeedsUpdate.clear(index);
+            }
+        });
     }
 
     public void saveAllCharts(final String directory) {
@@ -578,7 +615,7 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
 
                     final int n = i;
 
-                    // wait here to ensure the chart actually exists before trying to save it
+                    // selecting the tab starts building the chart if needed; wait for that to finish
                     // save is in the event thread too since the chart object is manipulated when
                     // saved
                     // blocking the event thread is OK since there is a modal dialog anyway
@@ -587,6 +624,14 @@ public final class ReportPanel extends JTabbedPane implements PropertyChangeList
                             @Override
                             public void run() {
                                 setSelectedIndex(n);
+                            }
+                        });
+
+                        worker.awaitBuild();
+
+                        SwingUtilities.invokeAndWait(new Runnable() {
+                            @Override
+                            public void run() {
                                 getChartPanel(n).saveChart(directory, finalName);
                             }
                         });
@@ -9,7 +9,8 @@ import javax.swing.JTable;
 import com.ibm.nmon.gui.Styles;
 
 /**
- * Renders double data with thousands separator and 3 decimal points. Renders NaN as "N/A".
+ * Renders double data with thousands separator and 3 decimal points. Renders NaN as "N/A" and <code>null</code>, i.e.
+ * data that is not yet available, as blank.
  */
 public final class DoubleCellRenderer extends DefaultTableCellRenderer {
     private static final long serialVersionUID = -8018894006090877953L;
@@ -31,6 +32,11 @@ public final class DoubleCellRenderer extends DefaultTableCellRenderer {
     }
 
     private void formatDouble(Object value) {
+        if (value == null) {
+            setValue("");
+            return;
+        }
+
         double d = (Double) value;
 
         if (Double.isNaN(d)) {
@@ -9,7 +9,8 @@ import java.text.DecimalFormat;
 import javax.swing.JTable;
 
 /**
- * Renders integer data with thousands separator.
+ * Renders integer data with thousands separator. Renders <code>null</code>, i.e. data that is not yet available, as
+ * blank.
  */
 public final class IntegerCellRenderer extends DefaultTableCellRenderer {
     private static final long serialVersionUID = 1867029028990000830L;
@@ -27,7 +28,7 @@ public final class IntegerCellRenderer extends DefaultTableCellRenderer {
         super.getTableCellRendererComponent(table, null, isSelected, hasFocus, row, column);
 
         setHorizontalAlignment(TRAILING);
-        setValue(FORMAT.format(value));
+        setValue(value == null ? "" : FORMAT.format(value));
 
         return this;
     }
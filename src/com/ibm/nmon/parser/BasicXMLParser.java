@@ -3,6 +3,7 @@ package com.ibm.nmon.parser;
 import org.slf4j.Logger;
 
 import com.ibm.nmon.parser.util.XMLParserHelper;
+import com.ibm.nmon.util.ArchiveHelper;
 import com.ibm.nmon.util.DataHelper;
 
 import java.io.IOException;
@@ -23,7 +24,7 @@ public abstract class BasicXMLParser {
     protected boolean skip = false;
 
     protected final void parse(String filename) throws IOException {
-        in = new LineNumberReader(new java.io.FileReader(filename));
+        in = new LineNumberReader(ArchiveHelper.openReader(filename));
         parse();
     }
 
@@ -135,7 +136,7 @@ public abstract class BasicXMLParser {
                         }
                     }
 
-                    String name = DataHelper.newString(line.substring(nameStart, nameEnd));
+                    String name = DataHelper.newString(line, nameStart, nameEnd);
 
                     if (start) {
                         String unparsedAttributes = line.substring(nameEnd, elementEnd);
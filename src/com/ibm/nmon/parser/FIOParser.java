@@ -8,9 +8,6 @@ import java.io.IOException;
 
 import java.io.File;
 
-import java.io.LineNumberReader;
-import java.io.FileReader;
-
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.TimeZone;
@@ -21,6 +18,7 @@ import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.SubDataType;
 
+import com.ibm.nmon.parser.util.LineReader;
 import com.ibm.nmon.util.DataHelper;
 
 /**
@@ -29,7 +27,7 @@ import com.ibm.nmon.util.DataHelper;
 public final class FIOParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(FIOParser.class);
 
-    private static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat("yyyyddMM_HHmmss");
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyyddMM_HHmmss");
 
     private static final Pattern DATA_SPLITTER = Pattern.compile(",\\s?");
 
@@ -78,7 +76,7 @@ public final class FIOParser {
         long baseTime = 0;
 
         try {
-            baseTime = TIMESTAMP_FORMAT.parse(timestamp).getTime();
+            baseTime = timestampFormat.parse(timestamp).getTime();
         }
         catch (ParseException e) {
             throw new IllegalArgumentException(
@@ -97,10 +95,10 @@ public final class FIOParser {
                     "unrecoginized type name '" + typeName + "' ; valid values are " + TYPE_NAMES.keySet());
         }
 
-        LineNumberReader in = null;
+        LineReader in = null;
 
         try {
-            in = new LineNumberReader(new FileReader(file));
+            in = new LineReader(filepath);
 
             String line = null;
             DataRecord currentRecord = null;
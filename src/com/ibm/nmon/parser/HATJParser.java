@@ -4,13 +4,13 @@ import org.slf4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.LineNumberReader;
 
 import java.util.regex.Pattern;
 
 import com.ibm.nmon.data.BasicDataSet;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.DataRecord;
+import com.ibm.nmon.parser.util.LineReader;
 import com.ibm.nmon.util.DataHelper;
 
 public final class HATJParser {
@@ -60,10 +60,10 @@ public final class HATJParser {
             startTime = System.currentTimeMillis();
         }
 
-        LineNumberReader in = null;
+        LineReader in = null;
 
         try {
-            in = new LineNumberReader(new java.io.FileReader(filename));
+            in = new LineReader(filename);
             String line = in.readLine();
 
             if (line == null) {
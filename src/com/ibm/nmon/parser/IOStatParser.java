@@ -18,28 +18,27 @@ import java.util.regex.Matcher;
 import java.io.IOException;
 
 import java.io.File;
-import java.io.LineNumberReader;
 
 import com.ibm.nmon.data.BasicDataSet;
 import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.SubDataType;
-import com.ibm.nmon.util.DataHelper;
+import com.ibm.nmon.parser.util.LineReader;
+import com.ibm.nmon.parser.util.TypeFilter;
 
+import com.ibm.nmon.util.DataHelper;
 import com.ibm.nmon.util.TimeHelper;
-import static com.ibm.nmon.util.TimeHelper.TIMESTAMP_FORMAT_ISO;
 
 public final class IOStatParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(IOStatParser.class);
 
-    private static final SimpleDateFormat TIMESTAMP_FORMAT_AIX = new SimpleDateFormat("HH:mm:ss");
+    private final SimpleDateFormat timestampFormatAIX = new SimpleDateFormat("HH:mm:ss");
+    private final SimpleDateFormat timestampFormatISO = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX");
 
-    private static final Matcher ISO_PATTERN = Pattern
-            .compile("(Time: )?\\d{4}\\-\\d{2}\\-\\d{2}T\\d{2}:\\d{2}:\\d{2}([\\-+](\\d{4}?|\\d{2}:\\d{2}|\\d{2})|Z)")
-            .matcher("");
-    private static final Matcher INFO = Pattern.compile(
-            "(.+)\\s(.+)\\s\\((.+)\\)\\s+(\\d{2,4}[\\/-]\\d{2}[\\/-]\\d{2,4})(\\s+_(.+)_)?(\\s+\\((.+)\\sCPU\\))?")
-            .matcher("");
+    private static final Pattern ISO_PATTERN = Pattern
+            .compile("(Time: )?\\d{4}\\-\\d{2}\\-\\d{2}T\\d{2}:\\d{2}:\\d{2}([\\-+](\\d{4}?|\\d{2}:\\d{2}|\\d{2})|Z)");
+    private static final Pattern INFO = Pattern.compile(
+            "(.+)\\s(.+)\\s\\((.+)\\)\\s+(\\d{2,4}[\\/-]\\d{2}[\\/-]\\d{2,4})(\\s+_(.+)_)?(\\s+\\((.+)\\sCPU\\))?");
     private static final Pattern DATA_SPLITTER = Pattern.compile(":?\\s+");
 
     public static final String DEFAULT_HOSTNAME = "iostat";
@@ -62,7 +61,7 @@ public final class IOStatParser {
         VALID_TYPES = java.util.Collections.unmodifiableSet(tmp);
     }
 
-    private LineNumberReader in = null;
+    private LineReader in = null;
 
     private SimpleDateFormat dateFormat = null;
     // iostat output is localized so use NumberFormat instead of Double.parseDouble()
@@ -82,6 +81,10 @@ public final class IOStatParser {
     // cache data type field arrays since there will be a subtype created for each disk / device
     private Map<String, String[]> typeFieldsCache = new java.util.HashMap<String, String[]>();
 
+    private TypeFilter typeFilter = TypeFilter.ALL;
+    // ids of types that the type filter does not need; these types are never created
+    private final Set<String> skippedTypes = new java.util.HashSet<String>();
+
     // private String[] disk_metrics;
 
     public BasicDataSet parse(File file, TimeZone timeZone) throws IOException, ParseException {
@@ -89,13 +92,20 @@ public final class IOStatParser {
     }
 
     public BasicDataSet parse(String filename, TimeZone timeZone) throws IOException, ParseException {
+        return parse(filename, timeZone, TypeFilter.ALL);
+    }
+
+    public BasicDataSet parse(String filename, TimeZone timeZone, TypeFilter typeFilter)
+            throws IOException, ParseException {
         long start = System.nanoTime();
 
         data = new BasicDataSet(filename);
         data.setHostname(DEFAULT_HOSTNAME);
 
+        this.typeFilter = typeFilter;
+
         try {
-            in = new LineNumberReader(new java.io.FileReader(filename));
+            in = new LineReader(filename);
 
             String line = null;
 
@@ -142,7 +152,7 @@ public final class IOStatParser {
                     else if ("Linux".equals(first)) {
                         parseLinuxConfig(line, timeZone);
                     }
-                    else if (ISO_PATTERN.reset(line).matches()) {
+                    else if (ISO_PATTERN.matcher(line).matches()) {
                         createCurrentRecord(line);
                     }
                     else {
@@ -260,6 +270,9 @@ public final class IOStatParser {
                 firstRecord = true;
 
                 typeFieldsCache.clear();
+
+                typeFilter = TypeFilter.ALL;
+                skippedTypes.clear();
             }
         }
     }
@@ -268,7 +281,7 @@ public final class IOStatParser {
         data.setMetadata("OS", "AIX");
         data.setMetadata("AIX", "iostat"); // mimic NMON so OSMatcher works as expected
 
-        dateFormat = TIMESTAMP_FORMAT_AIX;
+        dateFormat = timestampFormatAIX;
         dateFormat.setTimeZone(timeZone);
 
         // AIX has no date, use the default
@@ -332,6 +345,11 @@ public final class IOStatParser {
         DataType dataType = data.getType("IOStat" + " CPU");
 
         if (dataType == null) {
+            // both types are created from the same line, so create both if either is needed
+            if (!isNeeded("IOStat" + " TTY") && !isNeeded("IOStat" + " CPU")) {
+                return;
+            }
+
             parseAIXTTYAndCPUHeader(typeFields);
         }
 
@@ -372,6 +390,10 @@ public final class IOStatParser {
         DataType dataType = data.getType("IOStat" + " " + values[1]);
 
         if (dataType == null) {
+            if (!isNeeded("IOStat" + " " + values[1])) {
+                return;
+            }
+
             // typeFields will be [, Kbps, tps, Kb_read, Kb_wrtn, time]; skip first empty value and time
             String[] fields = new String[typeFields.length - 2];
 
@@ -429,7 +451,7 @@ public final class IOStatParser {
     }
 
     private void parseLinuxConfig(String line, TimeZone timeZone) throws IOException {
-        Matcher matcher = INFO.reset(line);
+        Matcher matcher = INFO.matcher(line);
 
         if (matcher.matches()) {
             data.setHostname(DataHelper.newString(matcher.group(3)));
@@ -439,7 +461,7 @@ public final class IOStatParser {
             String cpuCount = matcher.group(8);
 
             // Linux must export S_TIME_FORMAT=ISO before running iostat
-            dateFormat = TIMESTAMP_FORMAT_ISO;
+            dateFormat = timestampFormatISO;
             dateFormat.setTimeZone(timeZone);
 
             // ISO includes date time, so offset is 0
@@ -466,6 +488,10 @@ public final class IOStatParser {
         DataType cpu = data.getType("IOStat" + " CPU");
 
         if (cpu == null) {
+            if (!isNeeded("IOStat" + " CPU")) {
+                return;
+            }
+
             // create CPU data type
             // subtract 2 since avg-cpu (first column) is not a field
             // also ignore %idle (the last column)
@@ -497,6 +523,11 @@ public final class IOStatParser {
 
         DataType dataType = getDataType(type, values[0], typeFields, isAIX);
 
+        if (dataType == null) {
+            // the type filter does not need this type
+            return;
+        }
+
         // first field is the subtype; ignore AIX time data
         int dataLength = values.length - (isAIX ? 2 : 1);
         int fieldCount = dataType.getFieldCount();
@@ -572,13 +603,19 @@ public final class IOStatParser {
     }
 
     // create a data subtype for each disk, adapter, etc
+    // returns null if the type is not needed
     private DataType getDataType(String type, String subtype, String[] typeFields, boolean isAIX) {
-        DataType dataType = data.getType(SubDataType.buildId("IOStat " + type, subtype));
+        String id = SubDataType.buildId("IOStat " + type, subtype);
+        DataType dataType = data.getType(id);
 
         if (dataType != null) {
             return dataType;
         }
 
+        if (!isNeeded(id)) {
+            return null;
+        }
+
         String[] fieldsArray = typeFieldsCache.get(type);
 
         if (fieldsArray == null) {
@@ -620,6 +657,20 @@ public final class IOStatParser {
         return dataType;
     }
 
+    // only called before a type is created; all the types created by this parser are named by their id
+    private boolean isNeeded(String typeId) {
+        if (skippedTypes.contains(typeId)) {
+            return false;
+        }
+        else if (typeFilter.matches(typeId)) {
+            return true;
+        }
+        else {
+            skippedTypes.add(typeId);
+            return false;
+        }
+    }
+
     private void createCurrentRecord(String timeToParse) throws ParseException {
         long time = dateFormat.parse(timeToParse).getTime() + dateOffset;
 
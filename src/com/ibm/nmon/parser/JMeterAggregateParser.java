@@ -3,8 +3,6 @@ package com.ibm.nmon.parser;
 import org.slf4j.Logger;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.LineNumberReader;
 import java.io.IOException;
 
 import java.text.ParseException;
@@ -18,6 +16,7 @@ import com.ibm.nmon.data.BasicDataSet;
 import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
 
+import com.ibm.nmon.parser.util.LineReader;
 import com.ibm.nmon.util.DataHelper;
 
 public final class JMeterAggregateParser {
@@ -32,7 +31,7 @@ public final class JMeterAggregateParser {
     private static final Set<String> MAX_FIELDS;
     private static final Set<String> SUM_FIELDS;
 
-    private LineNumberReader in = null;
+    private LineReader in = null;
 
     private BasicDataSet dataSet = null;
 
@@ -59,7 +58,7 @@ public final class JMeterAggregateParser {
         dataSet.setMetadata("hostname", "JMeter");
 
         try {
-            in = new LineNumberReader(new FileReader(filename));
+            in = new LineReader(filename);
 
             String line = in.readLine();
 
@@ -160,7 +159,7 @@ public final class JMeterAggregateParser {
 
     // map every time to a set of TransactionAggregates
     private Map<Long, Map<String, TransactionAggregate>> parseData(Map<String, Integer> fieldIndexes,
-            LineNumberReader in) throws IOException {
+            LineReader in) throws IOException {
         int actualFields = fieldIndexes.size();
         int expectedFields = actualFields + 2 + (successIndex == -1 ? 0 : 1) + (hostnameIndex == -1 ? 0 : 1)
                 + (successIndex == -1 ? 0 : 1);
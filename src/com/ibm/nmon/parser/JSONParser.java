@@ -15,13 +15,29 @@ import java.text.SimpleDateFormat;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 import com.ibm.nmon.data.BasicDataSet;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.SubDataType;
 
+import com.ibm.nmon.util.ArchiveHelper;
+
+/**
+ * <p>
+ * Parser for JSON data files. See <code>json_template.json</code> for the format.
+ * </p>
+ *
+ * <p>
+ * Files are read with Jackson's streaming API. The small, top level fields are read as objects but the
+ * <code>data</code> array is never fully loaded into memory. Each record's values are read directly into the arrays
+ * stored in the {@link DataRecord}. Parsing the data requires the <code>types</code>, <code>whenPattern</code> and
+ * <code>timezone</code> fields. If any of those are defined <em>after</em> <code>data</code>, the file is read a second
+ * time to parse the data.
+ * </p>
+ */
 public final class JSONParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(JSONParser.class);
 
@@ -30,6 +46,11 @@ public final class JSONParser {
     private BasicDataSet data = null;
     private SimpleDateFormat format = null;
 
+    // the ids of all the types, i.e. the primary id for subtypes
+    private final java.util.Set<String> typeIds = new java.util.HashSet<String>();
+    // reused when reading values
+    private double[] valuesBuffer = new double[64];
+
     public BasicDataSet parse(File file) throws IOException, ParseException {
         return parse(file.getAbsolutePath());
     }
@@ -38,24 +59,79 @@ public final class JSONParser {
         long start = System.nanoTime();
 
         try {
-            Map<String, Object> root = MAPPER.readValue(new java.io.File(filename),
-                    new TypeReference<Map<String, Object>>() {});
-
             data = new BasicDataSet(filename);
 
-            Object temp = root.get("hostname");
+            // all top level fields except data
+            Map<String, Object> root = new java.util.HashMap<String, Object>();
+
+            boolean dataFound = false;
+            boolean dataParsed = false;
+            boolean rereadNeeded = false;
+
+            try (JsonParser parser = MAPPER.getFactory().createParser(ArchiveHelper.openStream(filename))) {
+                startRoot(parser);
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+
+                    if ("data".equals(field)) {
+                        dataFound = true;
 
-            if (temp == null) {
-                throw new IOException("field 'hostname' not found");
+                        if (!dataParsed && root.containsKey("hostname") && root.containsKey("whenPattern")
+                                && root.containsKey("types")) {
+                            parseHeader(root);
+                            parseData(parser);
+
+                            dataParsed = true;
+                        }
+                        else {
+                            parser.skipChildren();
+                        }
+                    }
+                    else {
+                        root.put(field, MAPPER.readValue(parser, Object.class));
+
+                        if (dataParsed && ("timezone".equals(field) || "whenPattern".equals(field)
+                                || "types".equals(field) || "hostname".equals(field))) {
+                            rereadNeeded = true;
+                        }
+                    }
+                }
             }
 
-            data.setHostname((String) temp);
+            if (!dataParsed || rereadNeeded) {
+                if (dataParsed) {
+                    data = new BasicDataSet(filename);
+                }
 
-            format = parseDateFormat(root.get("whenPattern"), root.get("timezone"));
+                parseHeader(root);
+
+                if (!dataFound) {
+                    throw new IOException("'data' must be defined");
+                }
+
+                LOGGER.debug("'data' is defined before the fields it requires; reading {} again", filename);
+
+                try (JsonParser parser = MAPPER.getFactory().createParser(ArchiveHelper.openStream(filename))) {
+                    startRoot(parser);
+
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.getCurrentName();
+                        parser.nextToken();
+
+                        if ("data".equals(field)) {
+                            parseData(parser);
+                            break;
+                        }
+                        else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            }
 
             parseMetadata(root.get("metadata"));
-            parseTypes(root.get("types"));
-            parseData(root.get("data"));
 
             return data;
         }
@@ -67,7 +143,28 @@ public final class JSONParser {
 
             data = null;
             format = null;
+            typeIds.clear();
+        }
+    }
+
+    private void startRoot(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("JSON data must be an object");
+        }
+    }
+
+    private void parseHeader(Map<String, Object> root) throws IOException {
+        Object temp = root.get("hostname");
+
+        if (temp == null) {
+            throw new IOException("field 'hostname' not found");
         }
+
+        data.setHostname((String) temp);
+
+        format = parseDateFormat(root.get("whenPattern"), root.get("timezone"));
+
+        parseTypes(root.get("types"));
     }
 
     private SimpleDateFormat parseDateFormat(Object whenPattern, Object timezone) throws IOException {
@@ -157,6 +254,8 @@ public final class JSONParser {
                 fieldsArray[i] = fields.get(i);
             }
 
+            typeIds.add(typeId);
+
             Object temp = type.get("subtypes");
 
             if (temp != null) {
@@ -174,35 +273,78 @@ public final class JSONParser {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void parseData(Object rawData) throws IOException {
-        if (rawData == null) {
+    private void parseData(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
             throw new IOException("'data' must be defined");
         }
+        else if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new IOException("'data' must be an array");
+        }
 
-        List<Map<String, Object>> dataToParse = (List<Map<String, Object>>) rawData;
+        // values for each type id in the current record; either double[] for types or Map<String, double[]> for
+        // subtypes; other JSON values are stored as Strings
+        Map<String, Object> datum = new java.util.HashMap<String, Object>();
+        int count = 0;
 
-        if ((dataToParse.size() == 0)) {
-            throw new IOException("at least one 'data' element must be defined");
-        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                throw new IOException("'data' elements must be objects");
+            }
+
+            ++count;
+
+            String timestamp = null;
+            datum.clear();
 
-        for (Map<String, Object> datum : dataToParse) {
-            Object temp = datum.get("when");
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+
+                if ("when".equals(field)) {
+                    timestamp = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                }
+                else if (typeIds.contains(field)) {
+                    if (token == JsonToken.START_OBJECT) {
+                        Map<String, double[]> subtypes = new java.util.HashMap<String, double[]>();
+
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String subtypeId = parser.getCurrentName();
+
+                            if (parser.nextToken() == JsonToken.START_ARRAY) {
+                                subtypes.put(subtypeId, parseValues(parser, field));
+                            }
+                            else {
+                                parser.skipChildren();
+                            }
+                        }
+
+                        datum.put(field, subtypes);
+                    }
+                    else if (token == JsonToken.START_ARRAY) {
+                        datum.put(field, parseValues(parser, field));
+                    }
+                    else if (token != JsonToken.VALUE_NULL) {
+                        datum.put(field, parser.getText());
+                    }
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
 
-            if (temp == null) {
+            if (timestamp == null) {
                 LOGGER.warn("'when' not defined for data record; it will be ignored. Previous time was '{}'",
                         data.getRecordCount() == 0 ? "<null>" : format.format(new java.util.Date(data.getEndTime())));
                 continue;
             }
 
             long time = 0;
-            String timestamp = (String) temp;
 
             try {
                 time = format.parse(timestamp).getTime();
             }
             catch (ParseException pe) {
-                LOGGER.warn("cannot parse 'when' value '{}'; the data record will be ignored", temp);
+                LOGGER.warn("cannot parse 'when' value '{}'; the data record will be ignored", timestamp);
                 continue;
             }
 
@@ -214,6 +356,35 @@ public final class JSONParser {
 
             data.addRecord(record);
         }
+
+        if (count == 0) {
+            throw new IOException("at least one 'data' element must be defined");
+        }
+    }
+
+    // reads the array at the current token; null values are stored as NaN
+    private double[] parseValues(JsonParser parser, String typeId) throws IOException {
+        int n = 0;
+        JsonToken token = null;
+
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (n == valuesBuffer.length) {
+                valuesBuffer = java.util.Arrays.copyOf(valuesBuffer, n * 2);
+            }
+
+            if (token == JsonToken.VALUE_NULL) {
+                valuesBuffer[n++] = Double.NaN;
+            }
+            else if (token.isNumeric()) {
+                valuesBuffer[n++] = parser.getDoubleValue();
+            }
+            else {
+                throw new IOException("values for type '" + typeId + "' must be numbers" + " at line "
+                        + parser.getCurrentLocation().getLineNr());
+            }
+        }
+
+        return java.util.Arrays.copyOf(valuesBuffer, n);
     }
 
     @SuppressWarnings("unchecked")
@@ -236,33 +407,18 @@ public final class JSONParser {
 
         if (isSubType) {
             if (temp instanceof Map) {
-                Map<String, Object> map = (Map<String, Object>) temp;
+                Map<String, double[]> map = (Map<String, double[]>) temp;
 
                 String subtypeId = ((SubDataType) type).getSubId();
-                temp = map.get(subtypeId);
+                double[] values = map.get(subtypeId);
 
-                if (temp == null) {
+                if (values == null) {
                     LOGGER.warn("no data for subtype '{}' at time {}", subtypeId,
                             format.format(new java.util.Date(record.getTime())));
                     return;
                 }
                 else {
-                    List<Number> values = (List<Number>) temp;
-
-                    double[] doubleValues = new double[values.size()];
-
-                    for (int i = 0; i < doubleValues.length; i++) {
-                        Number value = values.get(i);
-
-                        if (value == null) {
-                            doubleValues[i] = Double.NaN;
-                        }
-                        else {
-                            doubleValues[i] = value.doubleValue();
-                        }
-                    }
-
-                    record.addData(type, doubleValues);
+                    record.addData(type, values);
                 }
             }
             else {
@@ -271,23 +427,8 @@ public final class JSONParser {
             }
         }
         else {
-            if (temp instanceof List) {
-                List<Number> values = (List<Number>) temp;
-
-                double[] doubleValues = new double[values.size()];
-
-                for (int i = 0; i < doubleValues.length; i++) {
-                    Number value = values.get(i);
-
-                    if (value == null) {
-                        doubleValues[i] = Double.NaN;
-                    }
-                    else {
-                        doubleValues[i] = value.doubleValue();
-                    }
-                }
-
-                record.addData(type, doubleValues);
+            if (temp instanceof double[]) {
+                record.addData(type, (double[]) temp);
             }
             else {
                 LOGGER.warn("unknown JSON object for type '{}' at time {}; it must be an array", typeId,
@@ -6,32 +6,76 @@ import java.io.File;
 import java.io.IOException;
 
 import java.io.Reader;
-import java.io.LineNumberReader;
 
 import java.text.SimpleDateFormat;
 import java.text.ParseException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
+import java.util.concurrent.ForkJoinTask;
+
 import java.util.regex.Pattern;
 
 import com.ibm.nmon.data.*;
 import com.ibm.nmon.data.Process;
 import com.ibm.nmon.data.transform.*;
+import com.ibm.nmon.interval.Interval;
+import com.ibm.nmon.parser.util.LineReader;
+import com.ibm.nmon.parser.util.LineTokenizer;
+import com.ibm.nmon.parser.util.SnapshotIndex;
+import com.ibm.nmon.parser.util.TypeFilter;
+import com.ibm.nmon.util.ArchiveHelper;
 import com.ibm.nmon.util.DataHelper;
+import com.ibm.nmon.util.SymbolTable;
 
 /**
+ * <p>
  * A parser for NMON files. The result of a successfully parsed file will be a populated {@link NMONDataSet} object.
+ * </p>
+ *
+ * <p>
+ * A {@link TypeFilter} can be given to only parse the data for some types. The data for all other types is skipped
+ * without parsing any values and those types are not added to the data set.
+ * </p>
+ *
+ * <p>
+ * Large files are split into chunks at <code>ZZZZ</code> records and the chunks are parsed in parallel. See
+ * {@link #parseChunks(String)}.
+ * </p>
+ *
+ * <p>
+ * If only the data for an {@link Interval} is needed, the parser uses a {@link SnapshotIndex} to seek directly to the
+ * first snapshot in the interval and stops after the last one. See {@link #parseRange(String, Interval)}.
+ * </p>
+ *
+ * <p>
+ * NMON writes its file incrementally while it is running. These files can be {@link #follow(String, TimeZone, boolean)
+ * followed} so that only newly appended snapshots are parsed as the file grows. While following a file, this parser
+ * cannot be used to parse any other file.
+ * </p>
  */
 public final class NMONParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(NMONParser.class);
 
-    private static final SimpleDateFormat NMON_FORMAT = new SimpleDateFormat("HH:mm:ss dd-MMM-yyyy",
+    // not static since multiple parsers can run concurrently
+    private final SimpleDateFormat nmonFormat = new SimpleDateFormat("HH:mm:ss dd-MMM-yyyy",
             java.util.Locale.US);
     private static final Pattern DATA_SPLITTER = Pattern.compile(",");
 
-    private LineNumberReader in = null;
+    // files are only split into chunks if each chunk would have at least this much data
+    private static final long MIN_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private long minChunkSize = MIN_CHUNK_SIZE;
+    private int maxChunks = Runtime.getRuntime().availableProcessors();
+
+    // data lines are split without creating a String for every field
+    private final LineTokenizer tokenizer = new LineTokenizer(',');
+    // direct mapped cache of recently used DataTypes, indexed by the hash of the type id
+    private final DataType[] typeCache = new DataType[256];
+
+    private LineReader in = null;
     private DataRecord currentRecord = null;
 
     private NMONDataSet data = null;
@@ -46,12 +90,22 @@ public final class NMONParser {
     private boolean isAIX = false;
     private boolean scaleProcessesByCPU = true;
 
+    // when following a file, the time of the last record returned by a previous call to follow() or update()
+    private long followedEndTime = Long.MIN_VALUE;
+
     private final Map<Integer, Process> processes = new java.util.HashMap<Integer, Process>();
     private final Map<String, StringBuilder> systemInfo = new java.util.HashMap<String, StringBuilder>();
 
     private final List<DataTransform> transforms = new java.util.ArrayList<DataTransform>();
     private final List<DataPostProcessor> processors = new java.util.ArrayList<DataPostProcessor>();
 
+    private TypeFilter typeFilter = TypeFilter.ALL;
+    // types defined in the file that the type filter does not need, by id
+    private final Map<String, DataType> skippedTypes = new java.util.HashMap<String, DataType>();
+
+    // only set when this parser is parsing a single chunk of a larger file
+    private Chunk chunk = null;
+
     public NMONParser() {
         processors.add(new NetworkTotalPostProcessor("NET"));
         processors.add(new NetworkTotalPostProcessor("SEA"));
@@ -64,41 +118,65 @@ public final class NMONParser {
     }
 
     public NMONDataSet parse(String filename, TimeZone timeZone, boolean scaleProcessesByCPU) throws IOException {
-        return parse(filename, new java.io.FileReader(filename), timeZone, scaleProcessesByCPU);
+        return parse(filename, timeZone, scaleProcessesByCPU, TypeFilter.ALL);
+    }
+
+    public NMONDataSet parse(String filename, TimeZone timeZone, boolean scaleProcessesByCPU, TypeFilter typeFilter)
+            throws IOException {
+        return parse(filename, timeZone, scaleProcessesByCPU, typeFilter, Interval.DEFAULT);
+    }
+
+    /**
+     * Parse a file, skipping the snapshots outside the given interval when possible. The returned data may still
+     * include snapshots outside the interval, for example if the file cannot be indexed.
+     */
+    public NMONDataSet parse(String filename, TimeZone timeZone, boolean scaleProcessesByCPU, TypeFilter typeFilter,
+            Interval interval) throws IOException {
+        // archive entries cannot be read from an offset, so they cannot be split into chunks
+        return parse(filename, new LineReader(filename), timeZone, scaleProcessesByCPU, typeFilter, interval,
+                !ArchiveHelper.isArchiveEntry(filename));
     }
 
     public NMONDataSet parse(String datasetName, Reader reader, TimeZone timeZone, boolean scaleProcessesByCPU)
             throws IOException {
-        long start = System.nanoTime();
+        return parse(datasetName, reader, timeZone, scaleProcessesByCPU, TypeFilter.ALL);
+    }
 
-        this.scaleProcessesByCPU = scaleProcessesByCPU;
+    public NMONDataSet parse(String datasetName, Reader reader, TimeZone timeZone, boolean scaleProcessesByCPU,
+            TypeFilter typeFilter) throws IOException {
+        return parse(datasetName, new LineReader(reader), timeZone, scaleProcessesByCPU, typeFilter,
+                Interval.DEFAULT, false);
+    }
 
-        in = new LineNumberReader(reader);
+    private NMONDataSet parse(String datasetName, LineReader reader, TimeZone timeZone, boolean scaleProcessesByCPU,
+            TypeFilter typeFilter, Interval interval, boolean chunked) throws IOException {
+        if (this.in != null) {
+            reader.close();
+            throw new IllegalStateException("cannot parse " + datasetName + " while following " + data.getSourceFile());
+        }
 
-        try {
-            data = new NMONDataSet(datasetName);
+        long start = System.nanoTime();
 
-            NMON_FORMAT.setTimeZone(timeZone);
+        in = reader;
+        this.typeFilter = typeFilter;
 
-            data.setMetadata("parsed_gmt_offset",
-                    Double.toString(timeZone.getOffset(System.currentTimeMillis()) / 3600000.0d));
+        try {
+            parseStart(datasetName, timeZone, scaleProcessesByCPU);
 
-            String line = parseHeaders();
+            // the reader is positioned on the first timestamp record
+            boolean parsed = false;
 
-            // no timestamp records after the headers => no other data
-            if ((line == null) || !line.startsWith("ZZZZ")) {
-                throw new IOException("file '" + datasetName + "' does not appear to have any data records");
+            if (chunked) {
+                parsed = (!Interval.DEFAULT.equals(interval) && parseRange(datasetName, interval))
+                        || parseChunks(datasetName);
             }
-            // else line contains the first timestamp record, so start parsing
 
-            for (DataPostProcessor processor : processors) {
-                processor.addDataTypes(data);
+            if (!parsed) {
+                do {
+                    parseLine();
+                } while (in.next());
             }
 
-            do {
-                parseLine(line);
-            } while ((line = in.readLine()) != null);
-
             // save file's system info
             for (String name : systemInfo.keySet()) {
                 String value = systemInfo.get(name).toString();
@@ -110,40 +188,752 @@ public final class NMONParser {
                 completeCurrentRecord();
             }
 
-            DataHelper.aggregateProcessData(data, LOGGER);
+            DataHelper.aggregateProcessData(data, LOGGER, Runtime.getRuntime().availableProcessors());
 
             return data;
         }
         finally {
-            if (in != null) {
-                try {
-                    in.close();
-                }
-                catch (Exception e) {
-                    // ignore
-                }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Parse complete for {} in {}ms", data.getSourceFile(),
+                        (System.nanoTime() - start) / 1000000.0d);
+            }
+
+            reset();
+        }
+    }
+
+    /**
+     * <p>
+     * Start following a NMON file that is still being written. The file is parsed as it currently exists but, unlike
+     * {@link #parse(String, TimeZone, boolean) parse()}, the last snapshot is not included in the returned data since
+     * NMON may not have finished writing it. It will be returned by {@link #update()} once the next <code>ZZZZ</code>
+     * record is written.
+     * </p>
+     *
+     * <p>
+     * Call {@link #close()} to stop following the file.
+     * </p>
+     *
+     * @return the data for all the complete snapshots in the file; this may not contain any records if NMON has only
+     *         written a single snapshot
+     */
+    public NMONDataSet follow(String filename, TimeZone timeZone, boolean scaleProcessesByCPU) throws IOException {
+        if (this.in != null) {
+            throw new IllegalStateException("already following " + data.getSourceFile());
+        }
+
+        long start = System.nanoTime();
+
+        in = new LineReader(filename, true);
+
+        try {
+            parseStart(filename, timeZone, scaleProcessesByCPU);
+
+            do {
+                parseLine();
+            } while (in.next());
 
-                in = null;
+            for (String name : systemInfo.keySet()) {
+                String value = systemInfo.get(name).toString();
+                data.setSystemInfo(name, value);
             }
 
+            DataHelper.aggregateProcessData(data, LOGGER, Runtime.getRuntime().availableProcessors());
+
+            NMONDataSet toReturn = data;
+            startNextUpdate();
+
             if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Parse complete for {} in {}ms", data.getSourceFile(),
+                LOGGER.debug("Initial parse complete for followed file {} in {}ms", filename,
                         (System.nanoTime() - start) / 1000000.0d);
             }
 
-            data = null;
-            currentRecord = null;
-            topFields = null;
-            topCommandIndex = -1;
-            summaryFields = null;
-            fileCPUs = 1;
-            seenFirstDataType = false;
-            isAIX = false;
+            return toReturn;
+        }
+        catch (IOException | RuntimeException e) {
+            reset();
+            throw e;
+        }
+    }
+
+    /**
+     * Parse any snapshots appended to the {@link #follow(String, TimeZone, boolean) followed} file since the last call
+     * to this method.
+     *
+     * @return a data set containing only the new records or <code>null</code> if no complete snapshots have been
+     *         written
+     */
+    public NMONDataSet update() throws IOException {
+        if (in == null) {
+            throw new IllegalStateException("not following a file");
+        }
 
-            processes.clear();
-            systemInfo.clear();
-            transforms.clear();
+        long start = System.nanoTime();
+
+        while (in.next()) {
+            parseLine();
         }
+
+        if (data.getRecordCount() == 0) {
+            return null;
+        }
+
+        DataHelper.aggregateProcessData(data, LOGGER, Runtime.getRuntime().availableProcessors());
+
+        NMONDataSet toReturn = data;
+        startNextUpdate();
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Parsed {} new records for {} in {}ms", new Object[] { toReturn.getRecordCount(),
+                    toReturn.getSourceFile(), (System.nanoTime() - start) / 1000000.0d });
+        }
+
+        return toReturn;
+    }
+
+    /**
+     * Stop following the current file. Any incomplete snapshot at the end of the file is discarded.
+     */
+    public void close() {
+        reset();
+    }
+
+    // allows tests to split small files into chunks regardless of the number of processors
+    void setChunking(long minChunkSize, int maxChunks) {
+        this.minChunkSize = minChunkSize;
+        this.maxChunks = maxChunks;
+    }
+
+    public boolean isFollowing() {
+        return in != null;
+    }
+
+    /**
+     * <p>
+     * Split the rest of the file into chunks at <code>ZZZZ</code> records and parse them in parallel. Each chunk is
+     * parsed by a separate parser that starts with the data types and settings from the file's headers. The chunks are
+     * then combined in time order. A process whose data spans chunks is resolved to a single Process, exactly as if the
+     * file had been parsed serially. Any warnings for a chunk are logged once the chunks are combined, in file order.
+     * </p>
+     *
+     * <p>
+     * Some records depend on earlier records in ways that cannot be resolved after the fact. Examples are data types
+     * that are defined in one chunk and used in the next, or times that go backwards across chunks. If any chunk has
+     * such a record, nothing is added to the data set and the file is parsed serially instead.
+     * </p>
+     *
+     * @return <code>true</code> if the file was parsed; <code>false</code> if the file is too small to split or must be
+     *         parsed serially, in which case the reader is still positioned on the first timestamp record
+     */
+    private boolean parseChunks(String filename) throws IOException {
+        long bodyStart = in.getOffset();
+        long size = java.nio.file.Files.size(java.nio.file.Paths.get(filename));
+
+        int count = (int) Math.min(maxChunks, (size - bodyStart) / minChunkSize);
+
+        if (count < 2) {
+            return false;
+        }
+
+        long startT = System.nanoTime();
+
+        List<Long> boundaries = findChunkBoundaries(filename, bodyStart, size, count);
+
+        if (boundaries.size() < 3) {
+            return false;
+        }
+
+        // the reader is on the first line of the first chunk
+        NMONParser[] parsers = parseChunks(filename, boundaries, in.getLineNumber());
+
+        if ((parsers == null) || !combineChunks(parsers)) {
+            return false;
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("parsed {} in {} chunks in {}ms", new Object[] { filename, parsers.length,
+                    (System.nanoTime() - startT) / 1000000.0d });
+        }
+
+        return true;
+    }
+
+    /**
+     * <p>
+     * Parse only the snapshots in the given interval. The {@link SnapshotIndex} for the file gives the offsets of the
+     * first snapshot in the interval and the first snapshot after it. Only that range is parsed, split into chunks in
+     * parallel if it is large enough, as in {@link #parseChunks(String)}.
+     * </p>
+     *
+     * <p>
+     * Data types defined before the range and system info anywhere outside the range are parsed from the lines the
+     * index holds for them. The lines before the range are parsed by a separate parser and combined as if they were a
+     * chunk before the first one, so nothing is changed if the range cannot be parsed. Types defined after the range
+     * have no data in it, so they are not added. Processes that were already running at the start of the range start
+     * with the first snapshot in the range. Their command lines are only known if there is a <code>UARG</code> record
+     * for them in the range.
+     * </p>
+     *
+     * @return <code>true</code> if the range was parsed; <code>false</code> if the file could not be indexed, the
+     *         interval covers the whole file or contains no snapshots, or the range must be parsed serially; in any of
+     *         these cases the reader is still positioned on the first timestamp record
+     */
+    private boolean parseRange(String filename, Interval interval) throws IOException {
+        long startT = System.nanoTime();
+
+        SnapshotIndex index = null;
+
+        try {
+            index = SnapshotIndex.load(filename);
+        }
+        catch (IOException ioe) {
+            LOGGER.warn("could not index " + filename + "; parsing the whole file", ioe);
+            return false;
+        }
+
+        int snapshots = index.getSnapshotCount();
+        long[] times = new long[snapshots];
+
+        for (int i = 0; i < snapshots; i++) {
+            try {
+                times[i] = nmonFormat.parse(index.getTimestamp(i)).getTime();
+            }
+            catch (ParseException pe) {
+                return cannotSeek(filename, "invalid timestamp " + index.getTimestamp(i));
+            }
+
+            // parseTimestamp() adjusts times that go backwards so their actual times are not known
+            if ((i > 0) && (times[i] <= times[i - 1])) {
+                return cannotSeek(filename, "times are not increasing at " + index.getTimestamp(i));
+            }
+        }
+
+        int first = 0;
+
+        while ((first < snapshots) && (times[first] < interval.getStart())) {
+            ++first;
+        }
+
+        int last = first;
+
+        while ((last < snapshots) && (times[last] <= interval.getEnd())) {
+            ++last;
+        }
+
+        if (first == last) {
+            return cannotSeek(filename, "no snapshots in " + interval);
+        }
+
+        if ((first == 0) && (last == snapshots)) {
+            // whole file
+            return false;
+        }
+
+        long rangeStart = index.getOffset(first);
+        long rangeEnd = last == snapshots ? index.getSize() : index.getOffset(last);
+
+        // definitions before the range are parsed now; system info is added when the chunks are combined
+        NMONParser definitions = new NMONParser();
+        definitions.startChunk(this, new Chunk(0, rangeStart));
+
+        List<String[]> systemInfoAfter = new java.util.ArrayList<String[]>();
+
+        for (int i = 0; i < index.getRunCount(); i++) {
+            long runStart = index.getRunStart(i);
+            boolean before = runStart < rangeStart;
+
+            if (!before && (runStart < rangeEnd)) {
+                // parsed with the range
+                continue;
+            }
+
+            LineReader reader = new LineReader(filename, runStart, index.getRunEnd(i));
+
+            // for line numbers in any warnings
+            definitions.in = reader;
+
+            try {
+                while (reader.next()) {
+                    String[] values = DATA_SPLITTER.split(reader.getLine());
+
+                    if (before) {
+                        definitions.parseDefinition(values);
+                    }
+                    else if (values[0].startsWith("BBB")) {
+                        systemInfoAfter.add(values);
+                    }
+                }
+            }
+            finally {
+                definitions.in = null;
+                reader.close();
+            }
+        }
+
+        // SUMMARY fields defined before the range apply to all the chunks
+        definitions.chunk.summaryRedefined = false;
+
+        int count = (int) Math.max(1, Math.min(maxChunks, (rangeEnd - rangeStart) / minChunkSize));
+
+        // split at the indexed snapshots closest to an even split
+        List<Long> boundaries = new java.util.ArrayList<Long>(count + 1);
+        boundaries.add(rangeStart);
+
+        int snapshot = first;
+
+        for (int i = 1; i < count; i++) {
+            long target = rangeStart + (rangeEnd - rangeStart) * i / count;
+
+            while ((snapshot < last) && (index.getOffset(snapshot) <= target)) {
+                ++snapshot;
+            }
+
+            if ((snapshot < last) && (index.getOffset(snapshot) > boundaries.get(boundaries.size() - 1))) {
+                boundaries.add(index.getOffset(snapshot));
+            }
+        }
+
+        boundaries.add(rangeEnd);
+
+        // each chunk starts with the types defined before the range
+        NMONParser[] parsers = definitions.parseChunks(filename, boundaries, index.getLineNumber(first));
+
+        if (parsers == null) {
+            return false;
+        }
+
+        parsers[parsers.length - 1].chunk.systemInfo.addAll(systemInfoAfter);
+
+        NMONParser[] toCombine = new NMONParser[parsers.length + 1];
+        toCombine[0] = definitions;
+        System.arraycopy(parsers, 0, toCombine, 1, parsers.length);
+
+        if (!combineChunks(toCombine)) {
+            return false;
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("parsed {} of {} snapshots in {} for {} in {}ms", new Object[] { last - first, snapshots,
+                    filename, interval, (System.nanoTime() - startT) / 1000000.0d });
+        }
+
+        return true;
+    }
+
+    private static boolean cannotSeek(String filename, String reason) {
+        LOGGER.debug("cannot parse only part of {}: {}; parsing the whole file", filename, reason);
+
+        return false;
+    }
+
+    /**
+     * Parse the chunks between each boundary in parallel.
+     *
+     * @param firstLine the line number of the first line in the first chunk
+     * @return the parser for each chunk or <code>null</code> if any chunk could not be parsed
+     */
+    private NMONParser[] parseChunks(String filename, List<Long> boundaries, int firstLine) {
+        final NMONParser[] parsers = new NMONParser[boundaries.size() - 1];
+        List<ForkJoinTask<?>> tasks = new java.util.ArrayList<ForkJoinTask<?>>(parsers.length);
+
+        final String file = filename;
+        final SymbolTable symbols = SymbolTable.getCurrent();
+
+        for (int i = 0; i < parsers.length; i++) {
+            final NMONParser parser = new NMONParser();
+            parser.startChunk(this, new Chunk(boundaries.get(i), boundaries.get(i + 1)));
+
+            parsers[i] = parser;
+
+            tasks.add(ForkJoinTask.adapt(new Runnable() {
+                @Override
+                public void run() {
+                    // tasks may run on the calling thread, so restore its table
+                    SymbolTable previous = SymbolTable.getCurrent();
+                    SymbolTable.setCurrent(symbols);
+
+                    try {
+                        parser.parseChunk(file);
+                    }
+                    catch (IOException | RuntimeException e) {
+                        parser.chunk.failure = e;
+                    }
+                    finally {
+                        SymbolTable.setCurrent(previous);
+                    }
+                }
+            }));
+        }
+
+        ForkJoinTask.invokeAll(tasks);
+
+        for (NMONParser parser : parsers) {
+            if (parser.chunk.failure != null) {
+                LOGGER.debug("could not parse chunk of {} at offset {}; parsing the file serially",
+                        new Object[] { filename, parser.chunk.start, parser.chunk.failure });
+                return null;
+            }
+        }
+
+        int lineOffset = firstLine - 1;
+
+        for (NMONParser parser : parsers) {
+            parser.chunk.lineOffset = lineOffset;
+            lineOffset += parser.chunk.lineCount;
+        }
+
+        return parsers;
+    }
+
+    // offsets of the ZZZZ records that start each chunk, plus the end of the file
+    private static List<Long> findChunkBoundaries(String filename, long start, long size, int count)
+            throws IOException {
+        List<Long> boundaries = new java.util.ArrayList<Long>(count + 1);
+        boundaries.add(start);
+
+        for (int i = 1; i < count; i++) {
+            long target = start + (size - start) * i / count;
+
+            if (target <= boundaries.get(boundaries.size() - 1)) {
+                continue;
+            }
+
+            LineReader reader = new LineReader(filename, target, size);
+
+            try {
+                // the first line is probably only part of a line
+                reader.next();
+
+                while (reader.next()) {
+                    if (reader.startsWith("ZZZZ")) {
+                        long offset = reader.getOffset();
+
+                        if (offset > boundaries.get(boundaries.size() - 1)) {
+                            boundaries.add(offset);
+                        }
+
+                        break;
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+
+        boundaries.add(size);
+
+        return boundaries;
+    }
+
+    private void startChunk(NMONParser parent, Chunk chunk) {
+        this.chunk = chunk;
+
+        scaleProcessesByCPU = parent.scaleProcessesByCPU;
+        nmonFormat.setTimeZone(parent.nmonFormat.getTimeZone());
+
+        data = new NMONDataSet(parent.data.getSourceFile());
+
+        for (String name : parent.data.getMetadataNames()) {
+            data.setMetadata(name, parent.data.getMetadata(name));
+        }
+
+        // includes the types added by the post processors
+        for (DataType type : parent.data.getTypes()) {
+            data.addType(type);
+        }
+
+        transforms.addAll(parent.transforms);
+
+        typeFilter = parent.typeFilter;
+        skippedTypes.putAll(parent.skippedTypes);
+
+        topFields = parent.topFields;
+        topCommandIndex = parent.topCommandIndex;
+        summaryFields = parent.summaryFields;
+        fileCPUs = parent.fileCPUs;
+        seenFirstDataType = parent.seenFirstDataType;
+        isAIX = parent.isAIX;
+    }
+
+    private void parseChunk(String filename) throws IOException {
+        in = new LineReader(filename, chunk.start, chunk.end);
+
+        try {
+            while (in.next()) {
+                parseLine();
+            }
+
+            // the next chunk starts with a new timestamp, so the last record is complete
+            if (currentRecord != null) {
+                completeCurrentRecord();
+            }
+
+            chunk.lineCount = in.getLineNumber();
+        }
+        finally {
+            in.close();
+            in = null;
+        }
+    }
+
+    /**
+     * Check that the chunks can be combined, resolve processes that continue from one chunk to the next and then add
+     * all the chunks' data to this parser's data set. Nothing is added if the chunks cannot be combined.
+     */
+    private boolean combineChunks(NMONParser[] parsers) {
+        // the state at the end of each chunk, as if the chunks had been parsed serially
+        Map<String, DataType> types = new java.util.HashMap<String, DataType>();
+        Map<Integer, Process> lastProcesses = new java.util.HashMap<Integer, Process>();
+        Map<Process, ProcessDataType> processTypes = new java.util.IdentityHashMap<Process, ProcessDataType>();
+        long endTime = Long.MIN_VALUE;
+
+        for (DataType type : data.getTypes()) {
+            types.put(type.getId(), type);
+        }
+
+        // for each chunk, the processes that continue an existing process and the type of the existing process
+        List<Map<DataType, ProcessDataType>> continued = new java.util.ArrayList<Map<DataType, ProcessDataType>>();
+
+        for (NMONParser parser : parsers) {
+            Chunk chunk = parser.chunk;
+            NMONDataSet chunkData = parser.data;
+
+            if (chunk.summaryRedefined) {
+                return cannotCombine(chunk, "SUMMARY fields are redefined");
+            }
+
+            if (chunkData.getRecordCount() > 0) {
+                if (chunkData.getStartTime() <= endTime) {
+                    return cannotCombine(chunk, "times are not after the previous chunk");
+                }
+
+                endTime = chunkData.getEndTime();
+            }
+
+            for (String id : chunk.undefinedTypes) {
+                if (types.containsKey(id)) {
+                    return cannotCombine(chunk, "data type " + id + " is defined in a previous chunk");
+                }
+            }
+
+            for (Integer pid : chunk.unresolvedUargs) {
+                if (lastProcesses.containsKey(pid)) {
+                    return cannotCombine(chunk, "UARG for process " + pid + " is in a previous chunk");
+                }
+            }
+
+            for (DataType type : chunk.newTypes) {
+                DataType existing = types.get(type.getId());
+
+                if (existing == null) {
+                    types.put(type.getId(), type);
+                }
+                else if (!existing.getFields().equals(type.getFields())) {
+                    return cannotCombine(chunk, "data type " + type.getId() + " is redefined");
+                }
+            }
+
+            Map<DataType, ProcessDataType> continuedTypes = new java.util.IdentityHashMap<DataType, ProcessDataType>();
+            Map<Process, Process> continuedProcesses = new java.util.IdentityHashMap<Process, Process>();
+
+            // apply the same rules as parseTopData() and parseUARG() to the first process for each pid in the chunk
+            for (Process process : chunk.firstProcesses.values()) {
+                Process previous = lastProcesses.get(process.getId());
+
+                if (previous == null) {
+                    continue;
+                }
+
+                if (!previous.getName().equals(process.getName())) {
+                    // pid reused for a different command
+                    previous.setEndTime(process.getStartTime());
+                    continue;
+                }
+
+                String commandLine = process.getCommandLine();
+                String previousCommandLine = previous.getCommandLine();
+
+                if ("".equals(commandLine) || "".equals(previousCommandLine)
+                        || commandLine.equals(previousCommandLine)) {
+                    // same process
+                    if ("".equals(previousCommandLine)) {
+                        previous.setCommandLine(commandLine);
+                    }
+
+                    previous.setEndTime(process.getEndTime());
+
+                    continuedTypes.put(chunkData.getType(process), processTypes.get(previous));
+                    continuedProcesses.put(process, previous);
+                }
+                else {
+                    // parseUARG() would have split the process at the UARG record
+                    return cannotCombine(chunk, "command line for process " + process.getId() + " changes");
+                }
+            }
+
+            for (Map.Entry<Integer, Process> entry : parser.processes.entrySet()) {
+                Process process = entry.getValue();
+                Process previous = continuedProcesses.get(process);
+
+                if (previous == null) {
+                    processTypes.put(process, chunkData.getType(process));
+                    lastProcesses.put(entry.getKey(), process);
+                }
+                else {
+                    lastProcesses.put(entry.getKey(), previous);
+                }
+            }
+
+            continued.add(continuedTypes);
+        }
+
+        // all the chunks can be combined; add their data
+        for (int i = 0; i < parsers.length; i++) {
+            Chunk chunk = parsers[i].chunk;
+            NMONDataSet chunkData = parsers[i].data;
+            Map<DataType, ProcessDataType> continuedTypes = continued.get(i);
+
+            for (DataType type : chunk.newTypes) {
+                if (!data.containsType(type.getId())) {
+                    data.addType(type);
+                }
+            }
+
+            for (Process process : chunkData.getProcesses()) {
+                ProcessDataType type = chunkData.getType(process);
+
+                if (!continuedTypes.containsKey(type)) {
+                    data.addProcess(process);
+                    data.addType(type);
+                }
+            }
+
+            for (DataRecord record : chunkData.getRecords()) {
+                if (!continuedTypes.isEmpty()) {
+                    for (DataType type : record.getTypes()) {
+                        ProcessDataType previousType = continuedTypes.get(type);
+
+                        if (previousType != null) {
+                            double[] values = record.getData(type);
+                            record.removeData(type);
+                            record.addData(previousType, values);
+                        }
+                    }
+                }
+
+                data.addRecord(record);
+            }
+
+            for (String[] values : chunk.systemInfo) {
+                if ("BBBP".equals(values[0])) {
+                    parseBBBP(values);
+                }
+                else {
+                    parseSystemInfo(values);
+                }
+            }
+
+            // on the calling thread, so the messages go to its ParserLog
+            for (Warning warning : chunk.warnings) {
+                if (warning.error) {
+                    LOGGER.error(warning.format, warning.arguments);
+                }
+                else {
+                    LOGGER.warn(warning.format, warning.arguments);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private boolean cannotCombine(Chunk chunk, String reason) {
+        LOGGER.debug("cannot combine chunk of {} at offset {}: {}; parsing the file serially",
+                new Object[] { data.getSourceFile(), chunk.start, reason });
+
+        return false;
+    }
+
+    private void parseStart(String datasetName, TimeZone timeZone, boolean scaleProcessesByCPU) throws IOException {
+        this.scaleProcessesByCPU = scaleProcessesByCPU;
+
+        data = new NMONDataSet(datasetName);
+
+        nmonFormat.setTimeZone(timeZone);
+
+        data.setMetadata("parsed_gmt_offset",
+                Double.toString(timeZone.getOffset(System.currentTimeMillis()) / 3600000.0d));
+
+        String line = parseHeaders();
+
+        // no timestamp records after the headers => no other data
+        if ((line == null) || !line.startsWith("ZZZZ")) {
+            throw new IOException("file '" + datasetName + "' does not appear to have any data records");
+        }
+        // else line contains the first timestamp record, so start parsing
+
+        for (DataPostProcessor processor : processors) {
+            processor.addDataTypes(data);
+        }
+    }
+
+    // new records for a followed file are added to a new data set that has all the existing types and processes
+    // aggregate processes are not copied; they are recreated from the new records
+    private void startNextUpdate() {
+        NMONDataSet previous = data;
+
+        followedEndTime = Math.max(followedEndTime, previous.getEndTime());
+
+        data = new NMONDataSet(previous.getSourceFile());
+
+        for (String name : previous.getMetadataNames()) {
+            data.setMetadata(name, previous.getMetadata(name));
+        }
+
+        for (Process process : previous.getProcesses()) {
+            if (process.getId() != -1) {
+                data.addProcess(process);
+            }
+        }
+
+        for (DataType type : previous.getTypes()) {
+            if (!(type instanceof ProcessDataType) || (((ProcessDataType) type).getProcess().getId() != -1)) {
+                data.addType(type);
+            }
+        }
+    }
+
+    private void reset() {
+        if (in != null) {
+            try {
+                in.close();
+            }
+            catch (Exception e) {
+                // ignore
+            }
+
+            in = null;
+        }
+
+        data = null;
+        currentRecord = null;
+        topFields = null;
+        topCommandIndex = -1;
+        summaryFields = null;
+        fileCPUs = 1;
+        seenFirstDataType = false;
+        isAIX = false;
+        followedEndTime = Long.MIN_VALUE;
+
+        processes.clear();
+        systemInfo.clear();
+        transforms.clear();
+
+        typeFilter = TypeFilter.ALL;
+        skippedTypes.clear();
+
+        java.util.Arrays.fill(typeCache, null);
     }
 
     private String parseHeaders() throws IOException {
@@ -249,7 +1039,7 @@ public final class NMONParser {
                 DataType type = buildDataType(DATA_SPLITTER.split(line));
 
                 if (type != null) {
-                    data.addType(type);
+                    addType(type);
                 }
             }
         }
@@ -257,28 +1047,67 @@ public final class NMONParser {
         return line;
     }
 
+    // add a type defined in the file, unless the type filter does not need it
+    private void addType(DataType type) {
+        if (isNeeded(type)) {
+            data.addType(type);
+
+            if (chunk != null) {
+                chunk.newTypes.add(type);
+            }
+        }
+        else {
+            skippedTypes.put(type.getId(), type);
+        }
+    }
+
+    private boolean isNeeded(DataType type) {
+        if (typeFilter.matches(type)) {
+            return true;
+        }
+
+        // post processors need their source data even if only the types they add are needed
+        for (DataPostProcessor processor : processors) {
+            if (processor.dependsOn(type.getId(), null)) {
+                return true;
+            }
+        }
+
+        // see scaleProcessDataByCPUs()
+        return scaleProcessesByCPU && typeFilter.includesProcesses() && CPU_COUNT_TYPES.contains(type.getId());
+    }
+
+    // types used to scale process data by the number of CPUs
+    private static final java.util.Set<String> CPU_COUNT_TYPES = java.util.Collections
+            .unmodifiableSet(new java.util.HashSet<String>(java.util.Arrays.asList("CPU_ALL", "PCPU_ALL", "LPAR")));
+
     private static final java.util.Set<String> IGNORED_TYPES = java.util.Collections
             .unmodifiableSet(new java.util.HashSet<String>(
                     java.util.Arrays.asList("AVM-IN-MB", "NO-PBUF-COUNT", "NO-PSBUF-COUNT", "NO-JFS2-FSBUF-COUNT")));
 
-    private void parseLine(String line) {
-        if (line.startsWith("ZZZZ")) {
+    private void parseLine() {
+        if (in.startsWith("ZZZZ")) {
             // add the previous record on a new timestamp
             if (currentRecord != null) {
                 completeCurrentRecord();
             }
 
-            currentRecord = parseTimestamp(line);
+            currentRecord = parseTimestamp(in.getLine());
         }
-        else if (line.startsWith("ERROR")) {
+        else if (in.startsWith("ERROR")) {
             // TODO handle this?
             return;
         }
+        else if (!typeFilter.includesProcesses()
+                && (in.startsWith("TOP,") || in.startsWith("UARG,") || in.startsWith("SUMMARY,"))) {
+            // process data is not needed
+            return;
+        }
         else {
-            String[] values = DATA_SPLITTER.split(line);
+            in.tokenize(tokenizer);
 
             if (currentRecord == null) {
-                if (IGNORED_TYPES.contains(values[0])) {
+                if (IGNORED_TYPES.contains(tokenizer.getField(0))) {
                     return;
                 }
                 else {
@@ -286,152 +1115,213 @@ public final class NMONParser {
                 }
             }
 
-            if (values.length < 2) {
-                LOGGER.warn("skipping invalid data record '{}' starting at line {}", line, in.getLineNumber());
+            if (tokenizer.getFieldCount() < 2) {
+                warn("skipping invalid data record '{}' starting at line {}", in.getLine(), getLineNumber());
                 return;
             }
 
-            String timestamp = null;
-            boolean isTop = "TOP".equals(values[0]);
-            boolean isUarg = "UARG".equals(values[0]);
+            boolean isTop = tokenizer.fieldEquals(0, "TOP");
+            boolean isUarg = tokenizer.fieldEquals(0, "UARG");
 
             // get the timestamp reference TXXXX
             // TOP records have pid as the 2nd column, then the reference
-            if (isTop) {
-                timestamp = values[2];
-            }
-            else {
-                timestamp = values[1];
-            }
+            int timestampIdx = isTop ? 2 : 1;
 
-            if (timestamp.startsWith("T")) {
-                DataType type = data.getType(values[0]);
-
-                if (timestamp.equals(currentRecord.getTimestamp())) {
+            if (tokenizer.fieldStartsWith(timestampIdx, "T")) {
+                if (tokenizer.fieldEquals(timestampIdx, currentRecord.getTimestamp())) {
                     if (isUarg) {
-                        parseUARG(values);
+                        parseUARG(tokenizer.getFields());
                     }
                     else if (isTop) {
                         // assume TOP data type is created in the header
-                        parseTopData(values);
+                        parseTopData();
                     }
-                    else if ("SUMMARY".equals(values[0])) {
+                    else if (tokenizer.fieldEquals(0, "SUMMARY")) {
                         if (summaryFields == null) {
-                            LOGGER.warn("undefined data type {} at line {}", values[0], in.getLineNumber());
+                            warn("undefined data type {} at line {}", "SUMMARY", getLineNumber());
                             return;
                         }
 
-                        int commandIdx = values.length - 1; // command name is the last value
-                        type = data.getType(SubDataType.buildId("SUMMARY", values[commandIdx]));
+                        int commandIdx = tokenizer.getFieldCount() - 1; // command name is the last value
+                        String command = tokenizer.getField(commandIdx);
+                        DataType type = data.getType(SubDataType.buildId("SUMMARY", command));
 
                         if (type == null) {
-                            type = new SubDataType("SUMMARY", values[commandIdx], "Summary of Processes", false,
-                                    summaryFields);
+                            type = new SubDataType("SUMMARY", command, "Summary of Processes", false, summaryFields);
                             data.addType(type);
+
+                            if (chunk != null) {
+                                chunk.newTypes.add(type);
+                            }
                         }
 
-                        // remove the trailing command
-                        String[] withoutCommand = new String[values.length - 1];
-                        System.arraycopy(values, 0, withoutCommand, 0, commandIdx);
-                        parseData(type, withoutCommand);
+                        // ignore the trailing command
+                        parseData(type, commandIdx);
                     }
                     else {
+                        DataType type = getType();
+
                         if (type == null) {
-                            if ("VM".equals(values[0])) {
-                                // fix for issue #7
-                                // NMON outputs the VM data type at T0001
-                                // older versions contain the timestamp
-                                // newer versions are handled below
-                                String[] newValues = new String[values.length - 1];
-                                newValues[0] = values[0];
-                                System.arraycopy(values, 2, newValues, 1, values.length - 2);
-
-                                type = buildDataType(newValues);
-                                data.addType(type);
+                            if (tokenizer.fieldEquals(0, "VM")) {
+                                parseVMDefinition(tokenizer.getFields());
                             }
                             else {
-                                LOGGER.warn("undefined data type {} at line {}", values[0], in.getLineNumber());
+                                warn("undefined data type {} at line {}", tokenizer.getField(0), getLineNumber());
+
+                                if (chunk != null) {
+                                    chunk.undefinedTypes.add(tokenizer.getField(0));
+                                }
                             }
                         }
-                        else {
-                            parseData(type, values);
+                        else if (!skippedTypes.containsKey(type.getId())) {
+                            parseData(type, tokenizer.getFieldCount());
                         }
+                        // else the type filter does not need the data
                     }
                 }
                 else {
-                    LOGGER.warn("misplaced record at line {}; expected timestamp {} but got {}",
-                            new Object[] { in.getLineNumber(), currentRecord.getTimestamp(), timestamp });
+                    warn("misplaced record at line {}; expected timestamp {} but got {}", new Object[] {
+                            getLineNumber(), currentRecord.getTimestamp(), tokenizer.getField(timestampIdx) });
                 }
             }
             else {
                 // current line does not have a TXXXX record
                 // ignore TOP and UARG data types
                 if (!isTop && !isUarg) {
-                    // AIX puts BBBP at then end of the file too
-                    if ("BBBP".equals(values[0])) {
-                        parseBBBP(values);
-                    }
-                    else if ("AAA".equals(values[0])) {
-                        // ignore AAA records not in the header
-                    }
-                    // handle case where other BBB records wrote later in the file
-                    else if (values[0].startsWith("BBB")) {
-                        parseSystemInfo(values);
-                    }
-                    else if ("SUMMARY".equals(values[0])) {
-                        parseSummaryFields(DATA_SPLITTER.split(line));
-                    }
-                    // otherwise, assume it is a new data type since data types can be added at any
-                    // time in the NMON file
-                    else if (data.getType(values[0]) == null) {
-                        DataType type = buildDataType(values);
-
-                        if (type != null) {
-                            if (type.getId().equals("NO-JFS2-FSBUF-COUNT")) {
-                                // hack to handle AVM-IN-MB, etc when added at the end of the file
-                                completeCurrentRecord();
-                            }
+                    parseUntimed(tokenizer.getFields());
+                }
+            }
+        }
+    }
 
-                            if (!IGNORED_TYPES.contains(type.getId())) {
-                                data.addType(type);
-                            }
-                        }
-                    }
+    // records without a timestamp reference; these can occur anywhere after the headers
+    private void parseUntimed(String[] values) {
+        // AIX puts BBBP at then end of the file too
+        if ("BBBP".equals(values[0])) {
+            if (chunk != null) {
+                chunk.systemInfo.add(values);
+            }
+            else {
+                parseBBBP(values);
+            }
+        }
+        else if ("AAA".equals(values[0])) {
+            // ignore AAA records not in the header
+        }
+        // handle case where other BBB records wrote later in the file
+        else if (values[0].startsWith("BBB")) {
+            if (chunk != null) {
+                chunk.systemInfo.add(values);
+            }
+            else {
+                parseSystemInfo(values);
+            }
+        }
+        else if ("SUMMARY".equals(values[0])) {
+            parseSummaryFields(values);
+
+            if (chunk != null) {
+                chunk.summaryRedefined = true;
+            }
+        }
+        // otherwise, assume it is a new data type since data types can be added at any
+        // time in the NMON file
+        else if ((data.getType(values[0]) == null) && !skippedTypes.containsKey(values[0])) {
+            DataType type = buildDataType(values);
+
+            if (type != null) {
+                if (type.getId().equals("NO-JFS2-FSBUF-COUNT") && (currentRecord != null)) {
+                    // hack to handle AVM-IN-MB, etc when added at the end of the file
+                    completeCurrentRecord();
+                }
+
+                if (!IGNORED_TYPES.contains(type.getId())) {
+                    addType(type);
                 }
             }
         }
     }
 
+    // a record before the range in parseRange(); the index holds only untimed records and the VM definition
+    private void parseDefinition(String[] values) {
+        // the index includes the VM record that defines the type in old Linux files
+        if ("VM".equals(values[0]) && (values.length > 1) && values[1].startsWith("T")) {
+            if ((data.getType("VM") == null) && !skippedTypes.containsKey("VM")) {
+                parseVMDefinition(values);
+            }
+        }
+        else {
+            parseUntimed(values);
+        }
+    }
+
+    private void parseVMDefinition(String[] values) {
+        // fix for issue #7
+        // NMON outputs the VM data type at T0001
+        // older versions contain the timestamp
+        // newer versions are handled by parseUntimed()
+        String[] newValues = new String[values.length - 1];
+        newValues[0] = values[0];
+        System.arraycopy(values, 2, newValues, 1, values.length - 2);
+
+        DataType type = buildDataType(newValues);
+
+        if (type != null) {
+            addType(type);
+        }
+    }
+
+    // get the DataType for the first field of the current line, creating a String for the id only on a cache miss
+    private DataType getType() {
+        int idx = tokenizer.fieldHashCode(0) & (typeCache.length - 1);
+        DataType type = typeCache[idx];
+
+        if ((type != null) && tokenizer.fieldEquals(0, type.getId())) {
+            return type;
+        }
+
+        String id = tokenizer.getField(0);
+        type = data.getType(id);
+
+        if (type == null) {
+            type = skippedTypes.get(id);
+        }
+
+        if (type != null) {
+            typeCache[idx] = type;
+        }
+
+        return type;
+    }
+
     private DataRecord parseTimestamp(String line) {
         String[] values = DATA_SPLITTER.split(line);
         long time = 0;
 
         if (values.length != 4) {
-            LOGGER.warn("skipping invalid data record '{}' starting at line {}", line, in.getLineNumber());
+            warn("skipping invalid data record '{}' starting at line {}", line, getLineNumber());
             return null;
         }
         else {
             try {
-                time = NMON_FORMAT.parse(values[2] + ' ' + values[3]).getTime();
-                long previous = data.getEndTime();
+                time = nmonFormat.parse(values[2] + ' ' + values[3]).getTime();
+                long previous = Math.max(data.getEndTime(), followedEndTime);
 
                 if (time < previous) {
                     String temp = data.getMetadata("interval");
 
                     if (temp == null) {
-                        LOGGER.error(
-                                "time {} is less than previous {} at line {}" + "; no interval defined in AAA records",
-                                new Object[] { time, previous, in.getLineNumber() });
+                        error("time {} is less than previous {} at line {}" + "; no interval defined in AAA records",
+                                new Object[] { time, previous, getLineNumber() });
                         throw new IllegalArgumentException("time is less than previous in ZZZZ " + values[1]);
                     }
                     else {
                         int interval = Integer.parseInt(temp);
                         time = previous + (interval * 1000); // interval is in seconds
 
-                        LOGGER.warn(
-                                "time {} is less than previous {} at line {}"
-                                        + ", guessing at next time by using an interval of {}s",
-                                new Object[] { time, previous, in.getLineNumber(), interval });
+                        warn("time {} is less than previous {} at line {}"
+                                + ", guessing at next time by using an interval of {}s",
+                                new Object[] { time, previous, getLineNumber(), interval });
                     }
                 }
 
@@ -440,8 +1330,7 @@ public final class NMONParser {
 
             }
             catch (ParseException pe) {
-                LOGGER.warn("could not parse time {}, {} at line {}",
-                        new Object[] { values[2], values[3], in.getLineNumber() });
+                warn("could not parse time {}, {} at line {}", new Object[] { values[2], values[3], getLineNumber() });
                 return null;
             }
         }
@@ -494,7 +1383,8 @@ public final class NMONParser {
         }
     }
 
-    private void parseData(DataType type, String[] values) {
+    // parse the current line's values up to, but not including, fieldCount
+    private void parseData(DataType type, int fieldCount) {
         List<Integer> toSkip = TYPE_SKIP_INDEXES.get(type.getId());
 
         if (toSkip == null) {
@@ -502,7 +1392,7 @@ public final class NMONParser {
         }
 
         // + 2 => skip data type & timestamp
-        double[] recordData = new double[values.length - 2 - toSkip.size()];
+        double[] recordData = new double[fieldCount - 2 - toSkip.size()];
 
         int i = 2;
         int n = 0;
@@ -510,30 +1400,29 @@ public final class NMONParser {
         // note try is outside the for loop since we want to skip the entire data record if any part
         // of is it bad
         try {
-            for (; i < values.length; i++) {
+            for (; i < fieldCount; i++) {
                 if (toSkip.contains(i)) {
                     continue;
                 }
 
-                String data = values[i];
                 // 'nan' only appears in file sizes for virtual files like
                 // rpc_pipefs; assume this is equivalent to 0
-                if ("".equals(data) || data.contains("nan")) {
+                if (tokenizer.isEmpty(i) || tokenizer.fieldContains(i, "nan")) {
                     recordData[n] = 0;
                 }
-                else if ("INF".equals(data)) {
+                else if (tokenizer.fieldEquals(i, "INF")) {
                     recordData[n] = Double.POSITIVE_INFINITY;
                 }
                 else {
-                    recordData[n] = Double.parseDouble(data);
+                    recordData[n] = tokenizer.parseDouble(i);
                 }
 
                 ++n;
             }
         }
         catch (NumberFormatException nfe) {
-            LOGGER.warn("{}: invalid numeric data '{}' at line {}, column {}",
-                    new Object[] { currentRecord.getTimestamp(), values[i], in.getLineNumber(), (i + 1) });
+            warn("{}: invalid numeric data '{}' at line {}, column {}", new Object[] {
+                    currentRecord.getTimestamp(), tokenizer.getField(i), getLineNumber(), (i + 1) });
         }
 
         for (DataTransform transform : transforms) {
@@ -542,8 +1431,8 @@ public final class NMONParser {
                     recordData = transform.transform(type, recordData);
                 }
                 catch (Exception e) {
-                    LOGGER.warn(currentRecord.getTimestamp() + ": could not complete transform "
-                            + transform.getClass().getSimpleName() + " at line " + in.getLineNumber(), e);
+                    warn("{}: could not complete transform {} at line {}", currentRecord.getTimestamp(),
+                            transform.getClass().getSimpleName(), getLineNumber(), e);
                 }
                 break;
             }
@@ -562,7 +1451,7 @@ public final class NMONParser {
             System.arraycopy(recordData, 0, newData, 0, recordData.length);
 
             // assume double arrays default to 0, so no need to fill in the rest
-            LOGGER.warn("{}: DataType {} defines {} fields but there are only {} values; missing values set to 0",
+            warn("{}: DataType {} defines {} fields but there are only {} values; missing values set to 0",
                     new Object[] { currentRecord.getTimestamp(), type.getId(), type.getFieldCount(),
                             recordData.length });
 
@@ -614,7 +1503,7 @@ public final class NMONParser {
         }
     }
 
-    private void parseTopData(String[] values) {
+    private void parseTopData() {
         // assume TOP record is like TOP,pid,TXXX,...,command
         // add 1 back in for generated Wait%
         double[] recordData = new double[topFields.length];
@@ -622,12 +1511,11 @@ public final class NMONParser {
         int n = 1;
 
         int pid = -1;
-        String name = values[topCommandIndex];
 
         // note try is outside the for loop since we want to skip the entire data record if any part
         // of is it bad
         try {
-            pid = Integer.parseInt(values[n++]);
+            pid = tokenizer.parseInt(n++);
 
             // skip timestamp
             ++n;
@@ -648,13 +1536,13 @@ public final class NMONParser {
                     }
                 }
                 else {
-                    recordData[i] = Double.parseDouble(values[n++]);
+                    recordData[i] = tokenizer.parseDouble(n++);
                 }
             }
         }
         catch (NumberFormatException nfe) {
-            LOGGER.warn("{}: invalid numeric data '{}' at line {}, column {}",
-                    new Object[] { currentRecord.getTimestamp(), values[n], in.getLineNumber(), (n - 1) });
+            warn("{}: invalid numeric data '{}' at line {}, column {}", new Object[] {
+                    currentRecord.getTimestamp(), tokenizer.getField(n), getLineNumber(), (n - 1) });
             return;
         }
 
@@ -666,11 +1554,12 @@ public final class NMONParser {
         if (process != null) {
             // process could have the same name but still be different
             // assume UARG records appear after TOP and handle that case in parseUARG()
-            if (process.getName().equals(name)) {
+            if (tokenizer.fieldEquals(topCommandIndex, process.getName())) {
                 processType = data.getType(process);
             }
             else {
-                LOGGER.debug("process id {} reused; '{}' is now '{}'", new Object[] { pid, process.getName(), name });
+                LOGGER.debug("process id {} reused; '{}' is now '{}'",
+                        new Object[] { pid, process.getName(), tokenizer.getField(topCommandIndex) });
 
                 process.setEndTime(currentRecord.getTime());
 
@@ -682,12 +1571,18 @@ public final class NMONParser {
         }
 
         if (newProcess) {
-            process = new Process(pid, currentRecord.getTime(), DataHelper.newString(name));
+            String name = tokenizer.getSymbol(topCommandIndex);
+
+            process = new Process(pid, currentRecord.getTime(), name);
             processes.put(pid, process); // overwrites old process
 
             processType = new ProcessDataType(process, topFields);
             data.addType(processType);
             data.addProcess(process);
+
+            if ((chunk != null) && !chunk.firstProcesses.containsKey(pid)) {
+                chunk.firstProcesses.put(pid, process);
+            }
         }
 
         process.setEndTime(currentRecord.getTime());
@@ -726,15 +1621,20 @@ public final class NMONParser {
             pid = Integer.parseInt(values[2]);
         }
         catch (NumberFormatException nfe) {
-            LOGGER.warn("invalid process id {} at line {}", values[2], in.getLineNumber());
+            warn("invalid process id {} at line {}", values[2], getLineNumber());
             return;
         }
 
         Process process = processes.get(pid);
 
         if (process == null) {
-            LOGGER.warn("misplaced UARG record at line {}, no process with pid {} not defined yet", in.getLineNumber(),
+            warn("misplaced UARG record at line {}, no process with pid {} not defined yet", getLineNumber(),
                     pid);
+
+            if (chunk != null) {
+                chunk.unresolvedUargs.add(pid);
+            }
+
             return;
         }
 
@@ -777,15 +1677,15 @@ public final class NMONParser {
         if (values.length < 3) {
             // Linux disk groups usually are not defined; no need for spurious error output
             if (!values[0].startsWith("DG")) {
-                LOGGER.warn("invalid data type definition, no fields defined" + " at line {} for data {}",
-                        in.getLineNumber(), java.util.Arrays.toString(values));
+                warn("invalid data type definition, no fields defined" + " at line {} for data {}",
+                        getLineNumber(), java.util.Arrays.toString(values));
             }
 
             return null;
         }
 
         if ("ERROR".equals(values[0])) {
-            LOGGER.warn("not creating ERROR data type" + " at line {} for data {}", in.getLineNumber(),
+            warn("not creating ERROR data type" + " at line {} for data {}", getLineNumber(),
                     java.util.Arrays.toString(values));
             return null;
         }
@@ -793,7 +1693,7 @@ public final class NMONParser {
         String id = DataHelper.newString(values[0]);
 
         if ("".equals(id)) {
-            LOGGER.warn("not creating data type with empty id" + " at line {} for data {}", in.getLineNumber(),
+            warn("not creating data type with empty id" + " at line {} for data {}", getLineNumber(),
                     java.util.Arrays.toString(values));
             return null;
         }
@@ -885,6 +1785,98 @@ public final class NMONParser {
         currentRecord = null;
     }
 
+    // warnings are logged directly unless parsing a chunk; chunks may be parsed on other threads and may not be used at
+    // all, so their warnings are logged by the calling thread when the chunks are combined
+    private void warn(String format, Object... arguments) {
+        if (chunk == null) {
+            LOGGER.warn(format, arguments);
+        }
+        else {
+            chunk.warnings.add(new Warning(false, format, arguments));
+        }
+    }
+
+    private void error(String format, Object... arguments) {
+        if (chunk == null) {
+            LOGGER.error(format, arguments);
+        }
+        else {
+            chunk.warnings.add(new Warning(true, format, arguments));
+        }
+    }
+
+    // the line number for log messages
+    private Object getLineNumber() {
+        if (chunk == null) {
+            return in.getLineNumber();
+        }
+        else {
+            return new ChunkLine(chunk, in.getLineNumber());
+        }
+    }
+
+    // a range of the file parsed by a separate parser and what that parser found that affects combining the chunks
+    private static final class Chunk {
+        private final long start;
+        private final long end;
+
+        // the first process for each pid; these may continue processes from earlier chunks
+        private final Map<Integer, Process> firstProcesses = new java.util.LinkedHashMap<Integer, Process>();
+
+        // types that are not defined in the headers
+        private final List<DataType> newTypes = new java.util.ArrayList<DataType>();
+        // ids of data records that were skipped because the type was not defined
+        private final Set<String> undefinedTypes = new java.util.HashSet<String>();
+        // pids of UARG records that were skipped because the process was not defined
+        private final Set<Integer> unresolvedUargs = new java.util.HashSet<Integer>();
+
+        // BBBP and BBB records, in order; system info is only updated when the chunks are combined
+        private final List<String[]> systemInfo = new java.util.ArrayList<String[]>();
+
+        private boolean summaryRedefined = false;
+
+        private Exception failure = null;
+
+        private final List<Warning> warnings = new java.util.ArrayList<Warning>();
+
+        private int lineCount = 0;
+        // the number of lines in the file before this chunk; only known once all the chunks are parsed
+        private int lineOffset = 0;
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final class Warning {
+        private final boolean error;
+        private final String format;
+        private final Object[] arguments;
+
+        Warning(boolean error, String format, Object[] arguments) {
+            this.error = error;
+            this.format = format;
+            this.arguments = arguments;
+        }
+    }
+
+    // a line number relative to the start of a chunk that is only converted to a line in the file when it is logged
+    private static final class ChunkLine {
+        private final Chunk chunk;
+        private final int line;
+
+        ChunkLine(Chunk chunk, int line) {
+            this.chunk = chunk;
+            this.line = line;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(chunk.lineOffset + line);
+        }
+    }
+
     private static final Map<String, List<Integer>> TYPE_SKIP_INDEXES;
 
     static {
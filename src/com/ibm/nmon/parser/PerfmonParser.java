@@ -4,8 +4,6 @@ import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.io.File;
-import java.io.FileReader;
-import java.io.LineNumberReader;
 import java.text.SimpleDateFormat;
 import java.text.ParseException;
 import java.util.List;
@@ -20,15 +18,18 @@ import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.SubDataType;
 import com.ibm.nmon.data.ProcessDataType;
 import com.ibm.nmon.data.Process;
+import com.ibm.nmon.data.transform.DataPostProcessor;
 import com.ibm.nmon.data.transform.WindowsBytesTransform;
 import com.ibm.nmon.data.transform.WindowsNetworkPostProcessor;
 import com.ibm.nmon.data.transform.WindowsProcessPostProcessor;
+import com.ibm.nmon.parser.util.LineReader;
+import com.ibm.nmon.parser.util.TypeFilter;
 import com.ibm.nmon.util.DataHelper;
 
 public final class PerfmonParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(PerfmonParser.class);
 
-    private static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
 
     // older versions of Windows output CSV without "
     private static final Pattern DATA_SPLITTER = Pattern.compile(",");
@@ -39,14 +40,19 @@ public final class PerfmonParser {
     // note storing a matcher vs a pattern is _NOT_ thread safe
     // first group is non-greedy (.*?) to allow proper parsing of strings like
     // \\SYSTEM\Paging File(\??\D:\pagefile.sys)\% Usage
-    private static final Matcher METRIC_MATCHER = Pattern.compile("\\\\\\\\(.*?)\\\\(.*)\\\\(.*)\"?").matcher("");
+    private static final Pattern METRIC_PATTERN = Pattern.compile("\\\\\\\\(.*?)\\\\(.*)\\\\(.*)\"?");
 
-    private LineNumberReader in = null;
+    private LineReader in = null;
 
     private PerfmonDataSet data = null;
 
     private final WindowsBytesTransform bytesTransform = new WindowsBytesTransform();
 
+    // post processing happens after all the data is parsed since DataTypes are built lazily
+    private final List<DataPostProcessor> postProcessors = new java.util.ArrayList<DataPostProcessor>(2);
+
+    private TypeFilter typeFilter = TypeFilter.ALL;
+
     // builders for each column
     private DataTypeBuilder[] buildersByColumn;
     // builders by type id
@@ -57,13 +63,26 @@ public final class PerfmonParser {
     }
 
     public PerfmonDataSet parse(String filename, boolean scaleProcessesByCPU) throws IOException, ParseException {
+        return parse(filename, scaleProcessesByCPU, TypeFilter.ALL);
+    }
+
+    public PerfmonDataSet parse(String filename, boolean scaleProcessesByCPU, TypeFilter typeFilter)
+            throws IOException, ParseException {
         long start = System.nanoTime();
 
         data = new PerfmonDataSet(filename);
         data.setMetadata("OS", "Perfmon");
 
+        this.typeFilter = typeFilter;
+
+        postProcessors.add(new WindowsNetworkPostProcessor());
+
+        if (scaleProcessesByCPU && typeFilter.includesProcesses()) {
+            postProcessors.add(new WindowsProcessPostProcessor());
+        }
+
         try {
-            in = new LineNumberReader(new FileReader(filename));
+            in = new LineReader(filename);
 
             String line = in.readLine();
 
@@ -84,22 +103,13 @@ public final class PerfmonParser {
 
             long postProcessStart = System.nanoTime();
 
-            // post process after parsing all the data since DataTypes are built lazily
-            WindowsNetworkPostProcessor networkPostProcessor = new WindowsNetworkPostProcessor();
-            WindowsProcessPostProcessor processPostProcessor = null;
-
-            networkPostProcessor.addDataTypes(data);
-
-            if (scaleProcessesByCPU) {
-                processPostProcessor = new WindowsProcessPostProcessor();
-                processPostProcessor.addDataTypes(data);
+            for (DataPostProcessor processor : postProcessors) {
+                processor.addDataTypes(data);
             }
 
             for (DataRecord record : data.getRecords()) {
-                networkPostProcessor.postProcess(data, record);
-
-                if (scaleProcessesByCPU) {
-                    processPostProcessor.postProcess(data, record);
+                for (DataPostProcessor processor : postProcessors) {
+                    processor.postProcess(data, record);
                 }
             }
 
@@ -129,6 +139,9 @@ public final class PerfmonParser {
             buildersByColumn = null;
 
             bytesTransform.reset();
+
+            postProcessors.clear();
+            typeFilter = TypeFilter.ALL;
         }
     }
 
@@ -151,7 +164,7 @@ public final class PerfmonParser {
         if (idx == -1) {
             LOGGER.warn("version header '{0}' is not in the right format, the time zone will default to UTC",
                     header[0]);
-            TIMESTAMP_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
+            timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
         }
         else {
             String temp = header[0].substring(idx + 1, header[0].length() - 1);
@@ -160,12 +173,12 @@ public final class PerfmonParser {
                 // timezone format in negative minutes from UTC
                 double offset = Integer.parseInt(temp) / -60.0d;
 
-                TIMESTAMP_FORMAT.setTimeZone(new java.util.SimpleTimeZone((int) (offset * 3600000), temp));
+                timestampFormat.setTimeZone(new java.util.SimpleTimeZone((int) (offset * 3600000), temp));
             }
             catch (NumberFormatException nfe) {
                 LOGGER.warn("version header '{0}' is not in the right format, the time zone will default to UTC",
                         header[0]);
-                TIMESTAMP_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
+                timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
             }
         }
 
@@ -174,27 +187,27 @@ public final class PerfmonParser {
         buildersByColumn[0] = null;
 
         // read the first column to get the hostname
-        METRIC_MATCHER.reset(header[1]);
+        Matcher matcher = METRIC_PATTERN.matcher(header[1]);
 
-        if (METRIC_MATCHER.matches()) {
+        if (matcher.matches()) {
             // assume hostname does not change
-            data.setHostname(METRIC_MATCHER.group(1).toLowerCase());
+            data.setHostname(matcher.group(1).toLowerCase());
         }
         else {
             throw new IllegalArgumentException("hostname not found in '" + header[1] + "'");
         }
 
         for (int i = 1; i < header.length; i++) {
-            METRIC_MATCHER.reset(header[i]);
+            matcher = METRIC_PATTERN.matcher(header[i]);
 
-            if (!METRIC_MATCHER.matches()) {
+            if (!matcher.matches()) {
                 LOGGER.warn("'{}' is not a valid header column", header[i]);
                 buildersByColumn[i] = null;
                 continue;
             }
 
             // looking for type id (sub type id)
-            String toParse = METRIC_MATCHER.group(2);
+            String toParse = matcher.group(2);
 
             String uniqueId = null;
             String id = null;
@@ -221,7 +234,12 @@ public final class PerfmonParser {
                 id = uniqueId = DataHelper.newString(toParse);
             }
 
-            String field = parseField(id, METRIC_MATCHER.group(3));
+            if (!isNeeded(id, subId, uniqueId)) {
+                buildersByColumn[i] = null;
+                continue;
+            }
+
+            String field = parseField(id, matcher.group(3));
 
             DataTypeBuilder builder = buildersById.get(uniqueId);
 
@@ -252,6 +270,26 @@ public final class PerfmonParser {
         }
     }
 
+    private boolean isNeeded(String id, String subId, String uniqueId) {
+        if (data.getTypeIdPrefix().equals(id)) { // Process
+            return typeFilter.includesProcesses();
+        }
+
+        // DataTypeBuilder names types by the unique id
+        if (typeFilter.matches(uniqueId)) {
+            return true;
+        }
+
+        // post processors need their source data even if only the types they add are needed
+        for (DataPostProcessor processor : postProcessors) {
+            if (processor.dependsOn(id, subId)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     private void parseData(String[] rawData) {
         if (rawData.length != buildersByColumn.length) {
             LOGGER.warn("invalid number of data columns at line {}, this data will be skipped", in.getLineNumber());
@@ -273,7 +311,7 @@ public final class PerfmonParser {
         long time = 0;
 
         try {
-            time = TIMESTAMP_FORMAT.parse(timestamp).getTime();
+            time = timestampFormat.parse(timestamp).getTime();
         }
         catch (ParseException pe) {
             LOGGER.warn("invalid timestamp format at line {}, this data will be skipped", in.getLineNumber());
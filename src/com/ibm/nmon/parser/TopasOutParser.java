@@ -6,78 +6,101 @@ import java.util.List;
 import java.util.Map;
 
 import java.io.IOException;
+import java.io.Reader;
 
-import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-
-import java.io.StringReader;
-import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 import java.util.TimeZone;
 
 import com.ibm.nmon.data.NMONDataSet;
 
+import com.ibm.nmon.parser.util.LineReader;
+import com.ibm.nmon.parser.util.TypeFilter;
+
+import com.ibm.nmon.util.ArchiveHelper;
+
 /**
- * A parser for <code>topas -a</code> output. This serves as a bridge between Topas and NMON. This class takes the
- * output and converts it to a string that can be parsed by {@link NMONParser}.
+ * <p>
+ * A parser for <code>topas -a</code> output. This serves as a bridge between Topas and NMON. This class reorders the
+ * output into the order expected by {@link NMONParser} and streams it to that parser.
+ * </p>
+ *
+ * <p>
+ * The file is read twice. The first pass keeps the header and timestamp lines but only records the offset of each data
+ * line. The second pass reads the data lines for each timestamp using those offsets. The data for each header is
+ * contiguous in the file, so each header gets its own read ahead buffer and the reads are mostly sequential. Archive
+ * entries cannot be read at an offset, so their data lines are kept in memory instead.
+ * </p>
  */
 public final class TopasOutParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(TopasOutParser.class);
 
+    private static final int SECTION_BUFFER_SIZE = 32 * 1024;
+
     private final NMONParser nmonParser;
 
     public TopasOutParser(NMONParser nmonParser) {
         this.nmonParser = nmonParser;
     }
 
-    // topas -a outputs sorted data; unsort it by looking for the header records and outputting them first
-    // once the ZZZZ records are parsed output them then all the corresponding data records for that timestamp
     public NMONDataSet parse(String filename, TimeZone timeZone, boolean scaleProcessesByCPU) throws IOException {
-        File file = new File(filename);
-
-        BufferedReader in = null;
-
-        StringWriter writer = null;
+        return parse(filename, timeZone, scaleProcessesByCPU, TypeFilter.ALL);
+    }
 
-        try {
-            in = new BufferedReader(new FileReader(file));
-            writer = new StringWriter((int) file.length());
+    // topas -a outputs sorted data; unsort it by looking for the header records and outputting them first
+    // once the ZZZZ records are parsed output them then all the corresponding data records for that timestamp
+    public NMONDataSet parse(String filename, TimeZone timeZone, boolean scaleProcessesByCPU, TypeFilter typeFilter)
+            throws IOException {
+        boolean inMemory = ArchiveHelper.isArchiveEntry(filename);
 
-            // LinkedHashMap so insertion order is maintained; removes need to reparse headers later
-            Map<String, List<String>> headersToLines = new java.util.LinkedHashMap<String, List<String>>(32);
+        // AAA records first, then the headers
+        List<String> aaa = new java.util.ArrayList<String>();
+        List<String> headers = new java.util.ArrayList<String>(32);
+        List<String> timestamps = new java.util.ArrayList<String>(128);
 
-            List<String> headers = new java.util.ArrayList<String>(32);
-            List<String> timestamps = new java.util.ArrayList<String>(128);
+        // LinkedHashMap so insertion order is maintained
+        Map<String, Section> sections = new java.util.LinkedHashMap<String, Section>(32);
 
-            String line = null;
+        LineReader in = new LineReader(filename);
 
-            while ((line = in.readLine()) != null) {
+        try {
+            while (in.next()) {
+                String line = in.getLine();
                 int idx = line.indexOf(",");
 
+                if (idx == -1) {
+                    continue;
+                }
+
                 String header = line.substring(0, idx);
 
                 if ("AAA".equals(header)) {
-                    // put all the AAA records at the top by writing them out now
-                    writer.write(line);
-                    writer.write('\n');
+                    aaa.add(line);
                 }
                 else if ("ZZZZ".equals(header)) {
                     timestamps.add(line);
                 }
                 else {
                     // save all the data by header name
-                    List<String> lines = headersToLines.get(header);
+                    Section section = sections.get(header);
 
-                    if (lines == null) {
+                    if (section == null) {
                         LOGGER.trace("found {} " + "header", header);
-                        lines = new java.util.ArrayList<String>(218);
-                        headersToLines.put(header, lines);
+                        section = new Section(inMemory);
+                        sections.put(header, section);
                     }
 
-                    if (line.charAt(idx + 1) == 'T') {
-                        lines.add(line);
+                    if ((idx + 1 < line.length()) && (line.charAt(idx + 1) == 'T')) {
+                        if (inMemory) {
+                            section.add(line);
+                        }
+                        else {
+                            section.add(in.getOffset());
+                        }
                     }
                     else {
                         if ("LPAR".equals(header)) {
@@ -89,39 +112,236 @@ public final class TopasOutParser {
                     }
                 }
             }
+        }
+        finally {
+            in.close();
+        }
+
+        LOGGER.debug("found {} " + "data types", headers.size());
+        LOGGER.debug("found {} " + "ZZZZ timestamps", timestamps.size());
+        LOGGER.debug("found {} " + "data types", sections.size());
 
-            LOGGER.debug("found {} " + "data types", headers.size());
-            LOGGER.debug("found {} " + "ZZZZ timestamps", timestamps.size());
-            LOGGER.debug("found {} " + "data types", headersToLines.size());
+        aaa.addAll(headers);
 
-            for (String header : headers) {
-                writer.write(header);
-                writer.write('\n');
+        FileChannel channel = null;
+
+        if (!inMemory) {
+            channel = FileChannel.open(java.nio.file.Paths.get(filename), java.nio.file.StandardOpenOption.READ);
+        }
+
+        Reader reader = new TopasOutReader(channel, aaa, timestamps, sections.values().toArray(new Section[0]));
+
+        try {
+            return nmonParser.parse(filename, reader, timeZone, scaleProcessesByCPU, typeFilter);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    // all the data lines for a single header, either as Strings or as offsets into the file
+    private static final class Section {
+        private final List<String> lines;
+
+        private long[] offsets;
+        private int size = 0;
+
+        // read ahead buffer holding the file from bufferOffset to bufferOffset + bufferLimit
+        private byte[] buffer;
+        private long bufferOffset;
+        private int bufferLimit;
+
+        Section(boolean inMemory) {
+            if (inMemory) {
+                lines = new java.util.ArrayList<String>(128);
+                offsets = null;
+            }
+            else {
+                lines = null;
+                offsets = new long[128];
+            }
+        }
+
+        void add(String line) {
+            lines.add(line);
+        }
+
+        void add(long offset) {
+            if (size == offsets.length) {
+                offsets = java.util.Arrays.copyOf(offsets, size + (size >> 1));
             }
-            
-            // output each timestamp, then all the data for that time
-            // assume all arrays are the same size, i.e. there is data at each timestamp for all values
-            for (int i = 0; i < timestamps.size(); i++) {
-                writer.write(timestamps.get(i));
-                writer.write('\n');
-
-                for (List<String> lines : headersToLines.values()) {
-                    writer.write(lines.get(i));
-                    writer.write('\n');
+
+            offsets[size++] = offset;
+        }
+
+        int size() {
+            return lines == null ? size : lines.size();
+        }
+
+        String getLine(int index, FileChannel channel) throws IOException {
+            if (lines != null) {
+                return lines.get(index);
+            }
+
+            if (buffer == null) {
+                buffer = new byte[SECTION_BUFFER_SIZE];
+            }
+
+            long start = offsets[index];
+            boolean filled = false;
+
+            while (true) {
+                boolean buffered = (start >= bufferOffset) && (start < bufferOffset + bufferLimit);
+
+                if (buffered) {
+                    int from = (int) (start - bufferOffset);
+
+                    for (int i = from; i < bufferLimit; i++) {
+                        if (buffer[i] == '\n') {
+                            return decode(from, i);
+                        }
+                    }
+                }
+
+                if (filled) {
+                    if (bufferLimit < buffer.length) {
+                        // end of the file
+                        if (buffered) {
+                            return decode((int) (start - bufferOffset), bufferLimit);
+                        }
+                        else {
+                            throw new java.io.EOFException("no data at offset " + start);
+                        }
+                    }
+                    else {
+                        // line is longer than the buffer
+                        buffer = java.util.Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                }
+
+                // read ahead from the start of the line
+                bufferOffset = start;
+                bufferLimit = 0;
+
+                while (bufferLimit < buffer.length) {
+                    int read = channel.read(ByteBuffer.wrap(buffer, bufferLimit, buffer.length - bufferLimit),
+                            start + bufferLimit);
+
+                    if (read < 0) {
+                        break;
+                    }
+
+                    bufferLimit += read;
                 }
+
+                filled = true;
+            }
+        }
+
+        private String decode(int from, int to) {
+            if ((to > from) && (buffer[to - 1] == '\r')) {
+                --to;
+            }
+
+            int bits = 0;
+
+            for (int i = from; i < to; i++) {
+                bits |= buffer[i];
             }
 
-            return nmonParser.parse(filename, new StringReader(writer.toString()), timeZone, scaleProcessesByCPU);
+            // same decoding as LineReader
+            return new String(buffer, from, to - from, bits >= 0 ? StandardCharsets.ISO_8859_1
+                    : Charset.defaultCharset());
         }
-        finally {
-            if (in != null) {
-                in.close();
+    }
+
+    // streams the reordered lines; only the current line is held in memory
+    private static final class TopasOutReader extends Reader {
+        private final FileChannel channel;
+
+        private final List<String> headers;
+        private final List<String> timestamps;
+        private final Section[] sections;
+
+        private int headerIndex = 0;
+        private int timestampIndex = 0;
+        // -1 for the ZZZZ line at the current timestamp
+        private int sectionIndex = -1;
+
+        private String line = null;
+        private int linePosition = 0;
+
+        TopasOutReader(FileChannel channel, List<String> headers, List<String> timestamps, Section[] sections) {
+            this.channel = channel;
+            this.headers = headers;
+            this.timestamps = timestamps;
+            this.sections = sections;
+        }
+
+        // output each timestamp, then all the data for that time
+        // assume there is data at each timestamp for all values; sections without enough data are skipped
+        private String nextLine() throws IOException {
+            if (headerIndex < headers.size()) {
+                return headers.get(headerIndex++);
             }
 
-            if (writer != null) {
-                writer.close();
+            while (timestampIndex < timestamps.size()) {
+                if (sectionIndex == -1) {
+                    sectionIndex = 0;
+                    return timestamps.get(timestampIndex);
+                }
+                else if (sectionIndex < sections.length) {
+                    Section section = sections[sectionIndex++];
+
+                    if (timestampIndex < section.size()) {
+                        return section.getLine(timestampIndex, channel);
+                    }
+                }
+                else {
+                    sectionIndex = -1;
+                    ++timestampIndex;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = 0;
+
+            while (n < len) {
+                if (line == null) {
+                    line = nextLine();
+                    linePosition = 0;
+
+                    if (line == null) {
+                        break;
+                    }
+                }
+
+                if (linePosition < line.length()) {
+                    int count = Math.min(len - n, line.length() - linePosition);
+
+                    line.getChars(linePosition, linePosition + count, cbuf, off + n);
+
+                    linePosition += count;
+                    n += count;
+                }
+                else {
+                    cbuf[off + n++] = '\n';
+                    line = null;
+                }
             }
+
+            return ((n == 0) && (len > 0)) ? -1 : n;
         }
 
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
     }
 }
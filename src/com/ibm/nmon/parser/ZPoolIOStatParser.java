@@ -9,8 +9,6 @@ import java.io.IOException;
 
 import java.io.File;
 
-import java.io.LineNumberReader;
-
 import java.util.regex.Pattern;
 
 import java.text.SimpleDateFormat;
@@ -21,6 +19,7 @@ import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.SubDataType;
 
+import com.ibm.nmon.parser.util.LineReader;
 import com.ibm.nmon.util.DataHelper;
 
 /**
@@ -29,7 +28,7 @@ import com.ibm.nmon.util.DataHelper;
 public final class ZPoolIOStatParser {
     private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(ZPoolIOStatParser.class);
 
-    private static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat("EEE MMM dd HH:mm:ss z yyyy");
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat("EEE MMM dd HH:mm:ss z yyyy");
 
     private static final Pattern DATA_SPLITTER = Pattern.compile("\\s+");
 
@@ -37,7 +36,7 @@ public final class ZPoolIOStatParser {
 
     public static final String DEFAULT_HOSTNAME = "zpool";
 
-    private LineNumberReader in = null;
+    private LineReader in = null;
 
     private BasicDataSet data = null;
 
@@ -63,10 +62,10 @@ public final class ZPoolIOStatParser {
         String line = null;
 
         try {
-            in = new LineNumberReader(new java.io.FileReader(filename));
+            in = new LineReader(filename);
 
             while ((line = in.readLine()) != null) {
-                long time = TIMESTAMP_FORMAT.parse(line).getTime();
+                long time = timestampFormat.parse(line).getTime();
 
                 DataRecord record = new DataRecord(time, line);
 
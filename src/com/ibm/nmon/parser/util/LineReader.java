@@ -0,0 +1,327 @@
+package com.ibm.nmon.parser.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import com.ibm.nmon.util.ArchiveHelper;
+
+/**
+ * <p>
+ * Line oriented input for the parsers. Files are read through a {@link FileChannel} into a large byte buffer and lines
+ * are found by scanning for <code>'\n'</code> directly in the buffer. Lines that only contain ASCII characters are
+ * never run through a charset decoder; they can be {@link #tokenize(LineTokenizer) tokenized} straight from the
+ * buffer without creating a String at all. Lines with non-ASCII characters are decoded with the platform's default
+ * charset, i.e. the same as {@link java.io.FileReader}.
+ * </p>
+ *
+ * <p>
+ * Lines may end with either <code>"\n"</code> or <code>"\r\n"</code>. Like {@link java.io.LineNumberReader}, the
+ * current line number is tracked for error reporting.
+ * </p>
+ *
+ * <p>
+ * Entries in compressed archives are read the same way, through a channel over the decompressed data. Data that is not
+ * in a file can also be read by wrapping an existing <code>Reader</code>. In that case, each line is read as a
+ * String.
+ * </p>
+ *
+ * <p>
+ * Files that are still being written can be read in <em>follow</em> mode. In that mode, reaching the end of the file
+ * does not close the reader. Instead, {@link #next()} returns <code>false</code> and a later call will return any lines
+ * that have been appended since. Only complete lines, i.e. those ending in <code>'\n'</code>, are returned.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ */
+public final class LineReader implements Closeable {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final java.io.BufferedReader reader;
+    private final boolean follow;
+
+    // offset of the first line that will not be read
+    private final long end;
+
+    private byte[] buffer;
+    // offset in the file of the first byte in the buffer
+    private long bufferOffset = 0;
+    private int position = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    // current line, as an offset and length into buffer
+    private int lineStart = 0;
+    private int lineLength = 0;
+    private boolean ascii = true;
+
+    // lazily created String for the current line
+    private String line = null;
+
+    private int lineNumber = 0;
+
+    /**
+     * @param filename a regular file or an {@link ArchiveHelper archive entry}
+     */
+    public LineReader(String filename) throws IOException {
+        this(filename, false);
+    }
+
+    /**
+     * @param filename a regular file or an {@link ArchiveHelper archive entry}
+     * @param follow if <code>true</code>, continue reading appended lines after the end of the file is reached; archive
+     *            entries cannot be followed
+     */
+    public LineReader(String filename, boolean follow) throws IOException {
+        this.follow = follow;
+        this.end = Long.MAX_VALUE;
+
+        if (ArchiveHelper.isArchiveEntry(filename)) {
+            if (follow) {
+                throw new IllegalArgumentException("cannot follow archive entry " + filename);
+            }
+
+            channel = java.nio.channels.Channels.newChannel(ArchiveHelper.openStream(filename));
+            reader = null;
+
+            buffer = new byte[BUFFER_SIZE];
+        }
+        else {
+            FileChannel fileChannel = FileChannel.open(java.nio.file.Paths.get(filename),
+                    java.nio.file.StandardOpenOption.READ);
+
+            channel = fileChannel;
+            reader = null;
+
+            // followed files will grow, so always use the full buffer
+            if (follow) {
+                buffer = new byte[BUFFER_SIZE];
+            }
+            else {
+                buffer = new byte[(int) Math.max(4096, Math.min(BUFFER_SIZE, fileChannel.size() + 1))];
+            }
+        }
+    }
+
+    /**
+     * Read only the lines that start in the given range of a regular file. <code>start</code> should be the offset of
+     * the start of a line. Line numbers are relative to <code>start</code>.
+     *
+     * @param start the offset of the first line to read
+     * @param end the offset of the first line that will not be read
+     */
+    public LineReader(String filename, long start, long end) throws IOException {
+        if ((start < 0) || (end < start)) {
+            throw new IllegalArgumentException("invalid range " + start + " to " + end);
+        }
+
+        FileChannel fileChannel = FileChannel.open(java.nio.file.Paths.get(filename),
+                java.nio.file.StandardOpenOption.READ);
+        fileChannel.position(start);
+
+        this.channel = fileChannel;
+        this.reader = null;
+        this.follow = false;
+        this.end = end;
+
+        bufferOffset = start;
+        buffer = new byte[(int) Math.max(4096, Math.min(BUFFER_SIZE, end - start + 1))];
+    }
+
+    public LineReader(java.io.File file) throws IOException {
+        this(file.getPath());
+    }
+
+    public LineReader(Reader reader) {
+        this.channel = null;
+        this.reader = new java.io.BufferedReader(reader);
+        this.follow = false;
+        this.end = Long.MAX_VALUE;
+    }
+
+    /**
+     * Advance to the next line.
+     *
+     * @return <code>false</code> if there are no more lines; in follow mode, if there are no more <em>complete</em>
+     *         lines yet
+     */
+    public boolean next() throws IOException {
+        line = null;
+
+        if (channel == null) {
+            line = reader.readLine();
+
+            if (line == null) {
+                return false;
+            }
+            else {
+                ++lineNumber;
+                return true;
+            }
+        }
+
+        if (bufferOffset + position >= end) {
+            return false;
+        }
+
+        int scan = position;
+        int bits = 0;
+
+        while (true) {
+            for (int i = scan; i < limit; i++) {
+                byte b = buffer[i];
+
+                if (b == '\n') {
+                    setLine(position, i, bits);
+                    position = i + 1;
+
+                    return true;
+                }
+
+                bits |= b;
+            }
+
+            if (eof) {
+                if (follow) {
+                    // leave any partial line in the buffer and try reading again on the next call
+                    eof = false;
+                    return false;
+                }
+                else if (position < limit) {
+                    // last line with no line ending
+                    setLine(position, limit, bits);
+                    position = limit;
+
+                    return true;
+                }
+                else {
+                    return false;
+                }
+            }
+
+            // partial line at the end of the buffer; move it to the start, growing the buffer if the line does not fit
+            int remaining = limit - position;
+
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, remaining);
+                bufferOffset += position;
+            }
+            else if (remaining == buffer.length) {
+                buffer = java.util.Arrays.copyOf(buffer, buffer.length * 2);
+            }
+
+            position = 0;
+            limit = remaining;
+            scan = remaining;
+
+            int read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+
+            if (read < 0) {
+                eof = true;
+            }
+            else {
+                limit += read;
+            }
+        }
+    }
+
+    private void setLine(int start, int end, int bits) {
+        if ((end > start) && (buffer[end - 1] == '\r')) {
+            --end;
+        }
+
+        lineStart = start;
+        lineLength = end - start;
+        // any byte with the high bit set is negative
+        ascii = bits >= 0;
+
+        ++lineNumber;
+    }
+
+    /**
+     * Convenience method equivalent to {@link java.io.BufferedReader#readLine()}.
+     */
+    public String readLine() throws IOException {
+        return next() ? getLine() : null;
+    }
+
+    /**
+     * @return the current line as a String
+     */
+    public String getLine() {
+        if (line == null) {
+            line = new String(buffer, lineStart, lineLength,
+                    ascii ? StandardCharsets.ISO_8859_1 : Charset.defaultCharset());
+        }
+
+        return line;
+    }
+
+    public boolean startsWith(String prefix) {
+        if ((channel == null) || !ascii) {
+            return getLine().startsWith(prefix);
+        }
+
+        if (lineLength < prefix.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer[lineStart + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return (line != null) ? line.isEmpty() : (lineLength == 0);
+    }
+
+    /**
+     * Split the current line with the given tokenizer. ASCII lines are split directly from the read buffer.
+     */
+    public void tokenize(LineTokenizer tokenizer) {
+        if ((channel == null) || !ascii) {
+            tokenizer.tokenize(getLine());
+        }
+        else {
+            tokenizer.tokenize(buffer, lineStart, lineLength);
+        }
+    }
+
+    /**
+     * @return the offset, in bytes, of the start of the current line or -1 if this reader wraps a <code>Reader</code>
+     */
+    public long getOffset() {
+        return channel == null ? -1 : bufferOffset + lineStart;
+    }
+
+    /**
+     * @return the line number of the current line, starting at 1 for the first line
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        else {
+            reader.close();
+        }
+    }
+}
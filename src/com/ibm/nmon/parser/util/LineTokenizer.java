@@ -0,0 +1,307 @@
+package com.ibm.nmon.parser.util;
+
+import com.ibm.nmon.util.DataHelper;
+
+/**
+ * <p>
+ * Reusable tokenizer for delimited lines. Rather than creating a <code>String[]</code> for every line, this class
+ * copies each line into an internal buffer and records the start and end of each field. Fields can then be compared
+ * and parsed as numbers without creating any intermediate Strings.
+ * </p>
+ *
+ * <p>
+ * Fields are split the same way as {@link java.util.regex.Pattern#split(CharSequence) Pattern.split()}, i.e. trailing
+ * empty fields are removed. Numbers are parsed with a fast path for plain decimal values that returns exactly the same
+ * result as {@link Double#parseDouble(String)}. All other values fall back to the <code>java.lang</code> methods, so
+ * invalid data still throws <code>NumberFormatException</code>.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe. Each parser should use its own instance.
+ * </p>
+ */
+public final class LineTokenizer {
+    // exactly representable powers of 10
+    private static final double[] POWERS_OF_10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    // largest integer a double can hold exactly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final char delimiter;
+
+    private char[] buffer = new char[1024];
+
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int count = 0;
+
+    public LineTokenizer(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public void tokenize(String line) {
+        int length = line.length();
+
+        if (length > buffer.length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+
+        line.getChars(0, length, buffer, 0);
+
+        split(length);
+    }
+
+    /**
+     * Tokenize a line stored as bytes. Each byte is treated as a single ISO-8859-1 character, so this should only be
+     * used for ASCII data.
+     */
+    public void tokenize(byte[] bytes, int offset, int length) {
+        if (length > buffer.length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+
+        for (int i = 0; i < length; i++) {
+            buffer[i] = (char) (bytes[offset + i] & 0xFF);
+        }
+
+        split(length);
+    }
+
+    private void split(int length) {
+        count = 0;
+
+        int start = 0;
+
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == delimiter) {
+                addField(start, i);
+                start = i + 1;
+            }
+        }
+
+        addField(start, length);
+
+        // like Pattern.split(), remove trailing empty strings unless there were no delimiters at all
+        if (count > 1) {
+            while ((count > 0) && (starts[count - 1] == ends[count - 1])) {
+                --count;
+            }
+        }
+    }
+
+    private void addField(int start, int end) {
+        if (count == starts.length) {
+            starts = java.util.Arrays.copyOf(starts, count * 2);
+            ends = java.util.Arrays.copyOf(ends, count * 2);
+        }
+
+        starts[count] = start;
+        ends[count] = end;
+        ++count;
+    }
+
+    public int getFieldCount() {
+        return count;
+    }
+
+    /**
+     * @return the field as a new String
+     */
+    public String getField(int field) {
+        checkField(field);
+
+        return new String(buffer, starts[field], ends[field] - starts[field]);
+    }
+
+    /**
+     * @return the field, trimmed, from the current symbol table
+     * @see DataHelper#newString(char[], int, int)
+     */
+    public String getSymbol(int field) {
+        checkField(field);
+
+        return DataHelper.newString(buffer, starts[field], ends[field]);
+    }
+
+    /**
+     * @return all the fields as Strings, equivalent to <code>Pattern.split()</code>
+     */
+    public String[] getFields() {
+        String[] fields = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            fields[i] = getField(i);
+        }
+
+        return fields;
+    }
+
+    public boolean isEmpty(int field) {
+        checkField(field);
+
+        return starts[field] == ends[field];
+    }
+
+    public boolean fieldEquals(int field, String value) {
+        checkField(field);
+
+        int length = ends[field] - starts[field];
+
+        if (length != value.length()) {
+            return false;
+        }
+
+        return regionMatches(starts[field], value);
+    }
+
+    public boolean fieldStartsWith(int field, String prefix) {
+        checkField(field);
+
+        if ((ends[field] - starts[field]) < prefix.length()) {
+            return false;
+        }
+
+        return regionMatches(starts[field], prefix);
+    }
+
+    public boolean fieldContains(int field, String value) {
+        checkField(field);
+
+        int last = ends[field] - value.length();
+
+        for (int i = starts[field]; i <= last; i++) {
+            if (regionMatches(i, value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the same value as <code>getField(field).hashCode()</code> without creating the String
+     */
+    public int fieldHashCode(int field) {
+        checkField(field);
+
+        int hash = 0;
+
+        for (int i = starts[field]; i < ends[field]; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+
+        return hash;
+    }
+
+    private boolean regionMatches(int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer[offset + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public double parseDouble(int field) {
+        checkField(field);
+
+        int i = starts[field];
+        int end = ends[field];
+
+        boolean negative = false;
+
+        if (i < end) {
+            if (buffer[i] == '-') {
+                negative = true;
+                ++i;
+            }
+            else if (buffer[i] == '+') {
+                ++i;
+            }
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDecimal = false;
+
+        for (; i < end; i++) {
+            char c = buffer[i];
+
+            if ((c >= '0') && (c <= '9')) {
+                // 18 digits cannot overflow a long
+                if (++digits > 18) {
+                    return Double.parseDouble(getField(field));
+                }
+
+                mantissa = mantissa * 10 + (c - '0');
+
+                if (seenDecimal) {
+                    ++fractionDigits;
+                }
+            }
+            else if ((c == '.') && !seenDecimal) {
+                seenDecimal = true;
+            }
+            else {
+                // exponents, NaN, Infinity, whitespace, etc
+                return Double.parseDouble(getField(field));
+            }
+        }
+
+        // if both the mantissa and the power of 10 are exact, a single division is correctly rounded
+        if ((digits == 0) || (mantissa > MAX_EXACT_MANTISSA) || (fractionDigits >= POWERS_OF_10.length)) {
+            return Double.parseDouble(getField(field));
+        }
+
+        double value = mantissa;
+
+        if (fractionDigits > 0) {
+            value /= POWERS_OF_10[fractionDigits];
+        }
+
+        return negative ? -value : value;
+    }
+
+    public int parseInt(int field) {
+        checkField(field);
+
+        int i = starts[field];
+        int end = ends[field];
+
+        boolean negative = false;
+
+        if ((i < end) && (buffer[i] == '-')) {
+            negative = true;
+            ++i;
+        }
+
+        // 9 digits cannot overflow an int; anything else is handled by Integer
+        if ((i == end) || ((end - i) > 9)) {
+            return Integer.parseInt(getField(field));
+        }
+
+        int value = 0;
+
+        for (; i < end; i++) {
+            char c = buffer[i];
+
+            if ((c >= '0') && (c <= '9')) {
+                value = value * 10 + (c - '0');
+            }
+            else {
+                return Integer.parseInt(getField(field));
+            }
+        }
+
+        return negative ? -value : value;
+    }
+
+    private void checkField(int field) {
+        if (field >= count) {
+            throw new ArrayIndexOutOfBoundsException(field);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.ibm.nmon.parser.util;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * <p>
+ * Index of the snapshots in an NMON file. For each <code>ZZZZ</code> record, the index holds the offset and line number
+ * of the record in the file and its unparsed timestamp, so a parser can seek directly to the snapshots in a time range.
+ * Timestamps are not converted to times since that depends on the time zone used to parse the file.
+ * </p>
+ *
+ * <p>
+ * The index also holds the lines after the first snapshot that are not data for any snapshot, i.e. data types added
+ * after the headers and <code>BBB</code> system info records. Old Linux versions of NMON define the <code>VM</code>
+ * type in the first snapshot, with a timestamp reference, so that line is also included. These lines affect the rest
+ * of the file, so they still need to be parsed when the snapshots around them are skipped. Consecutive lines are
+ * stored as a single run.
+ * </p>
+ *
+ * <p>
+ * Building the index reads the whole file but does not parse any data. The index is saved in a sidecar file next to
+ * the NMON file and is rebuilt if the NMON file's size or last modified time change. If the sidecar file cannot be
+ * written, the index is still returned but will be rebuilt the next time it is loaded. Archive entries cannot be
+ * indexed.
+ * </p>
+ */
+public final class SnapshotIndex {
+    private static final Logger LOGGER = org.slf4j.LoggerFactory.getLogger(SnapshotIndex.class);
+
+    private static final int MAGIC = 0x4E4D5649; // NMVI
+    private static final int VERSION = 2;
+
+    public static final String SUFFIX = ".nmvindex";
+
+    private final long size;
+    private final long lastModified;
+
+    private final long[] offsets;
+    private final int[] lines;
+    private final String[] timestamps;
+
+    private final long[] runStarts;
+    private final long[] runEnds;
+
+    private SnapshotIndex(long size, long lastModified, long[] offsets, int[] lines, String[] timestamps,
+            long[] runStarts, long[] runEnds) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.offsets = offsets;
+        this.lines = lines;
+        this.timestamps = timestamps;
+        this.runStarts = runStarts;
+        this.runEnds = runEnds;
+    }
+
+    /**
+     * Load the index for the given file from its sidecar file, building and saving a new index if the sidecar file does
+     * not exist or is stale.
+     */
+    public static SnapshotIndex load(String filename) throws IOException {
+        File file = new File(filename);
+        File indexFile = new File(filename + SUFFIX);
+
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        if (indexFile.isFile()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(indexFile), 65536))) {
+                if ((in.readInt() == MAGIC) && (in.readInt() == VERSION) && (in.readLong() == size)
+                        && (in.readLong() == lastModified)) {
+                    return read(in, size, lastModified);
+                }
+                else {
+                    LOGGER.debug("ignoring stale index file {} for {}", indexFile, filename);
+                }
+            }
+            catch (IOException ioe) {
+                LOGGER.warn("could not load snapshot index for " + filename + " from " + indexFile, ioe);
+            }
+        }
+
+        SnapshotIndex index = build(filename, size, lastModified);
+        index.save(indexFile);
+
+        return index;
+    }
+
+    private static SnapshotIndex read(DataInputStream in, long size, long lastModified) throws IOException {
+        int count = in.readInt();
+
+        long[] offsets = new long[count];
+        int[] lines = new int[count];
+        String[] timestamps = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            offsets[i] = in.readLong();
+            lines[i] = in.readInt();
+            timestamps[i] = in.readUTF();
+        }
+
+        int runs = in.readInt();
+
+        long[] runStarts = new long[runs];
+        long[] runEnds = new long[runs];
+
+        for (int i = 0; i < runs; i++) {
+            runStarts[i] = in.readLong();
+            runEnds[i] = in.readLong();
+        }
+
+        return new SnapshotIndex(size, lastModified, offsets, lines, timestamps, runStarts, runEnds);
+    }
+
+    private static SnapshotIndex build(String filename, long size, long lastModified) throws IOException {
+        long start = System.nanoTime();
+
+        java.util.List<String> timestamps = new java.util.ArrayList<String>(1024);
+        long[] offsets = new long[1024];
+        int[] lines = new int[1024];
+
+        long[] runStarts = new long[16];
+        long[] runEnds = new long[16];
+        int runs = 0;
+        boolean inRun = false;
+
+        boolean vmDefined = false;
+
+        LineTokenizer tokenizer = new LineTokenizer(',');
+        // only read up to the size that will be saved, in case the file is still being written
+        LineReader in = new LineReader(filename, 0, size);
+
+        try {
+            while (in.next()) {
+                long offset = in.getOffset();
+                boolean isRun = false;
+
+                if (in.startsWith("ZZZZ")) {
+                    String[] values = in.getLine().split(",");
+
+                    // invalid timestamps are skipped by the parser too
+                    if (values.length == 4) {
+                        if (timestamps.size() == offsets.length) {
+                            offsets = java.util.Arrays.copyOf(offsets, offsets.length * 2);
+                            lines = java.util.Arrays.copyOf(lines, lines.length * 2);
+                        }
+
+                        offsets[timestamps.size()] = offset;
+                        lines[timestamps.size()] = in.getLineNumber();
+                        timestamps.add(values[2] + ' ' + values[3]);
+                    }
+                }
+                else if (timestamps.isEmpty()) {
+                    if (in.startsWith("VM,")) {
+                        vmDefined = true;
+                    }
+                }
+                else if (!in.startsWith("TOP,") && !in.startsWith("UARG,") && !in.startsWith("AAA")
+                        && !in.startsWith("ERROR")) {
+                    in.tokenize(tokenizer);
+
+                    // same as NMONParser; any line without a timestamp reference is not snapshot data
+                    isRun = (tokenizer.getFieldCount() > 1) && !tokenizer.fieldStartsWith(1, "T");
+
+                    if (tokenizer.fieldEquals(0, "VM")) {
+                        // the first VM record defines the type if it was not in the headers
+                        isRun |= !vmDefined;
+                        vmDefined = true;
+                    }
+                }
+
+                if (isRun && !inRun) {
+                    if (runs == runStarts.length) {
+                        runStarts = java.util.Arrays.copyOf(runStarts, runs * 2);
+                        runEnds = java.util.Arrays.copyOf(runEnds, runs * 2);
+                    }
+
+                    runStarts[runs] = offset;
+                }
+                else if (!isRun && inRun) {
+                    runEnds[runs++] = offset;
+                }
+
+                inRun = isRun;
+            }
+
+            if (inRun) {
+                runEnds[runs++] = size;
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("indexed {} snapshots in {} in {}ms", new Object[] { timestamps.size(), filename,
+                    (System.nanoTime() - start) / 1000000.0d });
+        }
+
+        return new SnapshotIndex(size, lastModified, java.util.Arrays.copyOf(offsets, timestamps.size()),
+                java.util.Arrays.copyOf(lines, timestamps.size()), timestamps.toArray(new String[0]),
+                java.util.Arrays.copyOf(runStarts, runs), java.util.Arrays.copyOf(runEnds, runs));
+    }
+
+    // errors are logged but not thrown since the index can always be rebuilt
+    private void save(File indexFile) {
+        File tempFile = null;
+
+        try {
+            // write to a temp file and rename so concurrent readers never see a partial index
+            tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile), 65536))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(size);
+                out.writeLong(lastModified);
+
+                out.writeInt(offsets.length);
+
+                for (int i = 0; i < offsets.length; i++) {
+                    out.writeLong(offsets[i]);
+                    out.writeInt(lines[i]);
+                    out.writeUTF(timestamps[i]);
+                }
+
+                out.writeInt(runStarts.length);
+
+                for (int i = 0; i < runStarts.length; i++) {
+                    out.writeLong(runStarts[i]);
+                    out.writeLong(runEnds[i]);
+                }
+            }
+
+            try {
+                Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (java.nio.file.AtomicMoveNotSupportedException amnse) {
+                Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            tempFile = null;
+        }
+        catch (Exception e) {
+            LOGGER.debug("could not save snapshot index {}: {}", indexFile, e.getMessage());
+        }
+        finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the size of the file when it was indexed; the end of the last snapshot
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public int getSnapshotCount() {
+        return offsets.length;
+    }
+
+    /**
+     * @return the offset of the <code>ZZZZ</code> record for the given snapshot
+     */
+    public long getOffset(int snapshot) {
+        return offsets[snapshot];
+    }
+
+    /**
+     * @return the line number of the <code>ZZZZ</code> record for the given snapshot
+     */
+    public int getLineNumber(int snapshot) {
+        return lines[snapshot];
+    }
+
+    /**
+     * @return the time and date fields of the <code>ZZZZ</code> record for the given snapshot, separated by a space
+     */
+    public String getTimestamp(int snapshot) {
+        return timestamps[snapshot];
+    }
+
+    /**
+     * @return the number of runs of lines that are not snapshot data
+     */
+    public int getRunCount() {
+        return runStarts.length;
+    }
+
+    /**
+     * @return the offset of the first line in the run
+     */
+    public long getRunStart(int run) {
+        return runStarts[run];
+    }
+
+    /**
+     * @return the offset of the first line after the run
+     */
+    public long getRunEnd(int run) {
+        return runEnds[run];
+    }
+}
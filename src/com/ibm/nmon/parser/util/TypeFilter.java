@@ -0,0 +1,144 @@
+package com.ibm.nmon.parser.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.regex.Pattern;
+
+import com.ibm.nmon.data.DataType;
+
+import com.ibm.nmon.data.matcher.ExactTypeMatcher;
+import com.ibm.nmon.data.matcher.ProcessMatcher;
+import com.ibm.nmon.data.matcher.RegexTypeMatcher;
+import com.ibm.nmon.data.matcher.TopProcessMatcher;
+import com.ibm.nmon.data.matcher.TypeMatcher;
+
+/**
+ * <p>
+ * The set of {@link DataType DataTypes} a parser needs to parse, built from {@link TypeMatcher TypeMatchers}. Parsers
+ * skip the data for any type that is not matched without parsing the values. Like the matchers, types are matched on
+ * {@link DataType#toString()}, not the type id.
+ * </p>
+ *
+ * <p>
+ * Processes are only parsed if there is a {@link ProcessMatcher} or {@link TopProcessMatcher}. Exact and regex matchers
+ * are never used to match individual processes. Any other kind of matcher, including {@link TypeMatcher#ALL}, matches
+ * all types, since there is no way to know what it will match before the data is parsed.
+ * </p>
+ *
+ * <p>
+ * This class is immutable and can be shared by parsers in different threads.
+ * </p>
+ */
+public final class TypeFilter {
+    /**
+     * Matches all types, including processes; i.e. no filtering.
+     */
+    public static final TypeFilter ALL = new TypeFilter(true, false, java.util.Collections.<String> emptySet(),
+            java.util.Collections.<Pattern> emptyList());
+
+    private final boolean matchesAll;
+    private final boolean includesProcesses;
+
+    private final Set<String> names;
+    private final List<Pattern> patterns;
+
+    private TypeFilter(boolean matchesAll, boolean includesProcesses, Set<String> names, List<Pattern> patterns) {
+        this.matchesAll = matchesAll;
+        this.includesProcesses = includesProcesses;
+        this.names = names;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Create a filter that matches all the types the given matchers could match.
+     *
+     * @return a new filter or {@link #ALL} if any matcher could match all types
+     */
+    public static TypeFilter create(Iterable<? extends TypeMatcher> matchers) {
+        boolean includesProcesses = false;
+
+        // sorted so toString() is consistent
+        Set<String> names = new java.util.TreeSet<String>();
+        Map<String, Pattern> patterns = new java.util.TreeMap<String, Pattern>();
+
+        for (TypeMatcher matcher : matchers) {
+            if (matcher instanceof ExactTypeMatcher) {
+                names.add(((ExactTypeMatcher) matcher).getType());
+            }
+            else if (matcher instanceof RegexTypeMatcher) {
+                String regex = ((RegexTypeMatcher) matcher).getRegex();
+
+                if (!patterns.containsKey(regex)) {
+                    patterns.put(regex, Pattern.compile(regex));
+                }
+            }
+            else if ((matcher instanceof ProcessMatcher) || (matcher instanceof TopProcessMatcher)) {
+                includesProcesses = true;
+            }
+            else {
+                return ALL;
+            }
+        }
+
+        return new TypeFilter(false, includesProcesses, java.util.Collections.unmodifiableSet(names),
+                java.util.Collections.unmodifiableList(new java.util.ArrayList<Pattern>(patterns.values())));
+    }
+
+    /**
+     * @return <code>true</code> if this filter matches all types; parsers do not need to check individual types
+     */
+    public boolean matchesAll() {
+        return matchesAll;
+    }
+
+    /**
+     * @return <code>true</code> if process data is needed
+     */
+    public boolean includesProcesses() {
+        return matchesAll || includesProcesses;
+    }
+
+    public boolean matches(DataType type) {
+        return matches(type.toString());
+    }
+
+    /**
+     * @param name the name the type will have; i.e. the value of {@link DataType#toString()} after it is created
+     */
+    public boolean matches(String name) {
+        if (matchesAll || names.contains(name)) {
+            return true;
+        }
+
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        if (matchesAll) {
+            return "$ALL";
+        }
+        else {
+            StringBuilder builder = new StringBuilder(64);
+            builder.append(names);
+
+            for (Pattern pattern : patterns) {
+                builder.append(',').append(pattern.pattern());
+            }
+
+            if (includesProcesses) {
+                builder.append(',').append("$PROCESSES");
+            }
+
+            return builder.toString();
+        }
+    }
+}
@@ -2,29 +2,66 @@ package com.ibm.nmon.parser.util;
 
 import java.util.Map;
 
-import java.util.regex.Pattern;
-
 import com.ibm.nmon.util.DataHelper;
 
 public final class XMLParserHelper {
-    protected static final Pattern ATTRIBUTE_SPLIITTER = Pattern.compile("=?\" ?");
-
     public static Map<String, String> parseAttributes(String unparsedAttributes) {
         if ((unparsedAttributes == null) || "".equals(unparsedAttributes)) {
             return java.util.Collections.emptyMap();
         }
 
-        String[] parts = ATTRIBUTE_SPLIITTER.split(unparsedAttributes);
+        // split the same as Pattern.split() with the regex '=?" ?', but record the start and end of each part rather
+        // than creating substrings; names and values are then looked up directly in the symbol table
+        int[] parts = new int[16];
+        int partCount = 0;
+
+        int start = 0;
+        int length = unparsedAttributes.length();
+
+        for (int i = 0; i < length; i++) {
+            if (unparsedAttributes.charAt(i) == '"') {
+                int end = ((i > start) && (unparsedAttributes.charAt(i - 1) == '=')) ? i - 1 : i;
+
+                if (partCount * 2 == parts.length) {
+                    parts = java.util.Arrays.copyOf(parts, parts.length * 2);
+                }
+
+                parts[partCount * 2] = start;
+                parts[partCount * 2 + 1] = end;
+                ++partCount;
+
+                start = i + 1;
+
+                if ((start < length) && (unparsedAttributes.charAt(start) == ' ')) {
+                    ++start;
+                    ++i;
+                }
+            }
+        }
+
+        if (partCount * 2 == parts.length) {
+            parts = java.util.Arrays.copyOf(parts, parts.length + 2);
+        }
+
+        parts[partCount * 2] = start;
+        parts[partCount * 2 + 1] = length;
+        ++partCount;
+
+        // like split(), drop trailing empty parts
+        while ((partCount > 0) && (parts[partCount * 2 - 2] == parts[partCount * 2 - 1])) {
+            --partCount;
+        }
 
-        int size = parts.length / 2;
+        int size = partCount / 2;
 
         Map<String, String> attributes = new java.util.HashMap<String, String>(size);
 
         // drop odd numbered end index from array
         size *= 2;
 
-        for (int i = 0; i < size;) {
-            attributes.put(DataHelper.newString(parts[i++].trim()), DataHelper.newString(parts[i++].trim()));
+        for (int i = 0; i < size; i += 2) {
+            attributes.put(DataHelper.newString(unparsedAttributes, parts[i * 2], parts[i * 2 + 1]),
+                    DataHelper.newString(unparsedAttributes, parts[i * 2 + 2], parts[i * 2 + 3]));
         }
 
         return attributes;
@@ -0,0 +1,640 @@
+package com.ibm.nmon.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.Reader;
+
+import java.util.List;
+
+import java.util.concurrent.BlockingQueue;
+
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * <p>
+ * Utility methods for reading files directly from zip, tar, tar.gz and gzip archives without unpacking them.
+ * </p>
+ *
+ * <p>
+ * Archive entries are identified by paths in the form <code>archive!/entry</code>, e.g.
+ * <code>/data/captures.tar.gz!/host1/host1_170101_0000.nmon</code>. These paths can be passed to the parsers anywhere a
+ * filename is expected and are used as the source file of the parsed data. A gzip file that is not a tar is treated as
+ * an archive with a single entry named after the file without the <code>.gz</code> suffix.
+ * </p>
+ *
+ * <p>
+ * Entries are decompressed on a separate thread so decompression overlaps with parsing.
+ * </p>
+ */
+public final class ArchiveHelper {
+    public static final String ENTRY_SEPARATOR = "!/";
+
+    // decompressed data is handed to the reader in chunks; bound the number of chunks to limit memory usage
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_CHUNKS = 8;
+
+    private static final int TAR_BLOCK_SIZE = 512;
+
+    public static boolean isArchive(String filename) {
+        String name = filename.toLowerCase();
+
+        return name.endsWith(".zip") || name.endsWith(".gz") || name.endsWith(".tar") || name.endsWith(".tgz");
+    }
+
+    private static boolean isTar(String filename) {
+        String name = filename.toLowerCase();
+
+        return name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    /**
+     * @return <code>true</code> if the path refers to an entry inside an archive rather than a regular file
+     */
+    public static boolean isArchiveEntry(String path) {
+        return getSeparatorIndex(path) != -1;
+    }
+
+    /**
+     * @return the path of the archive file for an archive entry or the path itself for regular files
+     */
+    public static String getArchivePath(String path) {
+        int idx = getSeparatorIndex(path);
+
+        return idx == -1 ? path : path.substring(0, idx);
+    }
+
+    /**
+     * @return the name of the entry inside the archive or <code>null</code> if the path is a regular file
+     */
+    public static String getEntryName(String path) {
+        int idx = getSeparatorIndex(path);
+
+        return idx == -1 ? null : path.substring(idx + ENTRY_SEPARATOR.length());
+    }
+
+    // first separator that follows an archive file name; directories or entries could contain the separator too
+    private static int getSeparatorIndex(String path) {
+        int idx = path.indexOf(ENTRY_SEPARATOR);
+
+        while (idx != -1) {
+            if (isArchive(path.substring(0, idx))) {
+                return idx;
+            }
+
+            idx = path.indexOf(ENTRY_SEPARATOR, idx + 1);
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the full paths of all the regular files in the archive
+     */
+    public static List<String> listEntries(File archive) throws IOException {
+        String archivePath = archive.getAbsolutePath();
+        List<String> entries = new java.util.ArrayList<String>();
+
+        if (archive.getName().toLowerCase().endsWith(".zip")) {
+            ZipFile zip = new ZipFile(archive);
+
+            try {
+                for (java.util.Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                    ZipEntry entry = e.nextElement();
+
+                    if (!entry.isDirectory()) {
+                        entries.add(archivePath + ENTRY_SEPARATOR + entry.getName());
+                    }
+                }
+            }
+            finally {
+                zip.close();
+            }
+        }
+        else if (isTar(archive.getName())) {
+            TarReader tar = new TarReader(openTar(archive));
+
+            try {
+                String name = null;
+
+                while ((name = tar.next()) != null) {
+                    entries.add(archivePath + ENTRY_SEPARATOR + name);
+                }
+            }
+            finally {
+                tar.close();
+            }
+        }
+        else {
+            entries.add(archivePath + ENTRY_SEPARATOR + getGzipEntryName(archive));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Open a regular file or an archive entry for reading. Archive entries are decompressed on a background thread.
+     */
+    public static InputStream openStream(String path) throws IOException {
+        int idx = getSeparatorIndex(path);
+
+        if (idx == -1) {
+            return new FileInputStream(path);
+        }
+
+        File archive = new File(path.substring(0, idx));
+        String entryName = path.substring(idx + ENTRY_SEPARATOR.length());
+
+        InputStream in = null;
+
+        if (archive.getName().toLowerCase().endsWith(".zip")) {
+            final ZipFile zip = new ZipFile(archive);
+            ZipEntry entry = zip.getEntry(entryName);
+
+            if ((entry == null) || entry.isDirectory()) {
+                zip.close();
+                throw new java.io.FileNotFoundException(path);
+            }
+
+            in = new FilterInputStream(zip.getInputStream(entry)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    }
+                    finally {
+                        zip.close();
+                    }
+                }
+            };
+        }
+        else if (isTar(archive.getName())) {
+            TarReader tar = new TarReader(openTar(archive));
+            String name = null;
+
+            // tar files have no index; read until the entry is found
+            while ((name = tar.next()) != null) {
+                if (name.equals(entryName)) {
+                    break;
+                }
+            }
+
+            if (name == null) {
+                tar.close();
+                throw new java.io.FileNotFoundException(path);
+            }
+
+            in = tar.getEntryStream();
+        }
+        else {
+            if (!getGzipEntryName(archive).equals(entryName)) {
+                throw new java.io.FileNotFoundException(path);
+            }
+
+            in = new GZIPInputStream(new FileInputStream(archive), 64 * 1024);
+        }
+
+        return new BackgroundInputStream(in, path);
+    }
+
+    /**
+     * Open a regular file or an archive entry for reading using the platform's default charset, i.e. the same as
+     * {@link java.io.FileReader}.
+     */
+    public static Reader openReader(String path) throws IOException {
+        return new java.io.InputStreamReader(openStream(path));
+    }
+
+    private static InputStream openTar(File archive) throws IOException {
+        InputStream in = new java.io.BufferedInputStream(new FileInputStream(archive), 64 * 1024);
+
+        if (!archive.getName().toLowerCase().endsWith(".tar")) {
+            try {
+                in = new GZIPInputStream(in, 64 * 1024);
+            }
+            catch (IOException ioe) {
+                in.close();
+                throw ioe;
+            }
+        }
+
+        return in;
+    }
+
+    private static String getGzipEntryName(File archive) {
+        String name = archive.getName();
+
+        return name.substring(0, name.length() - ".gz".length());
+    }
+
+    /**
+     * Minimal tar reader that supports POSIX ustar, GNU long names and pax path headers. Only regular files are
+     * returned.
+     */
+    private static final class TarReader {
+        private final InputStream in;
+        private final byte[] header = new byte[TAR_BLOCK_SIZE];
+
+        // bytes left in the current entry, including padding
+        private long remaining = 0;
+        private long entrySize = 0;
+
+        TarReader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return the name of the next regular file or <code>null</code> at the end of the archive
+         */
+        String next() throws IOException {
+            String longName = null;
+
+            while (true) {
+                skip(remaining);
+                remaining = 0;
+
+                if (!readBlock()) {
+                    return null;
+                }
+
+                entrySize = parseSize();
+                remaining = ((entrySize + TAR_BLOCK_SIZE - 1) / TAR_BLOCK_SIZE) * TAR_BLOCK_SIZE;
+
+                char type = (char) header[156];
+
+                if ((type == 'L') || (type == 'x')) {
+                    // name for the next entry is stored in this entry's data
+                    byte[] data = readData();
+
+                    if (type == 'L') {
+                        longName = parseString(data, 0, data.length);
+                    }
+                    else {
+                        String path = parsePaxPath(data);
+
+                        if (path != null) {
+                            longName = path;
+                        }
+                    }
+                }
+                else if ((type == '0') || (type == '\0') || (type == '7')) {
+                    if (longName != null) {
+                        return longName;
+                    }
+
+                    String name = parseString(header, 0, 100);
+
+                    // ustar splits long names into a prefix and name
+                    // GNU tar uses "ustar  " as its magic and does not have a prefix
+                    if (isPosixUstar()) {
+                        String prefix = parseString(header, 345, 155);
+
+                        if (!prefix.isEmpty()) {
+                            name = prefix + '/' + name;
+                        }
+                    }
+
+                    return name;
+                }
+                else {
+                    // directories, links, global headers, etc
+                    longName = null;
+                }
+            }
+        }
+
+        /**
+         * @return a stream containing the data for the current entry; closing this stream closes the tar file
+         */
+        InputStream getEntryStream() {
+            final long size = entrySize;
+
+            return new FilterInputStream(in) {
+                private long left = size;
+
+                @Override
+                public int read() throws IOException {
+                    if (left <= 0) {
+                        return -1;
+                    }
+
+                    int b = super.read();
+
+                    if (b != -1) {
+                        --left;
+                    }
+
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (left <= 0) {
+                        return -1;
+                    }
+
+                    int read = super.read(b, off, (int) Math.min(len, left));
+
+                    if (read > 0) {
+                        left -= read;
+                    }
+
+                    return read;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long skipped = super.skip(Math.min(n, left));
+                    left -= skipped;
+
+                    return skipped;
+                }
+
+                @Override
+                public int available() throws IOException {
+                    return (int) Math.min(super.available(), left);
+                }
+            };
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+
+        private boolean readBlock() throws IOException {
+            if (!readFully(header)) {
+                return false;
+            }
+
+            // archives end with 2 empty blocks
+            for (byte b : header) {
+                if (b != 0) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private byte[] readData() throws IOException {
+            if (entrySize > Integer.MAX_VALUE) {
+                throw new IOException("invalid tar header size " + entrySize);
+            }
+
+            byte[] data = new byte[(int) entrySize];
+
+            if (!readFully(data)) {
+                throw new java.io.EOFException("unexpected end of tar file");
+            }
+
+            remaining -= entrySize;
+
+            return data;
+        }
+
+        private boolean readFully(byte[] buffer) throws IOException {
+            int total = 0;
+
+            while (total < buffer.length) {
+                int read = in.read(buffer, total, buffer.length - total);
+
+                if (read == -1) {
+                    if (total == 0) {
+                        return false;
+                    }
+                    else {
+                        throw new java.io.EOFException("unexpected end of tar file");
+                    }
+                }
+
+                total += read;
+            }
+
+            return true;
+        }
+
+        private void skip(long toSkip) throws IOException {
+            while (toSkip > 0) {
+                long skipped = in.skip(toSkip);
+
+                if (skipped <= 0) {
+                    // skip() may not move at the end of a GZIPInputStream; read to be sure
+                    if (in.read() == -1) {
+                        throw new java.io.EOFException("unexpected end of tar file");
+                    }
+
+                    skipped = 1;
+                }
+
+                toSkip -= skipped;
+            }
+        }
+
+        private long parseSize() throws IOException {
+            // GNU base-256 encoding for large files
+            if ((header[124] & 0x80) != 0) {
+                long size = header[124] & 0x7F;
+
+                for (int i = 125; i < 136; i++) {
+                    size = (size << 8) | (header[i] & 0xFF);
+                }
+
+                return size;
+            }
+
+            String octal = parseString(header, 124, 12).trim();
+
+            if (octal.isEmpty()) {
+                return 0;
+            }
+
+            try {
+                return Long.parseLong(octal, 8);
+            }
+            catch (NumberFormatException nfe) {
+                throw new IOException("invalid tar header size '" + octal + "'");
+            }
+        }
+
+        // pax records are 'length key=value\n'
+        // POSIX ustar headers have the magic "ustar\0" followed by the version "00"
+        private boolean isPosixUstar() {
+            return "ustar".equals(parseString(header, 257, 5)) && (header[262] == 0) && (header[263] == '0')
+                    && (header[264] == '0');
+        }
+
+        private static String parsePaxPath(byte[] data) {
+            String records = new String(data, java.nio.charset.StandardCharsets.UTF_8);
+
+            for (String record : records.split("\n")) {
+                int idx = record.indexOf(" path=");
+
+                if (idx != -1) {
+                    return record.substring(idx + " path=".length());
+                }
+            }
+
+            return null;
+        }
+
+        private static String parseString(byte[] data, int offset, int length) {
+            int end = offset;
+
+            while ((end < (offset + length)) && (data[end] != 0)) {
+                ++end;
+            }
+
+            return new String(data, offset, end - offset, java.nio.charset.StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reads the source stream on a separate thread, handing the data to the reader in chunks.
+     */
+    private static final class BackgroundInputStream extends InputStream {
+        private static final byte[] END = new byte[0];
+
+        private final BlockingQueue<byte[]> chunks = new java.util.concurrent.ArrayBlockingQueue<byte[]>(MAX_CHUNKS);
+        private final Thread thread;
+
+        private volatile IOException error = null;
+        private volatile boolean closed = false;
+
+        private byte[] current = null;
+        private int position = 0;
+
+        BackgroundInputStream(final InputStream source, final String path) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (!closed) {
+                            byte[] chunk = new byte[CHUNK_SIZE];
+                            int length = 0;
+                            int read = 0;
+
+                            // fill the whole chunk; inflater streams return small reads
+                            while (length < CHUNK_SIZE) {
+                                read = source.read(chunk, length, CHUNK_SIZE - length);
+
+                                if (read == -1) {
+                                    break;
+                                }
+
+                                length += read;
+                            }
+
+                            if (length > 0) {
+                                chunks.put(length == CHUNK_SIZE ? chunk : java.util.Arrays.copyOf(chunk, length));
+                            }
+
+                            if (read == -1) {
+                                break;
+                            }
+                        }
+                    }
+                    catch (IOException ioe) {
+                        error = ioe;
+                    }
+                    catch (InterruptedException ie) {
+                        // closed by the reader
+                    }
+                    catch (Throwable t) {
+                        // e.g. a corrupt archive causing a runtime exception in the decompressor
+                        error = new IOException("error reading " + path, t);
+                    }
+                    finally {
+                        try {
+                            source.close();
+                        }
+                        catch (IOException ioe) {
+                            // ignore
+                        }
+
+                        // always end the stream so the reader never blocks forever
+                        if (!closed) {
+                            try {
+                                chunks.put(END);
+                            }
+                            catch (InterruptedException ie) {
+                                // closed by the reader
+                            }
+                        }
+                    }
+                }
+            }, ArchiveHelper.class.getSimpleName() + ' ' + path);
+
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!fill()) {
+                return -1;
+            }
+
+            int length = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, length);
+            position += length;
+
+            return length;
+        }
+
+        private boolean fill() throws IOException {
+            if (closed) {
+                throw new IOException("stream closed");
+            }
+
+            if (current == END) {
+                return false;
+            }
+
+            if ((current == null) || (position == current.length)) {
+                try {
+                    current = chunks.take();
+                    position = 0;
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new java.io.InterruptedIOException();
+                }
+
+                if (current == END) {
+                    if (error != null) {
+                        throw error;
+                    }
+
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            thread.interrupt();
+        }
+    }
+
+    private ArchiveHelper() {}
+}
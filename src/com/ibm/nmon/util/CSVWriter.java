@@ -170,31 +170,16 @@ public final class CSVWriter {
         writer.write('\n');
 
         for (int i = 0; i < data.getItemCount(); i++) {
-            writer.write(DATETIME.format(data.getTimePeriod(i).getEnd()));
+            writer.write(DATETIME.format(new java.util.Date(data.getTime(i))));
             writer.write(',');
 
+            // NaN if there is no value
             for (int j = 0; j < seriesCount - 1; j++) {
-                Number n = data.getY(j, i);
-
-                if (n == null) {
-                    writer.write(FORMAT.format(Double.NaN));
-                }
-                else {
-                    writer.write(FORMAT.format(n.doubleValue()));
-                }
-
+                writer.write(FORMAT.format(data.getYValue(j, i)));
                 writer.write(',');
             }
 
-            Number n = data.getY(seriesCount - 1, i);
-
-            if (n == null) {
-                writer.write(FORMAT.format(Double.NaN));
-            }
-            else {
-                writer.write(FORMAT.format(n.doubleValue()));
-            }
-
+            writer.write(FORMAT.format(data.getYValue(seriesCount - 1, i)));
             writer.write('\n');
         }
     }
@@ -7,6 +7,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 
+import java.util.concurrent.ForkJoinTask;
+
 import com.ibm.nmon.data.DataRecord;
 import com.ibm.nmon.data.DataType;
 import com.ibm.nmon.data.ProcessDataSet;
@@ -17,6 +19,9 @@ import com.ibm.nmon.data.ProcessDataType;
  * Utility methods for working with DataSets and DataTypes.
  */
 public final class DataHelper {
+    // records per thread below which parallel aggregation is not worth the overhead
+    private static final int MIN_RECORDS_PER_THREAD = 64;
+
     public static Map<String, List<Process>> getProcessesByName(ProcessDataSet data, boolean sorted) {
         /**
          * Collect all the processes in a file and group them by name.
@@ -56,6 +61,24 @@ public final class DataHelper {
     }
 
     public static void aggregateProcessData(ProcessDataSet data, Logger logger) {
+        aggregateProcessData(data, logger, 1);
+    }
+
+    /**
+     * <p>
+     * Add aggregate processes to the data: one for all the processes, named <code>ALLPROCESSES</code>, and one for
+     * each process name that has more than one process. Aggregates sum the data for their processes and add a
+     * <code>Count</code> field with the number of processes running at each time.
+     * </p>
+     *
+     * <p>
+     * Each record is read once and its process data is added to all the aggregates at the same time. Records are
+     * independent, so they can be split into time ranges and aggregated on multiple threads.
+     * </p>
+     *
+     * @param threads the maximum number of threads to use; 1 aggregates on the calling thread
+     */
+    public static void aggregateProcessData(ProcessDataSet data, Logger logger, int threads) {
         long start = System.nanoTime();
         Map<String, List<Process>> processNameToProcesses = DataHelper.getProcessesByName(data, false);
 
@@ -63,24 +86,81 @@ public final class DataHelper {
         for (List<Process> processes : processNameToProcesses.values()) {
             allProcesses.addAll(processes);
         }
-        if (allProcesses.size() > 0) {
-            aggregateProcesses(data, allProcesses, "ALLPROCESSES", logger);
+
+        if (allProcesses.isEmpty()) {
+            return;
         }
 
+        // create the aggregates up front, ALLPROCESSES first, then by name
+        List<ProcessDataType> aggregateTypes = new ArrayList<ProcessDataType>();
+        aggregateTypes.add(createAggregate(data, allProcesses, "ALLPROCESSES"));
+
+        // resolve every process to its position in allProcesses and the index of its named aggregate, if any
+        // process types in the records are the same instances as in the DataSet, so look them up by identity
+        // rather than hashing type id Strings and calling Process.equals() for every type in every record
+        final Map<DataType, Integer> typeToOrdinal = new java.util.IdentityHashMap<DataType, Integer>();
+        final ProcessDataType[] processTypes = new ProcessDataType[allProcesses.size()];
+        final int[] groups = new int[allProcesses.size()];
+        int ordinal = 0;
+
         for (List<Process> processes : processNameToProcesses.values()) {
+            int group = -1;
+
             if (processes.size() > 1) {
-                aggregateProcesses(data, processes, processes.get(0).getName(), logger);
+                group = aggregateTypes.size();
+                aggregateTypes.add(createAggregate(data, processes, processes.get(0).getName()));
             }
-            allProcesses.addAll(processes);
+
+            for (Process process : processes) {
+                processTypes[ordinal] = data.getType(process);
+                groups[ordinal] = group;
+                typeToOrdinal.put(processTypes[ordinal], ordinal);
+                ++ordinal;
+            }
+        }
+
+        final ProcessDataType[] aggregates = aggregateTypes.toArray(new ProcessDataType[0]);
+        final DataRecord[] records = new DataRecord[data.getRecordCount()];
+        int n = 0;
+
+        for (DataRecord record : data.getRecords()) {
+            records[n++] = record;
+        }
+
+        int tasks = Math.min(threads, records.length / MIN_RECORDS_PER_THREAD);
+
+        if (tasks > 1) {
+            List<ForkJoinTask<?>> ranges = new ArrayList<ForkJoinTask<?>>(tasks);
+
+            for (int i = 0; i < tasks; i++) {
+                final int from = (int) ((long) records.length * i / tasks);
+                final int to = (int) ((long) records.length * (i + 1) / tasks);
+
+                ranges.add(ForkJoinTask.adapt(new Runnable() {
+                    @Override
+                    public void run() {
+                        aggregateRecords(records, from, to, typeToOrdinal, processTypes, groups, aggregates);
+                    }
+                }));
+            }
+
+            ForkJoinTask.invokeAll(ranges);
+        }
+        else {
+            aggregateRecords(records, 0, records.length, typeToOrdinal, processTypes, groups, aggregates);
         }
 
         if (logger.isDebugEnabled()) {
             logger.debug("Aggregated process data for {} in {}ms ", data, (System.nanoTime() - start) / 1000000.0d);
         }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("{} processes in {} aggregates over {} records using {} threads", allProcesses.size(),
+                    aggregates.length, records.length, Math.max(1, tasks));
+        }
     }
 
-    private static void aggregateProcesses(ProcessDataSet data, List<Process> processes, String name, Logger logger) {
-        long start = System.nanoTime();
+    private static ProcessDataType createAggregate(ProcessDataSet data, List<Process> processes, String name) {
         long earliestStart = Long.MAX_VALUE;
 
         for (Process process : processes) {
@@ -113,41 +193,69 @@ public final class DataHelper {
         data.addProcess(aggregate);
         data.addType(aggregateType);
 
-        // for every record in the file, sum up all the data for each process and add the aggregated
-        // data to the record
-        for (DataRecord record : data.getRecords()) {
-            double[] totals = new double[fieldCount];
+        return aggregateType;
+    }
 
-            java.util.Arrays.fill(totals, 0);
+    private static void aggregateRecords(DataRecord[] records, int from, int to, Map<DataType, Integer> typeToOrdinal,
+            ProcessDataType[] processTypes, int[] groups, ProcessDataType[] aggregates) {
+        int[] ordinals = new int[processTypes.length];
 
-            // does any process have data at this time?
-            boolean valid = false;
+        for (int i = from; i < to; i++) {
+            DataRecord record = records[i];
 
-            for (Process process : processes) {
-                processType = data.getType(process);
+            // find the processes that have data at this time
+            int count = 0;
 
-                if (record.hasData(processType)) {
-                    valid = true;
+            for (DataType type : record.getTypes()) {
+                Integer ordinal = typeToOrdinal.get(type);
 
-                    int n = 0;
+                if (ordinal != null) {
+                    ordinals[count++] = ordinal;
+                }
+            }
 
-                    for (String field : processType.getFields()) {
-                        totals[n++] += record.getData(processType, field);
-                    }
+            if (count == 0) {
+                continue;
+            }
 
-                    // process count
-                    ++totals[n];
+            // sum in the same order as the processes were grouped so totals do not depend on the record's layout
+            java.util.Arrays.sort(ordinals, 0, count);
+
+            double[][] totals = new double[aggregates.length][];
+
+            for (int j = 0; j < count; j++) {
+                int ordinal = ordinals[j];
+                double[] values = record.getData(processTypes[ordinal]);
+
+                addTo(totals, 0, aggregates, values);
+
+                if (groups[ordinal] != -1) {
+                    addTo(totals, groups[ordinal], aggregates, values);
                 }
             }
 
-            if (valid) {
-                record.addData(aggregateType, totals);
+            for (int j = 0; j < aggregates.length; j++) {
+                if (totals[j] != null) {
+                    record.addData(aggregates[j], totals[j]);
+                }
             }
         }
+    }
 
-        if (logger.isTraceEnabled()) {
-            logger.trace("Aggregated process data for {} in {}ms ", name, (System.nanoTime() - start) / 1000000.0d);
+    private static void addTo(double[][] totals, int aggregate, ProcessDataType[] aggregates, double[] values) {
+        double[] total = totals[aggregate];
+
+        if (total == null) {
+            total = new double[aggregates[aggregate].getFieldCount()];
+            totals[aggregate] = total;
+        }
+
+        for (int n = 0; n < values.length; n++) {
+            total[n] += values[n];
         }
+
+        // process count
+        ++total[total.length - 1];
     }
 
     /**
@@ -203,19 +311,74 @@ public final class DataHelper {
     private static final boolean IS_IBM_JVM = System.getProperty("java.vm.vendor").startsWith("IBM");
 
     /**
-     * Create a new String. This method is used to save memory usage for Strings that are created via substring.
+     * Create a new String, trimming any whitespace. This method is used to save memory for Strings that are stored in
+     * parsed data. If there is a {@link SymbolTable#getCurrent() current symbol table}, the String is shared with all
+     * other equal Strings in the table.
      */
     public static String newString(String original) {
-        // new String to avoid memory leaks when the element is stored
-        // IBM JVMs do not create a new char[] on copy, so do it manually
-        // this is inefficient because the array is double copied, but that's better
-        // than leaving the entire string in memory
-        if (IS_IBM_JVM) {
-            return new String(original.trim().toCharArray()).intern();
+        return newString(original, 0, original.length());
+    }
+
+    /**
+     * Create a new String from part of an existing String. This is equivalent to
+     * <code>newString(original.substring(start, end))</code>, but no substring is created if the value is already in
+     * the current symbol table.
+     */
+    public static String newString(String original, int start, int end) {
+        while ((start < end) && (original.charAt(start) <= ' ')) {
+            ++start;
+        }
+
+        while ((start < end) && (original.charAt(end - 1) <= ' ')) {
+            --end;
+        }
+
+        SymbolTable symbols = SymbolTable.getCurrent();
+
+        if (symbols != null) {
+            if ((start == 0) && (end == original.length())) {
+                return symbols.get(original);
+            }
+            else {
+                return symbols.get(original, start, end);
+            }
+        }
+        else {
+            // new String to avoid memory leaks when the element is stored
+            // IBM JVMs do not create a new char[] on copy, so do it manually
+            // this is inefficient because the array is double copied, but that's better
+            // than leaving the entire string in memory
+            if (IS_IBM_JVM) {
+                return new String(original.substring(start, end).toCharArray());
+            }
+            else {
+                // Oracle JVM's String implementation is always the correct size
+                return original.substring(start, end);
+            }
+        }
+    }
+
+    /**
+     * Create a new String from a range of characters, trimming any whitespace. Like {@link #newString(String)}, the
+     * current symbol table is used if there is one. No intermediate String is created if the value is already in the
+     * table.
+     */
+    public static String newString(char[] chars, int start, int end) {
+        while ((start < end) && (chars[start] <= ' ')) {
+            ++start;
+        }
+
+        while ((start < end) && (chars[end - 1] <= ' ')) {
+            --end;
+        }
+
+        SymbolTable symbols = SymbolTable.getCurrent();
+
+        if (symbols != null) {
+            return symbols.get(chars, start, end);
         }
         else {
-            // Oracle JVM's String implementation is always the correct size
-            return original.trim().intern();
+            return new String(chars, start, end - start);
         }
     }
 
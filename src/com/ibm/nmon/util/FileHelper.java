@@ -8,7 +8,7 @@ import java.util.List;
 import org.slf4j.Logger;
 
 /**
- * Utility methods for recursive directory searches.
+ * Utility methods for recursive directory searches. Archives are searched like directories; see {@link ArchiveHelper}.
  */
 public final class FileHelper {
     protected final static Logger logger = org.slf4j.LoggerFactory.getLogger(FileHelper.class);
@@ -23,6 +23,9 @@ public final class FileHelper {
                     logger.warn("Listing files for " + files[i].getAbsolutePath() + " unexpectedly return null");
                 }
             }
+            else if (ArchiveHelper.isArchive(files[i].getName())) {
+                addArchiveEntries(files[i], filter, filenames);
+            }
             else {
                 if (filter.accept(files[i])) {
                     filenames.add(files[i].getAbsolutePath());
@@ -41,6 +44,9 @@ public final class FileHelper {
                     logger.warn("Listing files for " + file.getAbsolutePath() + " unexpectedly return null");
                 }
             }
+            else if (ArchiveHelper.isArchive(file.getName())) {
+                addArchiveEntries(file, filter, filenames);
+            }
             else {
                 if (filter.accept(file)) {
                     filenames.add(file.getAbsolutePath());
@@ -49,5 +55,19 @@ public final class FileHelper {
         }
     }
 
+    // treat each file inside an archive like a file in a directory
+    private static void addArchiveEntries(File archive, FileFilter filter, List<String> filenames) {
+        try {
+            for (String entry : ArchiveHelper.listEntries(archive)) {
+                if (filter.accept(new File(entry))) {
+                    filenames.add(entry);
+                }
+            }
+        }
+        catch (java.io.IOException ioe) {
+            logger.warn("could not read archive " + archive.getAbsolutePath(), ioe);
+        }
+    }
+
     private FileHelper() {}
 }
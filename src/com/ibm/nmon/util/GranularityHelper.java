@@ -2,6 +2,8 @@ package com.ibm.nmon.util;
 
 import com.ibm.nmon.NMONVisualizerApp;
 
+import com.ibm.nmon.data.DataRollup;
+
 import com.ibm.nmon.interval.Interval;
 
 public class GranularityHelper {
@@ -45,7 +47,7 @@ public class GranularityHelper {
     }
 
     // attempt to get about 100 data points on each chart, based on the interval duration rounded to
-    // the nearest 15 seconds
+    // the nearest rollup level or 15 seconds
     // default to 60s
     public void recalculate() {
         if (!automatic) {
@@ -75,8 +77,21 @@ public class GranularityHelper {
             granularity = 2147475000; // MAX_VALUE rounded down to nearest 15000
         }
 
-        // round to nearest 15 seconds
-        granularity = Math.round(granularity / 15000d) * 15000;
+        // round to a multiple of the largest DataRollup level that fits so charts can use the rollups
+        // otherwise, round to nearest 15 seconds
+        int rounding = 15000;
+
+        for (int levelSize : DataRollup.LEVELS) {
+            if (granularity >= levelSize) {
+                rounding = levelSize;
+            }
+        }
+
+        granularity = Math.round(granularity / (double) rounding) * rounding;
+
+        if (granularity > Integer.MAX_VALUE) {
+            granularity -= rounding;
+        }
 
         if (granularity < 1000) {
             granularity = 1000;
@@ -25,13 +25,27 @@ import com.ibm.nmon.parser.NMONParser;
  * This class is a singleton to ensure that only on instance is added to the Logger for
  * 'com.ibm.nmon.parser' package.
  * </p>
+ * 
+ * <p>
+ * The current file name and the log buffer are kept per thread so that messages are attributed to
+ * the correct file when multiple files are parsed concurrently.
+ * </p>
  */
 public final class ParserLog extends Handler {
+    private static final class State {
+        String currentFilename = "";
+        StringWriter logBuffer = new StringWriter(512);
+        boolean hasData = false;
+    }
+
     private Logger logger;
-    private String currentFilename;
-    private StringWriter logBuffer;
 
-    private boolean hasData;
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
 
     private ParserLog() {
         // note the parser package, not this class' package
@@ -43,10 +57,6 @@ public final class ParserLog extends Handler {
 
         // but expose SLF4J logger
         logger = org.slf4j.LoggerFactory.getLogger(loggerName);
-
-        currentFilename = "";
-        logBuffer = new StringWriter(512);
-        hasData = false;
     }
 
     private static final ParserLog INSTANCE = new ParserLog();
@@ -57,14 +67,16 @@ public final class ParserLog extends Handler {
 
     @Override
     public void close() {
+        State current = state.get();
+
         try {
-            logBuffer.close();
+            current.logBuffer.close();
         }
         catch (java.io.IOException ioe) {
             // ignore
         }
         finally {
-            logBuffer = null;
+            current.logBuffer = null;
         }
     }
 
@@ -72,50 +84,55 @@ public final class ParserLog extends Handler {
     public void flush() {}
 
     @Override
-    public synchronized void publish(LogRecord record) {
-        logBuffer.append(record.getLevel().getName());
-        logBuffer.append("  ");
-        logBuffer.append(record.getMessage());
-        logBuffer.append("\n");
+    public void publish(LogRecord record) {
+        // JDK logging calls handlers on the logging thread
+        State current = state.get();
+
+        current.logBuffer.append(record.getLevel().getName());
+        current.logBuffer.append("  ");
+        current.logBuffer.append(record.getMessage());
+        current.logBuffer.append("\n");
 
         if (record.getThrown() != null) {
-            PrintWriter pw = new PrintWriter(logBuffer);
+            PrintWriter pw = new PrintWriter(current.logBuffer);
             record.getThrown().printStackTrace(pw);
 
             pw.close();
         }
 
-        hasData = true;
+        current.hasData = true;
     }
 
     public Logger getLogger() {
         return logger;
     }
 
-    public synchronized boolean hasData() {
-        return hasData;
+    public boolean hasData() {
+        return state.get().hasData;
     }
 
-    public synchronized String getCurrentFilename() {
-        return currentFilename;
+    public String getCurrentFilename() {
+        return state.get().currentFilename;
     }
 
-    public synchronized void setCurrentFilename(String currentFilename) {
+    public void setCurrentFilename(String currentFilename) {
         if (currentFilename == null) {
-            this.currentFilename = "";
+            state.get().currentFilename = "";
         }
         else {
-            this.currentFilename = currentFilename;
+            state.get().currentFilename = currentFilename;
         }
     }
 
-    public synchronized String getMessages() {
-        String toReturn = logBuffer.toString();
+    public String getMessages() {
+        State current = state.get();
+
+        String toReturn = current.logBuffer.toString();
         close();
 
-        currentFilename = "";
-        logBuffer = new StringWriter(512);
-        hasData = false;
+        current.currentFilename = "";
+        current.logBuffer = new StringWriter(512);
+        current.hasData = false;
 
         return toReturn;
     }
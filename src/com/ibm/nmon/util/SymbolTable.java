@@ -0,0 +1,219 @@
+package com.ibm.nmon.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * Deduplicates the Strings created while parsing, i.e. type ids, field names, process names and metadata. Unlike
+ * {@link String#intern()}, each table is only used for a single load of data. Parsers running concurrently share the
+ * same table but the table can be discarded once the load is complete.
+ * </p>
+ *
+ * <p>
+ * Strings can be looked up directly from a range of characters, so callers do not need to create a substring just to
+ * find an existing String. The table uses open addressing with compare and set on insertion, so lookups and insertions
+ * never lock. When the table grows, a String inserted concurrently may not be copied into the new table. That String
+ * is still valid, but it may not be shared with later lookups of the same value.
+ * </p>
+ *
+ * <p>
+ * The current table is stored per thread. Code that loads data should call {@link #setCurrent(SymbolTable)} before
+ * parsing and clear it afterwards. {@link DataHelper#newString(String)} uses the current table, if any.
+ * </p>
+ */
+public final class SymbolTable {
+    private static final ThreadLocal<SymbolTable> CURRENT = new ThreadLocal<SymbolTable>();
+
+    private volatile AtomicReferenceArray<String> table;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public SymbolTable() {
+        this(512);
+    }
+
+    public SymbolTable(int expectedSize) {
+        if (expectedSize < 1) {
+            throw new IllegalArgumentException("size must be > 0");
+        }
+
+        // keep the table at most half full
+        table = new AtomicReferenceArray<String>(Integer.highestOneBit(expectedSize * 2 - 1) << 1);
+    }
+
+    /**
+     * @return the table for the current thread or <code>null</code> if there is none
+     */
+    public static SymbolTable getCurrent() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Set the table for the current thread. Use <code>null</code> to clear it.
+     */
+    public static void setCurrent(SymbolTable symbols) {
+        if (symbols == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(symbols);
+        }
+    }
+
+    /**
+     * @return the String in this table equal to <code>value</code>; <code>value</code> is added if there is none
+     */
+    public String get(String value) {
+        int hash = value.hashCode();
+
+        while (true) {
+            AtomicReferenceArray<String> table = this.table;
+            int mask = table.length() - 1;
+
+            for (int i = spread(hash) & mask;;) {
+                String symbol = table.get(i);
+
+                if (symbol == null) {
+                    if (table.compareAndSet(i, null, value)) {
+                        added(table);
+                        return value;
+                    }
+                    else {
+                        // another thread used this slot; check it again
+                        continue;
+                    }
+                }
+                else if ((symbol.hashCode() == hash) && symbol.equals(value)) {
+                    return symbol;
+                }
+
+                i = (i + 1) & mask;
+            }
+        }
+    }
+
+    /**
+     * @return the String in this table equal to the given range of characters; a new String is added if there is none
+     */
+    public String get(CharSequence chars, int start, int end) {
+        int hash = 0;
+
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+
+        AtomicReferenceArray<String> table = this.table;
+        int mask = table.length() - 1;
+
+        for (int i = spread(hash) & mask;;) {
+            String symbol = table.get(i);
+
+            if (symbol == null) {
+                return get(chars.subSequence(start, end).toString());
+            }
+            else if ((symbol.hashCode() == hash) && matches(symbol, chars, start, end)) {
+                return symbol;
+            }
+
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * @return the String in this table equal to the given range of characters; a new String is added if there is none
+     */
+    public String get(char[] chars, int start, int end) {
+        int hash = 0;
+
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        AtomicReferenceArray<String> table = this.table;
+        int mask = table.length() - 1;
+
+        for (int i = spread(hash) & mask;;) {
+            String symbol = table.get(i);
+
+            if (symbol == null) {
+                return get(new String(chars, start, end - start));
+            }
+            else if ((symbol.hashCode() == hash) && matches(symbol, chars, start, end)) {
+                return symbol;
+            }
+
+            i = (i + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    private static boolean matches(String symbol, CharSequence chars, int start, int end) {
+        if (symbol.length() != (end - start)) {
+            return false;
+        }
+
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean matches(String symbol, char[] chars, int start, int end) {
+        if (symbol.length() != (end - start)) {
+            return false;
+        }
+
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void added(AtomicReferenceArray<String> current) {
+        if (size.incrementAndGet() > (current.length() / 2)) {
+            resize(current);
+        }
+    }
+
+    // only resizing locks; lookups continue to use the old table until the new one is set
+    private synchronized void resize(AtomicReferenceArray<String> current) {
+        if (table != current) {
+            return;
+        }
+
+        AtomicReferenceArray<String> resized = new AtomicReferenceArray<String>(current.length() * 2);
+        int mask = resized.length() - 1;
+        int count = 0;
+
+        for (int i = 0; i < current.length(); i++) {
+            String symbol = current.get(i);
+
+            if (symbol != null) {
+                int j = spread(symbol.hashCode()) & mask;
+
+                while (resized.get(j) != null) {
+                    j = (j + 1) & mask;
+                }
+
+                resized.set(j, symbol);
+                ++count;
+            }
+        }
+
+        size.set(count);
+        table = resized;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,139 @@
+package com.ibm.nmon.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ibm.nmon.data.BasicDataSet;
+import com.ibm.nmon.data.DataRecord;
+import com.ibm.nmon.data.DataRollup;
+import com.ibm.nmon.data.DataSet;
+import com.ibm.nmon.data.DataType;
+
+public final class WindowAccumulatorTest {
+    private static final DataType TYPE = new DataType("TEST", "Test", "a", "b");
+    private static final List<String> FIELDS = java.util.Arrays.asList("a", "b", "missing");
+
+    // not aligned to any rollup level
+    private static final long START = 1500000007000L;
+
+    @Test
+    public void rollupMatchesRaw() {
+        DataSet data = createData();
+
+        for (int granularity : new int[] { 60000, 120000, 300000, 900000, 1800000, 3600000 }) {
+            for (Statistic statistic : new Statistic[] { Statistic.AVERAGE, Statistic.MAXIMUM, Statistic.MINIMUM,
+                    Statistic.COUNT, Statistic.SUM }) {
+                // whole data set and a range that starts and ends inside rollup buckets
+                assertSame(data, statistic, granularity, data.getStartTime(), data.getEndTime());
+                assertSame(data, statistic, granularity, START + 1234567, data.getEndTime() - 2345678);
+            }
+        }
+    }
+
+    @Test
+    public void windowsAreAligned() {
+        DataSet data = createData();
+        List<double[]> raw = accumulate(data, null, Statistic.COUNT, 300000, data.getStartTime(), data.getEndTime());
+
+        long lastWindow = Long.MIN_VALUE;
+        double total = 0;
+
+        for (double[] point : raw) {
+            if (point[2] == 0) {
+                long window = (long) point[0] / 300000;
+
+                // one data point per window, at the time of a record in that window
+                assertTrue(window > lastWindow);
+                lastWindow = window;
+                total += point[1];
+            }
+        }
+
+        // every defined value is counted exactly once
+        assertEquals(4800 - (4800 / 17 + 1), total, 0);
+    }
+
+    @Test
+    public void rollupIsCancelled() {
+        DataSet data = createData();
+        DataRollup.Level level = data.getRollup().getLevel(TYPE, 300000);
+
+        Thread.currentThread().interrupt();
+
+        try {
+            // start and end at bucket boundaries so only buckets are read
+            accumulate(data, level, Statistic.AVERAGE, 300000, level.getStart(1), level.getStart(10) - 1);
+            fail("interrupted accumulation should be cancelled");
+        }
+        catch (java.util.concurrent.CancellationException ce) {
+            // expected
+        }
+        finally {
+            Thread.interrupted();
+        }
+    }
+
+    private static void assertSame(DataSet data, Statistic statistic, int granularity, long start, long end) {
+        DataRollup.Level level = data.getRollup().getLevel(TYPE, granularity);
+        String message = statistic + " " + granularity;
+
+        List<double[]> raw = accumulate(data, null, statistic, granularity, start, end);
+        List<double[]> rolledUp = accumulate(data, level, statistic, granularity, start, end);
+
+        assertEquals(message, raw.size(), rolledUp.size());
+
+        for (int i = 0; i < raw.size(); i++) {
+            assertEquals(message, raw.get(i)[0], rolledUp.get(i)[0], 0);
+            assertEquals(message, raw.get(i)[1], rolledUp.get(i)[1], 1e-6);
+            assertEquals(message, raw.get(i)[2], rolledUp.get(i)[2], 0);
+        }
+    }
+
+    private static List<double[]> accumulate(DataSet data, DataRollup.Level level, Statistic statistic,
+            int granularity, long start, long end) {
+        final List<double[]> output = new java.util.ArrayList<double[]>();
+
+        WindowAccumulator accumulator = new WindowAccumulator(statistic, granularity, TYPE, FIELDS,
+                new WindowAccumulator.Output() {
+                    @Override
+                    public void add(long time, double value, int field) {
+                        output.add(new double[] { time, value, field });
+                    }
+                });
+
+        if (level == null) {
+            accumulator.addRecords(data, start, end);
+        }
+        else {
+            accumulator.addRollup(data, level, start, end);
+        }
+
+        accumulator.finish();
+
+        return output;
+    }
+
+    // 3 second interval for 4 hours; some records have no data and some values are undefined
+    private static DataSet createData() {
+        DataSet data = new BasicDataSet("test");
+        java.util.Random random = new java.util.Random(42);
+
+        for (int i = 0; i < 4800; i++) {
+            DataRecord record = new DataRecord(START + i * 3000L, Integer.toString(i));
+
+            if ((i % 17) != 0) {
+                double b = (i % 5) == 0 ? Double.NaN : random.nextInt(1000);
+                record.addData(TYPE, new double[] { random.nextDouble() * 100, b });
+            }
+
+            data.addRecord(record);
+        }
+
+        return data;
+    }
+}
@@ -0,0 +1,198 @@
+package com.ibm.nmon.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public final class DataSetCacheTest {
+    private static final long START = 1500000007000L;
+    private static final int COUNT = 200;
+
+    @Test
+    public void roundTripMatchesData() throws IOException {
+        File directory = createDirectory();
+
+        try {
+            DataSetCache cache = new DataSetCache(directory);
+            NMONDataSet data = createData();
+
+            String key = cache.getKey(data.getSourceFile(), "test");
+            cache.store(data.getSourceFile(), key, data);
+
+            DataSet loaded = cache.load(data.getSourceFile(), key);
+
+            assertNotNull(loaded);
+            assertEquals(NMONDataSet.class, loaded.getClass());
+            assertData(data, (NMONDataSet) loaded);
+
+            // a different key means the source file changed
+            assertNull(cache.load(data.getSourceFile(), cache.getKey(data.getSourceFile(), "other")));
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    private static void assertData(NMONDataSet expected, NMONDataSet actual) {
+        assertEquals(expected.getSourceFile(), actual.getSourceFile());
+        assertEquals(expected.getHostname(), actual.getHostname());
+
+        for (String name : expected.getMetadataNames()) {
+            assertEquals(name, expected.getMetadata(name), actual.getMetadata(name));
+        }
+
+        assertEquals(expected.getMetadataCount(), actual.getMetadataCount());
+
+        for (String name : expected.getSystemInfoNames()) {
+            assertEquals(name, expected.getSystemInfo(name), actual.getSystemInfo(name));
+        }
+
+        assertEquals(expected.getSystemInfoCount(), actual.getSystemInfoCount());
+
+        // only the processes added to the data set, not every process with a type
+        assertEquals(expected.getProcessCount(), actual.getProcessCount());
+
+        for (Process process : actual.getProcesses()) {
+            assertNotNull(process.getTypeId(), expected.getType(process.getTypeId()));
+        }
+
+        assertEquals(expected.getTypeCount(), actual.getTypeCount());
+
+        List<DataType> types = new java.util.ArrayList<DataType>();
+
+        for (DataType type : expected.getTypes()) {
+            DataType loaded = actual.getType(type.getId());
+            types.add(type);
+
+            assertNotNull(type.getId(), loaded);
+            assertEquals(type.getId(), type.getClass(), loaded.getClass());
+            assertEquals(type.getId(), type.getName(), loaded.getName());
+            assertEquals(type.getId(), type.toString(), loaded.toString());
+            assertEquals(type.getId(), type.getFields(), loaded.getFields());
+
+            if (type instanceof SubDataType) {
+                assertEquals(type.getId(), ((SubDataType) type).getPrimaryId(), ((SubDataType) loaded).getPrimaryId());
+                assertEquals(type.getId(), ((SubDataType) type).getSubId(), ((SubDataType) loaded).getSubId());
+            }
+            else if (type instanceof ProcessDataType) {
+                Process process = ((ProcessDataType) type).getProcess();
+                Process loadedProcess = ((ProcessDataType) loaded).getProcess();
+
+                assertEquals(type.getId(), process.getId(), loadedProcess.getId());
+                assertEquals(type.getId(), process.getName(), loadedProcess.getName());
+                assertEquals(type.getId(), process.getTypeName(), loadedProcess.getTypeName());
+                assertEquals(type.getId(), process.getCommandLine(), loadedProcess.getCommandLine());
+                assertEquals(type.getId(), process.getStartTime(), loadedProcess.getStartTime());
+                assertEquals(type.getId(), process.getEndTime(), loadedProcess.getEndTime());
+            }
+        }
+
+        assertEquals(expected.getRecordCount(), actual.getRecordCount());
+
+        java.util.Iterator<DataRecord> records = actual.getRecords().iterator();
+
+        for (DataRecord record : expected.getRecords()) {
+            DataRecord loaded = records.next();
+
+            assertEquals(record.getTimestamp(), loaded.getTimestamp());
+            assertEquals(record.getTimestamp(), record.getTime(), loaded.getTime());
+
+            for (DataType type : types) {
+                DataType loadedType = actual.getType(type.getId());
+
+                assertEquals(record.getTimestamp() + ' ' + type, record.hasData(type), loaded.hasData(loadedType));
+
+                if (record.hasData(type)) {
+                    // compares NaN values as equal
+                    assertTrue(record.getTimestamp() + ' ' + type,
+                            java.util.Arrays.equals(record.getData(type), loaded.getData(loadedType)));
+                }
+            }
+        }
+    }
+
+    private static NMONDataSet createData() {
+        NMONDataSet data = new NMONDataSet("/tmp/test.nmon");
+        data.setHostname("test");
+        data.setMetadata("OS", "Linux 3.10.0");
+        data.setMetadata("interval", "10");
+        data.setSystemInfo("/etc/release", "Test Linux\n");
+
+        List<DataType> types = new java.util.ArrayList<DataType>();
+
+        types.add(new DataType("CPU_ALL", "CPU Total", "User%", "Sys%", "Wait%", "Idle%"));
+        types.add(new SubDataType("DISKBUSY", "sda", "Disk %Busy", "busy"));
+        // sub ids with parentheses, like the combined id
+        types.add(new SubDataType("NET", "eth0 (1)", "Network", false, "read", "write"));
+        types.add(new SubDataType("JVM-X", "gc (young)", "Garbage Collection", "count"));
+
+        // processes with the default type name, another type name and an aggregate
+        Process server = new Process(1000, START, "java");
+        server.setCommandLine("java -jar app.jar");
+        server.setEndTime(START + COUNT * 5000L);
+
+        Process perfmon = new Process(2000, START + 10000, "svchost", "Process-1@x");
+        Process aggregate = new Process(-1, START, "java");
+
+        data.addProcess(server);
+        data.addProcess(perfmon);
+
+        types.add(new ProcessDataType(server, "%CPU", "Size"));
+        types.add(new ProcessDataType(perfmon, "% Processor Time"));
+        // aggregate processes have a type but are not in the data set's processes
+        types.add(new ProcessDataType(aggregate, "%CPU", "Size"));
+
+        for (DataType type : types) {
+            data.addType(type);
+        }
+
+        java.util.Random random = new java.util.Random(1);
+
+        for (int i = 0; i < COUNT; i++) {
+            DataRecord record = new DataRecord(START + i * 10000L, String.format("T%04d", i + 1));
+
+            for (DataType type : types) {
+                if (random.nextInt(5) != 0) {
+                    double[] values = new double[type.getFieldCount()];
+
+                    for (int j = 0; j < values.length; j++) {
+                        values[j] = random.nextInt(10) == 0 ? Double.NaN : random.nextDouble() * 100;
+                    }
+
+                    record.addData(type, values);
+                }
+            }
+
+            data.addRecord(record);
+        }
+
+        return data;
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("cache", "");
+        directory.delete();
+
+        return directory;
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+}
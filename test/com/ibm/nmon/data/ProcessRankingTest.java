@@ -0,0 +1,132 @@
+package com.ibm.nmon.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public final class ProcessRankingTest {
+    private static final long START = 1500000007000L;
+    private static final int COUNT = 500;
+    private static final int PROCESSES = 60;
+
+    @Test
+    public void topMatchesRecords() {
+        DataSet data = createData();
+        ProcessRanking ranking = data.getRangeIndex().getProcessRanking("%CPU", "CPU");
+
+        // every 10th process has neither field
+        assertEquals(PROCESSES - PROCESSES / 10, ranking.getProcessCount());
+
+        java.util.Random random = new java.util.Random(42);
+
+        for (int i = 0; i < 100; i++) {
+            long start = START + random.nextInt(COUNT * 10) * 1000L - 5000;
+            long end = start + random.nextInt(COUNT * 10) * 1000L;
+
+            for (int count : new int[] { 1, 5, 10, PROCESSES }) {
+                assertEquals(start + "-" + end + " top " + count, rank(data, count, start, end),
+                        ranking.getTop(count, start, end));
+            }
+        }
+
+        assertEquals(rank(data, 10, data.getStartTime(), data.getEndTime()),
+                ranking.getTop(10, data.getStartTime(), data.getEndTime()));
+    }
+
+    @Test
+    public void rankingIsCached() {
+        DataSet data = createData();
+
+        ProcessRanking ranking = data.getRangeIndex().getProcessRanking("%CPU", "CPU");
+        assertSame(ranking, data.getRangeIndex().getProcessRanking("%CPU", "CPU"));
+
+        // new records discard the index
+        data.addRecord(new DataRecord(data.getEndTime() + 10000, "T" + COUNT));
+        assertNotSame(ranking, data.getRangeIndex().getProcessRanking("%CPU", "CPU"));
+    }
+
+    // sort by the weighted average calculated directly from the records, as AnalysisRecord would
+    private static List<ProcessDataType> rank(DataSet data, int count, long start, long end) {
+        final java.util.Map<ProcessDataType, Double> averages = new java.util.HashMap<ProcessDataType, Double>();
+
+        for (DataType type : data.getTypes()) {
+            String field = type.hasField("%CPU") ? "%CPU" : (type.hasField("CPU") ? "CPU" : null);
+
+            if (field == null) {
+                continue;
+            }
+
+            double sum = 0;
+            double sumOfSquares = 0;
+
+            for (DataRecord record : data.getRecords(start, end)) {
+                // missing values are 0 for processes
+                double value = record.hasData(type) ? record.getData(type, field) : 0;
+
+                if (!Double.isNaN(value)) {
+                    sum += value;
+                    sumOfSquares += value * value;
+                }
+            }
+
+            if (sum != 0) {
+                averages.put((ProcessDataType) type, sumOfSquares / sum);
+            }
+        }
+
+        List<ProcessDataType> ranked = new java.util.ArrayList<ProcessDataType>(averages.keySet());
+
+        java.util.Collections.sort(ranked, new java.util.Comparator<ProcessDataType>() {
+            @Override
+            public int compare(ProcessDataType a, ProcessDataType b) {
+                return Double.compare(averages.get(b), averages.get(a));
+            }
+        });
+
+        return ranked.subList(0, Math.min(count, ranked.size()));
+    }
+
+    private static DataSet createData() {
+        BasicDataSet data = new BasicDataSet("test");
+        data.setHostname("test");
+
+        java.util.Random random = new java.util.Random(1);
+
+        ProcessDataType[] types = new ProcessDataType[PROCESSES];
+        int[] firstRows = new int[PROCESSES];
+        int[] lastRows = new int[PROCESSES];
+
+        for (int i = 0; i < PROCESSES; i++) {
+            String field = (i % 10) == 0 ? "ResSet" : ((i % 2) == 0 ? "%CPU" : "CPU");
+            Process process = new Process(1000 + i, START, "process" + i);
+
+            types[i] = new ProcessDataType(process, "Size", field);
+            data.addType(types[i]);
+
+            // some processes run for the whole time, most are short lived
+            firstRows[i] = (i % 4) == 0 ? 0 : random.nextInt(COUNT);
+            lastRows[i] = (i % 4) == 0 ? COUNT - 1 : Math.min(COUNT - 1, firstRows[i] + random.nextInt(COUNT / 5));
+        }
+
+        for (int row = 0; row < COUNT; row++) {
+            DataRecord record = new DataRecord(START + row * 10000L, "T" + row);
+
+            for (int i = 0; i < PROCESSES; i++) {
+                // processes without activity have no data
+                if ((row >= firstRows[i]) && (row <= lastRows[i]) && (random.nextInt(4) != 0)) {
+                    double value = (row % 13) == 0 ? Double.NaN : random.nextDouble() * (i + 1);
+
+                    record.addData(types[i], new double[] { 1000, value });
+                }
+            }
+
+            data.addRecord(record);
+        }
+
+        return data;
+    }
+}
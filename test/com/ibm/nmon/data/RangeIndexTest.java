@@ -0,0 +1,173 @@
+package com.ibm.nmon.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public final class RangeIndexTest {
+    // random values with some missing, large values with a small variance and a constant value
+    private static final DataType TYPE = new DataType("TEST", "Test", "random", "large", "constant");
+
+    private static final Process PROCESS = new Process(1234, 0, "java");
+    private static final DataType PROCESS_TYPE = new ProcessDataType(PROCESS, "%CPU");
+
+    private static final long START = 1500000007000L;
+    private static final int COUNT = 1000;
+
+    @Test
+    public void summariesMatchRecords() {
+        DataSet data = createData();
+        java.util.Random random = new java.util.Random(42);
+
+        for (int i = 0; i < 200; i++) {
+            long start = START + random.nextInt(COUNT * 10) * 1000L - 5000;
+            long end = start + random.nextInt(COUNT * 10 / (1 + random.nextInt(20))) * 1000L;
+
+            assertSummaries(data, start, end);
+        }
+
+        // whole data set, a single record and no records
+        assertSummaries(data, data.getStartTime(), data.getEndTime());
+        assertSummaries(data, START + 500 * 10000, START + 500 * 10000);
+        assertSummaries(data, START + 1, START + 9999);
+
+        // starting and ending on block boundaries
+        assertSummaries(data, START + 32 * 10000, START + 32 * 20 * 10000 - 1);
+    }
+
+    @Test
+    public void constantValuesHaveNoDeviation() {
+        DataSet data = createData();
+
+        RangeIndex.Summary summary = data.getRangeIndex().getSummary(TYPE, 2, data.getStartTime(),
+                data.getEndTime());
+
+        // every 97th record has no data
+        assertEquals(COUNT - (COUNT / 97 + 1), summary.getCount());
+        assertEquals(0, summary.getStandardDeviation(), 0);
+    }
+
+    @Test
+    public void largeValuesKeepPrecision() {
+        DataSet data = createData();
+
+        // variance is tiny compared to the values, so a sum of squares formula loses all precision here
+        for (long start = data.getStartTime(); start < data.getEndTime(); start += 777 * 1000) {
+            double expected = calculate(data, TYPE, 1, start, start + 3000 * 1000)[5];
+            RangeIndex.Summary summary = data.getRangeIndex().getSummary(TYPE, 1, start, start + 3000 * 1000);
+
+            assertTrue(expected > 0);
+            assertEquals(expected, summary.getStandardDeviation(), expected * 1e-6);
+        }
+    }
+
+    private static void assertSummaries(DataSet data, long start, long end) {
+        for (int field = 0; field < TYPE.getFieldCount(); field++) {
+            assertSummary(data, TYPE, field, start, end);
+        }
+
+        assertSummary(data, PROCESS_TYPE, 0, start, end);
+    }
+
+    private static void assertSummary(DataSet data, DataType type, int field, long start, long end) {
+        double[] expected = calculate(data, type, field, start, end);
+        RangeIndex.Summary summary = data.getRangeIndex().getSummary(type, field, start, end);
+
+        String message = type + " " + field + " " + start + '-' + end;
+
+        assertEquals(message, (int) expected[0], summary.getCount());
+
+        if (expected[0] == 0) {
+            assertEquals(message, 0, summary.getSum(), 0);
+            assertTrue(message, Double.isNaN(summary.getAverage()));
+            assertTrue(message, Double.isNaN(summary.getMinimum()));
+            assertTrue(message, Double.isNaN(summary.getMaximum()));
+            assertTrue(message, Double.isNaN(summary.getStandardDeviation()));
+        }
+        else {
+            // sums are differences of prefix sums over all the data, so allow for rounding in the total
+            double delta = Math.max(1e-9, Math.abs(expected[1]) * 1e-12);
+
+            assertEquals(message, expected[1], summary.getSum(), delta);
+            assertEquals(message, expected[1] / expected[0], summary.getAverage(), delta);
+            assertEquals(message, expected[2], summary.getMinimum(), 0);
+            assertEquals(message, expected[3], summary.getMaximum(), 0);
+            assertEquals(message, expected[4], summary.getWeightedAverage(), Math.max(1e-9, expected[4] * 1e-9));
+            assertEquals(message, expected[5], summary.getStandardDeviation(),
+                    Math.max(1e-12, expected[5] * 1e-6));
+        }
+    }
+
+    // count, sum, minimum, maximum, weighted average and standard deviation directly from the records
+    private static double[] calculate(DataSet data, DataType type, int field, long start, long end) {
+        java.util.List<Double> values = new java.util.ArrayList<Double>();
+
+        for (DataRecord record : data.getRecords(start, end)) {
+            double value = record.hasData(type) ? record.getData(type)[field] : Double.NaN;
+
+            if (Double.isNaN(value)) {
+                if (type instanceof ProcessDataType) {
+                    value = 0;
+                }
+                else {
+                    continue;
+                }
+            }
+
+            values.add(value);
+        }
+
+        double sum = 0;
+        double sumOfSquares = 0;
+        double minimum = Double.NaN;
+        double maximum = Double.NaN;
+
+        for (double value : values) {
+            sum += value;
+            sumOfSquares += value * value;
+
+            minimum = Double.isNaN(minimum) ? value : Math.min(minimum, value);
+            maximum = Double.isNaN(maximum) ? value : Math.max(maximum, value);
+        }
+
+        double mean = sum / values.size();
+        double squaredDifferences = 0;
+
+        for (double value : values) {
+            squaredDifferences += (value - mean) * (value - mean);
+        }
+
+        return new double[] { values.size(), sum, minimum, maximum, sumOfSquares / sum,
+                Math.sqrt(squaredDifferences / values.size()) };
+    }
+
+    private static DataSet createData() {
+        BasicDataSet data = new BasicDataSet("test");
+        data.setHostname("test");
+        data.addType(TYPE);
+        data.addType(PROCESS_TYPE);
+
+        java.util.Random random = new java.util.Random(1);
+
+        for (int i = 0; i < COUNT; i++) {
+            DataRecord record = new DataRecord(START + i * 10000L, "T" + i);
+
+            // some records without any values, others with some values missing
+            if ((i % 97) != 0) {
+                double value = (i % 7) == 0 ? Double.NaN : random.nextDouble() * 100;
+
+                record.addData(TYPE, new double[] { value, 1e9 + random.nextInt(10), 0.1 });
+            }
+
+            // the process is only running for part of the data and does not always have data
+            if ((i >= 200) && (i < 700) && ((i % 3) != 0)) {
+                record.addData(PROCESS_TYPE, new double[] { random.nextDouble() * 10 });
+            }
+
+            data.addRecord(record);
+        }
+
+        return data;
+    }
+}
@@ -0,0 +1,234 @@
+package com.ibm.nmon.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import com.ibm.nmon.data.DataRecord;
+import com.ibm.nmon.data.DataType;
+import com.ibm.nmon.data.NMONDataSet;
+import com.ibm.nmon.interval.Interval;
+import com.ibm.nmon.parser.util.SnapshotIndex;
+import com.ibm.nmon.parser.util.TypeFilter;
+import com.ibm.nmon.util.ParserLog;
+
+public final class NMONParserTest {
+    private static final String[] HEADERS = { "AAA,progname,nmon", "AAA,host,test", "AAA,OS,Linux,3.10.0,#1 SMP,x86_64",
+            "AAA,date,01-JAN-2020", "AAA,interval,10", "AAA,cpus,4,4",
+            "CPU_ALL,CPU Total test,User%,Sys%,Wait%,Idle%,Busy,CPUs" };
+
+    @Test
+    public void chunkWarningsAreLoggedByCaller() throws IOException {
+        int snapshots = 400;
+        int bad = 301;
+
+        File file = createFile(snapshots, bad);
+
+        try {
+            ParserLog log = ParserLog.getInstance();
+            log.getMessages();
+
+            NMONParser parser = new NMONParser();
+            // at least 4 chunks
+            parser.setChunking(file.length() / 5, 4);
+
+            NMONDataSet data = parser.parse(file.getAbsolutePath(), TimeZone.getTimeZone("UTC"), false);
+
+            assertEquals(snapshots, data.getRecordCount());
+            assertTrue(log.hasData());
+
+            String messages = log.getMessages();
+            // each snapshot is a ZZZZ line, a CPU_ALL line and a VM line
+            String expected = "invalid numeric data 'bad' at line " + (HEADERS.length + (bad - 1) * 3 + 2)
+                    + ", column 3";
+
+            assertTrue(messages, messages.contains(expected));
+            // logged once
+            assertEquals(messages, messages.indexOf(expected), messages.lastIndexOf(expected));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void rangeIncludesOldLinuxVMDefinition() throws IOException {
+        File file = createFile(30, -1);
+        File indexFile = new File(file.getAbsolutePath() + SnapshotIndex.SUFFIX);
+
+        try {
+            TimeZone utc = TimeZone.getTimeZone("UTC");
+            NMONDataSet full = new NMONParser().parse(file.getAbsolutePath(), utc, false);
+
+            List<Long> times = new java.util.ArrayList<Long>();
+
+            for (DataRecord record : full.getRecords()) {
+                times.add(record.getTime());
+            }
+
+            // snapshots 10 through 20
+            Interval interval = new Interval(times.get(9), times.get(19));
+            NMONDataSet range = new NMONParser().parse(file.getAbsolutePath(), utc, false, TypeFilter.ALL, interval);
+
+            assertEquals(11, range.getRecordCount());
+
+            DataType vm = range.getType("VM");
+            assertEquals(full.getType("VM").getFields(), vm.getFields());
+
+            for (DataRecord record : range.getRecords()) {
+                DataRecord expected = full.getRecord(record.getTime());
+
+                assertEquals(expected.getData(full.getType("VM"), "pgpgin"), record.getData(vm, "pgpgin"), 0);
+            }
+        }
+        finally {
+            file.delete();
+            indexFile.delete();
+        }
+    }
+
+    @Test
+    public void rangeMatchesFullParse() throws IOException {
+        File file = createFile(400, -1);
+        File indexFile = new File(file.getAbsolutePath() + SnapshotIndex.SUFFIX);
+
+        try {
+            TimeZone utc = TimeZone.getTimeZone("UTC");
+            NMONDataSet full = new NMONParser().parse(file.getAbsolutePath(), utc, false);
+
+            List<Long> times = new java.util.ArrayList<Long>();
+
+            for (DataRecord record : full.getRecords()) {
+                times.add(record.getTime());
+            }
+
+            // the VM type is defined in the first snapshot, so chunks starting there cannot be combined and the whole
+            // file is parsed
+            assertEquals(400, assertRange(file, full, new Interval(times.get(0), times.get(99))));
+
+            // the last snapshots, a single snapshot and a range between snapshots
+            assertEquals(100, assertRange(file, full, new Interval(times.get(300), times.get(399))));
+            assertEquals(1, assertRange(file, full, new Interval(times.get(200), times.get(200) + 1)));
+            assertEquals(299, assertRange(file, full, new Interval(times.get(50) + 1, times.get(350) - 1)));
+        }
+        finally {
+            file.delete();
+            indexFile.delete();
+        }
+    }
+
+    @Test
+    public void staleIndexIsRebuilt() throws IOException {
+        File file = createFile(20, -1);
+        File indexFile = new File(file.getAbsolutePath() + SnapshotIndex.SUFFIX);
+
+        try {
+            SnapshotIndex index = SnapshotIndex.load(file.getAbsolutePath());
+
+            assertEquals(20, index.getSnapshotCount());
+            assertTrue(indexFile.isFile());
+
+            // a different size
+            writeFile(file, 40, -1, "01-JAN-2020");
+            index = SnapshotIndex.load(file.getAbsolutePath());
+
+            assertEquals(40, index.getSnapshotCount());
+            assertEquals(index.getSize(), file.length());
+
+            // the same size but a different modification time
+            long lastModified = file.lastModified();
+            writeFile(file, 40, -1, "02-JAN-2020");
+            file.setLastModified(lastModified + 10000);
+
+            index = SnapshotIndex.load(file.getAbsolutePath());
+
+            assertEquals(40, index.getSnapshotCount());
+            assertTrue(index.getTimestamp(0), index.getTimestamp(0).endsWith("02-JAN-2020"));
+
+            // the rebuilt index is used to parse a range
+            TimeZone utc = TimeZone.getTimeZone("UTC");
+            NMONDataSet full = new NMONParser().parse(file.getAbsolutePath(), utc, false);
+
+            assertEquals(20, assertRange(file, full, new Interval(full.getStartTime() + 200000, full.getEndTime())));
+        }
+        finally {
+            file.delete();
+            indexFile.delete();
+        }
+    }
+
+    // parse the interval in chunks and compare to the records in the same interval from a full parse
+    // returns the number of records parsed, which can include records outside the interval
+    private static int assertRange(File file, NMONDataSet full, Interval interval) throws IOException {
+        NMONParser parser = new NMONParser();
+        parser.setChunking(file.length() / 20, 4);
+
+        NMONDataSet range = parser.parse(file.getAbsolutePath(), TimeZone.getTimeZone("UTC"), false, TypeFilter.ALL,
+                interval);
+
+        assertEquals(interval.toString(), full.getRecordCount(interval), range.getRecordCount(interval));
+        assertEquals(interval.toString(), full.getTypeCount(), range.getTypeCount());
+
+        java.util.Iterator<DataRecord> records = range.getRecords(interval).iterator();
+
+        for (DataRecord expected : full.getRecords(interval)) {
+            DataRecord record = records.next();
+
+            assertEquals(expected.getTimestamp(), expected.getTime(), record.getTime());
+
+            for (DataType type : full.getTypes()) {
+                DataType rangeType = range.getType(type.getId());
+
+                assertEquals(type.getFields(), rangeType.getFields());
+                assertEquals(expected.getTimestamp() + ' ' + type, expected.hasData(type), record.hasData(rangeType));
+
+                if (expected.hasData(type)) {
+                    assertTrue(expected.getTimestamp() + ' ' + type,
+                            java.util.Arrays.equals(expected.getData(type), record.getData(rangeType)));
+                }
+            }
+        }
+
+        return range.getRecordCount();
+    }
+
+    private static File createFile(int snapshots, int bad) throws IOException {
+        File file = File.createTempFile("test", ".nmon");
+        writeFile(file, snapshots, bad, "01-JAN-2020");
+
+        return file;
+    }
+
+    // an old Linux file that defines the VM type in the first snapshot
+    private static void writeFile(File file, int snapshots, int bad, String date) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            for (String header : HEADERS) {
+                out.println(header);
+            }
+
+            for (int i = 1; i <= snapshots; i++) {
+                int seconds = 36000 + i * 10;
+                String timestamp = String.format("T%04d", i);
+
+                out.printf("ZZZZ,%s,%02d:%02d:%02d,%s%n", timestamp, seconds / 3600, (seconds / 60) % 60,
+                        seconds % 60, date);
+                out.println("CPU_ALL," + timestamp + ',' + (i == bad ? "bad" : "10.0") + ",5.0,1.0,84.0,,4");
+
+                if (i == 1) {
+                    out.println("VM," + timestamp + ",Paging and Virtual Memory,nr_dirty,nr_writeback,pgpgin");
+                }
+                else {
+                    out.println("VM," + timestamp + ',' + i + ',' + (i * 2) + ',' + (i * 3));
+                }
+            }
+        }
+    }
+}
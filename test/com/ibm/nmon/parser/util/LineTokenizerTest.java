@@ -0,0 +1,102 @@
+package com.ibm.nmon.parser.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public final class LineTokenizerTest {
+    private static final String[] VALUES = { "0", "-0", "0.0", "-0.0", "+1", "1.", ".5", "-.5", "00012.3400", "0.1",
+            "0.3", "2.675", "9007199254740992", "9007199254740993", "123456789012345678", "1234567890123456789",
+            "0.1234567890123456789", "1.0000000000000000000000001", "0.0000000000000000000000001", "1e3", "1E-3",
+            "NaN", "Infinity", "-Infinity", "4.9e-324", "1.7976931348623157e308", " 1.5", "1.5 " };
+
+    private static final String[] INVALID = { "", "-", "+", ".", "1.2.3", "1;5", "abc", "--1", "1-" };
+
+    @Test
+    public void valuesMatchDouble() {
+        for (String value : VALUES) {
+            assertParsed(value);
+        }
+    }
+
+    @Test
+    public void randomValuesMatchDouble() {
+        java.util.Random random = new java.util.Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            StringBuilder value = new StringBuilder();
+
+            if (random.nextBoolean()) {
+                value.append('-');
+            }
+
+            int digits = 1 + random.nextInt(20);
+            int decimal = random.nextInt(digits + 1);
+
+            for (int j = 0; j < digits; j++) {
+                if (j == decimal) {
+                    value.append('.');
+                }
+
+                value.append((char) ('0' + random.nextInt(10)));
+            }
+
+            assertParsed(value.toString());
+        }
+
+        // values formatted the same way as NMON output
+        for (int i = 0; i < 10000; i++) {
+            assertParsed(String.format("%.1f", random.nextDouble() * 100));
+            assertParsed(String.format("%.3f", random.nextDouble() * 1000000));
+            assertParsed(Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(30) - 10)));
+        }
+    }
+
+    @Test
+    public void invalidValuesThrow() {
+        for (String value : INVALID) {
+            LineTokenizer tokenizer = tokenize(value);
+
+            try {
+                tokenizer.parseDouble(1);
+                fail("'" + value + "' should not parse");
+            }
+            catch (NumberFormatException nfe) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void bytesMatchDouble() {
+        LineTokenizer tokenizer = new LineTokenizer(',');
+        byte[] bytes = "CPU01,T0001,12.5,-0.25,1e2,100".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+        tokenizer.tokenize(bytes, 0, bytes.length);
+
+        assertEquals(6, tokenizer.getFieldCount());
+        assertEquals(12.5, tokenizer.parseDouble(2), 0);
+        assertEquals(-0.25, tokenizer.parseDouble(3), 0);
+        assertEquals(100, tokenizer.parseDouble(4), 0);
+        assertEquals(100, tokenizer.parseDouble(5), 0);
+    }
+
+    private static void assertParsed(String value) {
+        LineTokenizer tokenizer = tokenize(value);
+
+        // compare bits so -0.0 and NaN are checked exactly
+        assertEquals(value, Double.doubleToRawLongBits(Double.parseDouble(value)),
+                Double.doubleToRawLongBits(tokenizer.parseDouble(1)));
+    }
+
+    // put the value between other fields to check the field boundaries
+    private static LineTokenizer tokenize(String value) {
+        LineTokenizer tokenizer = new LineTokenizer(',');
+        tokenizer.tokenize("TYPE," + value + ",end");
+
+        assertEquals(3, tokenizer.getFieldCount());
+
+        return tokenizer;
+    }
+}
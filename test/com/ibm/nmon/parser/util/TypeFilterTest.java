@@ -0,0 +1,184 @@
+package com.ibm.nmon.parser.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import com.ibm.nmon.data.DataRecord;
+import com.ibm.nmon.data.DataType;
+import com.ibm.nmon.data.NMONDataSet;
+import com.ibm.nmon.data.ProcessDataType;
+import com.ibm.nmon.data.matcher.ExactTypeMatcher;
+import com.ibm.nmon.data.matcher.ProcessMatcher;
+import com.ibm.nmon.data.matcher.RegexTypeMatcher;
+import com.ibm.nmon.data.matcher.TopProcessMatcher;
+import com.ibm.nmon.data.matcher.TypeMatcher;
+import com.ibm.nmon.parser.NMONParser;
+
+public final class TypeFilterTest {
+    private static final String[] HEADERS = { "AAA,progname,nmon", "AAA,host,test", "AAA,OS,Linux,3.10.0,#1 SMP,x86_64",
+            "AAA,date,01-JAN-2020", "AAA,interval,10", "AAA,cpus,2,2",
+            "CPU_ALL,CPU Total test,User%,Sys%,Wait%,Idle%,Busy,CPUs", "CPU01,CPU 1 test,User%,Sys%,Wait%,Idle%",
+            "CPU02,CPU 2 test,User%,Sys%,Wait%,Idle%",
+            "MEM,Memory MB test,memtotal,hightotal,lowtotal,swaptotal,memfree,highfree,lowfree,swapfree,memshared,"
+                    + "cached,active,bigfree,buffers,swapcached,inactive",
+            "DISKBUSY,Disk %Busy test,sda,sdb", "DISKREAD,Disk Read KB/s test,sda,sdb", "TOP,%CPU Utilisation",
+            "TOP,+PID,Time,%CPU,%Usr,%Sys,Size,ResSet,ResText,ResData,ShdLib,MinorFault,MajorFault,Command" };
+
+    private static final String[] COMMANDS = { "java", "httpd", "sshd" };
+
+    @Test
+    public void nonFilteringMatchersMatchAll() {
+        assertSame(TypeFilter.ALL, TypeFilter.create(java.util.Collections.singletonList(TypeMatcher.ALL)));
+        assertSame(TypeFilter.ALL, TypeFilter.create(java.util.Arrays.asList(new ExactTypeMatcher("MEM"),
+                TypeMatcher.ALL)));
+
+        assertTrue(TypeFilter.ALL.matchesAll());
+        assertTrue(TypeFilter.ALL.includesProcesses());
+
+        TypeFilter none = TypeFilter.create(java.util.Collections.<TypeMatcher> emptyList());
+        assertFalse(none.matchesAll());
+        assertFalse(none.includesProcesses());
+        assertFalse(none.matches("CPU_ALL"));
+    }
+
+    @Test
+    public void filterMatchesMatchers() throws IOException {
+        File file = createFile(50);
+
+        try {
+            NMONDataSet full = parse(file, TypeFilter.ALL);
+
+            assertFiltered(file, full, new ExactTypeMatcher("MEM"));
+            assertFiltered(file, full, new ExactTypeMatcher("MEM"), new RegexTypeMatcher("CPU\\d+"));
+            assertFiltered(file, full, new RegexTypeMatcher("DISK.*"), new RegexTypeMatcher("DISK.*"));
+            assertFiltered(file, full, new ExactTypeMatcher("CPU_ALL"), ProcessMatcher.INSTANCE);
+            assertFiltered(file, full, TopProcessMatcher.BY_CPU);
+            // types that do not exist
+            assertFiltered(file, full, new ExactTypeMatcher("LPAR"), new RegexTypeMatcher("PCPU.*"));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    // check the filter against the types the matchers find in a full parse of the same file, then check a filtered
+    // parse has the same data for those types
+    private static void assertFiltered(File file, NMONDataSet full, TypeMatcher... matchers) throws IOException {
+        TypeFilter filter = TypeFilter.create(java.util.Arrays.asList(matchers));
+        String message = filter.toString();
+
+        assertFalse(message, filter.matchesAll());
+
+        Set<DataType> matched = new java.util.HashSet<DataType>();
+        boolean processes = false;
+
+        for (TypeMatcher matcher : matchers) {
+            if ((matcher instanceof ProcessMatcher) || (matcher instanceof TopProcessMatcher)) {
+                processes = true;
+            }
+            else {
+                matched.addAll(matcher.getMatchingTypes(full));
+            }
+        }
+
+        assertEquals(message, processes, filter.includesProcesses());
+
+        for (DataType type : full.getTypes()) {
+            if (!(type instanceof ProcessDataType)) {
+                assertEquals(message + ' ' + type, matched.contains(type), filter.matches(type));
+            }
+        }
+
+        NMONDataSet filtered = parse(file, filter);
+
+        assertEquals(message, full.getRecordCount(), filtered.getRecordCount());
+        assertEquals(message, processes ? full.getProcessCount() : 0, filtered.getProcessCount());
+
+        for (DataType type : full.getTypes()) {
+            if (matched.contains(type) || (processes && (type instanceof ProcessDataType))) {
+                DataType filteredType = filtered.getType(type.getId());
+                assertNotNull(message + ' ' + type, filteredType);
+
+                java.util.Iterator<DataRecord> expected = full.getRecords().iterator();
+
+                for (DataRecord record : filtered.getRecords()) {
+                    DataRecord fullRecord = expected.next();
+
+                    assertEquals(message, fullRecord.getTime(), record.getTime());
+                    assertEquals(message + ' ' + type, fullRecord.hasData(type), record.hasData(filteredType));
+
+                    if (record.hasData(filteredType)) {
+                        assertTrue(message + ' ' + type,
+                                java.util.Arrays.equals(fullRecord.getData(type), record.getData(filteredType)));
+                    }
+                }
+            }
+        }
+
+        // other types are only parsed if something else needs them
+        for (DataType type : filtered.getTypes()) {
+            assertNotNull(message + ' ' + type, full.getType(type.getId()));
+        }
+    }
+
+    private static NMONDataSet parse(File file, TypeFilter filter) throws IOException {
+        return new NMONParser().parse(file.getAbsolutePath(), TimeZone.getTimeZone("UTC"), false, filter);
+    }
+
+    private static File createFile(int snapshots) throws IOException {
+        File file = File.createTempFile("test", ".nmon");
+        java.util.Random random = new java.util.Random(1);
+
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            for (String header : HEADERS) {
+                out.println(header);
+            }
+
+            for (int i = 1; i <= snapshots; i++) {
+                int seconds = 36000 + i * 10;
+                String timestamp = String.format("T%04d", i);
+
+                out.printf("ZZZZ,%s,%02d:%02d:%02d,01-JAN-2020%n", timestamp, seconds / 3600, (seconds / 60) % 60,
+                        seconds % 60);
+
+                double user = random.nextInt(500) / 10.0;
+                double sys = random.nextInt(200) / 10.0;
+
+                out.printf("CPU_ALL,%s,%.1f,%.1f,1.0,%.1f,,2%n", timestamp, user, sys, 99 - user - sys);
+                out.printf("CPU01,%s,%.1f,%.1f,1.0,%.1f%n", timestamp, user, sys, 99 - user - sys);
+                out.printf("CPU02,%s,%.1f,%.1f,0.0,%.1f%n", timestamp, sys, user, 100 - user - sys);
+                out.printf("MEM,%s,16000.0,0.0,16000.0,2000.0,%.1f,0.0,5000.0,1900.0,0.0,3000.0,8000.0,-1.0,200.0,0.0,"
+                        + "4000.0%n", timestamp, 4000 + random.nextInt(10000) / 10.0);
+                out.printf("DISKBUSY,%s,%.1f,%.1f%n", timestamp, random.nextInt(1000) / 10.0,
+                        random.nextInt(1000) / 10.0);
+                out.printf("DISKREAD,%s,%.1f,%.1f%n", timestamp, random.nextInt(10000) / 10.0,
+                        random.nextInt(10000) / 10.0);
+
+                // processes start and stop
+                for (int pid = 1000; pid < 1010; pid++) {
+                    if (((pid + i) % 7) != 0) {
+                        double cpu = random.nextInt(10000) / 100.0;
+
+                        out.printf("TOP,%07d,%s,%.2f,%.2f,%.2f,1000,500,10,400,20,5,0,%s%n", pid, timestamp, cpu,
+                                cpu * 0.7, cpu * 0.3, COMMANDS[pid % COMMANDS.length]);
+                    }
+                }
+            }
+        }
+
+        return file;
+    }
+}